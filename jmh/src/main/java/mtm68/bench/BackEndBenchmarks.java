@@ -0,0 +1,70 @@
+package mtm68.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import mtm68.assem.CompUnitAssem;
+import mtm68.assem.RegisterAllocator;
+import mtm68.assem.cfg.LinearScanAllocation;
+import mtm68.assem.cfg.RegisterAllocation;
+import mtm68.assem.operand.RealReg;
+import mtm68.assem.visit.TrivialRegisterAllocator;
+
+/**
+ * Tiling and register allocation of the unoptimized IR. Allocation rewrites
+ * the assems it is given, so each call gets a freshly tiled program.
+ */
+public class BackEndBenchmarks {
+
+	@State(Scope.Thread)
+	public static class Tile extends ProgramState {
+		private IRCompUnit ir;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			ir = pipeline.generateIR();
+		}
+
+		@Benchmark
+		public CompUnitAssem tile() {
+			return pipeline.tile(ir);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Allocate extends ProgramState {
+
+		@Param({"trivial", "coloring", "linear-scan"})
+		public String allocator;
+
+		private CompUnitAssem tiled;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			tiled = pipeline.tile(pipeline.generateIR());
+		}
+
+		@Benchmark
+		public CompUnitAssem allocate() {
+			return getAllocator().allocateRegisters(tiled);
+		}
+
+		private RegisterAllocator getAllocator() {
+			switch(allocator) {
+			case "trivial":
+				return new TrivialRegisterAllocator();
+			case "coloring":
+				return new RegisterAllocation(RealReg.COLORS);
+			case "linear-scan":
+				return new LinearScanAllocation(RealReg.COLORS);
+			default:
+				throw new IllegalArgumentException("Unknown allocator: " + allocator);
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package mtm68.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import mtm68.ast.nodes.Program;
+import mtm68.bench.Pipeline.TypeChecked;
+
+/**
+ * Parsing, type checking and IR generation. Type checking and IR generation
+ * decorate the AST they are given, so each call gets a freshly parsed one.
+ */
+public class FrontEndBenchmarks {
+
+	@State(Scope.Thread)
+	public static class Parse extends ProgramState {
+
+		@Benchmark
+		public Program parse() {
+			return pipeline.parse();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class TypeCheck extends ProgramState {
+		private Program parsed;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			parsed = pipeline.parse();
+		}
+
+		@Benchmark
+		public TypeChecked typeCheck() {
+			return pipeline.typeCheck(parsed);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class IRGen extends ProgramState {
+		private TypeChecked checked;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			checked = pipeline.typeCheck(pipeline.parse());
+		}
+
+		@Benchmark
+		public IRCompUnit generateIR() {
+			return pipeline.generateIR(checked);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package mtm68.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory_c;
+import edu.cornell.cs.cs4120.ir.visit.IRConstantFolder;
+import mtm68.ast.nodes.Program;
+import mtm68.ir.cfg.AnalysisManager;
+import mtm68.ir.cfg.CSETransformer;
+import mtm68.ir.cfg.ConstantPropTransformer;
+import mtm68.ir.cfg.CopyPropTransformer;
+import mtm68.ir.cfg.DeadCodeTransformer;
+import mtm68.visit.FunctionInliner;
+
+/**
+ * Each transformer the Optimizer runs, run once on the unoptimized program.
+ * Inlining works on the type checked AST; the rest work on the lowered IR,
+ * the dataflow passes one function at a time as the Optimizer runs them.
+ * The analyses the dataflow passes use are also measured on their own.
+ */
+public class OptimizerBenchmarks {
+
+	@State(Scope.Thread)
+	public static class Inline extends ProgramState {
+		private Program checked;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			checked = pipeline.typeCheck(pipeline.parse()).getProgram();
+		}
+
+		@Benchmark
+		public Program inline() {
+			return checked.accept(new FunctionInliner(checked.getFunctionDefns()));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ConstantFold extends ProgramState {
+		private IRNodeFactory nodeFactory = new IRNodeFactory_c();
+		private IRCompUnit ir;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			ir = pipeline.generateIR();
+		}
+
+		@Benchmark
+		public Object constantFold() {
+			return new IRConstantFolder(nodeFactory).visit(ir);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Dataflow extends ProgramState {
+
+		@Param({"cse", "copy", "cp", "dce"})
+		public String opt;
+
+		private IRNodeFactory nodeFactory = new IRNodeFactory_c();
+		private List<IRFuncDefn> funcs;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			funcs = new ArrayList<>(pipeline.generateIR().functions().values());
+		}
+
+		@Benchmark
+		public void transform(Blackhole bh) {
+			for(IRFuncDefn func : funcs) {
+				AnalysisManager analyses = new AnalysisManager(nodeFactory);
+				switch(opt) {
+				case "cse":
+					bh.consume(new CSETransformer(nodeFactory, analyses).doCSE(func));
+					break;
+				case "copy":
+					bh.consume(new CopyPropTransformer(nodeFactory, analyses).doCopyProp(func));
+					break;
+				case "cp":
+					bh.consume(new ConstantPropTransformer(nodeFactory, analyses).doConstantProp(func));
+					break;
+				case "dce":
+					bh.consume(new DeadCodeTransformer(nodeFactory, analyses).doDeadCodeRemoval(func));
+					break;
+				default:
+					throw new IllegalArgumentException("Not a dataflow optimization: " + opt);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The dataflow analyses the transformers share, computed on their own.
+	 */
+	@State(Scope.Thread)
+	public static class Analyze extends ProgramState {
+
+		@Param({"available-exprs", "available-copies", "live-variables", "reaching-defns"})
+		public String analysis;
+
+		private IRNodeFactory nodeFactory = new IRNodeFactory_c();
+		private List<IRFuncDefn> funcs;
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			funcs = new ArrayList<>(pipeline.generateIR().functions().values());
+		}
+
+		@Benchmark
+		public void analyze(Blackhole bh) {
+			for(IRFuncDefn func : funcs) {
+				AnalysisManager analyses = new AnalysisManager(nodeFactory);
+				switch(analysis) {
+				case "available-exprs":
+					bh.consume(analyses.getAvailableExprs(func));
+					break;
+				case "available-copies":
+					bh.consume(analyses.getAvailableCopies(func));
+					break;
+				case "live-variables":
+					bh.consume(analyses.getLiveVariables(func));
+					break;
+				case "reaching-defns":
+					bh.consume(analyses.getReachingDefns(func));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown analysis: " + analysis);
+				}
+			}
+		}
+	}
+}
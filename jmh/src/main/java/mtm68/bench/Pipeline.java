@@ -0,0 +1,137 @@
+package mtm68.bench;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import edu.cornell.cs.cs4120.ir.IRNode;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory_c;
+import edu.cornell.cs.cs4120.ir.visit.CFGVisitor;
+import edu.cornell.cs.cs4120.ir.visit.Lowerer;
+import edu.cornell.cs.cs4120.ir.visit.Tiler;
+import edu.cornell.cs.cs4120.ir.visit.UnusedLabelVisitor;
+import mtm68.FileType;
+import mtm68.SymbolTableManager;
+import mtm68.assem.CompUnitAssem;
+import mtm68.ast.nodes.FunctionDecl;
+import mtm68.ast.nodes.Program;
+import mtm68.exception.SemanticException;
+import mtm68.lexer.FileTypeLexer;
+import mtm68.lexer.Lexer;
+import mtm68.lexer.TokenFactory;
+import mtm68.parser.ParseResult;
+import mtm68.parser.Parser;
+import mtm68.util.FreshTempGenerator;
+import mtm68.visit.FunctionCollector;
+import mtm68.visit.NodeToIRNodeConverter;
+import mtm68.visit.TypeChecker;
+
+/**
+ * Runs the phases of the compiler on one source program the same way Main
+ * does, one phase at a time, so each phase can be benchmarked on the output
+ * of the phase before it. Phases change what they are given, so each call
+ * needs fresh input.
+ */
+public class Pipeline {
+	private String filename;
+	private String source;
+	private Path libPath;
+
+	/**
+	 * @param filename  the name of the program, used for its IR and assem
+	 * @param source    the text of the program
+	 * @param libPath   where the interfaces the program uses are
+	 */
+	public Pipeline(String filename, String source, Path libPath) {
+		this.filename = filename;
+		this.source = source;
+		this.libPath = libPath;
+	}
+
+	public Program parse() {
+		TokenFactory tokenFactory = new TokenFactory();
+		Lexer lexer = new FileTypeLexer(new StringReader(source), FileType.parseFileType(filename), tokenFactory);
+		ParseResult parseResult = new ParseResult(new Parser(lexer, tokenFactory));
+
+		if(!parseResult.isValidAST()) {
+			throw new IllegalStateException(parseResult.getFirstError().getPrintErrorMessage(filename));
+		}
+		return (Program) parseResult.getNode().get();
+	}
+
+	public TypeChecked typeCheck(Program program) {
+		try {
+			SymbolTableManager symTableManager = new SymbolTableManager(libPath);
+			Map<String, FunctionDecl> libFuncTable = symTableManager.mergeSymbolTables(program);
+
+			FunctionCollector funcCollector = new FunctionCollector(libFuncTable);
+			Map<String, FunctionDecl> funcTable = funcCollector.visit(program);
+			if(funcCollector.hasError()) {
+				throw new IllegalStateException(funcCollector.getFirstError().getPrintErrorMessage(filename));
+			}
+
+			TypeChecker typeChecker = new TypeChecker(funcTable);
+			program = typeChecker.performTypeCheck(program);
+			if(typeChecker.hasError()) {
+				throw new IllegalStateException(typeChecker.getFirstError().getPrintErrorMessage(filename));
+			}
+
+			return new TypeChecked(program, new ArrayList<>(funcTable.values()));
+		} catch(SemanticException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Generates the lowered, reordered IR of a type checked program, which
+	 * is what the optimizer is given.
+	 */
+	public IRCompUnit generateIR(TypeChecked checked) {
+		FreshTempGenerator.resetCounter();
+
+		IRNodeFactory nodeFactory = new IRNodeFactory_c();
+		NodeToIRNodeConverter irConverter = new NodeToIRNodeConverter(filename, nodeFactory, checked.funcDecls);
+
+		Program program = irConverter.performConvertToIR(checked.program);
+		program.getIrCompUnit().appendFunc(irConverter.allocLayer());
+
+		IRNode irRoot = new Lowerer(nodeFactory).visit(program.getIrCompUnit());
+		irRoot = new CFGVisitor(nodeFactory).visit(irRoot);
+		irRoot = new UnusedLabelVisitor(nodeFactory).visit(irRoot);
+		return (IRCompUnit) irRoot;
+	}
+
+	public IRCompUnit generateIR() {
+		return generateIR(typeCheck(parse()));
+	}
+
+	public CompUnitAssem tile(IRCompUnit ir) {
+		Tiler tiler = new Tiler(new IRNodeFactory_c());
+		return (CompUnitAssem) tiler.visit(ir).getAssem();
+	}
+
+	/**
+	 * A type checked program with the functions visible to it.
+	 */
+	public static class TypeChecked {
+		private Program program;
+		private List<FunctionDecl> funcDecls;
+
+		public TypeChecked(Program program, List<FunctionDecl> funcDecls) {
+			this.program = program;
+			this.funcDecls = funcDecls;
+		}
+
+		public Program getProgram() {
+			return program;
+		}
+
+		public List<FunctionDecl> getFuncDecls() {
+			return funcDecls;
+		}
+	}
+}
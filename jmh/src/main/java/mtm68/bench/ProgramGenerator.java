@@ -0,0 +1,251 @@
+package mtm68.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates type correct Xi programs of a given size, for finding out how
+ * each phase of the compiler scales. The size and shape are set by knobs:
+ *
+ * <ul>
+ * <li>functions: the number of functions besides main</li>
+ * <li>statements: the number of statements in each function</li>
+ * <li>loopDepth: how deeply loops nest</li>
+ * <li>exprDepth: the depth of each expression tree</li>
+ * <li>liveTemps: the number of temps each function keeps live throughout</li>
+ * <li>arrayPercent: the percentage of statements that write an array</li>
+ * <li>callPercent: the percentage of statements that call a function</li>
+ * <li>seed: the seed of the random choices, so programs can be made again</li>
+ * </ul>
+ *
+ * Generated programs also run to completion without errors, so they can be
+ * checked against each other. Loops run a fixed small number of times,
+ * array indices are constants within bounds, and calls are only made while
+ * the depth argument every function takes is positive, which main starts
+ * at 1.
+ */
+public class ProgramGenerator {
+	private static final int LOOP_PERCENT = 15;
+	private static final int IF_PERCENT = 10;
+	private static final int LOOP_TRIPS = 3;
+	private static final int ARRAY_LENGTH = 8;
+	private static final int MAX_BLOCK = 6;
+
+	private int functions = 8;
+	private int statements = 40;
+	private int loopDepth = 2;
+	private int exprDepth = 2;
+	private int liveTemps = 8;
+	private int arrayPercent = 10;
+	private int callPercent = 10;
+	private long seed = 4120;
+
+	private Random random;
+	private StringBuilder sb;
+	private List<String> counters;
+	private int numCounters;
+
+	/**
+	 * A generator with the knobs in spec set, given as knob=value pairs
+	 * separated by colons, like "functions=64:liveTemps=16".
+	 */
+	public static ProgramGenerator fromSpec(String spec) {
+		ProgramGenerator generator = new ProgramGenerator();
+		for(String knob : spec.split(":")) {
+			if(knob.isEmpty()) continue;
+
+			String[] keyValue = knob.split("=", 2);
+			if(keyValue.length != 2) throw new IllegalArgumentException("Expected knob=value, got " + knob);
+			generator.set(keyValue[0].trim(), Long.parseLong(keyValue[1].trim()));
+		}
+		return generator;
+	}
+
+	public ProgramGenerator set(String knob, long value) {
+		if(value < 0) throw new IllegalArgumentException(knob + " can't be negative");
+
+		switch(knob) {
+		case "functions": functions = (int) value; break;
+		case "statements": statements = (int) value; break;
+		case "loopDepth": loopDepth = (int) value; break;
+		case "exprDepth": exprDepth = (int) value; break;
+		case "liveTemps": liveTemps = Math.max(1, (int) value); break;
+		case "arrayPercent": arrayPercent = (int) value; break;
+		case "callPercent": callPercent = (int) value; break;
+		case "seed": seed = value; break;
+		default:
+			throw new IllegalArgumentException("Unknown knob " + knob);
+		}
+		return this;
+	}
+
+	public String generate() {
+		random = new Random(seed);
+		sb = new StringBuilder();
+
+		sb.append("use io\n\n");
+		sb.append("main(args: int[][]) {\n");
+		sb.append("\ts: int = 0\n");
+		for(int i = 0; i < functions; i++) {
+			sb.append("\ts = s + f").append(i).append("(1, ").append(i).append(", s)\n");
+		}
+		sb.append("\tprintln(unparseInt(s))\n");
+		sb.append("}\n");
+
+		for(int i = 0; i < functions; i++) {
+			function(i);
+		}
+
+		return sb.toString();
+	}
+
+	private void function(int index) {
+		counters = new ArrayList<>();
+		numCounters = 0;
+
+		sb.append("\nf").append(index).append("(d: int, a: int, b: int): int {\n");
+		for(int i = 0; i < liveTemps; i++) {
+			sb.append("\tt").append(i).append(": int = ")
+				.append(i % 2 == 0 ? "a" : "b").append(" + ").append(i).append("\n");
+		}
+		if(usesArrays()) {
+			sb.append("\tarr: int[] = {");
+			for(int i = 0; i < ARRAY_LENGTH; i++) {
+				sb.append(i == 0 ? "" : ", ").append(i);
+			}
+			sb.append("}\n");
+		}
+
+		block(statements, 0, "\t");
+
+		sb.append("\treturn ");
+		for(int i = 0; i < liveTemps; i++) {
+			sb.append(i == 0 ? "" : " + ").append("t").append(i);
+		}
+		if(usesArrays()) sb.append(" + arr[0] + length(arr)");
+		sb.append("\n}\n");
+	}
+
+	/**
+	 * Appends count statements, counting the loops and ifs they are made of
+	 * as one statement each.
+	 */
+	private void block(int count, int loopLevel, String indent) {
+		int generated = 0;
+		while(generated < count) {
+			int left = count - generated;
+			int roll = random.nextInt(100);
+
+			if(left > 1 && loopLevel < loopDepth && roll < LOOP_PERCENT) {
+				int body = 1 + random.nextInt(Math.min(left - 1, MAX_BLOCK));
+				loop(body, loopLevel, indent);
+				generated += body + 1;
+			} else if(left > 2 && roll < LOOP_PERCENT + IF_PERCENT) {
+				int body = 2 + random.nextInt(Math.min(left - 2, MAX_BLOCK));
+				int thenBody = 1 + random.nextInt(body - 1);
+				ifElse(thenBody, body - thenBody, loopLevel, indent);
+				generated += body + 1;
+			} else {
+				statement(indent);
+				generated++;
+			}
+		}
+	}
+
+	private void loop(int body, int loopLevel, String indent) {
+		String counter = "i" + numCounters++;
+		sb.append(indent).append(counter).append(": int = 0\n");
+		sb.append(indent).append("while (").append(counter).append(" < ").append(LOOP_TRIPS).append(") {\n");
+
+		counters.add(counter);
+		block(body, loopLevel + 1, indent + "\t");
+		counters.remove(counters.size() - 1);
+
+		sb.append(indent).append("\t").append(counter).append(" = ").append(counter).append(" + 1\n");
+		sb.append(indent).append("}\n");
+	}
+
+	private void ifElse(int thenBody, int elseBody, int loopLevel, String indent) {
+		sb.append(indent).append("if (").append(condition()).append(") {\n");
+		block(thenBody, loopLevel, indent + "\t");
+		sb.append(indent).append("} else {\n");
+		block(elseBody, loopLevel, indent + "\t");
+		sb.append(indent).append("}\n");
+	}
+
+	private void statement(String indent) {
+		int roll = random.nextInt(100);
+		sb.append(indent);
+
+		if(roll < callPercent) {
+			sb.append("if (d > 0) { ").append(temp()).append(" = f").append(random.nextInt(functions))
+				.append("(d - 1, ").append(expr(exprDepth)).append(", ").append(expr(exprDepth)).append(") }\n");
+		} else if(roll < callPercent + arrayPercent) {
+			if(random.nextInt(4) == 0) {
+				sb.append("arr = arr + {").append(expr(exprDepth)).append("}\n");
+			} else {
+				sb.append("arr[").append(random.nextInt(ARRAY_LENGTH)).append("] = ").append(expr(exprDepth)).append("\n");
+			}
+		} else {
+			sb.append(temp()).append(" = ").append(expr(exprDepth)).append("\n");
+		}
+	}
+
+	private String condition() {
+		String[] ops = {"<", "<=", "==", "!=", ">", ">="};
+		String cond = expr(exprDepth) + " " + ops[random.nextInt(ops.length)] + " " + expr(exprDepth);
+		if(random.nextInt(4) == 0) {
+			cond = "(" + cond + ") & (" + expr(0) + " < " + expr(0) + ")";
+		}
+		return cond;
+	}
+
+	private String expr(int depth) {
+		if(depth == 0) return leaf();
+
+		String[] ops = {"+", "-", "*"};
+		return "(" + expr(depth - 1) + " " + ops[random.nextInt(ops.length)] + " " + expr(depth - 1) + ")";
+	}
+
+	private String leaf() {
+		int roll = random.nextInt(100);
+		if(usesArrays() && roll < arrayPercent) {
+			return random.nextInt(4) == 0 ? "length(arr)" : "arr[" + random.nextInt(ARRAY_LENGTH) + "]";
+		}
+		if(!counters.isEmpty() && roll < 30) {
+			return counters.get(random.nextInt(counters.size()));
+		}
+		if(roll < 45) return String.valueOf(random.nextInt(100));
+		if(roll < 55) return random.nextBoolean() ? "a" : "b";
+		return temp();
+	}
+
+	private String temp() {
+		return "t" + random.nextInt(liveTemps);
+	}
+
+	private boolean usesArrays() {
+		return arrayPercent > 0;
+	}
+
+	/**
+	 * Writes a generated program to a file, for compiling outside the
+	 * benchmarks, as with xic --profile-phases.
+	 *
+	 * Usage: ProgramGenerator file.xi [knob=value:knob=value...]
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Usage: ProgramGenerator file.xi [knob=value:knob=value...]");
+			System.exit(1);
+		}
+
+		ProgramGenerator generator = fromSpec(args.length > 1 ? args[1] : "");
+		Files.write(Paths.get(args[0]), generator.generate().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,102 @@
+package mtm68.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mtm68.ast.nodes.FunctionDefn;
+
+/**
+ * The program a benchmark compiles: one of the benchmark programs, scaled
+ * up by appending copies of its functions under new names. A scale of n
+ * gives n times as many functions of the same shape, so the benchmarks
+ * show how each phase grows with the size of a file.
+ *
+ * A program of "gen" is made by a ProgramGenerator instead, with its knobs
+ * given after it, like "gen:functions=64:liveTemps=16". This shows how the
+ * phases grow with the shape of functions as well as their number.
+ *
+ * The benchmark programs are read from the directory given by the
+ * xic.benchmarks system property, which also holds the interfaces they use.
+ *
+ * Every benchmark extends this and measures throughput, with allocation
+ * rates added by BenchmarkRunner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class ProgramState {
+	private static final String GENERATED = "gen";
+
+	@Param({"cse_1", "cse_2", "dce_1", "inl_1", "reg_1", "reg_3", "gen"})
+	public String program;
+
+	@Param({"1", "16"})
+	public int scale;
+
+	protected Pipeline pipeline;
+
+	@Setup(Level.Trial)
+	public void setUpProgram() throws IOException {
+		Path benchmarks = Paths.get(System.getProperty("xic.benchmarks", "../benchmarks"));
+		String filename;
+		String source;
+		if(program.equals(GENERATED) || program.startsWith(GENERATED + ":")) {
+			filename = GENERATED + ".xi";
+			source = ProgramGenerator.fromSpec(program.substring(GENERATED.length())).generate();
+		} else {
+			filename = program + ".xi";
+			source = new String(Files.readAllBytes(benchmarks.resolve(filename)), StandardCharsets.UTF_8);
+		}
+
+		List<String> funcNames = new Pipeline(filename, source, benchmarks).parse()
+				.getFunctionDefns().stream()
+				.map(FunctionDefn::getFunctionDecl)
+				.map(decl -> decl.getId())
+				.collect(Collectors.toList());
+
+		pipeline = new Pipeline(filename, scale(source, funcNames, scale), benchmarks);
+	}
+
+	/**
+	 * Appends scale - 1 copies of source, dropping their uses. In copy k each
+	 * function f is renamed to f_k, calls included, so the copies only call
+	 * each other.
+	 */
+	static String scale(String source, List<String> funcNames, int scale) {
+		String body = source.replaceAll("(?m)^\\s*use\\s+\\w+\\s*;?\\s*$", "");
+
+		StringBuilder sb = new StringBuilder(source);
+		for(int k = 1; k < scale; k++) {
+			String copy = body;
+			for(String name : funcNames) {
+				Pattern pattern = Pattern.compile("(?<![\\w'])" + Pattern.quote(name) + "(?![\\w'])");
+				copy = pattern.matcher(copy).replaceAll(Matcher.quoteReplacement(name + "_" + k));
+			}
+			sb.append("\n").append(copy);
+		}
+		return sb.toString();
+	}
+}
@@ -12,18 +12,9 @@ import edu.cornell.cs.cs4120.ir.visit.IRVisitor;
 import edu.cornell.cs.cs4120.ir.visit.Lowerer;
 import edu.cornell.cs.cs4120.util.InternalCompilerError;
 import edu.cornell.cs.cs4120.util.SExpPrinter;
-import mtm68.assem.SetccAssem.CC;
-import mtm68.assem.op.ARShiftAssem;
-import mtm68.assem.op.AndAssem;
-import mtm68.assem.op.IMulAssem;
-import mtm68.assem.op.LShiftAssem;
-import mtm68.assem.op.OrAssem;
-import mtm68.assem.op.RShiftAssem;
-import mtm68.assem.op.SubAssem;
-import mtm68.assem.op.XorAssem;
 import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileCosts;
 import mtm68.assem.tile.TileFactory;
-import mtm68.util.ArrayUtils;
 import mtm68.util.SetUtils;
 
 /**
@@ -178,31 +169,7 @@ public class IRBinOp extends IRExpr_c {
 	
 	@Override
 	public List<Tile> getTiles() {
-		return ArrayUtils.concatMulti(
-					ArrayUtils.elems(
-					TileFactory.addBasic(),
-					TileFactory.addConstant(),
-					TileFactory.binopCompareBasic(OpType.EQ, CC.E),
-					TileFactory.binopCompareBasic(OpType.NEQ, CC.NE),
-					TileFactory.binopCompareBasic(OpType.GEQ, CC.GE),
-					TileFactory.binopCompareBasic(OpType.GT, CC.G),
-					TileFactory.binopCompareBasic(OpType.LT, CC.L),
-					TileFactory.binopCompareBasic(OpType.LEQ, CC.LE),
-					TileFactory.binopCompareBasic(OpType.ULT, CC.B),
-					TileFactory.binopDivOrMod(OpType.DIV),
-					TileFactory.binopDivOrMod(OpType.MOD),
-					TileFactory.binopHighMul()
-					),
-					TileFactory.binopBasic(OpType.SUB, SubAssem::new),
-					TileFactory.binopBasic(OpType.AND, AndAssem::new),
-					TileFactory.binopBasic(OpType.MUL, IMulAssem::new),
-					TileFactory.binopBasic(OpType.NEQ, XorAssem::new),
-					TileFactory.binopBasic(OpType.XOR, XorAssem::new),
-					TileFactory.binopBasic(OpType.OR, OrAssem::new),
-					TileFactory.binopBasic(OpType.ARSHIFT, ARShiftAssem::new),
-					TileFactory.binopBasic(OpType.LSHIFT, LShiftAssem::new),
-					TileFactory.binopBasic(OpType.RSHIFT, RShiftAssem::new)
-				);
+		return TileFactory.binopTiles(TileCosts.getDefault());
 	}
 
 	@Override
@@ -272,7 +239,7 @@ public class IRBinOp extends IRExpr_c {
 		int result = 1;
 		result = prime * result + ((left == null) ? 0 : left.hashCode());
 		result = prime * result + ((right == null) ? 0 : right.hashCode());
-		result = prime * result + ((type == null) ? 0 : type.hashCode());
+		result = prime * result + ((type == null) ? 0 : type.name().hashCode());
 		return result;
 	}
 
@@ -13,8 +13,8 @@ import edu.cornell.cs.cs4120.ir.visit.Lowerer;
 import edu.cornell.cs.cs4120.ir.visit.UnusedLabelVisitor;
 import edu.cornell.cs.cs4120.util.SExpPrinter;
 import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileCosts;
 import mtm68.assem.tile.TileFactory;
-import mtm68.util.ArrayUtils;
 
 /**
  * An intermediate representation for a conditional transfer of control
@@ -133,15 +133,7 @@ public class IRCJump extends IRStmt {
 	
 	@Override
 	public List<Tile> getTiles() {
-		return ArrayUtils.elems(
-				TileFactory.cjumpBasic(),
-				TileFactory.cjumpNotEqual(),
-				TileFactory.cjumpGreaterThan(),
-				TileFactory.cjumpGreaterThanEqual(),
-				TileFactory.cjumpLessThanEqual(),
-				TileFactory.cjumpLessThan()
-//				//TileFactory.cjumpIfZero()
-				);
+		return TileFactory.cjumpTiles(TileCosts.getDefault());
 	}
 
 	@Override
@@ -9,6 +9,7 @@ import edu.cornell.cs.cs4120.ir.visit.IRContainsMemSubexprDecorator;
 import edu.cornell.cs.cs4120.ir.visit.Lowerer;
 import edu.cornell.cs.cs4120.util.SExpPrinter;
 import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileCosts;
 import mtm68.assem.tile.TileFactory;
 import mtm68.util.ArrayUtils;
 import mtm68.util.SetUtils;
@@ -67,7 +68,7 @@ public class IRConst extends IRExpr_c {
 	
 	@Override
 	public List<Tile> getTiles() {
-		return ArrayUtils.elems(TileFactory.constTile());
+		return TileFactory.constTiles(TileCosts.getDefault());
 	}
 
 	@Override
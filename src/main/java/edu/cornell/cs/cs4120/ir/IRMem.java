@@ -12,8 +12,8 @@ import edu.cornell.cs.cs4120.ir.visit.Lowerer;
 import edu.cornell.cs.cs4120.util.InternalCompilerError;
 import edu.cornell.cs.cs4120.util.SExpPrinter;
 import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileCosts;
 import mtm68.assem.tile.TileFactory;
-import mtm68.util.ArrayUtils;
 
 /**
  * An intermediate representation for a memory location
@@ -68,7 +68,7 @@ public class IRMem extends IRExpr_c {
     public IRNode visitChildren(IRVisitor v) {
         IRExpr expr = (IRExpr) v.visit(this, this.expr);
 
-        if (expr != this.expr) return v.nodeFactory().IRMem(expr);
+        if (expr != this.expr) return v.nodeFactory().IRMem(expr, memType);
 
         return this;
     }
@@ -82,8 +82,9 @@ public class IRMem extends IRExpr_c {
 
     @Override
     public void printSExp(SExpPrinter p) {
+        // The IR syntax has no immutable memory, so it is printed as MEM
         p.startList();
-        p.printAtom(memType.toString());
+        p.printAtom(MemType.NORMAL.toString());
         expr.printSExp(p);
         p.endList();
     }
@@ -100,8 +101,7 @@ public class IRMem extends IRExpr_c {
 	
 	@Override
 	public List<Tile> getTiles() {
-		return ArrayUtils.elems(
-				TileFactory.memBasic());
+		return TileFactory.memTiles(TileCosts.getDefault());
 	}
 
 	@Override
@@ -135,7 +135,7 @@ public class IRMem extends IRExpr_c {
 	@Override
 	public IRNode decorateContainsMutableMemSubexpr(IRContainsMemSubexprDecorator irContainsMemSubexpr) {
 		IRMem copy = copy();
-		copy.setContainsMutableMemSubexpr(memType.equals(MemType.IMMUTABLE));
+		copy.setContainsMutableMemSubexpr(memType.equals(MemType.NORMAL) || expr.doesContainsMutableMemSubexpr());
 		return copy;
 	}
 	
@@ -152,7 +152,7 @@ public class IRMem extends IRExpr_c {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((expr == null) ? 0 : expr.hashCode());
-		result = prime * result + ((memType == null) ? 0 : memType.hashCode());
+		result = prime * result + ((memType == null) ? 0 : memType.name().hashCode());
 		return result;
 	}
 
@@ -10,8 +10,8 @@ import edu.cornell.cs.cs4120.ir.visit.IRVisitor;
 import edu.cornell.cs.cs4120.ir.visit.Lowerer;
 import edu.cornell.cs.cs4120.util.SExpPrinter;
 import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileCosts;
 import mtm68.assem.tile.TileFactory;
-import mtm68.util.ArrayUtils;
 import mtm68.util.SetUtils;
 
 /**
@@ -88,14 +88,7 @@ public class IRMove extends IRStmt {
 
 	@Override
 	public List<Tile> getTiles() {
-		return ArrayUtils.elems(
-				TileFactory.moveBasic(),
-				TileFactory.moveConst(),
-				TileFactory.moveArg(),
-				TileFactory.moveFromMem(),
-				TileFactory.moveIntoMem(),
-				TileFactory.moveConstIntoMem()
-			);
+		return TileFactory.moveTiles(TileCosts.getDefault());
 	}
 
 	@Override
@@ -17,6 +17,7 @@ import edu.cornell.cs.cs4120.ir.visit.UnusedLabelVisitor;
 import edu.cornell.cs.cs4120.util.SExpPrinter;
 import mtm68.assem.Assem;
 import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileAutomaton;
 import mtm68.ir.cfg.CFGBuilder;
 
 /**
@@ -69,6 +70,13 @@ public interface IRNode {
 	
 	float getTileCost();
 	
+	/**
+	 * The state of this node in the TileAutomaton, or null if it has none yet.
+	 */
+	TileAutomaton.State getTileState();
+	
+	void setTileState(TileAutomaton.State tileState);
+	
 	Set<IRExpr> genAvailableExprs();
 
 	Set<IRTemp> use();
@@ -21,9 +21,9 @@ import mtm68.assem.Assem;
 import mtm68.assem.SeqAssem;
 import mtm68.assem.operand.FreshRegGenerator;
 import mtm68.assem.operand.Reg;
-import mtm68.assem.pattern.Pattern;
 import mtm68.assem.pattern.PatternResults;
 import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileAutomaton;
 import mtm68.ir.cfg.CFGBuilder;
 import mtm68.util.ArrayUtils;
 
@@ -34,6 +34,7 @@ public abstract class IRNode_c implements IRNode, Cloneable {
 
 	protected Assem assem;
 	protected float tileCost = Float.MAX_VALUE;
+	protected TileAutomaton.State tileState;
 	protected boolean containsMutableMemSubexpr;
 	protected boolean containsExprWithSideEffect;
 	
@@ -98,59 +99,61 @@ public abstract class IRNode_c implements IRNode, Cloneable {
 	public IRNode tile(Tiler t) {
 		if(assem != null) return this;
 		
-		List<Tile> tiles = getTiles();
+		TileAutomaton automaton = t.getTileAutomaton();
+
 		float leastCost = Float.MAX_VALUE;
-		Assem bestAssem = null;
-		Reg bestResultReg = null;
-		Tile bestTile = null;
+		TileAutomaton.Candidate best = null;
+		List<IRExpr> operands = ArrayUtils.empty();
 		
-		for(Tile tile : tiles) {
-			tile.setTiler(t);
-			tile.setBaseNode(this);
-
-			Pattern pattern = tile.getPattern();
-
-			Map<String, IRExpr> matchedExprs = new HashMap<>();
-			if(pattern.matches(this)) {
-				pattern.addMatchedExprs(matchedExprs);
-
-				PatternResults patternResults = new PatternResults(matchedExprs);
-				
-				Reg resultReg = FreshRegGenerator.getFreshAbstractReg();
-				Assem tiledAssem = tile.getTiledAssem(resultReg, patternResults);
-				
-				float cost = patternResults.getUsedExprs()
-						.stream()
-						.filter(e -> e != this)
-						.map(IRNode::getTileCost)
-						.collect(Collectors.reducing(0.0f, (a, b) -> a + b));
-				
-				cost += tile.getCost();
-				
-				if(cost >= leastCost) continue;
-				leastCost = cost;
-				
-				List<Assem> requiredAssem = patternResults.getUsedExprs().stream()
-					.map(IRExpr::getAssem)
-					.collect(Collectors.toList());
-
-				requiredAssem.add(tiledAssem);
-				
-				bestAssem = new SeqAssem(requiredAssem);
-				bestTile = tile;
-				bestResultReg = resultReg;
+		// Every candidate of the state matches this node
+		for(TileAutomaton.Candidate candidate : automaton.getState(this).getCandidates()) {
+			Tile tile = candidate.getTile();
+			
+			// Tiles are sorted by their own cost, a lower bound on the total
+			if(tile.getCost() > leastCost) break;
+			
+			operands.clear();
+			tile.getPattern().addOperandExprs(this, automaton, operands);
+
+			float cost = 0.0f;
+			for(IRExpr operand : operands) {
+				if(operand != this) cost += operand.getTileCost();
 			}
+			cost += tile.getCost();
+			
+			if(cost > leastCost) continue;
+			if(cost == leastCost && candidate.getOrder() > best.getOrder()) continue;
+
+			leastCost = cost;
+			best = candidate;
 		}
 
-		if(bestAssem == null) throw new InternalCompilerError("Could not tile node: " + this);
+		if(best == null) throw new InternalCompilerError("Could not tile node: " + this);
+		
+		// Only the best tile builds its assem, using the Tiler's own copy
+		// of it since tiles hold the node they are building
+		Tile bestTile = t.getTile(best.getOrder());
+		bestTile.setTiler(t);
+		bestTile.setBaseNode(this);
+		
+		Map<String, IRExpr> matchedExprs = new HashMap<>();
+		best.getTile().getPattern().addMatchedExprs(this, automaton, matchedExprs);
+		PatternResults patternResults = new PatternResults(matchedExprs);
+		
+		Reg resultReg = FreshRegGenerator.getFreshAbstractReg();
+		Assem tiledAssem = bestTile.getTiledAssem(resultReg, patternResults);
+		
+		List<Assem> requiredAssem = patternResults.getUsedExprs().stream()
+			.map(IRExpr::getAssem)
+			.collect(Collectors.toList());
+		
+		requiredAssem.add(tiledAssem);
 				
-		IRNode_c newNode = copyAndSetAssem(bestAssem);
+		IRNode_c newNode = copyAndSetAssem(new SeqAssem(requiredAssem));
 		newNode.tileCost = leastCost;
 		
-//		System.out.println("Best tile for " + newNode + " is " + bestTile.getPattern());
-		
 		if(newNode instanceof IRExpr_c) {
-			((IRExpr_c)newNode).setResultReg(bestResultReg);
+			((IRExpr_c)newNode).setResultReg(resultReg);
 		}
 		
 		return newNode;
@@ -219,6 +222,16 @@ public abstract class IRNode_c implements IRNode, Cloneable {
 		return tileCost;
 	}
 
+	@Override
+	public TileAutomaton.State getTileState() {
+		return tileState;
+	}
+	
+	@Override
+	public void setTileState(TileAutomaton.State tileState) {
+		this.tileState = tileState;
+	}
+
 	@Override
 	public void appendAssems(List<Assem> assems) {
 		assem = new SeqAssem(ArrayUtils.prepend(assem, assems));
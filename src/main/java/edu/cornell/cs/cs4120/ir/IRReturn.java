@@ -14,8 +14,8 @@ import edu.cornell.cs.cs4120.ir.visit.IRVisitor;
 import edu.cornell.cs.cs4120.ir.visit.Lowerer;
 import edu.cornell.cs.cs4120.util.SExpPrinter;
 import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileCosts;
 import mtm68.assem.tile.TileFactory;
-import mtm68.util.ArrayUtils;
 
 /** RETURN statement */
 public class IRReturn extends IRStmt {
@@ -89,7 +89,7 @@ public class IRReturn extends IRStmt {
 	
 	@Override
 	public List<Tile> getTiles() {
-		return ArrayUtils.singleton(TileFactory.returnBasic());
+		return TileFactory.returnTiles(TileCosts.getDefault());
 	}
 
 	@Override
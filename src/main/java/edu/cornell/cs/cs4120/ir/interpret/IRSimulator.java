@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -60,6 +61,9 @@ public class IRSimulator {
     private long heapSizeMax;
 
     private OutputStream outStream;
+
+    /** where program output is echoed, or null to only write it to outStream */
+    private PrintStream echoStream;
     
     private ExprStack exprStack;
     private BufferedReader inReader;
@@ -68,6 +72,16 @@ public class IRSimulator {
 
     protected static int debugLevel = 0;
 
+    /** what the program has done since it was loaded */
+    private long executedStmts;
+    private long memReads;
+    private long memWrites;
+    private long calls;
+    private long heapBytesAllocated;
+
+    /** the most statements to execute before trapping, or -1 for no limit */
+    private long maxStmts = -1;
+
     public static final int DEFAULT_HEAP_SIZE = 10240;
     
 
@@ -84,6 +98,18 @@ public class IRSimulator {
         this.outStream = stream;
     }
 
+    /**
+     * Construct an IR interpreter that writes program output only to stream
+     * @param compUnit the compilation unit to be interpreted
+     * @param heapSize the heap size
+     * @param stream where program output is written
+     */
+    public IRSimulator(IRCompUnit compUnit, int heapSize, OutputStream stream) {
+        this(compUnit, heapSize);
+        this.outStream = stream;
+        this.echoStream = null;
+    }
+
     /**
      * Construct an IR interpreter
      * @param compUnit the compilation unit to be interpreted
@@ -92,6 +118,7 @@ public class IRSimulator {
     public IRSimulator(IRCompUnit compUnit, int heapSize) {
         this.compUnit = compUnit;
         this.heapSizeMax = heapSize;
+        this.echoStream = System.out;
 
         r = new Random();
 
@@ -137,6 +164,7 @@ public class IRSimulator {
                 store(globalVariableStart + 8L * i, data[i]);
             }
         }
+        heapBytesAllocated = 0;
         for (String ctorFunction : compUnit.ctors()) {
             call(ctorFunction, 0);
         }
@@ -155,6 +183,7 @@ public class IRSimulator {
 
         long retval = mem.size();
         if (retval + size > heapSizeMax) throw new Trap("Out of heap!");
+        heapBytesAllocated += size;
         for (int i = 0; i < size; i++) {
             mem.add(r.nextLong());
         }
@@ -315,7 +344,7 @@ public class IRSimulator {
                 long ptr = args[0], size = read(ptr - ws);
                 for (long i = 0; i < size; ++i) {
                 	char curChar = (char) read(ptr + i * ws);
-                    System.out.print(curChar);
+                    if(echoStream != null) echoStream.print(curChar);
                     if(outStream != null) outStream.write(curChar); 
                 }
                 break;
@@ -324,10 +353,10 @@ public class IRSimulator {
                 long ptr = args[0], size = read(ptr - ws);
                 for (long i = 0; i < size; ++i) {
                 	char curChar = (char) read(ptr + i * ws);
-	                System.out.print(curChar);
+	                if(echoStream != null) echoStream.print(curChar);
 	                if(outStream != null) outStream.write(curChar); 
                 }
-                System.out.println();
+                if(echoStream != null) echoStream.println();
                 if(outStream != null) outStream.write('\n'); 
                 break;
             }
@@ -485,10 +514,12 @@ public class IRSimulator {
             exprStack.pushValue(result);
         }
         else if (insn instanceof IRMem) {
+            memReads++;
             long addr = exprStack.popValue();
             exprStack.pushAddr(read(addr), addr);
         }
         else if (insn instanceof IRCall) {
+            calls++;
             int argsCount = ((IRCall) insn).args().size();
             long args[] = new long[argsCount];
             for (int i = argsCount - 1; i >= 0; --i)
@@ -519,10 +550,14 @@ public class IRSimulator {
             }
         }
         else if (insn instanceof IRMove) {
+            executed();
             long r = exprStack.popValue();
             StackItem stackItem = exprStack.pop();
             switch (stackItem.type) {
             case MEM:
+                // The destination was read when it was evaluated
+                memReads--;
+                memWrites++;
                 if (debugLevel > 0)
                     System.out.println("mem[" + stackItem.addr + "]=" + r);
                 store(stackItem.addr, r);
@@ -537,18 +572,23 @@ public class IRSimulator {
             }
         }
         else if (insn instanceof IRCallStmt) {
+            executed();
             IRCallStmt callStmt = (IRCallStmt) insn;
             IRCall syntheticCall = new IRCall(callStmt.target(), callStmt.args());
             interpret(frame, syntheticCall);
             exprStack.popValue();
         }
         else if (insn instanceof IRExp) {
+            executed();
             // Discard result.
             exprStack.pop();
         }
-        else if (insn instanceof IRJump)
+        else if (insn instanceof IRJump) {
+            executed();
             frame.setIP(exprStack.popValue());
+        }
         else if (insn instanceof IRCJump) {
+            executed();
             IRCJump irCJump = (IRCJump) insn;
             long top = exprStack.popValue();
             String label;
@@ -561,6 +601,7 @@ public class IRSimulator {
             if (label != null) frame.setIP(findLabel(label));
         }
         else if (insn instanceof IRReturn) {
+            executed();
             int argsCount = ((IRReturn) insn).rets().size();
             // double pass for linear time
             long rets[] = new long[argsCount];
@@ -575,6 +616,46 @@ public class IRSimulator {
         }
     }
 
+    private void executed() {
+        executedStmts++;
+        if (maxStmts >= 0 && executedStmts > maxStmts)
+            throw new Trap("Executed more than " + maxStmts + " statements");
+    }
+
+    /**
+     * Limit the number of statements the program may execute
+     * @param maxStmts the most statements to execute before trapping,
+     *          or -1 for no limit
+     */
+    public void setMaxStmts(long maxStmts) {
+        this.maxStmts = maxStmts;
+    }
+
+    /** @return the number of statements executed, not counting labels */
+    public long getExecutedStmts() {
+        return executedStmts;
+    }
+
+    /** @return the number of MEM expressions read by the program */
+    public long getMemReads() {
+        return memReads;
+    }
+
+    /** @return the number of moves into MEM executed by the program */
+    public long getMemWrites() {
+        return memWrites;
+    }
+
+    /** @return the number of calls made, library calls included */
+    public long getCalls() {
+        return calls;
+    }
+
+    /** @return the number of bytes the program has allocated on the heap */
+    public long getHeapBytesAllocated() {
+        return heapBytesAllocated;
+    }
+
     /**
      *
      * @param name name of the label
@@ -0,0 +1,167 @@
+package edu.cornell.cs.cs4120.ir.visit;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cornell.cs.cs4120.ir.IRBinOp;
+import edu.cornell.cs.cs4120.ir.IRCJump;
+import edu.cornell.cs.cs4120.ir.IRCallStmt;
+import edu.cornell.cs.cs4120.ir.IRConst;
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRLabel;
+import edu.cornell.cs.cs4120.ir.IRMem;
+import edu.cornell.cs.cs4120.ir.IRName;
+import edu.cornell.cs.cs4120.ir.IRNode;
+import edu.cornell.cs.cs4120.ir.IRTemp;
+import mtm68.util.CacheDirectory;
+import mtm68.util.Constants;
+
+/**
+ * Hashes the structure of a function, so that functions which differ only
+ * in the names of their temps and labels hash the same. Temps and labels
+ * are numbered in the order they first appear, except for argument and
+ * return temps, whose names mean something to the tiler.
+ *
+ * The labels of the function, in the order they were numbered, are kept so
+ * that code generated for one function can be renamed to the labels of
+ * another function with the same hash.
+ */
+public class IRFuncHasher extends AggregateVisitor<Boolean> {
+
+	private String salt;
+
+	private MessageDigest digest;
+	private Map<String, Integer> tempNums;
+	private Map<String, Integer> labelNums;
+	private List<String> labels;
+
+	/**
+	 * @param salt  hashed before every function, for whatever else the code
+	 *              generated for a function depends on
+	 */
+	public IRFuncHasher(String salt) {
+		this.salt = salt;
+	}
+
+	/**
+	 * Hashes func.
+	 *
+	 * @return the hash, in hex
+	 */
+	public String hash(IRFuncDefn func) {
+		digest = CacheDirectory.newDigest();
+		tempNums = new HashMap<>();
+		labelNums = new HashMap<>();
+		labels = new ArrayList<>();
+
+		// Labels can be jumped to before they're defined
+		new LabelCollector().visit(func);
+
+		update(salt);
+		visit(func);
+
+		return CacheDirectory.toHex(digest.digest());
+	}
+
+	/**
+	 * The labels of the last function hashed, in the order they were numbered.
+	 */
+	public List<String> getLabels() {
+		return labels;
+	}
+
+	@Override
+	public Boolean unit() {
+		return true;
+	}
+
+	@Override
+	public Boolean bind(Boolean r1, Boolean r2) {
+		return true;
+	}
+
+	@Override
+	protected AggregateVisitor<Boolean> enter(IRNode parent, IRNode n) {
+		update("(" + n.getClass().getSimpleName());
+
+		if(n instanceof IRFuncDefn) {
+			IRFuncDefn func = (IRFuncDefn) n;
+			update(func.name());
+			update(Integer.toString(func.numArgs()));
+		} else if(n instanceof IRConst) {
+			update(Long.toString(((IRConst) n).value()));
+		} else if(n instanceof IRTemp) {
+			update(temp(((IRTemp) n).name()));
+		} else if(n instanceof IRName) {
+			update(label(((IRName) n).name()));
+		} else if(n instanceof IRLabel) {
+			update(label(((IRLabel) n).name()));
+		} else if(n instanceof IRBinOp) {
+			update(((IRBinOp) n).opType().name());
+		} else if(n instanceof IRMem) {
+			update(((IRMem) n).memType().name());
+		} else if(n instanceof IRCJump) {
+			IRCJump cjump = (IRCJump) n;
+			update(label(cjump.trueLabel()));
+			if(cjump.hasFalseLabel()) update(label(cjump.falseLabel()));
+		} else if(n instanceof IRCallStmt) {
+			update(Integer.toString(((IRCallStmt) n).getNumRets()));
+		}
+
+		return this;
+	}
+
+	@Override
+	protected Boolean leave(IRNode parent, IRNode n, Boolean r, AggregateVisitor<Boolean> v_) {
+		update(")");
+		return r;
+	}
+
+	private String temp(String name) {
+		if(name.startsWith(Constants.ARG_PREFIX) || name.startsWith(Constants.RET_PREFIX)) return name;
+		return "t" + tempNums.computeIfAbsent(name, t -> tempNums.size());
+	}
+
+	/**
+	 * Labels of the function are numbered. Anything else, like the name of
+	 * a function being called, is kept.
+	 */
+	private String label(String name) {
+		Integer num = labelNums.get(name);
+		return num == null ? name : "l" + num;
+	}
+
+	private void update(String str) {
+		digest.update(str.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private class LabelCollector extends AggregateVisitor<Boolean> {
+
+		@Override
+		public Boolean unit() {
+			return true;
+		}
+
+		@Override
+		public Boolean bind(Boolean r1, Boolean r2) {
+			return true;
+		}
+
+		@Override
+		protected AggregateVisitor<Boolean> enter(IRNode parent, IRNode n) {
+			if(n instanceof IRLabel) {
+				String name = ((IRLabel) n).name();
+				if(!labelNums.containsKey(name)) {
+					labelNums.put(name, labels.size());
+					labels.add(name);
+				}
+			}
+			return this;
+		}
+	}
+}
@@ -137,7 +137,7 @@ public class Lowerer extends IRVisitor {
 		
 		String tempName = getFreshTemp();
 		moveStmts.add(new IRMove(new IRTemp(tempName), ((IRMem)target).expr()));
-		target = new IRMem(new IRTemp(tempName));
+		target = new IRMem(new IRTemp(tempName), ((IRMem)target).memType());
 		
 		moveStmts.addAll(source.getSideEffects());
 		
@@ -31,7 +31,10 @@ import mtm68.assem.operand.RealReg;
 import mtm68.assem.operand.RealReg.RealRegId;
 import mtm68.assem.operand.Reg;
 import mtm68.assem.operand.Src;
+import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileAutomaton;
 import mtm68.assem.tile.TileCosts;
+import mtm68.assem.tile.TileFactory;
 import mtm68.util.ArrayUtils;
 import mtm68.util.Constants;
 
@@ -46,10 +49,20 @@ public class Tiler extends IRVisitor {
 	private IRCallStmt callStmt;
 	private List<IRMove> moveStmts;
 	private int retSpaceOff;
+	private List<Tile> tiles;
+	private TileCosts costs;
 
 	public Tiler(IRNodeFactory inf) {
+		this(inf, TileCosts.getDefault());
+	}
+
+	/**
+	 * A Tiler that chooses the tiling that is cheapest with costs.
+	 */
+	public Tiler(IRNodeFactory inf, TileCosts costs) {
 		super(inf);
 		
+		this.costs = costs;
 		moveStmts = ArrayUtils.empty(); 
 	}
 
@@ -207,6 +220,18 @@ public class Tiler extends IRVisitor {
 		return num % 2 == 0 ? num : num + 1;
 	}
 	
+	public TileAutomaton getTileAutomaton() {
+		return TileAutomaton.getInstance(costs);
+	}
+	
+	/**
+	 * This Tiler's copy of the tile at order in the tiles of the automaton.
+	 */
+	public Tile getTile(int order) {
+		if(tiles == null) tiles = TileFactory.allTiles(costs);
+		return tiles.get(order);
+	}
+	
 	/** Offset from rbp */
 	public int getRetSpaceOff() {
 		return retSpaceOff;
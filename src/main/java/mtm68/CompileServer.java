@@ -0,0 +1,125 @@
+package mtm68;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the compiler running and compiles on request, so a build that runs
+ * xic many times only pays for starting and warming up the JVM once. The
+ * symbol tables of library interfaces are kept between requests.
+ *
+ * Requests come in over a TCP socket on the loopback interface. A request
+ * is the working directory of the client and then its arguments, one per
+ * line, ended by an empty line. It is compiled as if xic had been started
+ * in that directory with those arguments. Everything the compiler prints
+ * is sent back, followed by a last line with the exit code. Requests are
+ * handled one at a time, and may not use --server themselves.
+ */
+public class CompileServer {
+	public static final int DEFAULT_PORT = 4120;
+	public static final String EXIT_CODE_PREFIX = "xic-exit: ";
+
+	private int port;
+	private InterfaceCache interfaceCache;
+
+	public CompileServer(int port) {
+		this.port = port;
+		this.interfaceCache = new InterfaceCache();
+	}
+
+	public void serve() throws IOException {
+		try(ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			System.out.println("xic server listening on port " + port);
+
+			while(true) {
+				// No request may stop the server, not even one that runs out of stack or memory
+				try(Socket client = server.accept()) {
+					handle(client);
+				} catch(Throwable e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void handle(Socket client) throws IOException {
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+
+		String workingDir = in.readLine();
+		if(workingDir == null) return;
+
+		List<String> args = new ArrayList<>();
+		String arg;
+		while((arg = in.readLine()) != null && !arg.isEmpty()) {
+			args.add(arg);
+		}
+
+		LastByteOutputStream out = new LastByteOutputStream(new BufferedOutputStream(client.getOutputStream()));
+		PrintStream stream = new PrintStream(out, false, "UTF-8");
+
+		PrintStream stdout = System.out;
+		PrintStream stderr = System.err;
+		System.setOut(stream);
+		System.setErr(stream);
+
+		int exitCode;
+		try {
+			if(args.contains("--server")) {
+				System.out.println("--server cannot be used in a request to the xic server");
+				exitCode = 1;
+			} else {
+				exitCode = new Main(Paths.get(workingDir), interfaceCache).run(args.toArray(new String[0]));
+			}
+		} catch(Throwable e) {
+			// Main.run only catches exceptions, not errors such as StackOverflowError
+			e.printStackTrace();
+			System.out.println("Failed to compile: xic exit code 1");
+			exitCode = 1;
+		} finally {
+			System.setOut(stdout);
+			System.setErr(stderr);
+		}
+
+		stream.flush();
+		if(out.lastByte != -1 && out.lastByte != '\n') stream.print('\n');
+		stream.print(EXIT_CODE_PREFIX + exitCode + "\n");
+		stream.flush();
+	}
+
+	/**
+	 * Remembers the last byte written, so the exit code can be put on a
+	 * line of its own.
+	 */
+	private static class LastByteOutputStream extends FilterOutputStream {
+		private int lastByte = -1;
+
+		public LastByteOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			lastByte = b & 0xff;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			if(len > 0) lastByte = b[off + len - 1] & 0xff;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package mtm68;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java_cup.runtime.ComplexSymbolFactory.Location;
+import mtm68.ast.nodes.FunctionDecl;
+import mtm68.ast.nodes.Node;
+import mtm68.ast.nodes.stmts.SimpleDecl;
+import mtm68.ast.types.ArrayType;
+import mtm68.ast.types.Type;
+import mtm68.ast.types.TypeType;
+import mtm68.ast.types.Types;
+import mtm68.util.CacheDirectory;
+
+/**
+ * Keeps the symbol tables of interface files in a compact binary form in a
+ * cache directory, so each compilation doesn't have to parse every
+ * interface it uses again.
+ *
+ * An entry is named by the path of its interface, and records the
+ * modification time and hash of the interface it was made from. It is used
+ * while the interface still has that modification time, or otherwise while
+ * it still has that hash, as when an unchanged interface is touched.
+ */
+public class CompiledInterfaceCache {
+	private static final int FORMAT_VERSION = 1;
+	private static final String EXTENSION = ".ixc";
+
+	private CacheDirectory cacheDir;
+
+	public CompiledInterfaceCache(CacheDirectory cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * The symbol table of the interface at file, or null if it isn't cached
+	 * or the file has changed.
+	 */
+	public Map<String, FunctionDecl> get(Path file) {
+		Path cached = cacheDir.get(getName(file));
+		if(cached == null) return null;
+
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(cached)))) {
+			if(in.readInt() != FORMAT_VERSION) return null;
+
+			long lastModified = in.readLong();
+			String hash = in.readUTF();
+
+			boolean touched = lastModified != file.toFile().lastModified();
+			if(touched && !hash.equals(hash(file))) return null;
+
+			Map<String, FunctionDecl> symTable = readSymTable(in);
+
+			// Record the new modification time so the hash isn't needed next time
+			if(touched) put(file, symTable);
+
+			return symTable;
+		} catch(IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	public void put(Path file, Map<String, FunctionDecl> symTable) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(file.toFile().lastModified());
+			out.writeUTF(hash(file));
+			writeSymTable(out, symTable);
+
+			cacheDir.put(getName(file), bytes.toByteArray());
+		} catch(IOException e) {
+			// Left for the next compilation to parse
+		}
+	}
+
+	private void writeSymTable(DataOutputStream out, Map<String, FunctionDecl> symTable) throws IOException {
+		out.writeInt(symTable.size());
+		for(FunctionDecl decl : symTable.values()) {
+			out.writeUTF(decl.getId());
+			writeLocation(out, decl);
+
+			out.writeInt(decl.getArgs().size());
+			for(SimpleDecl arg : decl.getArgs()) {
+				out.writeUTF(arg.getId());
+				writeLocation(out, arg);
+				writeType(out, arg.getType());
+			}
+
+			out.writeInt(decl.getReturnTypes().size());
+			for(Type type : decl.getReturnTypes()) {
+				writeType(out, type);
+			}
+		}
+	}
+
+	private Map<String, FunctionDecl> readSymTable(DataInputStream in) throws IOException {
+		Map<String, FunctionDecl> symTable = new HashMap<>();
+
+		int numDecls = in.readInt();
+		for(int i = 0; i < numDecls; i++) {
+			String id = in.readUTF();
+			Location loc = readLocation(in);
+
+			int numArgs = in.readInt();
+			List<SimpleDecl> args = new ArrayList<>(numArgs);
+			for(int j = 0; j < numArgs; j++) {
+				String argId = in.readUTF();
+				Location argLoc = readLocation(in);
+
+				SimpleDecl arg = new SimpleDecl(argId, readType(in));
+				arg.setStartLoc(argLoc);
+				args.add(arg);
+			}
+
+			int numReturns = in.readInt();
+			List<Type> returnTypes = new ArrayList<>(numReturns);
+			for(int j = 0; j < numReturns; j++) {
+				returnTypes.add(readType(in));
+			}
+
+			FunctionDecl decl = new FunctionDecl(id, args, returnTypes);
+			decl.setStartLoc(loc);
+			symTable.put(id, decl);
+		}
+
+		return symTable;
+	}
+
+	private void writeLocation(DataOutputStream out, Node node) throws IOException {
+		Location loc = node.getStartLoc();
+		out.writeInt(loc == null ? -1 : loc.getLine());
+		out.writeInt(loc == null ? -1 : loc.getColumn());
+	}
+
+	private Location readLocation(DataInputStream in) throws IOException {
+		int line = in.readInt();
+		int column = in.readInt();
+		return line < 0 ? null : new Location(line, column);
+	}
+
+	private void writeType(DataOutputStream out, Type type) throws IOException {
+		TypeType typeType = type.getTypeType();
+		if(typeType == null) throw new IOException("Can't cache type " + type);
+
+		out.writeByte(typeType.ordinal());
+		if(typeType == TypeType.ARRAY) writeType(out, ((ArrayType) type).getType());
+	}
+
+	private Type readType(DataInputStream in) throws IOException {
+		TypeType typeType = TypeType.values()[in.readByte()];
+		switch(typeType) {
+		case INT:
+			return Types.INT;
+		case BOOL:
+			return Types.BOOL;
+		case ARRAY:
+			return Types.ARRAY(readType(in));
+		default:
+			throw new IOException("Unknown type " + typeType);
+		}
+	}
+
+	private String getName(Path file) {
+		MessageDigest digest = CacheDirectory.newDigest();
+		digest.update(file.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+		return CacheDirectory.toHex(digest.digest()) + EXTENSION;
+	}
+
+	private String hash(Path file) throws IOException {
+		MessageDigest digest = CacheDirectory.newDigest();
+		digest.update(Files.readAllBytes(file));
+		return CacheDirectory.toHex(digest.digest());
+	}
+}
@@ -0,0 +1,55 @@
+package mtm68;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mtm68.ast.nodes.FunctionDecl;
+
+/**
+ * Keeps the symbol tables of library interface files between compilations,
+ * so a compile server only parses an interface once. An entry is thrown
+ * away when its file has been modified since it was parsed.
+ */
+public class InterfaceCache {
+	private Map<Path, Entry> entries;
+
+	public InterfaceCache() {
+		entries = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * The symbol table of the interface at file, or null if it isn't cached
+	 * or the file has changed.
+	 */
+	public Map<String, FunctionDecl> get(Path file) {
+		Path key = file.toAbsolutePath().normalize();
+		Entry entry = entries.get(key);
+		if(entry == null) return null;
+
+		if(entry.lastModified != lastModified(key)) {
+			entries.remove(key);
+			return null;
+		}
+		return entry.symTable;
+	}
+
+	public void put(Path file, Map<String, FunctionDecl> symTable) {
+		Path key = file.toAbsolutePath().normalize();
+		entries.put(key, new Entry(lastModified(key), symTable));
+	}
+
+	private long lastModified(Path file) {
+		return file.toFile().lastModified();
+	}
+
+	private static class Entry {
+		private long lastModified;
+		private Map<String, FunctionDecl> symTable;
+
+		public Entry(long lastModified, Map<String, FunctionDecl> symTable) {
+			this.lastModified = lastModified;
+			this.symTable = symTable;
+		}
+	}
+}
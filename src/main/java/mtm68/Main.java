@@ -8,10 +8,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 import org.kohsuke.args4j.Argument;
@@ -33,8 +38,13 @@ import mtm68.Optimizer.Phase;
 import mtm68.assem.Assem;
 import mtm68.assem.CompUnitAssem;
 import mtm68.assem.RegisterAllocator;
+import mtm68.assem.cfg.LinearScanAllocation;
 import mtm68.assem.cfg.RegisterAllocation;
 import mtm68.assem.operand.RealReg;
+import mtm68.assem.tile.TileCosts;
+import mtm68.assem.visit.CachingRegisterAllocator;
+import mtm68.assem.visit.PeepholeOptimizer;
+import mtm68.assem.visit.TempRenamer;
 import mtm68.assem.visit.TrivialRegisterAllocator;
 import mtm68.ast.nodes.FunctionDecl;
 import mtm68.ast.nodes.Interface;
@@ -50,9 +60,14 @@ import mtm68.lexer.Token;
 import mtm68.lexer.TokenFactory;
 import mtm68.parser.ParseResult;
 import mtm68.parser.Parser;
+import mtm68.util.AssemCache;
+import mtm68.util.CacheDirectory;
 import mtm68.util.Debug;
 import mtm68.util.ErrorUtils;
 import mtm68.util.FileUtils;
+import mtm68.util.FreshTempGenerator;
+import mtm68.util.PhaseProfiler;
+import mtm68.util.PhaseProfiler.Measurement;
 import mtm68.visit.FunctionCollector;
 import mtm68.visit.NodeToIRNodeConverter;
 import mtm68.visit.TypeChecker;
@@ -81,16 +96,16 @@ public class Main {
 	private boolean debug;
 	
 	@Option(name = "-sourcepath", usage = "specify path to source files")
-	private Path sourcePath = Paths.get(System.getProperty("user.dir"));
+	private Path sourcePath = Paths.get("");
 
 	@Option(name = "-D", usage = "specify location for generated diagnostic files")
-	private Path diagPath = Paths.get(System.getProperty("user.dir"));
+	private Path diagPath = Paths.get("");
 	
 	@Option(name = "-d", usage = "specify location for generated assem files")
-	private Path assemPath = Paths.get(System.getProperty("user.dir"));
+	private Path assemPath = Paths.get("");
 	
 	@Option(name = "-libpath", usage = "specify path to library interface files")
-	private Path libPath = Paths.get(System.getProperty("user.dir"));
+	private Path libPath = Paths.get("");
 	
 	@Option(name = "--optir", usage = "specify opt phase to output IR (inital or final)")
 	private List<Phase> irPhases = new ArrayList<>();
@@ -118,6 +133,9 @@ public class Main {
 	
 	@Option(name = "-Oinl", usage = "enable function inlining")
 	private boolean doINL;
+	
+	@Option(name = "-Olicm", usage = "enable loop-invariant code motion")
+	private boolean doLICM;
 
 	@Option(name = "-Omc", usage = "enable optimal register allocation with move coalescing")
 	private boolean doMC;
@@ -125,23 +143,99 @@ public class Main {
 	@Option(name = "-Oreg", usage = "enable optimal register allocation with move coalescing")
 	private boolean doReg;
 	
+	@Option(name = "-Opeep", usage = "enable peephole optimization of the generated assembly")
+	private boolean doPeep;
+	
 	@Option(name = "-target", usage = "specify the OS for which to generate code")
 	private String osTarget = "linux";
 	
+	@Option(name = "--tune", usage = "specify the microarchitecture whose instruction costs guide instruction selection")
+	private String tuneTarget = TileCosts.getDefault().getName();
+	
 	@Option(name = "--report-opts", usage = "print (only) supported optimizations")
 	private boolean reportOpts = false;
 
+	@Option(name = "-j", usage = "compile source files in parallel using the given number of threads")
+	private int jobs = 1;
+
+	@Option(name = "--parallel-opt", usage = "optimize the functions of each source file in parallel")
+	private boolean parallelOpt = false;
+
+	@Option(name = "--parallel-alloc", usage = "allocate registers for the functions of each source file in parallel")
+	private boolean parallelAlloc = false;
+
+	@Option(name = "--linear-scan", usage = "allocate registers by linear scan instead of graph coloring")
+	private boolean linearScan = false;
+
+	@Option(name = "--linear-scan-threshold", usage = "allocate registers by linear scan for functions with more than the given number of instructions")
+	private int linearScanThreshold = RegisterAllocation.DEFAULT_LINEAR_SCAN_THRESHOLD;
+
+	@Option(name = "--server", usage = "keep running and compile requests sent by xic-client")
+	private boolean server = false;
+
+	@Option(name = "--port", usage = "specify the port for --server to listen on")
+	private int port = CompileServer.DEFAULT_PORT;
+
+	@Option(name = "--cache-dir", usage = "reuse assem files, allocated functions and interface symbol tables cached in the given directory for unchanged code")
+	private Path cacheDir;
+
+	@Option(name = "--cache-size", usage = "specify the most megabytes of files to keep in the --cache-dir")
+	private int cacheSize = 512;
+
+	@Option(name = "--profile-phases", usage = "write the time and memory used by each compiler phase, per file and function, as JSON to the given file")
+	private Path profilePath;
+
 	@Argument
 	private List<String> sourceFiles = new ArrayList<>();
 
+	private Path workingDir;
+	private InterfaceCache interfaceCache;
+	
+	private CacheDirectory cacheDirectory;
+	private AssemCache assemCache;
+	private Map<String, String> cacheKeys = new ConcurrentHashMap<>();
+
+	private FileUtils fileUtils;
+	
+	private Optimizer optimizer;
+	
+	private PhaseProfiler profiler = PhaseProfiler.DISABLED;
+	
+	private TileCosts tileCosts = TileCosts.getDefault();
+	
+	private PeepholeOptimizer peepholeOptimizer = new PeepholeOptimizer();
+
+	public Main() {
+		this(Paths.get(System.getProperty("user.dir")), null);
+	}
+	
+	/**
+	 * @param workingDir      the directory relative paths are resolved against
+	 * @param interfaceCache  symbol tables kept from earlier compilations, 
+	 *                        or null to parse every interface
+	 */
+	public Main(Path workingDir, InterfaceCache interfaceCache) {
+		this.workingDir = workingDir;
+		this.interfaceCache = interfaceCache;
+	}
+
 	public static void main(String[] args) {
+		System.exit(new Main().run(args));
+	}
+	
+	/**
+	 * Runs xic with the given arguments.
+	 * 
+	 * @return the exit code
+	 */
+	public int run(String[] args) {
 		try {
-			new Main().parseCmdLine(args);
-			System.exit(0);
+			parseCmdLine(args);
+			return 0;
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.out.println("Failed to compile: xic exit code 1");
-			System.exit(1);
+			return 1;
 		}
 	}
 	
@@ -159,9 +253,28 @@ public class Main {
 			System.out.println(e.getMessage());
 		}
 		
-		FileUtils.diagPath = diagPath;
-		FileUtils.assemPath = assemPath;
-		Debug.DEBUG_ON = debug;
+		if(server) {
+			new CompileServer(port).serve();
+			return;
+		}
+		
+		sourcePath = workingDir.resolve(sourcePath);
+		diagPath = workingDir.resolve(diagPath);
+		assemPath = workingDir.resolve(assemPath);
+		libPath = workingDir.resolve(libPath);
+		
+		if(cacheDir != null) {
+			cacheDirectory = new CacheDirectory(workingDir.resolve(cacheDir), cacheSize * 1024L * 1024);
+			assemCache = new AssemCache(cacheDirectory);
+		}
+		
+		if(profilePath != null) {
+			profilePath = workingDir.resolve(profilePath);
+			profiler = new PhaseProfiler();
+		}
+		
+		fileUtils = new FileUtils(diagPath, assemPath);
+		Debug.setDebugOn(debug);
 		
 		setUpOptimizer();
 		
@@ -178,8 +291,16 @@ public class Main {
 					+ "\nThe following targets are supported: linux");
 			return;
 		}
+		
+		tileCosts = TileCosts.forTarget(tuneTarget);
+		if(tileCosts == null) {
+			System.out.println(tuneTarget + " is not supported as a microarchitecture to tune for."
+					+ "\nThe following are supported: " + String.join(", ", TileCosts.getTargets()));
+			return;
+		}
 
-		SymbolTableManager symTableManager = new SymbolTableManager(libPath);
+		CompiledInterfaceCache compiledInterfaces = cacheDirectory == null ? null : new CompiledInterfaceCache(cacheDirectory);
+		SymbolTableManager symTableManager = new SymbolTableManager(libPath, interfaceCache, compiledInterfaces);
 		
 		// Ensure ixi files are handled first
 		sourceFiles.sort(new Comparator<String>() {
@@ -190,76 +311,206 @@ public class Main {
 		    }
 		});
 		
-		Map<String, List<FunctionDecl>> progFuncDecls = new HashMap<>();
-		Map<String, Program> programs = getValidPrograms(symTableManager, progFuncDecls);
+		if(jobs > 1 && !interpretIR) {
+			compileInParallel(symTableManager);
+		} else {
+			for(String filename : sourceFiles) {
+				CheckedProgram checked = checkSourceFile(filename, symTableManager);
+				if(checked != null) {
+					compileProgram(filename, checked.program, checked.funcDecls);
+				}
+			}
+		}
 		
-		IRNodeFactory nodeFactory = new IRNodeFactory_c();
-		Optimizer.setNodeFactory(nodeFactory);
-		for(String programName : programs.keySet()) {
-			Program program = programs.get(programName);
+		if(profiler.isEnabled()) {
+			profiler.writeJSON(profilePath);
+		}
+	}
+	
+	/**
+	 * Checks the source files in order on this thread, since checking an
+	 * interface adds to the symbol tables, and compiles each valid program
+	 * on a pool of worker threads as soon as it is checked. Every program 
+	 * is compiled independently of the others, so the output matches that 
+	 * of a serial run. At most two programs per thread are checked and not 
+	 * yet compiled, which bounds the number of ASTs held at once. The first 
+	 * failure is rethrown once all the programs have been handed to the pool.
+	 */
+	private void compileInParallel(SymbolTableManager symTableManager) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(jobs);
+		Semaphore pending = new Semaphore(2 * jobs);
+		try {
+			List<Future<?>> results = new ArrayList<>();
+			for(String filename : sourceFiles) {
+				pending.acquire();
+				CheckedProgram checked = checkSourceFile(filename, symTableManager);
+				if(checked == null) {
+					pending.release();
+					continue;
+				}
+				
+				results.add(pool.submit(() -> {
+					try {
+						compileProgram(filename, checked.program, checked.funcDecls);
+					} finally {
+						pending.release();
+					}
+				}));
+			}
 			
-			program = Optimizer.optimizeAST(program);
+			for(Future<?> result : results) {
+				try {
+					result.get();
+				} catch(ExecutionException e) {
+					if(e.getCause() instanceof Exception) throw (Exception) e.getCause();
+					throw e;
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Takes a type checked program through IR generation, optimization and
+	 * code generation and writes the resulting assembly to [filename.s]
+	 * 
+	 * @param programName  the name of the source file
+	 * @param program      the type checked AST of the source file
+	 * @param funcDecls    the function declarations visible to the program
+	 */
+	private void compileProgram(String programName, Program program, List<FunctionDecl> funcDecls) {
+		// Taken out first so the key is not left behind if compilation fails
+		String cacheKey = cacheKeys.remove(programName);
+		FreshTempGenerator.resetCounter();
+		
+		IRNodeFactory nodeFactory = new IRNodeFactory_c();
+		
+		Measurement astOpt = profiler.start(programName, "ast-opt");
+		program = optimizer.optimizeAST(program);
+		astOpt.stop();
 
-			NodeToIRNodeConverter irConverter = new NodeToIRNodeConverter(programName, nodeFactory, progFuncDecls.get(programName));
-			Lowerer lowerer = new Lowerer(nodeFactory);
-			CFGVisitor cfgVisitor = new CFGVisitor(nodeFactory);
-			UnusedLabelVisitor unusedLabelVisitor = new UnusedLabelVisitor(nodeFactory);
-			
-			program = irConverter.performConvertToIR(program);
+		NodeToIRNodeConverter irConverter = new NodeToIRNodeConverter(programName, nodeFactory, funcDecls);
+		Lowerer lowerer = new Lowerer(nodeFactory);
+		CFGVisitor cfgVisitor = new CFGVisitor(nodeFactory);
+		UnusedLabelVisitor unusedLabelVisitor = new UnusedLabelVisitor(nodeFactory);
+		
+		Measurement irgen = profiler.start(programName, "irgen");
+		program = irConverter.performConvertToIR(program);
 
-			// Add our function before lowering
-			program.getIrCompUnit().appendFunc(irConverter.allocLayer());
+		// Add our function before lowering
+		program.getIrCompUnit().appendFunc(irConverter.allocLayer());
+		irgen.stop().irNodes(program.getIrCompUnit());
 
-			IRNode irRoot = lowerer.visit(program.getIrCompUnit());
+		Measurement lower = profiler.start(programName, "lower");
+		IRNode irRoot = lowerer.visit(program.getIrCompUnit());
+		lower.stop().irNodes(irRoot);
 
-			irRoot = cfgVisitor.visit(irRoot);
-			irRoot = unusedLabelVisitor.visit(irRoot);
-			
-			irRoot = Optimizer.optimizeIR((IRCompUnit)irRoot);
-			
-			if(outputIR) {
-				FileUtils.writeToFile(programName, irRoot);
-			}
-			
-			if(interpretIR) {
-				System.out.println("========= IR Interpreter Output =========\n");
-				IRSimulator simulator = new IRSimulator((IRCompUnit) irRoot);
-				simulator.call("_Imain_paai", 0);
-				System.out.println("\n=========================================");
-			}
-			
-			List<Assem> assems = generateAssemFromIr(irRoot);
-			FileUtils.writeAssemToFile(programName, assems); 
+		Measurement cfg = profiler.start(programName, "cfg");
+		irRoot = cfgVisitor.visit(irRoot);
+		cfg.stop().irNodes(irRoot);
+		
+		Measurement unusedLabels = profiler.start(programName, "unused-labels");
+		irRoot = unusedLabelVisitor.visit(irRoot);
+		unusedLabels.stop().irNodes(irRoot);
+		
+		irRoot = optimizer.optimizeIR((IRCompUnit)irRoot);
+		
+		if(outputIR) {
+			fileUtils.writeToFile(programName, irRoot);
+		}
+		
+		if(interpretIR) {
+			System.out.println("========= IR Interpreter Output =========\n");
+			IRSimulator simulator = new IRSimulator((IRCompUnit) irRoot);
+			simulator.call("_Imain_paai", 0);
+			System.out.println("\n=========================================");
+		}
+		
+		boolean written = generateAssemFromIr(programName, irRoot);
+		
+		if(written && cacheKey != null) {
+			assemCache.store(cacheKey, fileUtils.getAssemFile(programName));
 		}
 	}
 	
+	/**
+	 * The assem cache is only used when nothing but assem files are being
+	 * generated, since it skips every other phase.
+	 */
+	private boolean useAssemCache() {
+		return assemCache != null && !outputLex && !outputParse && !outputTypeCheck 
+				&& !outputIR && !interpretIR && irPhases.isEmpty() && cfgPhases.isEmpty();
+	}
+	
+	/**
+	 * The options that change the generated assem, for the key of the assem cache.
+	 */
+	private String getCacheOptions() {
+		String opts = optimizer.getOptsToPerform().stream()
+				.map(Object::toString)
+				.sorted()
+				.collect(Collectors.joining(","));
+		
+		return "opts=" + opts + ";peep=" + doPeep + ";" + getAllocatorOptions();
+	}
+	
+	/**
+	 * The options that change how instructions are selected and registers
+	 * are allocated.
+	 */
+	private String getAllocatorOptions() {
+		String allocator = "trivial";
+		if(doMC || doReg) {
+			allocator = linearScan ? "linear-scan" : "coloring:" + linearScanThreshold;
+		}
+		
+		return "alloc=" + allocator + ";target=" + osTarget + ";tune=" + tileCosts;
+	}
+	
+	/**
+	 * The interface file for a use. Interfaces given on the command line 
+	 * come from the source path, the rest from the library path.
+	 */
+	private Path getInterfaceFile(String useId) {
+		String filename = useId + ".ixi";
+		return sourceFiles.contains(filename) ? sourcePath.resolve(filename) : libPath.resolve(filename);
+	}
+	
 	private void setUpOptimizer() {
-		Optimizer.setCFGPhases(new HashSet<>(cfgPhases));
-		Optimizer.setIRPhases(new HashSet<>(irPhases));
+		optimizer = new Optimizer(new IRNodeFactory_c(), fileUtils);
+		optimizer.setCFGPhases(new HashSet<>(cfgPhases));
+		optimizer.setIRPhases(new HashSet<>(irPhases));
+		optimizer.setParallel(parallelOpt);
+		optimizer.setProfiler(profiler);
 		if(shouldOptimize()) {
 			boolean addAllOpts = true;
 			if(doCF) {
-				Optimizer.addCF();
+				optimizer.addCF();
 				addAllOpts = false;
 			}
 			if(doCSE) {
-				Optimizer.addCSE();
+				optimizer.addCSE();
 				addAllOpts = false;
 			}
 			if(doCP) {
-				Optimizer.addCP();
+				optimizer.addCP();
 				addAllOpts = false;
 			}
 			if(doCOPY) {
-				Optimizer.addCOPY();
+				optimizer.addCOPY();
 				addAllOpts = false;
 			}
 			if(doDCE) {
-				Optimizer.addDCE();
+				optimizer.addDCE();
 				addAllOpts = false;
 			}
 			if(doINL) {
-				Optimizer.addINL();
+				optimizer.addINL();
+				addAllOpts = false;
+			}
+			if(doLICM) {
+				optimizer.addLICM();
 				addAllOpts = false;
 			}
 			if(doMC) {
@@ -268,107 +519,172 @@ public class Main {
 			if(doReg) {
 				addAllOpts = false;
 			}
+			if(doPeep) {
+				addAllOpts = false;
+			}
 			if(addAllOpts) {
-				Optimizer.addAll();
-				doMC = doReg = true;
+				optimizer.addAll();
+				doMC = doReg = doPeep = true;
 			}
 		}
 	}
 	
-	private List<Assem> generateAssemFromIr(IRNode irRoot) {
-		Tiler tiler = new Tiler(new IRNodeFactory_c());
+	/**
+	 * Tiles and allocates the IR, writing each function to [filename.s] as
+	 * soon as its registers are allocated.
+	 * 
+	 * @return whether the whole assem file was written
+	 */
+	private boolean generateAssemFromIr(String programName, IRNode irRoot) {
+		// Functions are hashed before tiling, which may change the IR
+		RegisterAllocator regAllocator = getRegisterAllocator();
+		if(cacheDirectory != null) {
+			regAllocator = new CachingRegisterAllocator(regAllocator, cacheDirectory, 
+					(IRCompUnit) irRoot, getAllocatorOptions());
+		}
+		
+		Measurement tile = profiler.start(programName, "tile");
+		Tiler tiler = new Tiler(new IRNodeFactory_c(), tileCosts);
 		IRNode tiled = tiler.visit(irRoot);
-				
-		RegisterAllocator regAllocator = doMC || doReg 
-				? new RegisterAllocation(RealReg.COLORS)
-				: new TrivialRegisterAllocator();
+		CompUnitAssem program = (CompUnitAssem) tiled.getAssem();
 		
-		return regAllocator.allocateRegisters((CompUnitAssem) tiled.getAssem()).flattenedProgram();
+		// Temps are numbered per function, so a cached function and the same 
+		// function allocated in this file get the same registers
+		TempRenamer tempRenamer = new TempRenamer();
+		program.getFunctions().forEach(tempRenamer::rename);
+		tile.stop().assems(program);
+		
+		// Writing is interleaved with allocation, so regalloc includes peephole and emit
+		RegisterAllocator allocator = regAllocator;
+		Measurement regalloc = profiler.start(programName, "regalloc");
+		boolean written = fileUtils.streamAssemToFile(programName, writer -> allocator.allocateRegisters(program, func -> {
+			List<Assem> assems = func.getFlattenedAssem().getAssems();
+			if(doPeep) {
+				Measurement peep = profiler.start(programName, func.getName(), "peephole");
+				assems = peepholeOptimizer.optimize(assems);
+				peep.stop().assems(assems);
+			}
+			
+			Measurement emit = profiler.start(programName, func.getName(), "emit");
+			writer.write(assems);
+			emit.stop().assems(assems);
+		}));
+		regalloc.stop();
+		return written;
+	}
+	
+	private RegisterAllocator getRegisterAllocator() {
+		RegisterAllocator regAllocator;
+		if((doMC || doReg) && linearScan) {
+			regAllocator = new LinearScanAllocation(RealReg.COLORS);
+		} else if(doMC || doReg) {
+			RegisterAllocation regAllocation = new RegisterAllocation(RealReg.COLORS);
+			regAllocation.setParallel(parallelAlloc);
+			regAllocation.setLinearScanThreshold(linearScanThreshold);
+			regAllocation.setProfiler(profiler);
+			regAllocator = regAllocation;
+		} else {
+			regAllocator = new TrivialRegisterAllocator();
+		}
+		return regAllocator;
 	}
 
 	private boolean shouldOptimize() {
 		return !doNotOptimize;
 	}
 	
-	public Map<String, Program> getValidPrograms(SymbolTableManager symTableManager, 
-			Map<String, List<FunctionDecl>> progFuncDecls) throws IOException {
-		Map<String, Program> validPrograms = new HashMap<>();
-
-		for (String filename : sourceFiles) {
-			//Check valid file and file exists
-			if(!filename.endsWith(".xi") && !filename.endsWith(".ixi")) {
-				System.out.println("Skipping file: \'" + filename + "\' as it is not a .xi or .ixi file.");
-				continue;
-			}
-			if(!Files.exists(sourcePath.resolve(filename))) {
-				System.out.println("Skipping " + filename + " as it cannot be found.");
-				continue;				
-			}
-			//Lex and parse
-			TokenFactory tokenFactory = new TokenFactory();
-			Lexer lexx = new FileTypeLexer(filename, sourcePath, FileType.parseFileType(filename), tokenFactory);
-			Parser parser = new Parser(lexx, tokenFactory);
-			
-			ParseResult parseResult = new ParseResult(parser);
-			ErrorUtils.printErrors(parseResult, filename);
-			
-			if(outputLex){
-				SourceFileLexer lexer = new SourceFileLexer(filename, sourcePath);
-				List<Token> tokens = lexer.getTokens();	
-				FileUtils.writeToFile(filename, tokens);
-			}
-			
-			if(outputParse) {
-				FileUtils.writeToFile(filename, parseResult);
-			}
-			
-			if(!parseResult.isValidAST()) {
-				writeErrorToFile(filename, parseResult.getFirstError());
-				continue;
-			} 
-			
-			Node root = parseResult.getNode().get();
-			
-			//Typecheck
-			if(root instanceof Program) {
-				try {
-					Map<String, FunctionDecl> libFuncTable = symTableManager.mergeSymbolTables((Program) root);
-					
-					FunctionCollector funcCollector = new FunctionCollector(libFuncTable);
-					Map<String, FunctionDecl> funcTable = funcCollector.visit(root);
-					if(funcCollector.hasError()) {
-						ErrorUtils.printErrors(funcCollector.getErrors(), filename);
-						writeErrorToFile(filename, funcCollector.getFirstError());
-						continue;
-					}
-					
-					progFuncDecls.put(filename, new ArrayList<>(funcTable.values()));
-					
-					TypeChecker typeChecker = new TypeChecker(funcTable);	
-					root = typeChecker.performTypeCheck(root);
-					ErrorUtils.printErrors(typeChecker.getTypeErrors(), filename);
-
-					if(!typeChecker.hasError()) {
-						if(outputTypeCheck) FileUtils.writeTypeCheckToFile(filename);
-						validPrograms.put(filename, (Program)root);
-					} else {
-						writeErrorToFile(filename, typeChecker.getFirstError());
-					}
+	/**
+	 * Lexes, parses and type checks a source file, writing any errors.
+	 * Interfaces are added to the symbol tables for the files after them.
+	 * 
+	 * @param filename         the name of the source file
+	 * @param symTableManager  the symbol tables of the interfaces
+	 * @return the type checked program, or null if filename isn't a valid
+	 *         program or its assem was restored from the cache
+	 */
+	public CheckedProgram checkSourceFile(String filename, SymbolTableManager symTableManager) throws IOException {
+		//Check valid file and file exists
+		if(!filename.endsWith(".xi") && !filename.endsWith(".ixi")) {
+			System.out.println("Skipping file: \'" + filename + "\' as it is not a .xi or .ixi file.");
+			return null;
+		}
+		if(!Files.exists(sourcePath.resolve(filename))) {
+			System.out.println("Skipping " + filename + " as it cannot be found.");
+			return null;				
+		}
+		String cacheKey = null;
+		if(useAssemCache() && filename.endsWith(".xi")) {
+			cacheKey = assemCache.getKey(filename, sourcePath.resolve(filename), 
+					this::getInterfaceFile, getCacheOptions());
+			if(assemCache.restore(cacheKey, fileUtils.getAssemFile(filename))) return null;
+		}
+		
+		//Lex and parse
+		TokenFactory tokenFactory = new TokenFactory();
+		Lexer lexx = new FileTypeLexer(filename, sourcePath, FileType.parseFileType(filename), tokenFactory);
+		Parser parser = new Parser(lexx, tokenFactory);
+		
+		Measurement parse = profiler.start(filename, "parse");
+		ParseResult parseResult = new ParseResult(parser);
+		parse.stop();
+		ErrorUtils.printErrors(parseResult, filename);
+		
+		if(outputLex){
+			SourceFileLexer lexer = new SourceFileLexer(filename, sourcePath);
+			List<Token> tokens = lexer.getTokens();	
+			fileUtils.writeToFile(filename, tokens);
+		}
+		
+		if(outputParse) {
+			fileUtils.writeToFile(filename, parseResult);
+		}
+		
+		if(!parseResult.isValidAST()) {
+			writeErrorToFile(filename, parseResult.getFirstError());
+			return null;
+		} 
+		
+		Node root = parseResult.getNode().get();
+		
+		//Typecheck
+		if(root instanceof Program) {
+			try {
+				Map<String, FunctionDecl> libFuncTable = symTableManager.mergeSymbolTables((Program) root);
+				
+				Measurement typecheck = profiler.start(filename, "typecheck");
+				FunctionCollector funcCollector = new FunctionCollector(libFuncTable);
+				Map<String, FunctionDecl> funcTable = funcCollector.visit(root);
+				if(funcCollector.hasError()) {
+					ErrorUtils.printErrors(funcCollector.getErrors(), filename);
+					writeErrorToFile(filename, funcCollector.getFirstError());
+					return null;
 				}
-				catch(SemanticException e) {
-					SemanticError error = new SemanticError(e.getErrorNode(), e.getMessage());
-					System.out.println(error.getPrintErrorMessage(filename));
-					writeErrorToFile(filename, error);
-					continue;
+				
+				TypeChecker typeChecker = new TypeChecker(funcTable);	
+				root = typeChecker.performTypeCheck(root);
+				typecheck.stop();
+				ErrorUtils.printErrors(typeChecker.getTypeErrors(), filename);
+
+				if(!typeChecker.hasError()) {
+					if(outputTypeCheck) fileUtils.writeTypeCheckToFile(filename);
+					if(cacheKey != null) cacheKeys.put(filename, cacheKey);
+					return new CheckedProgram((Program) root, new ArrayList<>(funcTable.values()));
+				} else {
+					writeErrorToFile(filename, typeChecker.getFirstError());
 				}
 			}
-			if(root instanceof Interface) {
-				symTableManager.generateSymbolTableFromAST(filename.substring(0, filename.length()-4), (Interface) root); 
-			}	
-			
+			catch(SemanticException e) {
+				SemanticError error = new SemanticError(e.getErrorNode(), e.getMessage());
+				System.out.println(error.getPrintErrorMessage(filename));
+				writeErrorToFile(filename, error);
+				return null;
+			}
+		}
+		if(root instanceof Interface) {
+			symTableManager.generateSymbolTableFromAST(filename.substring(0, filename.length()-4), (Interface) root); 
 		}
 		
-		return validPrograms;
+		return null;
 	}
 
 	public void writeErrorToFile(String filename, BaseError error) {
@@ -411,4 +727,25 @@ public class Main {
 		parser.printUsage(System.out);
 		System.out.println();
 	}
+	
+	/**
+	 * A type checked program with the functions visible to it.
+	 */
+	public static class CheckedProgram {
+		private final Program program;
+		private final List<FunctionDecl> funcDecls;
+		
+		public CheckedProgram(Program program, List<FunctionDecl> funcDecls) {
+			this.program = program;
+			this.funcDecls = funcDecls;
+		}
+		
+		public Program getProgram() {
+			return program;
+		}
+		
+		public List<FunctionDecl> getFuncDecls() {
+			return funcDecls;
+		}
+	}
 }
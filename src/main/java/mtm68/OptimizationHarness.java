@@ -0,0 +1,463 @@
+package mtm68;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+
+import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import edu.cornell.cs.cs4120.ir.IRNode;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory_c;
+import edu.cornell.cs.cs4120.ir.interpret.IRSimulator;
+import edu.cornell.cs.cs4120.ir.interpret.IRSimulator.Trap;
+import edu.cornell.cs.cs4120.ir.visit.CFGVisitor;
+import edu.cornell.cs.cs4120.ir.visit.Lowerer;
+import edu.cornell.cs.cs4120.ir.visit.UnusedLabelVisitor;
+import mtm68.Optimizer.SupportedOpt;
+import mtm68.ast.nodes.FunctionDecl;
+import mtm68.ast.nodes.IntLiteral;
+import mtm68.ast.nodes.Node;
+import mtm68.ast.nodes.Program;
+import mtm68.exception.SemanticException;
+import mtm68.lexer.FileTypeLexer;
+import mtm68.lexer.Lexer;
+import mtm68.lexer.TokenFactory;
+import mtm68.parser.ParseResult;
+import mtm68.parser.Parser;
+import mtm68.util.FileUtils;
+import mtm68.util.FreshTempGenerator;
+import mtm68.util.StringUtils;
+import mtm68.visit.FunctionCollector;
+import mtm68.visit.NodeToIRNodeConverter;
+import mtm68.visit.TypeChecker;
+import mtm68.visit.Visitor;
+
+/**
+ * Measures how much each optimization improves the programs it compiles.
+ * Every program is compiled with no optimizations, with each optimization
+ * on its own, with all of them and with all but each one, then run in the
+ * IRSimulator, which counts the statements it executes, its memory reads
+ * and writes, its calls and the heap bytes it allocates. Each count is
+ * reported with its change from the unoptimized program, as CSV and JSON.
+ *
+ * A configuration that changes what a program prints is a regression, as
+ * is any count that grows by more than the threshold over the same count
+ * in an earlier CSV report given with --compare. Regressions make the
+ * harness exit with status 1.
+ *
+ * The benchmark programs loop far longer than the simulator can run them
+ * in, so integer literals larger than --literal-scale are divided by it
+ * before compiling, and a run stops after --max-stmts statements. A run
+ * that stops has no changes reported.
+ */
+public class OptimizationHarness {
+	private static final String NONE = "none";
+	private static final String ALL = "all";
+	private static final String[] METRICS = {"stmts", "memReads", "memWrites", "calls", "heapBytes"};
+	private static final long SIMULATOR_STACK_SIZE = 1L << 30;
+
+	@Option(name = "--help", help = true, usage = "print help screen")
+	private boolean help = false;
+
+	@Option(name = "-sourcepath", usage = "specify path to the programs to measure")
+	private Path sourcePath = Paths.get("benchmarks");
+
+	@Option(name = "-libpath", usage = "specify path to library interface files, the source path by default")
+	private Path libPath;
+
+	@Option(name = "--csv", usage = "write the report as CSV to the given file")
+	private Path csvPath;
+
+	@Option(name = "--json", usage = "write the report as JSON to the given file")
+	private Path jsonPath;
+
+	@Option(name = "--compare", usage = "check for regressions against a CSV report from an earlier run")
+	private Path comparePath;
+
+	@Option(name = "--threshold", usage = "specify the percentage a count may grow by over the earlier report")
+	private int threshold = 1;
+
+	@Option(name = "--literal-scale", usage = "divide integer literals larger than the given number by it")
+	private int literalScale = 1000;
+
+	@Option(name = "--max-stmts", usage = "stop each run after the given number of statements")
+	private int maxStmts = 100_000_000;
+
+	@Option(name = "--heap-size", usage = "specify the heap size of the simulator in bytes")
+	private int heapSize = 1 << 24;
+
+	@Argument
+	private List<String> sourceFiles = new ArrayList<>();
+
+	public static void main(String[] args) {
+		try {
+			System.exit(new OptimizationHarness().run(args));
+		} catch(IOException e) {
+			e.printStackTrace();
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Measures every program under every configuration and writes the
+	 * reports.
+	 *
+	 * @return 1 if there were regressions, 0 otherwise
+	 */
+	public int run(String[] args) throws IOException {
+		CmdLineParser cmdParser = new CmdLineParser(this, ParserProperties.defaults().withShowDefaults(false));
+		try {
+			cmdParser.parseArgument(args);
+		} catch(CmdLineException e) {
+			System.out.println(e.getMessage());
+			help = true;
+		}
+
+		if(help) {
+			System.out.println("xic-opt-report [options...] [programs...]");
+			cmdParser.printUsage(System.out);
+			return 0;
+		}
+
+		if(libPath == null) libPath = sourcePath;
+		if(sourceFiles.isEmpty()) {
+			try(Stream<Path> files = Files.list(sourcePath)) {
+				sourceFiles = files.map(f -> f.getFileName().toString())
+						.filter(f -> f.endsWith(".xi"))
+						.sorted()
+						.collect(Collectors.toList());
+			}
+		}
+
+		List<Run> runs = new ArrayList<>();
+		for(String filename : sourceFiles) {
+			Run baseline = null;
+			for(Map.Entry<String, Set<SupportedOpt>> config : getConfigs().entrySet()) {
+				Run run = measure(filename, config.getKey(), config.getValue());
+				if(baseline == null) baseline = run;
+				run.compareTo(baseline);
+				runs.add(run);
+
+				System.out.println(run.getSummary());
+			}
+		}
+
+		List<String> regressions = new ArrayList<>();
+		for(Run run : runs) {
+			if(run.outputChanged) {
+				regressions.add(run.program + " " + run.config + ": output differs from " + NONE);
+			}
+		}
+		if(comparePath != null) {
+			regressions.addAll(compare(runs, readCSV(comparePath)));
+		}
+
+		if(csvPath != null) write(csvPath, toCSV(runs));
+		if(jsonPath != null) write(jsonPath, toJSON(runs, regressions));
+
+		for(String regression : regressions) {
+			System.out.println("REGRESSION " + regression);
+		}
+		return regressions.isEmpty() ? 0 : 1;
+	}
+
+	/**
+	 * The optimizations of each configuration, the unoptimized one first.
+	 */
+	private Map<String, Set<SupportedOpt>> getConfigs() {
+		Map<String, Set<SupportedOpt>> configs = new LinkedHashMap<>();
+		configs.put(NONE, EnumSet.noneOf(SupportedOpt.class));
+		for(SupportedOpt opt : SupportedOpt.values()) {
+			configs.put(opt.toString(), EnumSet.of(opt));
+		}
+		configs.put(ALL, EnumSet.allOf(SupportedOpt.class));
+		for(SupportedOpt opt : SupportedOpt.values()) {
+			Set<SupportedOpt> allBut = EnumSet.allOf(SupportedOpt.class);
+			allBut.remove(opt);
+			configs.put(ALL + "-" + opt, allBut);
+		}
+		return configs;
+	}
+
+	private Run measure(String filename, String config, Set<SupportedOpt> opts) {
+		Run run = new Run(filename, config);
+		try {
+			IRCompUnit ir = compile(filename, opts);
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			IRSimulator simulator = new IRSimulator(ir, heapSize, output);
+			simulator.setMaxStmts(maxStmts);
+
+			// The simulator recurses for every call the program makes
+			Thread thread = new Thread(null, () -> {
+				try {
+					simulator.call("_Imain_paai", 0);
+					run.status = "ok";
+				} catch(Trap e) {
+					run.status = simulator.getExecutedStmts() > maxStmts ? "limit" : "trap: " + e.getMessage();
+				} catch(StackOverflowError e) {
+					run.status = "trap: stack overflow";
+				} catch(RuntimeException | Error e) {
+					// e.g. an InternalCompilerError from IR that a pass miscompiled
+					run.status = "error: " + e;
+				}
+			}, "simulator", SIMULATOR_STACK_SIZE);
+			thread.start();
+			thread.join();
+
+			run.output = output.toString();
+			run.counts.put("stmts", simulator.getExecutedStmts());
+			run.counts.put("memReads", simulator.getMemReads());
+			run.counts.put("memWrites", simulator.getMemWrites());
+			run.counts.put("calls", simulator.getCalls());
+			run.counts.put("heapBytes", simulator.getHeapBytesAllocated());
+		} catch(SemanticException | FileNotFoundException | RuntimeException e) {
+			run.status = "error: " + e.getMessage();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			run.status = "error: interrupted";
+		}
+		return run;
+	}
+
+	/**
+	 * Compiles a program to optimized IR the same way Main does, with its
+	 * large literals scaled down.
+	 */
+	private IRCompUnit compile(String filename, Set<SupportedOpt> opts) throws SemanticException, FileNotFoundException {
+		FreshTempGenerator.resetCounter();
+
+		TokenFactory tokenFactory = new TokenFactory();
+		Lexer lexer = new FileTypeLexer(filename, sourcePath, FileType.parseFileType(filename), tokenFactory);
+		ParseResult parseResult = new ParseResult(new Parser(lexer, tokenFactory));
+		if(!parseResult.isValidAST()) {
+			throw new IllegalStateException(parseResult.getFirstError().getDescription());
+		}
+
+		Program program = (Program) parseResult.getNode().get();
+		program = program.accept(new LiteralScaler());
+
+		SymbolTableManager symTableManager = new SymbolTableManager(libPath);
+		Map<String, FunctionDecl> libFuncTable = symTableManager.mergeSymbolTables(program);
+
+		FunctionCollector funcCollector = new FunctionCollector(libFuncTable);
+		Map<String, FunctionDecl> funcTable = funcCollector.visit(program);
+		if(funcCollector.hasError()) {
+			throw new IllegalStateException(funcCollector.getFirstError().getDescription());
+		}
+
+		TypeChecker typeChecker = new TypeChecker(funcTable);
+		program = typeChecker.performTypeCheck(program);
+		if(typeChecker.hasError()) {
+			throw new IllegalStateException(typeChecker.getFirstError().getDescription());
+		}
+
+		IRNodeFactory nodeFactory = new IRNodeFactory_c();
+		Optimizer optimizer = new Optimizer(nodeFactory, new FileUtils(sourcePath, sourcePath));
+		opts.forEach(optimizer::add);
+
+		program = optimizer.optimizeAST(program);
+
+		NodeToIRNodeConverter irConverter = new NodeToIRNodeConverter(filename, nodeFactory, new ArrayList<>(funcTable.values()));
+		program = irConverter.performConvertToIR(program);
+		program.getIrCompUnit().appendFunc(irConverter.allocLayer());
+
+		IRNode irRoot = new Lowerer(nodeFactory).visit(program.getIrCompUnit());
+		irRoot = new CFGVisitor(nodeFactory).visit(irRoot);
+		irRoot = new UnusedLabelVisitor(nodeFactory).visit(irRoot);
+
+		return (IRCompUnit) optimizer.optimizeIR(irRoot);
+	}
+
+	/**
+	 * The regressions of runs against the runs of an earlier report.
+	 */
+	private List<String> compare(List<Run> runs, Map<String, Map<String, String>> earlier) {
+		List<String> regressions = new ArrayList<>();
+		for(Run run : runs) {
+			Map<String, String> before = earlier.get(run.program + "," + run.config);
+			if(before == null || !run.status.equals("ok") || !"ok".equals(before.get("status"))) continue;
+
+			for(String metric : METRICS) {
+				long now = run.counts.get(metric);
+				long then = Long.parseLong(before.get(metric));
+				if(now > then * (1 + threshold / 100.0)) {
+					regressions.add(String.format("%s %s: %s grew from %d to %d (%s)",
+							run.program, run.config, metric, then, now, formatChange(then, now)));
+				}
+			}
+		}
+		return regressions;
+	}
+
+	private String toCSV(List<Run> runs) {
+		StringBuilder sb = new StringBuilder("program,config,status");
+		for(String metric : METRICS) sb.append(",").append(metric);
+		for(String metric : METRICS) sb.append(",").append(metric).append("Change");
+		sb.append("\n");
+
+		for(Run run : runs) {
+			sb.append(run.program).append(",").append(run.config).append(",")
+				.append(run.status.replaceAll("[,\n]", " "));
+			for(String metric : METRICS) {
+				sb.append(",").append(run.counts.getOrDefault(metric, 0L));
+			}
+			for(String metric : METRICS) {
+				Double change = run.changes.get(metric);
+				sb.append(",").append(change == null ? "" : String.format("%.2f", change));
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	private String toJSON(List<Run> runs, List<String> regressions) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"threshold\": ").append(threshold).append(",\n  \"runs\": [");
+		for(int i = 0; i < runs.size(); i++) {
+			Run run = runs.get(i);
+			sb.append(i == 0 ? "\n    " : ",\n    ");
+			sb.append("{\"program\": ").append(StringUtils.quoteJSON(run.program))
+				.append(", \"config\": ").append(StringUtils.quoteJSON(run.config))
+				.append(", \"status\": ").append(StringUtils.quoteJSON(run.status))
+				.append(", \"outputChanged\": ").append(run.outputChanged);
+
+			sb.append(", \"counts\": {");
+			for(int j = 0; j < METRICS.length; j++) {
+				sb.append(j == 0 ? "" : ", ").append(StringUtils.quoteJSON(METRICS[j])).append(": ")
+					.append(run.counts.getOrDefault(METRICS[j], 0L));
+			}
+			sb.append("}, \"changes\": {");
+			int j = 0;
+			for(String metric : METRICS) {
+				if(!run.changes.containsKey(metric)) continue;
+				sb.append(j++ == 0 ? "" : ", ").append(StringUtils.quoteJSON(metric)).append(": ")
+					.append(String.format("%.2f", run.changes.get(metric)));
+			}
+			sb.append("}}");
+		}
+		sb.append("\n  ],\n  \"regressions\": [");
+		for(int i = 0; i < regressions.size(); i++) {
+			sb.append(i == 0 ? "\n    " : ",\n    ").append(StringUtils.quoteJSON(regressions.get(i)));
+		}
+		sb.append(regressions.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * The rows of a CSV report by program and config, each row by column.
+	 */
+	private Map<String, Map<String, String>> readCSV(Path file) throws IOException {
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		if(lines.isEmpty()) return Collections.emptyMap();
+
+		String[] header = lines.get(0).split(",", -1);
+		Map<String, Map<String, String>> rows = new HashMap<>();
+		for(String line : lines.subList(1, lines.size())) {
+			String[] cells = line.split(",", -1);
+			Map<String, String> row = new HashMap<>();
+			for(int i = 0; i < header.length && i < cells.length; i++) {
+				row.put(header[i], cells[i]);
+			}
+			rows.put(row.get("program") + "," + row.get("config"), row);
+		}
+		return rows;
+	}
+
+	private void write(Path file, String contents) throws IOException {
+		if(file.getParent() != null) Files.createDirectories(file.getParent());
+		Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String formatChange(long before, long after) {
+		return before == 0 ? "new" : String.format("%+.2f%%", 100.0 * (after - before) / before);
+	}
+
+	/**
+	 * Divides the integer literals of a program that are larger than
+	 * literalScale by it, shortening the loops they bound.
+	 */
+	private class LiteralScaler extends Visitor {
+
+		@Override
+		public Node leave(Node parent, Node n) {
+			if(!(n instanceof IntLiteral)) return n;
+
+			IntLiteral literal = (IntLiteral) n;
+			if(literalScale <= 1 || literal.getValue() <= literalScale) return n;
+
+			IntLiteral scaled = new IntLiteral(literal.getValue() / literalScale);
+			scaled.setStartLoc(literal.getStartLoc());
+			return scaled;
+		}
+	}
+
+	/**
+	 * The counts of one program run under one configuration.
+	 */
+	private static class Run {
+		private String program;
+		private String config;
+		private String status;
+		private String output;
+		private boolean outputChanged;
+		private Map<String, Long> counts;
+		private Map<String, Double> changes;
+
+		public Run(String program, String config) {
+			this.program = program;
+			this.config = config;
+			this.status = "error: not run";
+			this.counts = new LinkedHashMap<>();
+			this.changes = new LinkedHashMap<>();
+		}
+
+		/**
+		 * Records the percentage change of each count from the baseline,
+		 * when both runs finished.
+		 */
+		public void compareTo(Run baseline) {
+			if(!status.equals("ok") || !baseline.status.equals("ok")) return;
+
+			outputChanged = !output.equals(baseline.output);
+			for(String metric : METRICS) {
+				long before = baseline.counts.get(metric);
+				long after = counts.get(metric);
+				if(before != 0) changes.put(metric, 100.0 * (after - before) / before);
+			}
+		}
+
+		public String getSummary() {
+			StringBuilder sb = new StringBuilder(String.format("%-12s %-12s", program, config));
+			if(!status.equals("ok")) return sb.append(" ").append(status).toString();
+
+			for(String metric : METRICS) {
+				Double change = changes.get(metric);
+				sb.append(String.format(" %s=%d", metric, counts.get(metric)));
+				if(change != null && change != 0) sb.append(String.format(" (%+.1f%%)", change));
+			}
+			if(outputChanged) sb.append(" OUTPUT CHANGED");
+			return sb.toString();
+		}
+	}
+}
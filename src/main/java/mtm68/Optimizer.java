@@ -4,34 +4,64 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
 import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
 import edu.cornell.cs.cs4120.ir.IRNode;
 import edu.cornell.cs.cs4120.ir.IRNodeFactory;
 import edu.cornell.cs.cs4120.ir.visit.IRConstantFolder;
+import edu.cornell.cs.cs4120.util.InternalCompilerError;
 import mtm68.assem.cfg.Graph;
 import mtm68.ast.nodes.Program;
+import mtm68.ir.cfg.AnalysisManager;
+import mtm68.ir.cfg.AnalysisManager.Analysis;
 import mtm68.ir.cfg.CSETransformer;
 import mtm68.ir.cfg.ConstantPropTransformer;
 import mtm68.ir.cfg.CopyPropTransformer;
 import mtm68.ir.cfg.DeadCodeTransformer;
 import mtm68.ir.cfg.IRCFGBuilder;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
+import mtm68.ir.cfg.LoopInvCodeMotion;
 import mtm68.util.FileUtils;
+import mtm68.util.FreshTempGenerator;
+import mtm68.util.PhaseProfiler;
+import mtm68.util.PhaseProfiler.Measurement;
 import mtm68.util.SetUtils;
 import mtm68.visit.FunctionInliner;
 
+/**
+ * Holds the optimization settings for a run of the compiler. The settings
+ * are fixed before compilation starts, so a single optimizer can be shared
+ * by every file being compiled.
+ */
 public class Optimizer {
-	private static final int ITERS = 5;
+	private static final int MAX_ROUNDS = 20;
+	private static final List<SupportedOpt> PASS_ORDER = Arrays.asList(
+			SupportedOpt.CSE, SupportedOpt.COPY, SupportedOpt.CP, SupportedOpt.DCE, SupportedOpt.LICM);
 	
-	private static Set<SupportedOpt> optsToPerform = new HashSet<>();
-	private static IRNodeFactory nodeFactory;
-	private static Set<Phase> irPhases = new HashSet<>();
-	private static Set<Phase> cfgPhases = new HashSet<>();
+	private Set<SupportedOpt> optsToPerform;
+	private IRNodeFactory nodeFactory;
+	private FileUtils fileUtils;
+	private Set<Phase> irPhases;
+	private Set<Phase> cfgPhases;
+	private boolean parallel;
+	private PhaseProfiler profiler;
 	
-	public static Program optimizeAST(Program program){
+	public Optimizer(IRNodeFactory nodeFactory, FileUtils fileUtils) {
+		this.nodeFactory = nodeFactory;
+		this.fileUtils = fileUtils;
+		this.optsToPerform = new HashSet<>();
+		this.irPhases = new HashSet<>();
+		this.cfgPhases = new HashSet<>();
+		this.profiler = PhaseProfiler.DISABLED;
+	}
+	
+	public Program optimizeAST(Program program){
 		Set<SupportedOpt> astOpts = SupportedOpt.getASTOpts();
 		Set<SupportedOpt> opts = SetUtils.intersect(optsToPerform, astOpts);
 		
@@ -49,109 +79,251 @@ public class Optimizer {
 		return program;
 	}
 	
-	public static IRNode optimizeIR(IRNode root) {
+	public IRNode optimizeIR(IRNode root) {
 		Set<SupportedOpt> irOpts = SupportedOpt.getIROpts();
 		Set<SupportedOpt> opts = SetUtils.intersect(optsToPerform, irOpts);
 				
 		writeInitial(root);
 	
+		String filename = ((IRCompUnit) root).name();
+	
 		IRConstantFolder constFolder = new IRConstantFolder(nodeFactory);
 		if(opts.contains(SupportedOpt.CF)) {
+			Measurement cf = profiler.start(filename, "cf").iteration(1);
 			root = constFolder.visit(root);
+			cf.stop().irNodes(root);
 		}
 		
-		for(int i = 0; i < ITERS; i++) {
-			if(opts.contains(SupportedOpt.CSE)) {
-				CSETransformer cseTransformer = new CSETransformer((IRCompUnit)root, nodeFactory);
-				root = cseTransformer.doCSE();
-			}
-			if(opts.contains(SupportedOpt.COPY)) {
-				CopyPropTransformer cpTransformer = new CopyPropTransformer((IRCompUnit)root, nodeFactory);
-				root = cpTransformer.doCopyProp();
-			}
-			if(opts.contains(SupportedOpt.CP)) {
-				ConstantPropTransformer constProp = new ConstantPropTransformer((IRCompUnit)root, nodeFactory);
-				root = constProp.doConstantProp();
-			}
-			if(opts.contains(SupportedOpt.DCE)) {
-				DeadCodeTransformer dcTransformer = new DeadCodeTransformer((IRCompUnit)root, nodeFactory);
-				root = dcTransformer.doDeadCodeRemoval();
-			}
-		}
+		root = optimizeFunctions((IRCompUnit)root, opts);
 		
-		if(opts.contains(SupportedOpt.CF)) root = constFolder.visit(root);
+		if(opts.contains(SupportedOpt.CF)) {
+			Measurement cf = profiler.start(filename, "cf").iteration(2);
+			root = constFolder.visit(root);
+			cf.stop().irNodes(root);
+		}
 		
 		writeFinal(root);
 		
 		return root;
 	}
 	
-	private static void writeInitial(IRNode root) {
+	/**
+	 * Runs the dataflow optimizations on every function of the comp unit.
+	 * The dataflow of each function is independent of the others, so in 
+	 * parallel mode each function is optimized on its own fork/join task.
+	 * Either way, the functions are put back in their original order.
+	 */
+	private IRCompUnit optimizeFunctions(IRCompUnit compUnit, Set<SupportedOpt> opts) {
+		List<IRFuncDefn> funcs = new ArrayList<>(compUnit.functions().values());
+		List<IRFuncDefn> optimized = new ArrayList<>();
+		
+		if(parallel) {
+			List<ForkJoinTask<IRFuncDefn>> tasks = new ArrayList<>();
+			for(int i = 0; i < funcs.size(); i++) {
+				int funcIdx = i;
+				tasks.add(ForkJoinTask.adapt(() -> optimizeFunction(compUnit.name(), funcs.get(funcIdx), funcIdx, opts)));
+			}
+			
+			ForkJoinTask.invokeAll(tasks);
+			for(ForkJoinTask<IRFuncDefn> task : tasks) {
+				optimized.add(task.join());
+			}
+		} else {
+			for(int i = 0; i < funcs.size(); i++) {
+				optimized.add(optimizeFunction(compUnit.name(), funcs.get(i), i, opts));
+			}
+		}
+		
+		Map<String, IRFuncDefn> newFuncs = new LinkedHashMap<>();
+		for(IRFuncDefn func : optimized) {
+			newFuncs.put(func.name(), func);
+		}
+
+		compUnit.setFunctions(newFuncs);
+		return compUnit;
+	}
+	
+	/**
+	 * Optimizes a single function. Fresh temps come from a namespace for the
+	 * function's index so the result is the same whichever thread runs it.
+	 * 
+	 * Every pass runs once, after which a pass is only run again when a 
+	 * change made by another pass (or itself) could have enabled it. This
+	 * stops at a fixed point, or after MAX_ROUNDS rounds as a safety limit.
+	 * The passes share the CFGs and analyses they compute through an 
+	 * AnalysisManager.
+	 */
+	private IRFuncDefn optimizeFunction(String filename, IRFuncDefn func, int funcIdx, Set<SupportedOpt> opts) {
+		return FreshTempGenerator.inScope(String.valueOf(funcIdx), () -> {
+			IRFuncDefn result = func;
+			AnalysisManager analyses = new AnalysisManager(nodeFactory);
+			Set<SupportedOpt> pending = SetUtils.intersect(opts, SupportedOpt.getDataflowOpts());
+
+			for(int i = 0; i < MAX_ROUNDS && !pending.isEmpty(); i++) {
+				for(SupportedOpt opt : PASS_ORDER) {
+					if(!pending.remove(opt)) continue;
+
+					Measurement pass = profiler.start(filename, func.name(), opt.toString()).iteration(i + 1);
+					IRFuncDefn next;
+					boolean changed;
+					Set<Analysis> preserved;
+					switch(opt) {
+					case CSE:
+						CSETransformer cseTransformer = new CSETransformer(nodeFactory, analyses);
+						next = cseTransformer.doCSE(result);
+						changed = cseTransformer.hasChanged();
+						preserved = cseTransformer.getPreservedAnalyses();
+						break;
+					case COPY:
+						CopyPropTransformer cpTransformer = new CopyPropTransformer(nodeFactory, analyses);
+						next = cpTransformer.doCopyProp(result);
+						changed = cpTransformer.hasChanged();
+						preserved = cpTransformer.getPreservedAnalyses();
+						break;
+					case CP:
+						ConstantPropTransformer constProp = new ConstantPropTransformer(nodeFactory, analyses);
+						next = constProp.doConstantProp(result);
+						changed = constProp.hasChanged();
+						preserved = constProp.getPreservedAnalyses();
+						break;
+					case DCE:
+						DeadCodeTransformer dcTransformer = new DeadCodeTransformer(nodeFactory, analyses);
+						next = dcTransformer.doDeadCodeRemoval(result);
+						changed = dcTransformer.hasChanged();
+						preserved = dcTransformer.getPreservedAnalyses();
+						break;
+					case LICM:
+						LoopInvCodeMotion licm = new LoopInvCodeMotion(nodeFactory, analyses);
+						next = licm.doLICM(result);
+						changed = licm.hasChanged();
+						preserved = licm.getPreservedAnalyses();
+						break;
+					default:
+						throw new InternalCompilerError("Not a dataflow optimization: " + opt);
+					}
+					pass.stop().irNodes(next);
+					
+					// Keep the unchanged function so its cached analyses stay valid
+					if(changed) {
+						analyses.update(result, next, preserved);
+						result = next;
+						pending.addAll(SetUtils.intersect(opts, enabledBy(opt)));
+					}
+				}
+			}
+			return result;
+		});
+	}
+	
+	/**
+	 * The passes that a change made by opt can create new opportunities for.
+	 */
+	private static Set<SupportedOpt> enabledBy(SupportedOpt opt) {
+		switch(opt) {
+		// New copies of the common subexpression temp, which may be dead
+		case CSE: return SetUtils.elems(SupportedOpt.COPY, SupportedOpt.DCE);
+		// Renamed uses can make expressions equal, uses of constants 
+		// visible and the copies themselves dead
+		case COPY: return SetUtils.elems(SupportedOpt.CSE, SupportedOpt.COPY, SupportedOpt.CP, SupportedOpt.DCE);
+		// A temp that now holds a constant can be propagated further, and
+		// its old definition may be dead
+		case CP: return SetUtils.elems(SupportedOpt.CSE, SupportedOpt.CP, SupportedOpt.DCE);
+		// Removing a definition can make other definitions and copies 
+		// reach, and uses of other temps dead
+		case DCE: return SetUtils.elems(SupportedOpt.CSE, SupportedOpt.COPY, SupportedOpt.CP, SupportedOpt.DCE);
+		// Copies of the hoisted temps are left in the loop, hoisted
+		// expressions may be common, and the preheader of an inner loop
+		// can be invariant in the loop around it
+		case LICM: return SetUtils.elems(SupportedOpt.CSE, SupportedOpt.COPY, SupportedOpt.DCE, SupportedOpt.LICM);
+		default: return SetUtils.empty();
+		}
+	}
+	
+	private void writeInitial(IRNode root) {
 		IRCompUnit compUnit = (IRCompUnit) root;
 		String rootFilename = compUnit.name().replaceFirst("\\.xi", "");
 		
 		if(irPhases.contains(Phase.INITIAL)) {
 			String filename = rootFilename + "_initial.xi"; 
-			FileUtils.writeToFile(filename, root);
+			fileUtils.writeToFile(filename, root);
 		}
 		if(cfgPhases.contains(Phase.INITIAL)) {
 			String filename = rootFilename + "_f_initial.xi"; 
-			FileUtils.writeCFGToFile(filename, compUnit.functions().values());
+			fileUtils.writeCFGToFile(filename, compUnit.functions().values());
 		}
 	}
 	
-	private static void writeFinal(IRNode root) {
+	private void writeFinal(IRNode root) {
 		IRCompUnit compUnit = (IRCompUnit) root;
 		String rootFilename = compUnit.name().replaceFirst("\\.xi", "");
 		
 		if(irPhases.contains(Phase.FINAL)) {
 			String filename = rootFilename + "_final.xi"; 
-			FileUtils.writeToFile(filename, root);
+			fileUtils.writeToFile(filename, root);
 		}
 		if(cfgPhases.contains(Phase.FINAL)) {
 			String filename = rootFilename + "_f_final.xi"; 
-			FileUtils.writeCFGToFile(filename, compUnit.functions().values());
+			fileUtils.writeCFGToFile(filename, compUnit.functions().values());
 		}
 	}
 	
-	public static void addCF() {
+	public void addCF() {
 		optsToPerform.add(SupportedOpt.CF);
 	}
 	
-	public static void addCSE() {
+	public void addCSE() {
 		optsToPerform.add(SupportedOpt.CSE);
 	}
 	
-	public static void addINL() {
+	public void addINL() {
 		optsToPerform.add(SupportedOpt.INL);
 	}
 	
-	public static void addCOPY() {
+	public void addCOPY() {
 		optsToPerform.add(SupportedOpt.COPY);
 	}
 	
-	public static void addCP() {
+	public void addCP() {
 		optsToPerform.add(SupportedOpt.CP);
 	}
 	
-	public static void addDCE() {
+	public void addDCE() {
 		optsToPerform.add(SupportedOpt.DCE);
 	}
 	
-	public static void addAll() {
+	public void addLICM() {
+		optsToPerform.add(SupportedOpt.LICM);
+	}
+	
+	public void add(SupportedOpt opt) {
+		optsToPerform.add(opt);
+	}
+	
+	public void addAll() {
 		optsToPerform.addAll(SupportedOpt.getSupportedOpts());
 	}
 	
-	public static void setNodeFactory(IRNodeFactory nodeFactory) {
-		Optimizer.nodeFactory = nodeFactory;
+	public Set<SupportedOpt> getOptsToPerform() {
+		return optsToPerform;
+	}
+	
+	public void setProfiler(PhaseProfiler profiler) {
+		this.profiler = profiler;
 	}
 	
-	public static void setIRPhases(Set<Phase> irPhases) {
-		Optimizer.irPhases = irPhases;
+	/**
+	 * When set, the functions of a comp unit are optimized in parallel. 
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
 	}
 	
-	public static void setCFGPhases(Set<Phase> cfgPhases) {
-		Optimizer.cfgPhases = cfgPhases;
+	public void setIRPhases(Set<Phase> irPhases) {
+		this.irPhases = irPhases;
+	}
+	
+	public void setCFGPhases(Set<Phase> cfgPhases) {
+		this.cfgPhases = cfgPhases;
 	}
 	
 	public static void printSupportedOpts() {
@@ -166,7 +338,8 @@ public class Optimizer {
 		COPY,
 		DCE,
 		CP,
-		INL;
+		INL,
+		LICM;
 		
 		@Override
 		public String toString() {
@@ -178,7 +351,11 @@ public class Optimizer {
 		}
 		
 		public static Set<SupportedOpt> getIROpts(){
-			return SetUtils.elems(CF, CSE, COPY, DCE, CP);
+			return SetUtils.elems(CF, CSE, COPY, DCE, CP, LICM);
+		}
+		
+		public static Set<SupportedOpt> getDataflowOpts(){
+			return SetUtils.elems(CSE, COPY, DCE, CP, LICM);
 		}
 		
 		public static Set<SupportedOpt> getASTOpts(){
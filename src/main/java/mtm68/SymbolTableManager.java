@@ -20,10 +20,30 @@ import mtm68.util.ErrorUtils;
 public class SymbolTableManager {
 	private Map<String, Map<String, FunctionDecl>> useIdToSymTable;
 	private Path libPath;
+	private InterfaceCache interfaceCache;
+	private CompiledInterfaceCache compiledInterfaces;
 	
 	public SymbolTableManager(Path libPath) {
+		this(libPath, null);
+	}
+	
+	public SymbolTableManager(Path libPath, InterfaceCache interfaceCache) {
+		this(libPath, interfaceCache, null);
+	}
+	
+	/**
+	 * @param libPath             location of library interface files
+	 * @param interfaceCache      symbol tables kept from earlier compilations,
+	 *                            or null to parse every interface
+	 * @param compiledInterfaces  symbol tables cached on disk by earlier 
+	 *                            processes, or null to not use them
+	 */
+	public SymbolTableManager(Path libPath, InterfaceCache interfaceCache, 
+			CompiledInterfaceCache compiledInterfaces) {
 		useIdToSymTable = new HashMap<>();
 		this.libPath = libPath;
+		this.interfaceCache = interfaceCache;
+		this.compiledInterfaces = compiledInterfaces;
 	}
 	
 	public Map<String, FunctionDecl> mergeSymbolTables(Program prog) throws SemanticException{
@@ -51,6 +71,24 @@ public class SymbolTableManager {
 
 	private void generateSymbolTableFromLib(Use use) throws FileNotFoundException, SemanticException {
 		String filename = use.getId() + ".ixi";
+		Path file = libPath.resolve(filename);
+		
+		if(interfaceCache != null) {
+			Map<String, FunctionDecl> symTable = interfaceCache.get(file);
+			if(symTable != null) {
+				useIdToSymTable.put(use.getId(), symTable);
+				return;
+			}
+		}
+		
+		if(compiledInterfaces != null) {
+			Map<String, FunctionDecl> symTable = compiledInterfaces.get(file);
+			if(symTable != null) {
+				useIdToSymTable.put(use.getId(), symTable);
+				if(interfaceCache != null) interfaceCache.put(file, symTable);
+				return;
+			}
+		}
 		
 		TokenFactory tokenFactory = new TokenFactory();
 		Lexer lexx = new FileTypeLexer(filename, libPath, FileType.parseFileType(filename), tokenFactory);
@@ -62,6 +100,9 @@ public class SymbolTableManager {
 		if(parseResult.isValidAST()) {
 			Interface root = (Interface)parseResult.getNode().get();
 			generateSymbolTableFromAST(use.getId(), root);
+			Map<String, FunctionDecl> symTable = useIdToSymTable.get(use.getId());
+			if(interfaceCache != null) interfaceCache.put(file, symTable);
+			if(compiledInterfaces != null) compiledInterfaces.put(file, symTable);
 		}
 		else {
 			throw new SemanticException(use, "Parse error in library interface file");
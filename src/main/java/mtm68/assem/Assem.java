@@ -1,5 +1,6 @@
 package mtm68.assem;
 
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -43,12 +44,12 @@ public abstract class Assem implements Cloneable, HasReplaceableRegs {
 	public Set<ReplaceableReg> defReplaceable() {
 		return getReplaceableRegs().stream()
 			.filter(r -> r.getRegType() == RegType.WRITE)
-			.collect(Collectors.toSet());
+			.collect(Collectors.toCollection(LinkedHashSet::new));
 	}
 
 	public Set<ReplaceableReg> useReplaceable() {
 		return getReplaceableRegs().stream()
 			.filter(r -> r.getRegType() == RegType.READ)
-			.collect(Collectors.toSet());
+			.collect(Collectors.toCollection(LinkedHashSet::new));
 	}
 }
@@ -65,10 +65,18 @@ public class FuncDefnAssem extends Assem {
 		return bodyAssem.getReplaceableRegs();
 	}
 	
+	public List<RealReg> getCalleeRegs() {
+		return calleeRegs;
+	}
+	
 	public void setCalleeRegs(List<RealReg> calleeRegs) {
 		this.calleeRegs = calleeRegs;
 	}
 	
+	public int getNumSpilledTemps() {
+		return numSpilledTemps;
+	}
+	
 	public void setNumSpilledTemps(int numSpilledTemps) {
 		this.numSpilledTemps = numSpilledTemps;
 	}
@@ -36,7 +36,27 @@ public class JumpAssem extends Assem {
 		JG,
 		JGE,
 		JLE,
-		JZ;
+		JZ,
+		JB,
+		JAE;
+
+		/**
+		 * The conditional jump taken exactly when this one is not.
+		 */
+		public JumpType negate() {
+			switch(this) {
+			case JE: return JNE;
+			case JZ: return JNE;
+			case JNE: return JE;
+			case JL: return JGE;
+			case JGE: return JL;
+			case JG: return JLE;
+			case JLE: return JG;
+			case JB: return JAE;
+			case JAE: return JB;
+			default: throw new IllegalArgumentException(this + " is unconditional");
+			}
+		}
 
 		@Override
 		public String toString() {
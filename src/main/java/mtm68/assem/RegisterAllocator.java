@@ -1,5 +1,7 @@
 package mtm68.assem;
 
+import java.util.function.Consumer;
+
 public interface RegisterAllocator {
 
 	/**
@@ -11,4 +13,16 @@ public interface RegisterAllocator {
 	 */
 	CompUnitAssem allocateRegisters(CompUnitAssem program);
 
+	/**
+	 * Allocates registers for each function of the program, giving each 
+	 * allocated function to emit in program order as soon as it is done, 
+	 * so functions can be written out while later ones are allocated.
+	 * 
+	 * @param program
+	 * @param emit     takes each allocated function
+	 */
+	default void allocateRegisters(CompUnitAssem program, Consumer<FuncDefnAssem> emit) {
+		allocateRegisters(program).getFunctions().forEach(emit);
+	}
+
 }
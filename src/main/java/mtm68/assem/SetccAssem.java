@@ -14,6 +14,10 @@ public class SetccAssem extends Assem {
 		this.cc = cc;
 	}
 	
+	public CC getCC() {
+		return cc;
+	}
+	
 	@Override
 	public String toString() {
 		return "set" + cc + " al";
@@ -0,0 +1,48 @@
+package mtm68.assem.cfg;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import mtm68.assem.operand.Mem;
+import mtm68.assem.operand.RealReg;
+import mtm68.util.Constants;
+import mtm68.util.SetUtils;
+
+/**
+ * The stack slots of the spilled temps of a function and the callee saved
+ * registers the function uses.
+ */
+class FunctionSpillData {
+	private Map<String, Mem> memMap;
+	private Set<RealReg> calleeSaved;
+	
+	public FunctionSpillData() {
+		memMap = new HashMap<>();
+		calleeSaved = SetUtils.empty();
+	}
+	
+	public void addSpill(String temp) {
+		int size = memMap.size();
+		Mem mem = new Mem(RealReg.RBP, Constants.WORD_SIZE * -(size + 1));
+		memMap.put(temp, mem);
+	}
+	
+	public Mem getMemLocFor(String temp) {
+		return memMap.get(temp);
+	}
+	
+	public int numSpilledTemps() {
+		return memMap.size();
+	}
+	
+	public void addCalleeSaved(RealReg reg) {
+		calleeSaved.add(reg);
+	}
+
+	public List<RealReg> getCalleeSavedAsList(){
+		return calleeSaved.stream().collect(Collectors.toList());
+	}
+}
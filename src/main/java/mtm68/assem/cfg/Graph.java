@@ -41,6 +41,17 @@ public class Graph<T> {
 		return node;
 	}
 
+	/**
+	 * Adds a node that belongs to another graph with the same shape, 
+	 * attaching new data to it. The node keeps its edges.
+	 */
+	public void addNode(Node node, T data) {
+		currNodeId = Math.max(currNodeId, node.getNodeId() + 1);
+		nodes.add(node);
+		dataMap.put(node, data);
+		invDataMap.put(data, node);
+	}
+
 	public T getDataForNode(Node n) {
 		return dataMap.get(n);
 	}
@@ -0,0 +1,340 @@
+package mtm68.assem.cfg;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import edu.cornell.cs.cs4120.util.InternalCompilerError;
+import mtm68.assem.Assem;
+import mtm68.assem.CompUnitAssem;
+import mtm68.assem.FuncDefnAssem;
+import mtm68.assem.MoveAssem;
+import mtm68.assem.RegisterAllocator;
+import mtm68.assem.ReplaceableReg;
+import mtm68.assem.SeqAssem;
+import mtm68.assem.cfg.AssemCFGBuilder.AssemData;
+import mtm68.assem.cfg.Liveness.LiveData;
+import mtm68.assem.operand.RealReg;
+import mtm68.assem.operand.Reg;
+import mtm68.ir.cfg.BitVectorDataflow.Numbering;
+import mtm68.util.ArrayUtils;
+import mtm68.util.FreshTempGenerator;
+
+/**
+ * Performs register allocation by linear scan over live intervals. This
+ * runs in close to linear time in the size of a function, so it is used
+ * for functions too large to color quickly.
+ *
+ * Assems are numbered in the order of the CFG nodes built by liveness.
+ * Each assem has two points: one where the registers live into it are
+ * read, and one where the registers it defines and the registers live
+ * out of it are written. The interval of a temp spans every point it is
+ * live at, so two temps whose intervals don't overlap never interfere.
+ * A real register can be given to a temp unless that register is live
+ * or defined at some point within the temp's interval.
+ *
+ * When registers run out the interval that ends last is spilled. Spilled
+ * temps are rewritten to stack slots and the scan is run again, with
+ * liveness patched for the spill code.
+ */
+public class LinearScanAllocation implements RegisterAllocator {
+
+	private static final boolean PRINT_SPILLS = true;
+
+	private List<RealReg> colors;
+
+	// State for the function being allocated
+	private FunctionSpillData spillData;
+	private SpillRewriter spillRewriter;
+	private Liveness liveness;
+
+	private int[] start;
+	private int[] end;
+	private int[] colorOf;
+	private List<List<Integer>> hints;
+	private BitSet[] colorOccupied;
+	private int[] colorOfReg;
+
+	public LinearScanAllocation(Set<RealReg> colors) {
+		// Caller saved registers come first so callee saved registers are
+		// only pushed when they are needed
+		this(colors.stream()
+				.sorted(Comparator.comparing((RealReg r) -> RealReg.isCalleeSaved(r))
+						.thenComparing(RealReg::getId))
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Creates the allocation context for a single function.
+	 */
+	private LinearScanAllocation(List<RealReg> colors) {
+		this.colors = colors;
+		this.spillData = new FunctionSpillData();
+		this.spillRewriter = new SpillRewriter(spillData);
+	}
+
+	private LinearScanAllocation newContext() {
+		return new LinearScanAllocation(colors);
+	}
+
+	@Override
+	public CompUnitAssem allocateRegisters(CompUnitAssem program) {
+		List<FuncDefnAssem> result = ArrayUtils.empty();
+		allocateRegisters(program, result::add);
+
+		CompUnitAssem newProg = program.copy();
+		newProg.setFunctions(result);
+		return newProg;
+	}
+
+	@Override
+	public void allocateRegisters(CompUnitAssem program, Consumer<FuncDefnAssem> emit) {
+		for(FuncDefnAssem func : program.getFunctions()) {
+			LinearScanAllocation context = newContext();
+
+			List<Assem> assems = FreshTempGenerator.inScope(RegisterAllocation.SPILL_SCOPE,
+					() -> context.allocateFunction(func.getBodyAssem().getAssems()));
+
+			emit.accept(context.newFuncDefn(func, assems));
+		}
+	}
+
+	FuncDefnAssem newFuncDefn(FuncDefnAssem func, List<Assem> assems) {
+		FuncDefnAssem newFuncDefn = new FuncDefnAssem(func.getName(), func.getNumArgs(), new SeqAssem(assems));
+		newFuncDefn.setNumSpilledTemps(spillData.numSpilledTemps());
+		newFuncDefn.setCalleeRegs(spillData.getCalleeSavedAsList());
+		return newFuncDefn;
+	}
+
+	FunctionSpillData getSpillData() {
+		return spillData;
+	}
+
+	/**
+	 * Allocates registers for the body of a single function.
+	 */
+	List<Assem> allocateFunction(List<Assem> assems) {
+		liveness = new Liveness();
+		liveness.performLiveVariableAnalysis(assems);
+
+		while(true) {
+			buildIntervals();
+			List<String> spilled = scan();
+			if(spilled.isEmpty()) break;
+
+			if(PRINT_SPILLS) {
+				System.out.println("Intervals spilled, rewriting.\n\nSpilled Temps ("
+						+ spilled.size() + ")\n=========\n" + String.join("\n", spilled) + "\n");
+			}
+
+			assems = spillRewriter.rewrite(assems, spilled);
+			liveness.updateForSpills(assems, spillRewriter.getOrigins(),
+					spillRewriter.getSpillCode(), spilled.stream().collect(Collectors.toSet()));
+		}
+
+		return substitution(assems);
+	}
+
+	private void buildIntervals() {
+		Numbering<String> regs = liveness.getRegs();
+		Graph<AssemData<LiveData>> graph = liveness.getLiveGraph();
+		List<AssemData<LiveData>> nodeData = graph.getNodes().stream()
+				.map(graph::getDataForNode)
+				.collect(Collectors.toList());
+
+		int numRegs = regs.size();
+		start = new int[numRegs];
+		end = new int[numRegs];
+		colorOf = new int[numRegs];
+		IntStream.range(0, numRegs).forEach(r -> {
+			start[r] = Integer.MAX_VALUE;
+			end[r] = -1;
+			colorOf[r] = -1;
+		});
+
+		Map<String, Integer> colorIdx = new HashMap<>();
+		for(int c = 0; c < colors.size(); c++) {
+			colorIdx.put(colors.get(c).getId(), c);
+		}
+
+		colorOfReg = new int[numRegs];
+		colorOccupied = new BitSet[colors.size()];
+		for(int c = 0; c < colors.size(); c++) {
+			colorOccupied[c] = new BitSet();
+		}
+		for(int r = 0; r < numRegs; r++) {
+			colorOfReg[r] = colorIdx.getOrDefault(regs.get(r), -1);
+		}
+
+		for(int i = 0; i < nodeData.size(); i++) {
+			LiveData data = nodeData.get(i).getFlowData();
+
+			BitSet in = data.getInBits();
+			for(int r = in.nextSetBit(0); r >= 0; r = in.nextSetBit(r + 1)) {
+				occupy(r, 2 * i);
+			}
+
+			BitSet out = (BitSet) data.getOutBits().clone();
+			out.or(data.getDefBits());
+			for(int r = out.nextSetBit(0); r >= 0; r = out.nextSetBit(r + 1)) {
+				occupy(r, 2 * i + 1);
+			}
+		}
+
+		// Temps related by a move would rather share a register
+		hints = ArrayUtils.empty();
+		IntStream.range(0, numRegs).forEach(r -> hints.add(ArrayUtils.empty()));
+
+		for(AssemData<LiveData> data : nodeData) {
+			Assem assem = data.getAssem();
+			if(!(assem instanceof MoveAssem)) continue;
+
+			MoveAssem move = (MoveAssem) assem;
+			if(!(move.getDest() instanceof Reg && move.getSrc() instanceof Reg)) continue;
+
+			int dest = regs.index(((Reg) move.getDest()).getId());
+			int src = regs.index(((Reg) move.getSrc()).getId());
+			hints.get(dest).add(src);
+			hints.get(src).add(dest);
+		}
+	}
+
+	private void occupy(int reg, int point) {
+		if(colorOfReg[reg] >= 0) {
+			colorOccupied[colorOfReg[reg]].set(point);
+		}
+
+		start[reg] = Math.min(start[reg], point);
+		end[reg] = Math.max(end[reg], point);
+	}
+
+	/**
+	 * Assigns colors to temps in order of the start of their intervals.
+	 * Returns the temps that had to be spilled.
+	 */
+	private List<String> scan() {
+		Numbering<String> regs = liveness.getRegs();
+
+		List<Integer> temps = IntStream.range(0, regs.size())
+				.filter(r -> end[r] >= 0 && !RealReg.isRealReg(regs.get(r)))
+				.boxed()
+				.sorted(Comparator.comparingInt((Integer r) -> start[r]).thenComparingInt(r -> r))
+				.collect(Collectors.toList());
+
+		TreeSet<Integer> active = new TreeSet<>(
+				Comparator.comparingInt((Integer r) -> end[r]).thenComparingInt(r -> r));
+		int[] holder = new int[colors.size()];
+		Arrays.fill(holder, -1);
+
+		Set<String> spillTemps = spillRewriter.getSpillTemps();
+		List<String> spilled = ArrayUtils.empty();
+
+		for(int t : temps) {
+			// Free the colors of intervals that have ended
+			while(!active.isEmpty() && end[active.first()] < start[t]) {
+				int done = active.pollFirst();
+				holder[colorOf[done]] = -1;
+			}
+
+			int color = pickColor(t, holder);
+			if(color < 0) {
+				// Take the color of the active interval that ends last
+				// and could give its color to t
+				Integer victim = null;
+				for(int a : active.descendingSet()) {
+					if(spillTemps.contains(regs.get(a))) continue;
+					if(!fits(colorOf[a], t)) continue;
+					victim = a;
+					break;
+				}
+
+				boolean mustColor = spillTemps.contains(regs.get(t));
+				if(victim != null && (end[victim] > end[t] || mustColor)) {
+					color = colorOf[victim];
+					active.remove(victim);
+					colorOf[victim] = -1;
+					spilled.add(regs.get(victim));
+				} else if(mustColor) {
+					// Spilling the temp of a spill would only make more of them
+					throw new InternalCompilerError("No register is free for spill temp " + regs.get(t));
+				} else {
+					spilled.add(regs.get(t));
+					continue;
+				}
+			}
+
+			colorOf[t] = color;
+			holder[color] = t;
+			active.add(t);
+		}
+
+		return spilled;
+	}
+
+	/**
+	 * A free color for t that no real register is in the way of, preferring
+	 * the colors of registers t is moved to or from.
+	 */
+	private int pickColor(int t, int[] holder) {
+		for(int h : hints.get(t)) {
+			int color = colorOfReg[h] >= 0 ? colorOfReg[h] : colorOf[h];
+			if(color >= 0 && holder[color] < 0 && fits(color, t)) return color;
+		}
+
+		for(int c = 0; c < colors.size(); c++) {
+			if(holder[c] < 0 && fits(c, t)) return c;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Whether the real register for color is free over the interval of t.
+	 */
+	private boolean fits(int color, int t) {
+		int next = colorOccupied[color].nextSetBit(start[t]);
+		return next < 0 || next > end[t];
+	}
+
+	private List<Assem> substitution(List<Assem> assems) {
+		Numbering<String> regs = liveness.getRegs();
+		List<Assem> result = ArrayUtils.empty();
+
+		for(Assem assem : assems) {
+			Assem newAssem = assem.copy();
+
+			for(ReplaceableReg reg : newAssem.getReplaceableRegs()) {
+				if(!reg.isAbstract()) continue;
+
+				RealReg color = colors.get(colorOf[regs.index(reg.getName())]);
+				if(RealReg.isCalleeSaved(color)) {
+					spillData.addCalleeSaved(color);
+				}
+
+				reg.replace(color);
+			}
+
+			if(unnecessaryMove(newAssem)) continue;
+
+			result.add(newAssem);
+		}
+
+		return result;
+	}
+
+	private boolean unnecessaryMove(Assem newAssem) {
+		if(newAssem instanceof MoveAssem) {
+			MoveAssem move = (MoveAssem) newAssem;
+			return move.getDest().equals(move.getSrc());
+		}
+		return false;
+	}
+}
@@ -2,63 +2,292 @@ package mtm68.assem.cfg;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import mtm68.assem.Assem;
+import mtm68.assem.JumpAssem;
+import mtm68.assem.LabelAssem;
 import mtm68.assem.cfg.AssemCFGBuilder.AssemData;
 import mtm68.assem.cfg.Graph.Node;
 import mtm68.assem.operand.Reg;
-import mtm68.util.SetUtils;
+import mtm68.ir.cfg.BitVectorData;
+import mtm68.ir.cfg.BitVectorDataflow;
+import mtm68.ir.cfg.BitVectorDataflow.Direction;
+import mtm68.ir.cfg.BitVectorDataflow.Meet;
+import mtm68.ir.cfg.BitVectorDataflow.Numbering;
+import mtm68.util.ArrayUtils;
 
 public class Liveness {
 	
 	private Graph<AssemData<LiveData>> graph;
+	private Numbering<String> regs;
 	
+	// The position of the node for each assem, or -1 for labels and jumps
+	private int[] assemNodes;
+	
+	/**
+	 * Solves liveness with registers numbered densely, so the live sets
+	 * are bit vectors indexed by {@link #getRegs()}.
+	 */
 	public void performLiveVariableAnalysis(List<Assem> assems) {
 		AssemCFGBuilder<LiveData> builder = new AssemCFGBuilder<>();
 
 		graph = builder.buildAssemCFG(assems, LiveData::new);
+		regs = new Numbering<>();
+		assemNodes = numberNodes(assems);
 		
 		List<Node> nodes = graph.getNodes();
-		Set<Node> worklist = new LinkedHashSet<>(nodes);
+		for(Node node : nodes) {
+			AssemData<LiveData> data = graph.getDataForNode(node);
+			setUseDef(data.getAssem(), data.getFlowData());
+		}
 		
-		while(!worklist.isEmpty()) {
-			Node node = worklist.iterator().next();
-			worklist.remove(node);
+		BitVectorDataflow dataflow = solve(nodes, regs.size(), n -> n);
 
-			AssemData<LiveData> data = graph.getDataForNode(node);
-			Assem assem = data.getAssem();
-			
-			LiveData flowData = data.getFlowData();
+		for(int i = 0; i < nodes.size(); i++) {
+			LiveData flowData = graph.getDataForNode(nodes.get(i)).getFlowData();
+			flowData.setFacts(dataflow.getIn(i), dataflow.getOut(i), regs.getFacts());
+		}
+	}
+	
+	/**
+	 * Patches the analysis for a program that spill code was added to 
+	 * instead of solving it again. The CFG nodes of the old program are 
+	 * kept and the spill code spliced in around them. Only the spilled 
+	 * registers and the registers used or defined by the spill code can 
+	 * change liveness, so only those are solved for; the facts for every 
+	 * other register carry over.
+	 * 
+	 * @param assems the program with spill code
+	 * @param origins for each assem, the index of the assem in the old 
+	 * program that it was rewritten from or that it spills for
+	 * @param spillCode which of the assems are spill code
+	 * @param spilled the registers that were spilled
+	 * @return the registers whose liveness was solved again
+	 */
+	public BitSet updateForSpills(List<Assem> assems, int[] origins, BitSet spillCode, Set<String> spilled) {
+		List<Node> oldNodes = graph.getNodes();
+		int[] oldAssemNodes = assemNodes;
+		
+		int nextNodeId = oldNodes.stream()
+				.mapToInt(Node::getNodeId)
+				.max()
+				.orElse(-1) + 1;
+		
+		BitSet spilledRegs = new BitSet();
+		for(String reg : spilled) {
+			spilledRegs.set(regs.index(reg));
+		}
+		BitSet changed = (BitSet) spilledRegs.clone();
 
-			Set<String> inOld = flowData.getLiveIn();
-			
-			Set<String> use = regToStr(assem.use()); 
-			Set<String> def = regToStr(assem.def()); 
+		Graph<AssemData<LiveData>> newGraph = new Graph<>();
+		Map<Node, List<Node>> loads = new HashMap<>();
+		Map<Node, List<Node>> stores = new HashMap<>();
+		Map<Node, LiveData> oldData = new HashMap<>();
+		
+		assemNodes = numberNodes(assems);
+		Node owner = null;
+		List<Node> pendingLoads = ArrayUtils.empty();
+
+		for(int i = 0; i < assems.size(); i++) {
+			if(assemNodes[i] < 0) continue;
+
+			Assem assem = assems.get(i);
+			Node origin = oldNodes.get(oldAssemNodes[origins[i]]);
+
+			if(spillCode.get(i)) {
+				LiveData flowData = new LiveData();
+				setUseDef(assem, flowData);
+				changed.or(flowData.getUseBits());
+				changed.or(flowData.getDefBits());
+
+				Node node = new Node(nextNodeId++, assem.toString());
+				newGraph.addNode(node, new AssemData<>(assem, flowData));
+
+				// Loads come before the assem they are for, stores after
+				if(origin == owner) {
+					stores.computeIfAbsent(origin, n -> ArrayUtils.empty()).add(node);
+				} else {
+					pendingLoads.add(node);
+				}
+			} else {
+				LiveData flowData = graph.getDataForNode(origin).getFlowData();
+				oldData.put(origin, flowData);
 
-			// out = U in 
-			Set<String> out = SetUtils.empty();
-			for(Node succ : node.succ()) {
-				out.addAll(graph.getDataForNode(succ).getFlowData().getLiveIn());
+				LiveData newData = new LiveData();
+				newData.setFacts(flowData.getInBits(), flowData.getOutBits(), regs.getFacts());
+				
+				// Only assems that mentioned a spilled register were rewritten
+				if(flowData.getUseBits().intersects(spilledRegs) || flowData.getDefBits().intersects(spilledRegs)) {
+					setUseDef(assem, newData);
+				} else {
+					newData.setUseDef(flowData.getUseBits(), flowData.getDefBits());
+				}
+				newGraph.addNode(origin, new AssemData<>(assem, newData));
+				
+				if(!pendingLoads.isEmpty()) {
+					loads.put(origin, pendingLoads);
+					pendingLoads = ArrayUtils.empty();
+				}
+				owner = origin;
 			}
-			
-			// in = use U (out - def)
-			Set<String> in = Stream.concat(
-					out.stream().filter(v -> !def.contains(v)),
-					use.stream()).collect(Collectors.toSet());
-			
-			flowData.setLiveIn(in);
-			flowData.setLiveOut(out);
-			
-			if(!inOld.equals(in)) {
-				worklist.addAll(node.pred());
+		}
+		
+		// Splice the spill code into the CFG
+		for(Node node : loads.keySet()) {
+			List<Node> spills = loads.get(node);
+			Node first = spills.get(0);
+
+			for(Node pred : ArrayUtils.elems(node.pred())) {
+				newGraph.removeEdge(pred, node);
+				newGraph.addEdge(pred, first);
+			}
+			chain(newGraph, spills, node);
+		}
+
+		for(Node node : stores.keySet()) {
+			List<Node> spills = stores.get(node);
+			Node last = spills.get(spills.size() - 1);
+
+			for(Node succ : ArrayUtils.elems(node.succ())) {
+				newGraph.removeEdge(node, succ);
+				newGraph.addEdge(last, succ);
 			}
+			newGraph.addEdge(node, spills.get(0));
+			chain(newGraph, spills, null);
+		}
+		
+		// The facts for unchanged registers at spill code are the facts 
+		// next to the assem it was added for
+		for(Node node : loads.keySet()) {
+			BitSet in = oldData.get(node).getInBits();
+			loads.get(node).forEach(n -> 
+				newGraph.getDataForNode(n).getFlowData().setFacts(in, in, regs.getFacts()));
+		}
+		for(Node node : stores.keySet()) {
+			BitSet out = oldData.get(node).getOutBits();
+			stores.get(node).forEach(n -> 
+				newGraph.getDataForNode(n).getFlowData().setFacts(out, out, regs.getFacts()));
+		}
+		
+		graph = newGraph;
+
+		// Solve for the changed registers only, numbered densely
+		int[] changedRegs = changed.stream().toArray();
+		int[] factOfReg = new int[regs.size()];
+		Arrays.fill(factOfReg, -1);
+		for(int f = 0; f < changedRegs.length; f++) {
+			factOfReg[changedRegs[f]] = f;
 		}
+		
+		List<Node> nodes = graph.getNodes();
+		BitVectorDataflow dataflow = solve(nodes, changedRegs.length, r -> factOfReg[r]);
+		
+		for(int i = 0; i < nodes.size(); i++) {
+			LiveData flowData = graph.getDataForNode(nodes.get(i)).getFlowData();
+			
+			BitSet in = patch(flowData.getInBits(), changed, dataflow.getIn(i), changedRegs);
+			BitSet out = patch(flowData.getOutBits(), changed, dataflow.getOut(i), changedRegs);
+			flowData.setFacts(in, out, regs.getFacts());
+		}
+		
+		return changed;
+	}
+	
+	private void chain(Graph<AssemData<LiveData>> graph, List<Node> nodes, Node next) {
+		for(int i = 0; i < nodes.size() - 1; i++) {
+			graph.addEdge(nodes.get(i), nodes.get(i + 1));
+		}
+		if(next != null) graph.addEdge(nodes.get(nodes.size() - 1), next);
+	}
+	
+	/**
+	 * The facts in old for unchanged registers, with the facts solved 
+	 * for the changed registers.
+	 */
+	private BitSet patch(BitSet old, BitSet changed, BitSet solved, int[] changedRegs) {
+		BitSet bits = (BitSet) old.clone();
+		bits.andNot(changed);
+		for(int f = solved.nextSetBit(0); f >= 0; f = solved.nextSetBit(f + 1)) {
+			bits.set(changedRegs[f]);
+		}
+		return bits;
+	}
+	
+	/**
+	 * Solves liveness over the facts that registers are mapped to by 
+	 * factOfReg, ignoring registers mapped to -1.
+	 */
+	private BitVectorDataflow solve(List<Node> nodes, int numFacts, IntUnaryOperator factOfReg) {
+		BitSet[] use = new BitSet[nodes.size()];
+		BitSet[] def = new BitSet[nodes.size()];
+
+		for(int i = 0; i < nodes.size(); i++) {
+			LiveData flowData = graph.getDataForNode(nodes.get(i)).getFlowData();
+			use[i] = toFacts(flowData.getUseBits(), factOfReg);
+			def[i] = toFacts(flowData.getDefBits(), factOfReg);
+		}
+		
+		// in = use U (out - def)
+		BitVectorDataflow dataflow = new BitVectorDataflow(nodes, numFacts, 
+				Direction.BACKWARD, Meet.UNION, (n, out, in) -> {
+					in.or(out);
+					in.andNot(def[n]);
+					in.or(use[n]);
+				});
+		dataflow.solve();
+		
+		return dataflow;
+	}
+	
+	private BitSet toFacts(BitSet regBits, IntUnaryOperator factOfReg) {
+		BitSet facts = new BitSet();
+		for(int r = regBits.nextSetBit(0); r >= 0; r = regBits.nextSetBit(r + 1)) {
+			int f = factOfReg.applyAsInt(r);
+			if(f >= 0) facts.set(f);
+		}
+		return facts;
+	}
+	
+	private void setUseDef(Assem assem, LiveData flowData) {
+		flowData.setUseDef(toBits(assem.use()), toBits(assem.def()));
+	}
+	
+	/**
+	 * Numbers the assems that get a node in the CFG, which is every assem 
+	 * but labels and jumps.
+	 */
+	private int[] numberNodes(List<Assem> assems) {
+		int[] nodes = new int[assems.size()];
+		int count = 0;
+		for(int i = 0; i < assems.size(); i++) {
+			Assem assem = assems.get(i);
+			boolean hasNode = !(assem instanceof LabelAssem || assem instanceof JumpAssem);
+			nodes[i] = hasNode ? count++ : -1;
+		}
+		return nodes;
+	}
+	
+	private BitSet toBits(Set<Reg> regSet) {
+		BitSet bits = new BitSet();
+		for(Reg reg : regSet) {
+			bits.set(regs.index(reg.getId()));
+		}
+		return bits;
+	}
+	
+	/**
+	 * The numbering of the registers in the live sets.
+	 */
+	public Numbering<String> getRegs() {
+		return regs;
 	}
 	
 	public Graph<AssemData<LiveData>> getLiveGraph() {
@@ -155,29 +384,35 @@ public class Liveness {
 		return sb.toString();
 	}
 	
-	public static class LiveData {
-		private Set<String> liveIn; 
-		private Set<String> liveOut; 
+	public static class LiveData extends BitVectorData<String> {
+		private BitSet use;
+		private BitSet def;
 		
-		public LiveData() {
-			liveIn = new HashSet<>();
-			liveOut = new HashSet<>();
+		void setUseDef(BitSet use, BitSet def) {
+			this.use = use;
+			this.def = def;
 		}
 		
-		public Set<String> getLiveIn() {
-			return liveIn;
+		/**
+		 * The registers used by the assem, as numbered by {@link Liveness#getRegs()}.
+		 */
+		public BitSet getUseBits() {
+			return use;
 		}
-		
-		public void setLiveIn(Set<String> liveIn) {
-			this.liveIn = liveIn;
+
+		/**
+		 * The registers defined by the assem, as numbered by {@link Liveness#getRegs()}.
+		 */
+		public BitSet getDefBits() {
+			return def;
 		}
 		
-		public Set<String> getLiveOut() {
-			return liveOut;
+		public Set<String> getLiveIn() {
+			return getIn();
 		}
 		
-		public void setLiveOut(Set<String> liveOut) {
-			this.liveOut = liveOut;
+		public Set<String> getLiveOut() {
+			return getOut();
 		}
 		
 	}
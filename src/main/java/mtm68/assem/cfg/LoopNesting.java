@@ -0,0 +1,198 @@
+package mtm68.assem.cfg;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mtm68.assem.cfg.Graph.Node;
+import mtm68.util.ArrayUtils;
+
+/**
+ * Finds the natural loops of a CFG and the loop depth of every node, the
+ * number of loops the node is in. The first node is the entry.
+ *
+ * Dominators are found with the algorithm of Cooper, Harvey and Kennedy.
+ * An edge to a node that dominates its source is a back edge, and the loop
+ * of a header is every node that reaches one of its back edges without
+ * going through the header. Nodes the entry can't reach are in no loops.
+ */
+public class LoopNesting {
+
+	private int numNodes;
+	private int[][] preds;
+	private int[][] succs;
+
+	private int[] order;
+	private int[] position;
+	private int[] idom;
+	private int[] depth;
+	private Map<Integer, BitSet> loops;
+
+	public LoopNesting(List<Node> nodes) {
+		this.numNodes = nodes.size();
+
+		Map<Node, Integer> nodeIdx = new HashMap<>();
+		for(int i = 0; i < numNodes; i++) {
+			nodeIdx.put(nodes.get(i), i);
+		}
+
+		preds = new int[numNodes][];
+		succs = new int[numNodes][];
+		for(int i = 0; i < numNodes; i++) {
+			preds[i] = nodes.get(i).pred().stream().mapToInt(nodeIdx::get).toArray();
+			succs[i] = nodes.get(i).succ().stream().mapToInt(nodeIdx::get).toArray();
+		}
+
+		depth = new int[numNodes];
+		loops = new LinkedHashMap<>();
+		if(numNodes == 0) return;
+
+		reversePostorder();
+		findDominators();
+		findLoops();
+	}
+
+	/**
+	 * The number of loops node n is in.
+	 */
+	public int getDepth(int n) {
+		return depth[n];
+	}
+
+	/**
+	 * The headers of the natural loops, with the header of a loop before
+	 * the headers of the loops inside it.
+	 */
+	public List<Integer> getHeaders() {
+		return ArrayUtils.elems(loops.keySet());
+	}
+
+	/**
+	 * The nodes of the natural loop of header, including the header.
+	 */
+	public BitSet getLoop(int header) {
+		return loops.get(header);
+	}
+
+	/**
+	 * Whether node a dominates node b. Nothing dominates a node the entry
+	 * can't reach.
+	 */
+	public boolean dominates(int a, int b) {
+		if(position[a] < 0 || position[b] < 0) return false;
+
+		while(position[b] > position[a]) {
+			b = idom[b];
+		}
+		return a == b;
+	}
+
+	private void reversePostorder() {
+		int[] postorder = new int[numNodes];
+		int count = 0;
+
+		boolean[] visited = new boolean[numNodes];
+		int[] stack = new int[numNodes];
+		int[] nextSucc = new int[numNodes];
+
+		int sp = 0;
+		stack[sp++] = 0;
+		visited[0] = true;
+
+		while(sp > 0) {
+			int n = stack[sp - 1];
+			if(nextSucc[n] < succs[n].length) {
+				int s = succs[n][nextSucc[n]++];
+				if(!visited[s]) {
+					visited[s] = true;
+					stack[sp++] = s;
+				}
+			} else {
+				postorder[count++] = n;
+				sp--;
+			}
+		}
+
+		order = new int[count];
+		position = new int[numNodes];
+		Arrays.fill(position, -1);
+		for(int i = 0; i < count; i++) {
+			order[i] = postorder[count - 1 - i];
+			position[order[i]] = i;
+		}
+	}
+
+	private void findDominators() {
+		idom = new int[numNodes];
+		Arrays.fill(idom, -1);
+		idom[0] = 0;
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+
+			for(int i = 1; i < order.length; i++) {
+				int n = order[i];
+
+				int newIdom = -1;
+				for(int p : preds[n]) {
+					if(idom[p] < 0) continue;
+					newIdom = newIdom < 0 ? p : intersect(p, newIdom);
+				}
+
+				if(idom[n] != newIdom) {
+					idom[n] = newIdom;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private int intersect(int a, int b) {
+		while(a != b) {
+			while(position[a] > position[b]) a = idom[a];
+			while(position[b] > position[a]) b = idom[b];
+		}
+		return a;
+	}
+
+	private void findLoops() {
+		int[] inLoop = new int[numNodes];
+		Arrays.fill(inLoop, -1);
+		int[] stack = new int[numNodes];
+
+		for(int header : order) {
+			int sp = 0;
+			for(int p : preds[header]) {
+				if(!dominates(header, p) || inLoop[p] == header) continue;
+				inLoop[p] = header;
+				stack[sp++] = p;
+			}
+			if(sp == 0) continue;
+
+			// Walk backwards from the back edges up to the header
+			BitSet loop = new BitSet(numNodes);
+			loops.put(header, loop);
+
+			inLoop[header] = header;
+			depth[header]++;
+			loop.set(header);
+
+			while(sp > 0) {
+				int n = stack[--sp];
+				if(n == header) continue;
+				depth[n]++;
+				loop.set(n);
+
+				for(int p : preds[n]) {
+					if(inLoop[p] == header || position[p] < 0) continue;
+					inLoop[p] = header;
+					stack[sp++] = p;
+				}
+			}
+		}
+	}
+}
@@ -2,13 +2,17 @@ package mtm68.assem.cfg;
 
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,13 +27,14 @@ import mtm68.assem.SeqAssem;
 import mtm68.assem.cfg.AssemCFGBuilder.AssemData;
 import mtm68.assem.cfg.Liveness.LiveData;
 import mtm68.assem.operand.Dest;
-import mtm68.assem.operand.FreshRegGenerator;
-import mtm68.assem.operand.Mem;
 import mtm68.assem.operand.RealReg;
 import mtm68.assem.operand.Reg;
 import mtm68.assem.operand.Src;
+import mtm68.ir.cfg.BitVectorDataflow.Numbering;
 import mtm68.util.ArrayUtils;
-import mtm68.util.Constants;
+import mtm68.util.FreshTempGenerator;
+import mtm68.util.PhaseProfiler;
+import mtm68.util.PhaseProfiler.Measurement;
 import mtm68.util.SetUtils;
 
 /**
@@ -43,15 +48,26 @@ public class RegisterAllocation implements RegisterAllocator{
 	private static final boolean PRINT_SPILLS = true;
 	private static final boolean PRINT_PROGRAM_REWRITE = false;
 	
+	// Functions with more assems than this are allocated by linear scan
+	public static final int DEFAULT_LINEAR_SCAN_THRESHOLD = 10000;
+	
+	// Spill temps never leave the context of their function, so every function
+	// uses the same namespace. A function's allocation then doesn't depend on 
+	// where it is in the file, which the function cache relies on.
+	static final String SPILL_SCOPE = "0r";
+	
 	private Map<String, RealReg> colors;
-	private Map<String, FunctionSpillData> funcData;
-	private Map<String, String> tempToFuncMap;
+	private boolean parallel;
+	private int linearScanThreshold = DEFAULT_LINEAR_SCAN_THRESHOLD;
+	private PhaseProfiler profiler = PhaseProfiler.DISABLED;
+	
+	// State for the function being allocated
+	private FunctionSpillData spillData;
 	
 	private int k;
-	private Graph<String> interferenceGraph;
+	private Liveness liveness;
 	private Graph<AssemData<LiveData>> liveGraph;
 	private Stack<Node> selectStack;
-	private Map<Node, Integer> degreeMap;
 	
 	// Worklists
 	private Set<Node> simplifyWorklist;
@@ -68,60 +84,154 @@ public class RegisterAllocation implements RegisterAllocator{
 	private Map<String, Node> nodeMap;
 	private List<Node> initial;
 	private Set<Node> precolored;
-	private Set<Edge> adjSet;
-	private Map<Node, List<Node>> adjList;
 	private Map<Node, Set<Move>> moveList;
 	private Map<Node, Node> alias;
 	private Set<Node> spilledNodes;
 	private Set<Node> coloredNodes;
 	private Set<Node> coalescedNodes;
 	private Map<String, String> colorMap;
-	private Set<String> spilledTemps;
+	private SpillRewriter spillRewriter;
+	
+	// Interference graph over the nodes numbered densely. Edges are kept
+	// in a lower triangular bit matrix; adjacency lists and degrees are
+	// only kept for nodes that aren't precolored.
+	private List<Node> nodes;
+	private long[] adjMatrix;
+	private int[][] adjList;
+	private int[] adjCount;
+	private int[] degree;
+	private int[] regToNode;
+	
+	// Uses and defs of each node, weighted by the loop depth they are at
+	private double[] spillWeight;
+	
+	// The interference graph as it was built, before coalescing, so it
+	// can be patched instead of built again after spilling
+	private long[] builtAdjMatrix;
+	private int[][] builtAdjList;
+	private int[] builtAdjCount;
+	private int[] builtDegree;
 	
 	public RegisterAllocation(Set<RealReg> colors) {
-		this.colors = colors.stream()
-				.collect(Collectors.toMap(c -> c.getId(), c -> c));
+		this(colors.stream()
+				.collect(Collectors.toMap(c -> c.getId(), c -> c)));
+	}
+	
+	/**
+	 * Creates the allocation context for a single function.
+	 */
+	private RegisterAllocation(Map<String, RealReg> colors) {
+		this.colors = colors;
+		this.spillData = new FunctionSpillData();
+		this.spillRewriter = new SpillRewriter(spillData);
 	}
 	
+	public void setProfiler(PhaseProfiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	/**
+	 * When set, the functions of a program are colored in parallel. 
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+	
+	/**
+	 * Functions with more assems than the threshold are allocated with
+	 * {@link LinearScanAllocation} instead of being colored.
+	 */
+	public void setLinearScanThreshold(int linearScanThreshold) {
+		this.linearScanThreshold = linearScanThreshold;
+	}
+	
+	/**
+	 * Colors each function with its own allocation context, so functions 
+	 * can be allocated independently. Temps created for spills come from
+	 * a namespace of their own, so they are named the same in parallel mode.
+	 * Functions above the linear scan threshold are allocated by linear scan.
+	 */
 	@Override
 	public CompUnitAssem allocateRegisters(CompUnitAssem program) {
-		tempToFuncMap = new HashMap<>();
-		funcData = new HashMap<>();
-		
 		List<FuncDefnAssem> result = ArrayUtils.empty();
-		for(FuncDefnAssem func : program.getFunctions()) {
-			spilledTemps = new HashSet<>();
-
+		allocateRegisters(program, result::add);
+		
+		CompUnitAssem newProg = program.copy();
+		newProg.setFunctions(result);
+		return newProg;
+	}
+	
+	/**
+	 * Each function is emitted as soon as it and the functions before it
+	 * are allocated. In parallel mode every function is forked first, so
+	 * later functions are allocated while earlier ones are emitted.
+	 */
+	@Override
+	public void allocateRegisters(CompUnitAssem program, Consumer<FuncDefnAssem> emit) {
+		List<FuncDefnAssem> funcs = program.getFunctions();
+
+		Set<RealReg> colorSet = new HashSet<>(colors.values());
+		List<FunctionSpillData> funcData = ArrayUtils.empty();
+		List<ForkJoinTask<List<Assem>>> tasks = ArrayUtils.empty();
+		for(int i = 0; i < funcs.size(); i++) {
+			List<Assem> funcAssems = funcs.get(i).getBodyAssem().getAssems();
+
+			String funcName = funcs.get(i).getName();
+
+			if(funcAssems.size() > linearScanThreshold) {
+				LinearScanAllocation context = new LinearScanAllocation(colorSet);
+				funcData.add(context.getSpillData());
+				tasks.add(ForkJoinTask.adapt(() -> profile(program.getName(), funcName, "linear-scan", 
+					() -> FreshTempGenerator.inScope(SPILL_SCOPE, () -> context.allocateFunction(funcAssems)))));
+			} else {
+				RegisterAllocation context = new RegisterAllocation(colors);
+				funcData.add(context.spillData);
+				tasks.add(ForkJoinTask.adapt(() -> profile(program.getName(), funcName, "color", 
+					() -> FreshTempGenerator.inScope(SPILL_SCOPE, () -> context.doRegisterAllocation(funcAssems)))));
+			}
+		}
+		
+		if(parallel) {
+			tasks.forEach(ForkJoinTask::fork);
+		}
+		
+		for(int i = 0; i < funcs.size(); i++) {
+			FuncDefnAssem func = funcs.get(i);
 			String funcName = func.getName();
-			funcData.put(funcName, new FunctionSpillData());
-			
-			List<Assem> funcAssems = func.getBodyAssem().getAssems();
-
-			funcAssems.stream()
-				.map(Assem::getReplaceableRegs)
-				.flatMap(List::stream)
-				.filter(ReplaceableReg::isAbstract)
-				.map(ReplaceableReg::getName)
-				.forEach(t -> tempToFuncMap.put(t, funcName));
-			
-			SeqAssem newFuncBody = new SeqAssem(doRegisterAllocation(funcAssems));
+
+			List<Assem> allocated = parallel ? tasks.get(i).join() : tasks.get(i).invoke();
+			SeqAssem newFuncBody = new SeqAssem(allocated);
 			FuncDefnAssem newFuncDefn = new FuncDefnAssem(funcName, func.getNumArgs(), newFuncBody);  
 
-			FunctionSpillData spillData = funcData.get(funcName);
+			FunctionSpillData spillData = funcData.get(i);
 			newFuncDefn.setNumSpilledTemps(spillData.numSpilledTemps());
 			newFuncDefn.setCalleeRegs(spillData.getCalleeSavedAsList());
 			
-			result.add(newFuncDefn);
+			// Drop the allocated code so only the caller holds on to it
+			tasks.set(i, null);
+			emit.accept(newFuncDefn);
 		}
-		
-		CompUnitAssem newProg = program.copy();
-		newProg.setFunctions(result);
-		return newProg;
+	}
+	
+	private List<Assem> profile(String filename, String funcName, String phase, Supplier<List<Assem>> allocation) {
+		Measurement measurement = profiler.start(filename, funcName, phase);
+		List<Assem> result = allocation.get();
+		measurement.stop().assems(result);
+		return result;
 	}
 	
 	private List<Assem> doRegisterAllocation(List<Assem> assems) {
 		init();
 		build(assems);
+		return color(assems);
+	}
+	
+	/**
+	 * Colors the interference graph. If any temps spill, the program is 
+	 * rewritten and colored again with the patched graph.
+	 */
+	private List<Assem> color(List<Assem> assems) {
+		computeSpillWeights();
 		makeWorklists();
 
 		if(CHECK_INVARIANTS) checkInvariants();
@@ -138,17 +248,51 @@ public class RegisterAllocation implements RegisterAllocator{
 		assignColors();
 		if(!spilledNodes.isEmpty()) {
 			List<Assem> newAssems = rewriteProgram(assems);
-			return doRegisterAllocation(newAssems);
+			return color(newAssems);
 		}
 		
 		return substitution(assems);
 	}
 	
+	/**
+	 * Each use or def of a register counts 10^d towards the spill weight of
+	 * its node, where d is the loop depth of the assem it is in.
+	 */
+	private void computeSpillWeights() {
+		LoopNesting loops = new LoopNesting(liveGraph.getNodes());
+		List<LiveData> nodeData = liveData();
+
+		spillWeight = new double[nodes.size()];
+		for(int i = 0; i < nodeData.size(); i++) {
+			double weight = Math.pow(10, loops.getDepth(i));
+			LiveData data = nodeData.get(i);
+
+			addSpillWeight(data.getUseBits(), weight);
+			addSpillWeight(data.getDefBits(), weight);
+		}
+	}
+	
+	private void addSpillWeight(BitSet regs, double weight) {
+		for(int r = regs.nextSetBit(0); r >= 0; r = regs.nextSetBit(r + 1)) {
+			if(regToNode[r] >= 0) spillWeight[regToNode[r]] += weight;
+		}
+	}
+	
 	public Map<String, String> getColorMap() {
 		return colorMap;
 	}
 	
 	private void init() {
+		nodeMap = new HashMap<>();
+		nodes = ArrayUtils.empty();
+		precolored = new HashSet<>();
+
+		k = colors.size();
+		
+		resetWorklists();
+	}
+	
+	private void resetWorklists() {
 		simplifyWorklist = new HashSet<>();
 		spillWorklist = new HashSet<>();
 		freezeWorklist = new HashSet<>();
@@ -160,10 +304,7 @@ public class RegisterAllocation implements RegisterAllocator{
 		worklistMoves = new HashSet<>();
 		activeMoves = new HashSet<>();
 
-		nodeMap = new HashMap<>();
-		degreeMap = new HashMap<>();
-		adjSet = new HashSet<>();
-		adjList = new HashMap<>();
+		initial = ArrayUtils.empty();
 		moveList = new HashMap<>();
 		spilledNodes = new HashSet<>();
 		coloredNodes = new HashSet<>();
@@ -175,87 +316,217 @@ public class RegisterAllocation implements RegisterAllocator{
 		for(String color : colors.keySet()) {
 			colorMap.put(color, color);
 		}
-
-		k = colors.size();
 	}
 	
 	private void build(List<Assem> assems) {
-		Liveness liveness = new Liveness();
+		liveness = new Liveness();
 		liveness.performLiveVariableAnalysis(assems);
 		
 		liveGraph = liveness.getLiveGraph();
-		interferenceGraph = liveness.getInterferenceGraph();
 		
 		if(SHOW_GRAPHS) showGraphs(liveness);
 
-		initial = ArrayUtils.elems(interferenceGraph.getNodes()).stream()
-				.map(interferenceGraph::getDataForNode)
-				.filter(r -> !RealReg.isRealReg(r))
-				.map(t -> new Node(t, NodeWorklist.INITIAL))
-				.collect(Collectors.toList());
-		
-		precolored = colors.keySet().stream()
-				.map(t -> new Node(t, NodeWorklist.PRECOLORED))
-				.collect(Collectors.toSet());
-
 		// The stack point and base pointer can't be used as colors
 		// but they can interfere with other nodes and are considered
 		// precolored.
-		precolored.add(new Node("rbp", NodeWorklist.PRECOLORED));
-		precolored.add(new Node("rsp", NodeWorklist.PRECOLORED));
-
-		Stream.concat(initial.stream(), precolored.stream()).forEach(node -> {
-			degreeMap.put(node, 0);
-			adjList.put(node, ArrayUtils.empty());
-			nodeMap.put(node.getId(), node);
-		});
+		colors.keySet().forEach(this::createNode);
+		createNode("rbp");
+		createNode("rsp");
+		
+		List<LiveData> nodeData = liveData();
+		Numbering<String> regs = liveness.getRegs();
+
+		// The graph has a node for every register that is defined or is
+		// live out of a definition
+		for(LiveData data : nodeData) {
+			BitSet defined = data.getDefBits();
+			if(defined.isEmpty()) continue;
+
+			BitSet live = data.getOutBits();
+			defined.stream().forEach(d -> createNode(regs.get(d)));
+			live.stream().forEach(l -> createNode(regs.get(l)));
+		}
+		
+		int n = nodes.size();
+		adjMatrix = new long[matrixSize(n)];
+		adjList = new int[n][];
+		adjCount = new int[n];
+		degree = new int[n];
+		updateRegToNode();
+		
+		for(AssemData<LiveData> data : assemData()) {
+			addInterferences(data.getAssem(), data.getFlowData(), null);
+		}
+		
+		resetNodes();
+		buildMoves();
+		saveGraph();
+	}
+	
+	/**
+	 * Patches liveness and the interference graph after the spilled temps
+	 * have been rewritten into short lived temps. Only interferences with 
+	 * the registers whose liveness changed are recomputed.
+	 * 
+	 * @see Liveness#updateForSpills
+	 */
+	private void rebuild(List<Assem> assems, int[] origins, BitSet spillCode) {
+		Set<String> spilled = spilledNodes.stream()
+				.map(Node::getId)
+				.collect(Collectors.toSet());
+
+		BitSet changed = liveness.updateForSpills(assems, origins, spillCode, spilled);
+		liveGraph = liveness.getLiveGraph();
+		
+		resetWorklists();
+		restoreGraph();
+		
+		for(int r = changed.nextSetBit(0); r >= 0 && r < regToNode.length; r = changed.nextSetBit(r + 1)) {
+			if(regToNode[r] >= 0) removeInterferences(regToNode[r]);
+		}
+		spilled.forEach(nodeMap::remove);
+
+		List<LiveData> nodeData = liveData();
+		Numbering<String> regs = liveness.getRegs();
+		
+		for(LiveData data : nodeData) {
+			BitSet defined = data.getDefBits();
+			if(defined.isEmpty()) continue;
+			
+			BitSet live = data.getOutBits();
+			defined.stream().filter(changed::get).forEach(d -> createNode(regs.get(d)));
+			live.stream().filter(changed::get).forEach(l -> createNode(regs.get(l)));
+		}
+		
+		growGraph(nodes.size());
+		updateRegToNode();
+
+		for(AssemData<LiveData> data : assemData()) {
+			addInterferences(data.getAssem(), data.getFlowData(), changed);
+		}
+		
+		resetNodes();
+		buildMoves();
+		saveGraph();
 		
-		List<AssemData<LiveData>> nodeData = liveGraph.getNodes().stream()
+		if(CHECK_INVARIANTS) checkRebuildInvariant(assems);
+	}
+	
+	private List<AssemData<LiveData>> assemData() {
+		return liveGraph.getNodes().stream()
 				.map(liveGraph::getDataForNode)
 				.collect(Collectors.toList());
+	}
+	
+	private List<LiveData> liveData() {
+		return assemData().stream()
+				.map(AssemData::getFlowData)
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Adds the interferences at an assem: whatever it defines interferes 
+	 * with whatever is live out of it, except for the source of a move. 
+	 * If only is given, only interferences with those registers are added.
+	 */
+	private void addInterferences(Assem assem, LiveData data, BitSet only) {
+		BitSet defined = data.getDefBits();
+		if(defined.isEmpty()) return;
+
+		BitSet live = data.getOutBits();
+		Reg moveSrc = regMoveSrc(assem);
+		if(moveSrc != null) {
+			live = (BitSet) live.clone();
+			live.clear(liveness.getRegs().index(moveSrc.getId()));
+		}
+		
+		BitSet onlyLive = null;
+		if(only != null) {
+			onlyLive = (BitSet) live.clone();
+			onlyLive.and(only);
+		}
 
-		for(AssemData<LiveData> data : nodeData) {
+		for(int d = defined.nextSetBit(0); d >= 0; d = defined.nextSetBit(d + 1)) {
+			BitSet interferes = only == null || only.get(d) ? live : onlyLive;
+			int u = regToNode[d];
+
+			for(int l = interferes.nextSetBit(0); l >= 0; l = interferes.nextSetBit(l + 1)) {
+				addEdge(u, regToNode[l]);
+			}
+		}
+	}
+	
+	private void buildMoves() {
+		for(AssemData<LiveData> data : assemData()) {
 			Assem assem = data.getAssem();
+			Reg srcReg = regMoveSrc(assem);
+			if(srcReg == null) continue;
 
-			Set<String> live = data.getFlowData().getLiveOut();
-			Set<String> defined = regsToStrs(assem.def());
+			Reg destReg = (Reg) ((MoveAssem) assem).getDest();
+			
+			Node destNode = nodeMap.get(destReg.getId());
+			Node srcNode = nodeMap.get(srcReg.getId());
 			
-			if(assem instanceof MoveAssem) {
-				MoveAssem moveAssem = (MoveAssem) assem;
+			Move move = new Move(destNode, srcNode, MoveSet.WORKLIST);
 
-				Dest dest = moveAssem.getDest();
-				Src src = moveAssem.getSrc();
-				
-				if(dest instanceof Reg && src instanceof Reg) {
-					Reg destReg = (Reg) dest;
-					Reg srcReg = (Reg) src;
-					
-					Node destNode = nodeMap.get(destReg.getId());
-					Node srcNode = nodeMap.get(srcReg.getId());
-					
-					Move move = new Move(destNode, srcNode, MoveSet.WORKLIST);
-
-					addToMoveList(destNode, move);
-					addToMoveList(srcNode, move);
-					addToWorklistMoves(move);
-					
-					live.remove(srcNode.getId());
-				}
-			}
+			addToMoveList(destNode, move);
+			addToMoveList(srcNode, move);
+			addToWorklistMoves(move);
+		}
+	}
+	
+	/**
+	 * The source of a move between registers, or null for any other assem.
+	 */
+	private Reg regMoveSrc(Assem assem) {
+		if(assem instanceof MoveAssem) {
+			MoveAssem moveAssem = (MoveAssem) assem;
+
+			Dest dest = moveAssem.getDest();
+			Src src = moveAssem.getSrc();
 			
-			for(String d : defined) {
-				for(String l : live) {
-					addEdge(d, l);
-				}
-			}
+			if(dest instanceof Reg && src instanceof Reg) return (Reg) src;
 		}
+		return null;
 	}
+	
+	private void createNode(String temp) {
+		if(nodeMap.containsKey(temp)) return;
 
-	private void makeWorklists() {
-		Iterator<Node> iterator = initial.iterator();
-		while(iterator.hasNext()) {
-			Node node = iterator.next();
+		boolean isPrecolored = RealReg.isRealReg(temp);
+		Node node = new Node(temp, nodes.size(), 
+				isPrecolored ? NodeWorklist.PRECOLORED : NodeWorklist.INITIAL);
+
+		nodes.add(node);
+		nodeMap.put(temp, node);
+
+		if(isPrecolored) precolored.add(node);
+	}
+	
+	/**
+	 * Puts every node that isn't precolored or spilled back in initial.
+	 */
+	private void resetNodes() {
+		for(Node node : nodes) {
+			if(precolored(node) || nodeMap.get(node.getId()) != node) continue;
+
+			node.setWorklist(NodeWorklist.INITIAL);
+			initial.add(node);
+		}
+	}
+	
+	private void updateRegToNode() {
+		Numbering<String> regs = liveness.getRegs();
+
+		regToNode = new int[regs.size()];
+		for(int r = 0; r < regs.size(); r++) {
+			Node node = nodeMap.get(regs.get(r));
+			regToNode[r] = node == null ? -1 : node.getIndex();
+		}
+	}
 
+	private void makeWorklists() {
+		for(Node node : initial) {
 			if(degree(node) >= k) {
 				addToSpillWorklist(node);
 			} 
@@ -265,9 +536,9 @@ public class RegisterAllocation implements RegisterAllocator{
 			else {
 				addToSimplifyWorklist(node);
 			}
-
-			iterator.remove();
 		}
+		
+		initial.clear();
 	}
 
 	private void simplify() {
@@ -295,12 +566,10 @@ public class RegisterAllocation implements RegisterAllocator{
 			v = y;
 		}
 		
-		Edge uv = new Edge(u, v);
-		
 		if(u.equals(v)) {
 			addToCoalescedMoves(move);
 			addWorkList(u);
-		} else if (precolored(v) || adjSet.contains(uv)) {
+		} else if (precolored(v) || interferes(u, v)) {
 			addToConstrainedMoves(move);
 			addWorkList(u);
 			addWorkList(v);
@@ -328,19 +597,24 @@ public class RegisterAllocation implements RegisterAllocator{
 		freezeMoves(node);
 	}
 
+	/**
+	 * Picks the node with the lowest spill cost, its spill weight divided by
+	 * its degree. Temps used in loops are expensive to spill, and spilling
+	 * a node of high degree makes the most room in the graph.
+	 */
 	private void selectSpill() {
 		Node bestSpill = null;
-		int bestDegree = 0;
+		double bestCost = Double.POSITIVE_INFINITY;
 		
 		for(Node spill : spillWorklist) {
 			// Don't spill a temp that's already been spilled
-			if(spilledTemps.contains(spill.getId())) {
+			if(spillRewriter.getSpillTemps().contains(spill.getId())) {
 				continue;
 			}
 
-			int deg = degree(spill);
-			if(deg > bestDegree) {
-				bestDegree = deg;
+			double cost = spillWeight[spill.getIndex()] / degree(spill);
+			if(cost < bestCost) {
+				bestCost = cost;
 				bestSpill = spill;
 			}
 		}
@@ -362,8 +636,9 @@ public class RegisterAllocation implements RegisterAllocator{
 			Node node = selectStack.pop();
 			Set<String> okColors = SetUtils.copy(colors.keySet()); 
 			
-			for(Node adj : adjList.get(node)) {
-				Node alias = getAlias(adj);
+			int idx = node.getIndex();
+			for(int i = 0; i < adjCount[idx]; i++) {
+				Node alias = getAlias(nodes.get(adjList[idx][i]));
 				if(coloredNodes.contains(alias) || precolored(alias)) {
 					String temp = alias.getId(); 
 					okColors.remove(colorMap.get(temp));
@@ -381,7 +656,7 @@ public class RegisterAllocation implements RegisterAllocator{
 				// Record used callee saved register
 				RealReg reg = colors.get(color); 
 				if(RealReg.isCalleeSaved(reg)) {
-					funcData.get(tempToFuncMap.get(temp)).addCalleeSaved(reg);
+					spillData.addCalleeSaved(reg);
 				}
 				
 				colorMap.put(temp, color);
@@ -398,43 +673,22 @@ public class RegisterAllocation implements RegisterAllocator{
 
 	private List<Assem> rewriteProgram(List<Assem> assems) {
 		if(PRINT_SPILLS) {
-			System.out.println("Nodes spilled, rewriting.");
-			System.out.println();
-
-			System.out.println("Previously spilled temps: " + spilledTemps);
-			System.out.println("Spilled Nodes (" + spilledNodes.size() + ")\n=========");
-			spilledNodes.forEach(System.out::println);
-			System.out.println();
+			// Printed as one block so reports from files compiled in 
+			// parallel don't interleave
+			StringBuilder sb = new StringBuilder();
+			sb.append("Nodes spilled, rewriting.\n\n");
+
+			sb.append("Previously spilled temps: " + spillRewriter.getSpillTemps() + "\n");
+			sb.append("Spilled Nodes (" + spilledNodes.size() + ")\n=========\n");
+			spilledNodes.forEach(n -> sb.append(n + "\n"));
+			System.out.println(sb);
 		}
 
-		Map<String, Mem> memLocs = new HashMap<>();
-		for(Node spilled : spilledNodes) {
-			String temp = spilled.getId(); 
-			String func = tempToFuncMap.get(temp);
-
-			FunctionSpillData spillData = funcData.get(func);
-			spillData.addSpill(temp);
-			
-			memLocs.put(temp, spillData.getMemLocFor(temp));
-		}
-		
-		List<Assem> result = ArrayUtils.empty();
-		for(Assem assem : assems) {
-			Assem newAssem = assem.copy();
-
-			Set<ReplaceableReg> uses = newAssem.useReplaceable().stream()
-					.filter(ReplaceableReg::isAbstract)
-					.collect(Collectors.toSet());
+		List<String> spilled = spilledNodes.stream()
+				.map(Node::getId)
+				.collect(Collectors.toList());
 
-			Set<ReplaceableReg> defs = newAssem.defReplaceable().stream()
-					.filter(ReplaceableReg::isAbstract)
-					.collect(Collectors.toSet());
-			
-			replaceRegs(result, uses, memLocs, true);
-			result.add(newAssem);
-			replaceRegs(result, defs, memLocs, false);
-		}
-			
+		List<Assem> result = spillRewriter.rewrite(assems, spilled);
 		
 		if(PRINT_PROGRAM_REWRITE) {
 			System.out.println("Original\n========");
@@ -445,32 +699,12 @@ public class RegisterAllocation implements RegisterAllocator{
 			result.forEach(System.out::println);
 			System.out.println();
 		}
+		
+		rebuild(result, spillRewriter.getOrigins(), spillRewriter.getSpillCode());
 
 		return result;
 	}
 
-	private void replaceRegs(List<Assem> result, Set<ReplaceableReg> regs, Map<String, Mem> memLocs, boolean readFromStack) {
-			for(ReplaceableReg reg : regs) {
-				String regName = reg.getName();
-				if(!memLocs.containsKey(regName)) continue;
-
-				Reg newTemp = FreshRegGenerator.getFreshAbstractReg();
-				spilledTemps.add(newTemp.getId());
-
-				tempToFuncMap.put(newTemp.getId(), tempToFuncMap.get(regName));
-				Mem stackLoc = memLocs.get(regName);
-				
-				if(readFromStack) {
-					result.add(new MoveAssem(newTemp, stackLoc));
-				} else {
-					result.add(new MoveAssem(stackLoc, newTemp));
-				}
-				
-				reg.replace(newTemp);
-			}
-		
-	}
-	
 	private List<Assem> substitution(List<Assem> assems) {
 		List<Assem> result = ArrayUtils.empty();
 		
@@ -517,7 +751,12 @@ public class RegisterAllocation implements RegisterAllocator{
 			Set<Node> union = new HashSet<>(precolored);
 			union.addAll(degreeNodes);
 
-			int size = SetUtils.intersect(new HashSet<>(adjList.get(u)), union).size();
+			Set<Node> adj = new HashSet<>();
+			for(int i = 0; i < adjCount[u.getIndex()]; i++) {
+				adj.add(nodes.get(adjList[u.getIndex()][i]));
+			}
+
+			int size = SetUtils.intersect(adj, union).size();
 			
 			if(degree(u) != size) {
 				throw new InternalCompilerError("Degree invariant violated for " + u + ". " + degree(u) + " != " + size);
@@ -552,6 +791,42 @@ public class RegisterAllocation implements RegisterAllocator{
 		}
 	}
 
+	/**
+	 * Checks that the liveness and interference graph patched after
+	 * spilling are the same as building them for the program from scratch.
+	 */
+	private void checkRebuildInvariant(List<Assem> assems) {
+		RegisterAllocation fresh = new RegisterAllocation(colors);
+		fresh.init();
+		fresh.build(assems);
+		
+		List<LiveData> live = liveData();
+		List<LiveData> freshLive = fresh.liveData();
+		for(int i = 0; i < live.size(); i++) {
+			if(!live.get(i).getLiveOut().equals(freshLive.get(i).getLiveOut())) {
+				throw new InternalCompilerError("Rebuild invariant violated for liveness at " + liveGraph.getNodes().get(i));
+			}
+		}
+		
+		if(!nodeMap.keySet().equals(fresh.nodeMap.keySet())) {
+			throw new InternalCompilerError("Rebuild invariant violated for nodes " + nodeMap.keySet());
+		}
+		
+		for(Node u : nodeMap.values()) {
+			Node freshU = fresh.nodeMap.get(u.getId());
+			if(degree(u) != fresh.degree(freshU)) {
+				throw new InternalCompilerError("Rebuild invariant violated for degree of " + u);
+			}
+
+			for(Node v : nodeMap.values()) {
+				Node freshV = fresh.nodeMap.get(v.getId());
+				if(interferes(u, v) != fresh.interferes(freshU, freshV)) {
+					throw new InternalCompilerError("Rebuild invariant violated for " + u + " - " + v);
+				}
+			}
+		}
+	}
+
 	//-------------------------------------------------------------------------------- 
 
 	private void freezeMoves(Node node) {
@@ -585,45 +860,136 @@ public class RegisterAllocation implements RegisterAllocator{
 		return false;
 	}
 	
-	private void addEdge(String t1, String t2) {
-		Node u = nodeMap.get(t1); 
-		Node v = nodeMap.get(t2); 
-		
-		addEdge(u, v);
+	private void addEdge(Node u, Node v) {
+		addEdge(u.getIndex(), v.getIndex());
 	}
 
-	private void addEdge(Node u, Node v) {
-		Edge uv = new Edge(u, v);
+	private void addEdge(int u, int v) {
+		if(u == v || interferes(u, v)) return;
 		
-		if(!adjSet.contains(uv) && !u.equals(v)) {
-			Edge vu = new Edge(v, u);
-			SetUtils.unionMutable(adjSet, SetUtils.elems(uv, vu));
-			
-			if(!precolored(u)) {
-				adjList.get(u).add(v);
-				degreeMap.put(u, degreeMap.get(u) + 1);
+		long bit = edgeBit(u, v);
+		adjMatrix[(int)(bit >>> 6)] |= 1L << bit;
+
+		if(!precolored(nodes.get(u))) {
+			addToAdjList(u, v);
+			degree[u]++;
+		}
+
+		if(!precolored(nodes.get(v))) {
+			addToAdjList(v, u);
+			degree[v]++;
+		}
+	}
+	
+	private void addToAdjList(int u, int v) {
+		int[] adj = adjList[u];
+		if(adj == null) {
+			adj = adjList[u] = new int[4];
+		} else if(adjCount[u] == adj.length) {
+			adj = adjList[u] = Arrays.copyOf(adj, adj.length * 2);
+		}
+		adj[adjCount[u]++] = v;
+	}
+	
+	private boolean interferes(Node u, Node v) {
+		return interferes(u.getIndex(), v.getIndex());
+	}
+	
+	private boolean interferes(int u, int v) {
+		if(u == v) return false;
+
+		long bit = edgeBit(u, v);
+		return (adjMatrix[(int)(bit >>> 6)] & (1L << bit)) != 0;
+	}
+
+	private void removeInterferences(int u) {
+		if(precolored(nodes.get(u))) {
+			for(int v = 0; v < nodes.size(); v++) {
+				if(interferes(u, v)) removeEdge(u, v);
 			}
+		} else {
+			while(adjCount[u] > 0) {
+				removeEdge(u, adjList[u][adjCount[u] - 1]);
+			}
+		}
+	}
+	
+	private void removeEdge(int u, int v) {
+		long bit = edgeBit(u, v);
+		adjMatrix[(int)(bit >>> 6)] &= ~(1L << bit);
+		
+		if(!precolored(nodes.get(u))) {
+			removeFromAdjList(u, v);
+			degree[u]--;
+		}
 
-			if(!precolored(v)) {
-				adjList.get(v).add(u);
-				degreeMap.put(v, degreeMap.get(v) + 1);
+		if(!precolored(nodes.get(v))) {
+			removeFromAdjList(v, u);
+			degree[v]--;
+		}
+	}
+	
+	private void removeFromAdjList(int u, int v) {
+		int[] adj = adjList[u];
+		for(int i = 0; i < adjCount[u]; i++) {
+			if(adj[i] == v) {
+				adj[i] = adj[--adjCount[u]];
+				return;
 			}
 		}
 	}
 	
-	private Set<Node> adjacent(Node node) {
-		return adjList.get(node).stream()
-				.filter(n -> n.getWorklist() != NodeWorklist.SELECT_STACK &&
-								n.getWorklist() != NodeWorklist.COALESCED)
-				.collect(Collectors.toSet());
+	private void saveGraph() {
+		builtAdjMatrix = adjMatrix.clone();
+		builtAdjCount = adjCount.clone();
+		builtDegree = degree.clone();
+
+		builtAdjList = new int[adjList.length][];
+		for(int u = 0; u < adjList.length; u++) {
+			if(adjList[u] != null) builtAdjList[u] = Arrays.copyOf(adjList[u], adjCount[u]);
+		}
+	}
+	
+	private void restoreGraph() {
+		adjMatrix = builtAdjMatrix;
+		adjList = builtAdjList;
+		adjCount = builtAdjCount;
+		degree = builtDegree;
+	}
+	
+	private void growGraph(int n) {
+		adjMatrix = Arrays.copyOf(adjMatrix, matrixSize(n));
+		adjList = Arrays.copyOf(adjList, n);
+		adjCount = Arrays.copyOf(adjCount, n);
+		degree = Arrays.copyOf(degree, n);
 	}
 	
-	private Set<String> regsToStrs(Set<Reg> regs) {
-		return regs.stream()
-			.map(Reg::getId)
-			.collect(Collectors.toSet());
+	private int matrixSize(int n) {
+		return (int)((((long)n * (n - 1)) / 2 + 63) / 64);
+	}
+
+	/**
+	 * The position of the edge between u and v in the triangular matrix.
+	 */
+	private long edgeBit(int u, int v) {
+		long i = Math.max(u, v);
+		long j = Math.min(u, v);
+		return i * (i - 1) / 2 + j;
 	}
 	
+	private Set<Node> adjacent(Node node) {
+		int idx = node.getIndex();
+
+		Set<Node> adjacent = new HashSet<>();
+		for(int i = 0; i < adjCount[idx]; i++) {
+			Node n = nodes.get(adjList[idx][i]);
+			if(n.getWorklist() != NodeWorklist.SELECT_STACK &&
+					n.getWorklist() != NodeWorklist.COALESCED) {
+				adjacent.add(n);
+			}
+		}
+		return adjacent;
+	}
 	
 	private Set<Move> nodeMoves(Node node) {
 		if(!moveList.containsKey(node)) return SetUtils.empty();
@@ -642,8 +1008,7 @@ public class RegisterAllocation implements RegisterAllocator{
 		// Do we want this here?
 		if(precolored(node)) return;
 
-		int d = degree(node);
-		degreeMap.put(node, d - 1);
+		int d = degree[node.getIndex()]--;
 		
 		if(d == k) {
 			Set<Node> movesToEnable = adjacent(node);
@@ -681,6 +1046,7 @@ public class RegisterAllocation implements RegisterAllocator{
 		
 		addToCoalescedNodes(v);
 		alias.put(v, u);
+		spillWeight[u.getIndex()] += spillWeight[v.getIndex()];
 		SetUtils.unionMutable(moveList.get(u), moveList.get(v));
 		
 		enableMoves(SetUtils.elems(v));
@@ -712,7 +1078,7 @@ public class RegisterAllocation implements RegisterAllocator{
 	}
 	
 	private boolean ok(Node t, Node r) {
-		return degree(t) < k || precolored(t) || adjSet.contains(new Edge(t, r));
+		return degree(t) < k || precolored(t) || interferes(t, r);
 	}
 	
 	private boolean conservative(Set<Node> nodes) {
@@ -800,11 +1166,11 @@ public class RegisterAllocation implements RegisterAllocator{
 	//-------------------------------------------------------------------------------- 
 	
 	private boolean precolored(Node node) {
-		return RealReg.isRealReg(node.getId());
+		return node.getWorklist() == NodeWorklist.PRECOLORED;
 	}
 	
 	private int degree(Node n) {
-		return degreeMap.get(n);
+		return degree[n.getIndex()];
 	}
 
 	private void showGraphs(Liveness liveness) {
@@ -820,22 +1186,24 @@ public class RegisterAllocation implements RegisterAllocator{
 	
 	private static class Node {
 		private String id;
+		private int index;
 		private NodeWorklist worklist;
 		
-		private Node(String id, NodeWorklist worklist) {
+		private Node(String id, int index, NodeWorklist worklist) {
 			super();
 			this.id = id;
+			this.index = index;
 			this.worklist = worklist;
 		}
 
-		private Node(String id) {
-			this(id, NodeWorklist.INITIAL);
-		}
-
 		public String getId() {
 			return id;
 		}
 		
+		public int getIndex() {
+			return index;
+		}
+		
 		public void setWorklist(NodeWorklist worklist) {
 			this.worklist = worklist;
 		}
@@ -875,53 +1243,6 @@ public class RegisterAllocation implements RegisterAllocator{
 		}
 	}
 	
-	private static class Edge {
-		private Node from;
-		private Node to;
-
-		public Edge(Node from, Node to) {
-			this.from = from;
-			this.to = to;
-		}
-		
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((from == null) ? 0 : from.hashCode());
-			result = prime * result + ((to == null) ? 0 : to.hashCode());
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			Edge other = (Edge) obj;
-			if (from == null) {
-				if (other.from != null)
-					return false;
-			} else if (!from.equals(other.from))
-				return false;
-			if (to == null) {
-				if (other.to != null)
-					return false;
-			} else if (!to.equals(other.to))
-				return false;
-			return true;
-		}
-		
-		@Override
-		public String toString() {
-			return from + " - " + to;
-		}
-		
-	}
-	
 	private enum NodeWorklist {
 		PRECOLORED,
 		INITIAL,
@@ -1006,36 +1327,4 @@ public class RegisterAllocation implements RegisterAllocator{
 		WORKLIST,
 		ACTIVE
 	}
-	
-	private static class FunctionSpillData {
-		private Map<String, Mem> memMap;
-		private Set<RealReg> calleeSaved;
-		
-		public FunctionSpillData() {
-			memMap = new HashMap<>();
-			calleeSaved = SetUtils.empty();
-		}
-		
-		public void addSpill(String temp) {
-			int size = memMap.size();
-			Mem mem = new Mem(RealReg.RBP, Constants.WORD_SIZE * -(size + 1));
-			memMap.put(temp, mem);
-		}
-		
-		public Mem getMemLocFor(String temp) {
-			return memMap.get(temp);
-		}
-		
-		public int numSpilledTemps() {
-			return memMap.size();
-		}
-		
-		public void addCalleeSaved(RealReg reg) {
-			calleeSaved.add(reg);
-		}
-
-		public List<RealReg> getCalleeSavedAsList(){
-			return calleeSaved.stream().collect(Collectors.toList());
-		}
-	}
 }
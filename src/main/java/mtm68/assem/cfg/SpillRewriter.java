@@ -0,0 +1,127 @@
+package mtm68.assem.cfg;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import mtm68.assem.Assem;
+import mtm68.assem.MoveAssem;
+import mtm68.assem.ReplaceableReg;
+import mtm68.assem.operand.FreshRegGenerator;
+import mtm68.assem.operand.Mem;
+import mtm68.assem.operand.Reg;
+import mtm68.util.ArrayUtils;
+
+/**
+ * Rewrites a function so that spilled temps live in stack slots. Each use
+ * of a spilled temp is loaded into a fresh temp just before the assem and
+ * each definition is stored from a fresh temp just after it, so the fresh
+ * temps only live across a single assem.
+ */
+class SpillRewriter {
+	
+	private FunctionSpillData spillData;
+	private Set<String> spillTemps;
+	
+	// Describe the last rewrite, see Liveness#updateForSpills
+	private int[] origins;
+	private BitSet spillCode;
+	
+	public SpillRewriter(FunctionSpillData spillData) {
+		this.spillData = spillData;
+		this.spillTemps = new HashSet<>();
+	}
+	
+	/**
+	 * Gives each spilled temp a stack slot, in the order given, and
+	 * rewrites the program to load and store them.
+	 */
+	public List<Assem> rewrite(List<Assem> assems, Collection<String> spilled) {
+		Map<String, Mem> memLocs = new HashMap<>();
+		for(String temp : spilled) {
+			spillData.addSpill(temp);
+			
+			memLocs.put(temp, spillData.getMemLocFor(temp));
+		}
+		
+		List<Assem> result = ArrayUtils.empty();
+		List<Integer> assemOrigins = ArrayUtils.empty();
+		spillCode = new BitSet();
+		for(int i = 0; i < assems.size(); i++) {
+			Assem newAssem = assems.get(i).copy();
+
+			// ReplaceableReg hashes by identity, so keep the operand order to
+			// number the fresh temps the same way on every run
+			Set<ReplaceableReg> uses = newAssem.useReplaceable().stream()
+					.filter(ReplaceableReg::isAbstract)
+					.collect(Collectors.toCollection(LinkedHashSet::new));
+
+			Set<ReplaceableReg> defs = newAssem.defReplaceable().stream()
+					.filter(ReplaceableReg::isAbstract)
+					.collect(Collectors.toCollection(LinkedHashSet::new));
+			
+			int start = result.size();
+			replaceRegs(result, uses, memLocs, true);
+			spillCode.set(start, result.size());
+
+			result.add(newAssem);
+
+			start = result.size();
+			replaceRegs(result, defs, memLocs, false);
+			spillCode.set(start, result.size());
+
+			while(assemOrigins.size() < result.size()) assemOrigins.add(i);
+		}
+		
+		origins = assemOrigins.stream().mapToInt(i -> i).toArray();
+		return result;
+	}
+
+	private void replaceRegs(List<Assem> result, Set<ReplaceableReg> regs, Map<String, Mem> memLocs, boolean readFromStack) {
+		for(ReplaceableReg reg : regs) {
+			String regName = reg.getName();
+			if(!memLocs.containsKey(regName)) continue;
+
+			Reg newTemp = FreshRegGenerator.getFreshAbstractReg();
+			spillTemps.add(newTemp.getId());
+
+			Mem stackLoc = memLocs.get(regName);
+			
+			if(readFromStack) {
+				result.add(new MoveAssem(newTemp, stackLoc));
+			} else {
+				result.add(new MoveAssem(stackLoc, newTemp));
+			}
+			
+			reg.replace(newTemp);
+		}
+	}
+	
+	/**
+	 * The fresh temps created for spill code by every rewrite so far.
+	 */
+	public Set<String> getSpillTemps() {
+		return spillTemps;
+	}
+	
+	/**
+	 * For each assem of the last rewrite, the index of the assem it was 
+	 * rewritten from or spills for.
+	 */
+	public int[] getOrigins() {
+		return origins;
+	}
+	
+	/**
+	 * Which assems of the last rewrite are spill code.
+	 */
+	public BitSet getSpillCode() {
+		return spillCode;
+	}
+}
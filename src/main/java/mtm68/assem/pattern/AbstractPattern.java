@@ -0,0 +1,19 @@
+package mtm68.assem.pattern;
+
+/**
+ * Base class for patterns, holding the number a TileAutomaton gives them.
+ */
+public abstract class AbstractPattern implements Pattern {
+	
+	private int number = -1;
+
+	@Override
+	public int getNumber() {
+		return number;
+	}
+
+	@Override
+	public void setNumber(int number) {
+		this.number = number;
+	}
+}
@@ -1,18 +1,21 @@
 package mtm68.assem.pattern;
 
+import java.util.List;
 import java.util.Map;
 
 import edu.cornell.cs.cs4120.ir.IRBinOp;
 import edu.cornell.cs.cs4120.ir.IRBinOp.OpType;
 import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.tile.TileAutomaton;
+import mtm68.util.ArrayUtils;
 
 /**
  * Pattern for IRBinop
  * 
  * @author Scott
  */
-public class BinopPattern implements Pattern {
+public class BinopPattern extends AbstractPattern {
 	
 	private OpType opType;
 	private Pattern leftPattern;
@@ -36,6 +39,20 @@ public class BinopPattern implements Pattern {
 					patternCommutes(opType) && rightPattern.matches(binop.left()) && leftPattern.matches(binop.right());
 	}
 	
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		IRBinOp binop = (IRBinOp) node;
+		
+		if(binop.opType() != opType) return false;
+
+		return matchesInOrder(binop, automaton) ||
+					patternCommutes(opType) && automaton.matches(binop.left(), rightPattern) && automaton.matches(binop.right(), leftPattern);
+	}
+	
+	private boolean matchesInOrder(IRBinOp binop, TileAutomaton automaton) {
+		return automaton.matches(binop.left(), leftPattern) && automaton.matches(binop.right(), rightPattern);
+	}
+	
 	private boolean patternCommutes(OpType opType) {
 		switch(opType) {
 		case ADD:
@@ -70,6 +87,47 @@ public class BinopPattern implements Pattern {
 		rightPattern.addMatchedExprs(exprs);
 	}
 	
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRBinOp.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return opType + " (" + leftPattern.getKey() + ") (" + rightPattern.getKey() + ")";
+	}
+	
+	@Override
+	public List<Pattern> getSubpatterns() {
+		return ArrayUtils.elems(leftPattern, rightPattern);
+	}
+
+	@Override
+	public void addMatchedExprs(IRNode node, TileAutomaton automaton, Map<String, IRExpr> exprs) {
+		IRBinOp binop = (IRBinOp) node;
+		
+		if(matchesInOrder(binop, automaton)) {
+			leftPattern.addMatchedExprs(binop.left(), automaton, exprs);
+			rightPattern.addMatchedExprs(binop.right(), automaton, exprs);
+		} else {
+			leftPattern.addMatchedExprs(binop.right(), automaton, exprs);
+			rightPattern.addMatchedExprs(binop.left(), automaton, exprs);
+		}
+	}
+	
+	@Override
+	public void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs) {
+		IRBinOp binop = (IRBinOp) node;
+		
+		if(matchesInOrder(binop, automaton)) {
+			leftPattern.addOperandExprs(binop.left(), automaton, exprs);
+			rightPattern.addOperandExprs(binop.right(), automaton, exprs);
+		} else {
+			leftPattern.addOperandExprs(binop.right(), automaton, exprs);
+			rightPattern.addOperandExprs(binop.left(), automaton, exprs);
+		}
+	}
+	
 	@Override
 	public String toString() {
 		return opType + " (" + leftPattern + ") (" + rightPattern + ")";
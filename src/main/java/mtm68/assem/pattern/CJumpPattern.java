@@ -1,10 +1,13 @@
 package mtm68.assem.pattern;
 
+import java.util.List;
 import java.util.Map;
 
 import edu.cornell.cs.cs4120.ir.IRCJump;
 import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.tile.TileAutomaton;
+import mtm68.util.ArrayUtils;
 
 /**
  * Pattern for IRCjump
@@ -12,7 +15,7 @@ import edu.cornell.cs.cs4120.ir.IRNode;
  * @author Scott
  *
  */
-public class CJumpPattern implements Pattern {
+public class CJumpPattern extends AbstractPattern {
 
 	private Pattern conditionPattern;
 
@@ -27,10 +30,40 @@ public class CJumpPattern implements Pattern {
 		
 		return conditionPattern.matches(((IRCJump)node).cond());
 	}
+	
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		return automaton.matches(((IRCJump)node).cond(), conditionPattern);
+	}
 
 	@Override
 	public void addMatchedExprs(Map<String, IRExpr> exprs) {
 		conditionPattern.addMatchedExprs(exprs);
 	}
+	
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRCJump.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return "cjump (" + conditionPattern.getKey() + ")";
+	}
+	
+	@Override
+	public List<Pattern> getSubpatterns() {
+		return ArrayUtils.singleton(conditionPattern);
+	}
+
+	@Override
+	public void addMatchedExprs(IRNode node, TileAutomaton automaton, Map<String, IRExpr> exprs) {
+		conditionPattern.addMatchedExprs(((IRCJump)node).cond(), automaton, exprs);
+	}
+	
+	@Override
+	public void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs) {
+		conditionPattern.addOperandExprs(((IRCJump)node).cond(), automaton, exprs);
+	}
 
 }
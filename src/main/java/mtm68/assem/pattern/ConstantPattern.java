@@ -2,6 +2,7 @@ package mtm68.assem.pattern;
 
 import edu.cornell.cs.cs4120.ir.IRConst;
 import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.tile.TileAutomaton;
 
 /**
  * Abstract class for matching various types of constants
@@ -23,5 +24,20 @@ public abstract class ConstantPattern extends MatchablePattern {
 		return valueMatches(matched.constant());
 	}
 	
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRConst.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return getClass().getSimpleName();
+	}
+	
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		return valueMatches(((IRConst) node).constant());
+	}
+	
 	protected abstract boolean valueMatches(long value);
 }
@@ -1,8 +1,12 @@
 package mtm68.assem.pattern;
 
+import java.util.List;
 import java.util.Map;
 
 import edu.cornell.cs.cs4120.ir.IRExpr;
+import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.tile.TileAutomaton;
+import mtm68.util.ArrayUtils;
 
 /**
  * Abstract class for patterns that bind names
@@ -10,7 +14,7 @@ import edu.cornell.cs.cs4120.ir.IRExpr;
  * 
  * @author Scott
  */
-public abstract class MatchablePattern implements Pattern {
+public abstract class MatchablePattern extends AbstractPattern {
 	
 	protected String name;
 	protected IRExpr matched;
@@ -23,6 +27,20 @@ public abstract class MatchablePattern implements Pattern {
 	public void addMatchedExprs(Map<String, IRExpr> exprs) {
 		exprs.put(name, matched);
 	}
+	
+	@Override
+	public List<Pattern> getSubpatterns() {
+		return ArrayUtils.empty();
+	}
+	
+	@Override
+	public void addMatchedExprs(IRNode node, TileAutomaton automaton, Map<String, IRExpr> exprs) {
+		exprs.put(name, (IRExpr) node);
+	}
+	
+	@Override
+	public void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs) {
+	}
 
 	@Override
 	public String toString() {
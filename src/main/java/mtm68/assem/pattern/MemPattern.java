@@ -9,6 +9,7 @@ import java.util.Map;
 import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRMem;
 import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.tile.TileAutomaton;
 import mtm68.util.ArrayUtils;
 
 /**
@@ -17,7 +18,7 @@ import mtm68.util.ArrayUtils;
  * 
  * @author Scott
  */
-public class MemPattern implements Pattern {
+public class MemPattern extends AbstractPattern {
 	
 	private String name;
 	private Map<String, IRExpr> matched;
@@ -102,4 +103,47 @@ public class MemPattern implements Pattern {
 	public void addMatchedExprs(Map<String, IRExpr> exprs) {
 		exprs.putAll(matched);
 	}
+	
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRMem.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return "mem";
+	}
+	
+	@Override
+	public List<Pattern> getSubpatterns() {
+		return patterns;
+	}
+	
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		return matchingPattern((IRMem) node, automaton) != null;
+	}
+
+	@Override
+	public void addMatchedExprs(IRNode node, TileAutomaton automaton, Map<String, IRExpr> exprs) {
+		IRMem mem = (IRMem) node;
+		matchingPattern(mem, automaton).addMatchedExprs(mem.expr(), automaton, exprs);
+	}
+	
+	@Override
+	public void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs) {
+		IRMem mem = (IRMem) node;
+		matchingPattern(mem, automaton).addOperandExprs(mem.expr(), automaton, exprs);
+	}
+	
+	/**
+	 * The first addressing mode the address of mem matches, as matches 
+	 * would choose.
+	 */
+	private Pattern matchingPattern(IRMem mem, TileAutomaton automaton) {
+		for(Pattern p : patterns) {
+			if(automaton.matches(mem.expr(), p)) return p;
+		}
+		return null;
+	}
 }
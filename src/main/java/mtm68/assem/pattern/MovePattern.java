@@ -1,17 +1,20 @@
 package mtm68.assem.pattern;
 
+import java.util.List;
 import java.util.Map;
 
 import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRMove;
 import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.tile.TileAutomaton;
+import mtm68.util.ArrayUtils;
 
 /**
  * Pattern for IRMove.
  * 
  * @author Scott
  */
-public class MovePattern implements Pattern {
+public class MovePattern extends AbstractPattern {
 	
 	private Pattern destPattern;
 	private Pattern srcPattern;
@@ -29,6 +32,13 @@ public class MovePattern implements Pattern {
 		
 		return destPattern.matches(mov.target()) && srcPattern.matches(mov.source());
 	}
+	
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		IRMove mov = (IRMove)node;
+		
+		return automaton.matches(mov.target(), destPattern) && automaton.matches(mov.source(), srcPattern);
+	}
 
 	@Override
 	public void addMatchedExprs(Map<String, IRExpr> exprs) {
@@ -36,6 +46,35 @@ public class MovePattern implements Pattern {
 		srcPattern.addMatchedExprs(exprs);
 	}
 	
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRMove.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return "mov (" + destPattern.getKey() + ") (" + srcPattern.getKey() + ")";
+	}
+	
+	@Override
+	public List<Pattern> getSubpatterns() {
+		return ArrayUtils.elems(destPattern, srcPattern);
+	}
+
+	@Override
+	public void addMatchedExprs(IRNode node, TileAutomaton automaton, Map<String, IRExpr> exprs) {
+		IRMove mov = (IRMove)node;
+		destPattern.addMatchedExprs(mov.target(), automaton, exprs);
+		srcPattern.addMatchedExprs(mov.source(), automaton, exprs);
+	}
+	
+	@Override
+	public void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs) {
+		IRMove mov = (IRMove)node;
+		destPattern.addOperandExprs(mov.target(), automaton, exprs);
+		srcPattern.addOperandExprs(mov.source(), automaton, exprs);
+	}
+	
 	@Override
 	public String toString() {
 		return "mov (" + destPattern + ") (" + srcPattern + ")";
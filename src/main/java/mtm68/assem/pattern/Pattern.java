@@ -1,9 +1,11 @@
 package mtm68.assem.pattern;
 
+import java.util.List;
 import java.util.Map;
 
 import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.tile.TileAutomaton;
 
 /**
  * Represents a pattern that an IRNode can match
@@ -26,5 +28,73 @@ public interface Pattern {
 	 * @param exprs
 	 */
 	void addMatchedExprs(Map<String, IRExpr> exprs);
+	
+	/**
+	 * A key that patterns share exactly when they match the same nodes,
+	 * whatever names they bind. Patterns with the same key are one pattern
+	 * to a TileAutomaton.
+	 * 
+	 * @return
+	 */
+	String getKey();
+	
+	/**
+	 * The kind of node this pattern matches, the only kind a TileAutomaton 
+	 * tries it against.
+	 * 
+	 * @return
+	 */
+	Class<? extends IRNode> getNodeKind();
+	
+	/**
+	 * The number of this pattern in the TileAutomaton made from its tile, 
+	 * shared by the patterns there with the same key, or -1 if it is in none.
+	 * 
+	 * @return
+	 */
+	int getNumber();
+	
+	void setNumber(int number);
+	
+	/**
+	 * Returns the patterns the children of a matching node must match.
+	 * 
+	 * @return
+	 */
+	List<Pattern> getSubpatterns();
+	
+	/**
+	 * Returns true if the given IRNode, which is of the kind this pattern 
+	 * matches, matches this pattern. Only the node itself is looked at, and
+	 * whether its children match the subpatterns is read from their states 
+	 * in the automaton. Nothing is remembered, so a pattern can be matched
+	 * against many nodes at once.
+	 * 
+	 * @param node
+	 * @param automaton
+	 * @return
+	 */
+	boolean matchesState(IRNode node, TileAutomaton automaton);
+	
+	/**
+	 * Adds the expressions of a node that matches this pattern to the map,
+	 * as addMatchedExprs does after the node is matched.
+	 * 
+	 * @param node
+	 * @param automaton
+	 * @param exprs
+	 */
+	void addMatchedExprs(IRNode node, TileAutomaton automaton, Map<String, IRExpr> exprs);
+	
+	/**
+	 * Adds the expressions of a node that matches this pattern whose result
+	 * registers the tile reads, in the order of the pattern. These are tiled
+	 * on their own, so their costs add to the cost of the tile.
+	 * 
+	 * @param node
+	 * @param automaton
+	 * @param exprs
+	 */
+	void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs);
 
 }
\ No newline at end of file
@@ -1,9 +1,12 @@
 package mtm68.assem.pattern;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import edu.cornell.cs.cs4120.ir.IRNode;
 import edu.cornell.cs.cs4120.ir.IRTemp;
+import mtm68.assem.tile.TileAutomaton;
 
 /**
  * Pattern for IRTemp's with names that match the given regular expression.
@@ -13,11 +16,44 @@ import edu.cornell.cs.cs4120.ir.IRTemp;
 public class RegexVarPattern extends MatchablePattern {
 	
 	private String regex;
+	private Pattern compiled;
+	private String prefix;
+	private Map<String, Boolean> prefixedNames;
 
 	public RegexVarPattern(String name, String regex) {
 		super(name);
 		
 		this.regex = regex;
+		this.compiled = Pattern.compile(regex);
+		this.prefix = literalPrefix(regex);
+		this.prefixedNames = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * The letters, digits and underscores the regex starts with, which every
+	 * name it matches starts with too. Most temps are ruled out by these 
+	 * without running the regex, and the few names that start with them, 
+	 * like those of argument temps, are remembered.
+	 */
+	private static String literalPrefix(String regex) {
+		if(regex.contains("|")) return "";
+		
+		int end = 0;
+		while(end < regex.length() && (Character.isLetterOrDigit(regex.charAt(end)) || regex.charAt(end) == '_')) {
+			end++;
+		}
+		
+		// A quantifier after the prefix applies to its last character
+		if(end < regex.length() && "?*{".indexOf(regex.charAt(end)) >= 0) end = Math.max(end - 1, 0);
+		
+		return regex.substring(0, end);
+	}
+	
+	private boolean nameMatches(String name) {
+		if(prefix.isEmpty()) return compiled.matcher(name).matches();
+		if(!name.startsWith(prefix)) return false;
+		
+		return prefixedNames.computeIfAbsent(name, n -> compiled.matcher(n).matches());
 	}
 
 	@Override
@@ -27,7 +63,22 @@ public class RegexVarPattern extends MatchablePattern {
 		IRTemp temp = (IRTemp) node;
 		matched = temp;
 
-		return Pattern.matches(regex, temp.name());
+		return nameMatches(temp.name());
+	}
+
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRTemp.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return "regex " + regex;
+	}
+
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		return nameMatches(((IRTemp) node).name());
 	}
 
 }
@@ -6,13 +6,15 @@ import java.util.Map;
 import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRNode;
 import edu.cornell.cs.cs4120.ir.IRReturn;
+import mtm68.assem.tile.TileAutomaton;
+import mtm68.util.ArrayUtils;
 
 /**
  * Pattern for IRReturn
  * 
  * @author Scott
  */
-public class ReturnPattern implements Pattern{
+public class ReturnPattern extends AbstractPattern {
 	
 	private List<IRExpr> rets;
 
@@ -25,6 +27,26 @@ public class ReturnPattern implements Pattern{
 		
 		return true;
 	}
+	
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRReturn.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return "return";
+	}
+	
+	@Override
+	public List<Pattern> getSubpatterns() {
+		return ArrayUtils.empty();
+	}
+	
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		return true;
+	}
 
 	@Override
 	public void addMatchedExprs(Map<String, IRExpr> exprs) {
@@ -32,4 +54,17 @@ public class ReturnPattern implements Pattern{
 			exprs.put("ret" + i, rets.get(i));
 		}
 	}
+	
+	@Override
+	public void addMatchedExprs(IRNode node, TileAutomaton automaton, Map<String, IRExpr> exprs) {
+		List<IRExpr> rets = ((IRReturn) node).rets();
+		for(int i = 0; i < rets.size(); i++) {
+			exprs.put("ret" + i, rets.get(i));
+		}
+	}
+	
+	@Override
+	public void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs) {
+		exprs.addAll(((IRReturn) node).rets());
+	}
 }
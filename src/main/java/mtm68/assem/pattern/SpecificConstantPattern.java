@@ -14,6 +14,11 @@ public class SpecificConstantPattern extends ConstantPattern {
 		this.target = target;
 	}
 
+	@Override
+	public String getKey() {
+		return super.getKey() + " " + target;
+	}
+
 	@Override
 	protected boolean valueMatches(long value) {
 		return target == value;
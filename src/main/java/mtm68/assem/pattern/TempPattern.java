@@ -1,7 +1,11 @@
 package mtm68.assem.pattern;
 
+import java.util.List;
+
+import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRNode;
 import edu.cornell.cs.cs4120.ir.IRTemp;
+import mtm68.assem.tile.TileAutomaton;
 
 
 /**
@@ -24,4 +28,23 @@ public class TempPattern extends MatchablePattern {
 		return true;
 	}
 
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRTemp.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return "temp";
+	}
+	
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		return true;
+	}
+
+	@Override
+	public void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs) {
+		exprs.add((IRExpr) node);
+	}
 }
@@ -1,7 +1,10 @@
 package mtm68.assem.pattern;
 
+import java.util.List;
+
 import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.tile.TileAutomaton;
 
 /**
  * Pattern for any IRExpr  
@@ -22,4 +25,24 @@ public class VarPattern extends MatchablePattern {
 
 		return true;
 	}
+
+	@Override
+	public Class<? extends IRNode> getNodeKind() {
+		return IRExpr.class;
+	}
+	
+	@Override
+	public String getKey() {
+		return "var";
+	}
+	
+	@Override
+	public boolean matchesState(IRNode node, TileAutomaton automaton) {
+		return true;
+	}
+
+	@Override
+	public void addOperandExprs(IRNode node, TileAutomaton automaton, List<IRExpr> exprs) {
+		exprs.add((IRExpr) node);
+	}
 }
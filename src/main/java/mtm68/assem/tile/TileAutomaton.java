@@ -0,0 +1,308 @@
+package mtm68.assem.tile;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.cornell.cs.cs4120.ir.IRBinOp;
+import edu.cornell.cs.cs4120.ir.IRBinOp.OpType;
+import edu.cornell.cs.cs4120.ir.IRCJump;
+import edu.cornell.cs.cs4120.ir.IRMem;
+import edu.cornell.cs.cs4120.ir.IRMove;
+import edu.cornell.cs.cs4120.ir.IRNode;
+import mtm68.assem.pattern.Pattern;
+import mtm68.util.ArrayUtils;
+
+/**
+ * A bottom-up tree automaton compiled from a set of tiles, in the manner of
+ * BURS instruction selectors. The patterns of the tiles and every pattern
+ * inside them are numbered, with patterns that match the same nodes sharing
+ * a number, so the patterns of a tile can only be in one automaton. The state of a node is the set of numbered patterns it matches,
+ * so every tile whose pattern is in the state matches the node, and which
+ * names it binds to which nodes can be read off the states of the children.
+ *
+ * The state of a node only depends on its kind and operator, on which leaf
+ * patterns (like constants in a range) it matches, and on the states of its
+ * children. For each kind of node the automaton maps the rest to states, and
+ * the state of a node is found by looking them up once its children have
+ * states. Only the patterns for a kind are tried against its nodes, and only
+ * when a transition is missing. Transitions and states are added the first
+ * time they are needed and kept, so the automaton only holds the shapes the
+ * programs it tiles have and needs no tables up front.
+ *
+ * Each state also lists the tiles that match its nodes, cheapest first, so
+ * the Tiler only adds up the costs of operands for tiles that match, in one
+ * pass over the tree.
+ *
+ * The automaton keeps nothing about the nodes it has seen other than their
+ * states, which are stored on the nodes, so one automaton is shared by every
+ * Tiler, including those running at the same time.
+ */
+public class TileAutomaton {
+
+	private static final Map<TileCosts, TileAutomaton> INSTANCES = new ConcurrentHashMap<>();
+	private static final int MAX_LEAF_TABLE = 8;
+
+	private List<Tile> tiles;
+	private int[] tileIds;
+
+	private List<Pattern> leafPatterns;
+	private List<Pattern> innerPatterns;
+
+	private Map<Class<?>, Kind> kinds;
+	private Map<BitSet, State> states;
+	private AtomicInteger stateCount;
+
+	/**
+	 * The automaton for the tiles of TileFactory.allTiles(costs). Candidates
+	 * are sorted by cost, so each set of costs has its own automaton.
+	 */
+	public static TileAutomaton getInstance(TileCosts costs) {
+		TileAutomaton automaton = INSTANCES.get(costs);
+		if(automaton == null) {
+			automaton = INSTANCES.computeIfAbsent(costs, c -> new TileAutomaton(TileFactory.allTiles(c)));
+		}
+		return automaton;
+	}
+
+	public TileAutomaton(List<Tile> tiles) {
+		this.tiles = tiles;
+
+		leafPatterns = ArrayUtils.empty();
+		innerPatterns = ArrayUtils.empty();
+
+		Map<String, Integer> keyIds = new HashMap<>();
+		tileIds = new int[tiles.size()];
+		for(int i = 0; i < tiles.size(); i++) {
+			tileIds[i] = number(tiles.get(i).getPattern(), keyIds);
+		}
+
+		if(leafPatterns.size() > Long.SIZE) throw new IllegalArgumentException("Too many leaf patterns: " + leafPatterns.size());
+
+		kinds = new ConcurrentHashMap<>();
+		states = new ConcurrentHashMap<>();
+		stateCount = new AtomicInteger();
+	}
+
+	private int number(Pattern pattern, Map<String, Integer> keyIds) {
+		Integer id = keyIds.get(pattern.getKey());
+		if(id == null) {
+			id = keyIds.size();
+			keyIds.put(pattern.getKey(), id);
+
+			if(pattern.getSubpatterns().isEmpty()) {
+				leafPatterns.add(pattern);
+			} else {
+				innerPatterns.add(pattern);
+			}
+		}
+		if(pattern.getNumber() >= 0) throw new IllegalArgumentException("Pattern " + pattern + " is already in an automaton");
+		pattern.setNumber(id);
+
+		for(Pattern subpattern : pattern.getSubpatterns()) {
+			number(subpattern, keyIds);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Returns true if node matches pattern, which must be one of the patterns
+	 * of the tiles or inside them.
+	 */
+	public boolean matches(IRNode node, Pattern pattern) {
+		return getState(node).matched.get(pattern.getNumber());
+	}
+
+	/**
+	 * The state of node, found from the states of its children and stored on
+	 * it for the nodes above.
+	 */
+	public State getState(IRNode node) {
+		State state = node.getTileState();
+		if(state != null) return state;
+
+		OpType op = null;
+		State first = null;
+		State second = null;
+
+		if(node instanceof IRBinOp) {
+			IRBinOp binop = (IRBinOp) node;
+			op = binop.opType();
+			first = getState(binop.left());
+			second = getState(binop.right());
+		} else if(node instanceof IRMem) {
+			first = getState(((IRMem) node).expr());
+		} else if(node instanceof IRMove) {
+			IRMove move = (IRMove) node;
+			first = getState(move.target());
+			second = getState(move.source());
+		} else if(node instanceof IRCJump) {
+			first = getState(((IRCJump) node).cond());
+		}
+
+		Kind kind = kinds.get(node.getClass());
+		if(kind == null) kind = kinds.computeIfAbsent(node.getClass(), Kind::new);
+
+		state = kind.getState(node, op, first, second);
+		node.setTileState(state);
+		return state;
+	}
+
+	/**
+	 * The number of states found so far.
+	 */
+	public int getStateCount() {
+		return stateCount.get();
+	}
+
+	/**
+	 * The patterns for one kind of node, and the transitions for its nodes.
+	 */
+	private class Kind {
+		private Pattern[] leaves;
+		private int[] leafIds;
+		private Pattern[] inners;
+		private int[] innerIds;
+		private Map<Key, State> transitions;
+		private State[] leafStates;
+
+		public Kind(Class<?> nodeClass) {
+			leaves = leafPatterns.stream()
+					.filter(p -> p.getNodeKind().isAssignableFrom(nodeClass))
+					.toArray(Pattern[]::new);
+			inners = innerPatterns.stream()
+					.filter(p -> p.getNodeKind().isAssignableFrom(nodeClass))
+					.toArray(Pattern[]::new);
+
+			leafIds = Arrays.stream(leaves).mapToInt(Pattern::getNumber).toArray();
+			innerIds = Arrays.stream(inners).mapToInt(Pattern::getNumber).toArray();
+			transitions = new ConcurrentHashMap<>();
+			if(leaves.length <= MAX_LEAF_TABLE) leafStates = new State[1 << leaves.length];
+		}
+
+		public State getState(IRNode node, OpType op, State first, State second) {
+			long matchedLeaves = 0L;
+			for(int i = 0; i < leaves.length; i++) {
+				if(leaves[i].matchesState(node, TileAutomaton.this)) matchedLeaves |= 1L << i;
+			}
+
+			// Nodes without children are most nodes, and their states only
+			// depend on the leaf patterns they match
+			boolean isLeaf = op == null && first == null && leafStates != null;
+			if(isLeaf && leafStates[(int) matchedLeaves] != null) return leafStates[(int) matchedLeaves];
+
+			Key key = new Key(op, matchedLeaves, first, second);
+			State state = transitions.get(key);
+			if(state == null) {
+				state = newState(node, matchedLeaves);
+				transitions.putIfAbsent(key, state);
+			}
+			if(isLeaf) leafStates[(int) matchedLeaves] = state;
+			return state;
+		}
+
+		private State newState(IRNode node, long matchedLeaves) {
+			BitSet matched = new BitSet();
+			for(int i = 0; i < leaves.length; i++) {
+				if((matchedLeaves & 1L << i) != 0) matched.set(leafIds[i]);
+			}
+			for(int i = 0; i < inners.length; i++) {
+				if(inners[i].matchesState(node, TileAutomaton.this)) matched.set(innerIds[i]);
+			}
+
+			return states.computeIfAbsent(matched, m -> new State(m, stateCount.getAndIncrement()));
+		}
+	}
+
+	/**
+	 * A set of patterns, with the tiles whose patterns are in it.
+	 */
+	public class State {
+		private final BitSet matched;
+		private final int id;
+		private final List<Candidate> candidates;
+
+		private State(BitSet matched, int id) {
+			this.matched = matched;
+			this.id = id;
+
+			candidates = ArrayUtils.empty();
+			for(int i = 0; i < tiles.size(); i++) {
+				if(matched.get(tileIds[i])) candidates.add(new Candidate(tiles.get(i), i));
+			}
+
+			candidates.sort(Comparator.comparing(Candidate::getTile, Comparator.comparing(Tile::getCost))
+					.thenComparing(Candidate::getOrder));
+		}
+
+		/**
+		 * The tiles that match nodes in this state, sorted by their own cost,
+		 * which is a lower bound on the cost of tiling a node with them. Ties go
+		 * to the tile that comes first.
+		 */
+		public List<Candidate> getCandidates() {
+			return candidates;
+		}
+	}
+
+	/**
+	 * A tile with its place in the tiles the automaton was made from.
+	 */
+	public static class Candidate {
+		private Tile tile;
+		private int order;
+
+		public Candidate(Tile tile, int order) {
+			this.tile = tile;
+			this.order = order;
+		}
+
+		public Tile getTile() {
+			return tile;
+		}
+
+		public int getOrder() {
+			return order;
+		}
+	}
+
+	private static class Key {
+		private OpType op;
+		private long leaves;
+		private State first;
+		private State second;
+
+		public Key(OpType op, long leaves, State first, State second) {
+			this.op = op;
+			this.leaves = leaves;
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = op == null ? -1 : op.ordinal();
+			hash = 31 * hash + Long.hashCode(leaves);
+			hash = 31 * hash + (first == null ? -1 : first.id);
+			hash = 31 * hash + (second == null ? -1 : second.id);
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) return true;
+			if(!(obj instanceof Key)) return false;
+
+			// States are unique to their sets of patterns
+			Key other = (Key) obj;
+			return op == other.op && leaves == other.leaves
+					&& first == other.first && second == other.second;
+		}
+	}
+}
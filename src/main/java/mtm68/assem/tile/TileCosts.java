@@ -1,16 +1,258 @@
 package mtm68.assem.tile;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The costs of the instructions tiles emit on one microarchitecture, which
+ * the Tiler adds up to choose between tilings. Costs are roughly the latency
+ * of each instruction in cycles, from published instruction tables, so the
+ * cheapest tiling is close to the fastest one rather than the shortest.
+ *
+ * A memory operand folded into another instruction costs less than a load
+ * on its own, since the load is fused with the instruction and needs no
+ * register, so tiles that use addressing modes win over separate loads.
+ */
 public class TileCosts {
-	
+
 	public static final float NO_COST = 0.0f;
-	public static final float MOVE_COST = 1.0f;
-	public static final float BINOP_COST = 1.0f;
-	public static final float RETURN_COST = 1.0f;
-	public static final float SETCC_COST = 1.0f;
-	public static final float DIV_COST = 1.0f;
-	public static final float MUL_COST = 1.0f;
-	public static final float CDQ_COST = 1.0f;
-	public static final float COMPARE_COST = 1.0f;
-	public static final float JUMP_COST = 1.0f;
 
+	/**
+	 * One for every instruction, so the cheapest tiling is the one with the
+	 * fewest instructions.
+	 */
+	public static final TileCosts UNIFORM = uniform();
+
+	public static final TileCosts SKYLAKE = skylake();
+
+	public static final TileCosts ZEN2 = zen2();
+
+	/**
+	 * Costs that are reasonable for any recent x86-64 processor.
+	 */
+	public static final TileCosts GENERIC = generic();
+
+	private static final Map<String, TileCosts> TARGETS = targets();
+
+	private String name;
+
+	private float move;
+	private float load;
+	private float store;
+	private float memOperand;
+	private float lea;
+	private float alu;
+	private float shift;
+	private float imul;
+	private float mul;
+	private float idiv;
+	private float cqo;
+	private float compare;
+	private float setcc;
+	private float jump;
+	private float ret;
+
+	private TileCosts(String name) {
+		this.name = name;
+	}
+
+	private static TileCosts uniform() {
+		TileCosts costs = new TileCosts("uniform");
+		costs.move = 1.0f;
+		costs.load = 1.0f;
+		costs.store = 1.0f;
+		costs.memOperand = 0.0f;
+		costs.lea = 1.0f;
+		costs.alu = 1.0f;
+		costs.shift = 1.0f;
+		costs.imul = 1.0f;
+		costs.mul = 1.0f;
+		costs.idiv = 1.0f;
+		costs.cqo = 1.0f;
+		costs.compare = 1.0f;
+		costs.setcc = 1.0f;
+		costs.jump = 1.0f;
+		costs.ret = 1.0f;
+		return costs;
+	}
+
+	private static TileCosts skylake() {
+		TileCosts costs = new TileCosts("skylake");
+		costs.move = 1.0f;
+		costs.load = 5.0f;
+		costs.store = 1.0f;
+		costs.memOperand = 4.0f;
+		costs.lea = 1.0f;
+		costs.alu = 1.0f;
+		costs.shift = 1.5f;
+		costs.imul = 3.0f;
+		costs.mul = 4.0f;
+		costs.idiv = 42.0f;
+		costs.cqo = 1.0f;
+		costs.compare = 1.0f;
+		costs.setcc = 1.0f;
+		costs.jump = 1.0f;
+		costs.ret = 2.0f;
+		return costs;
+	}
+
+	private static TileCosts zen2() {
+		TileCosts costs = new TileCosts("zen2");
+		costs.move = 1.0f;
+		costs.load = 4.0f;
+		costs.store = 1.0f;
+		costs.memOperand = 3.0f;
+		costs.lea = 1.0f;
+		costs.alu = 1.0f;
+		costs.shift = 1.0f;
+		costs.imul = 3.0f;
+		costs.mul = 3.0f;
+		costs.idiv = 30.0f;
+		costs.cqo = 1.0f;
+		costs.compare = 1.0f;
+		costs.setcc = 1.0f;
+		costs.jump = 1.0f;
+		costs.ret = 2.0f;
+		return costs;
+	}
+
+	private static TileCosts generic() {
+		TileCosts costs = new TileCosts("generic");
+		costs.move = 1.0f;
+		costs.load = 4.0f;
+		costs.store = 1.0f;
+		costs.memOperand = 3.0f;
+		costs.lea = 1.0f;
+		costs.alu = 1.0f;
+		costs.shift = 1.0f;
+		costs.imul = 3.0f;
+		costs.mul = 3.0f;
+		costs.idiv = 40.0f;
+		costs.cqo = 1.0f;
+		costs.compare = 1.0f;
+		costs.setcc = 1.0f;
+		costs.jump = 1.0f;
+		costs.ret = 2.0f;
+		return costs;
+	}
+
+	private static Map<String, TileCosts> targets() {
+		Map<String, TileCosts> targets = new LinkedHashMap<>();
+		for(TileCosts costs : new TileCosts[] { GENERIC, SKYLAKE, ZEN2, UNIFORM }) {
+			targets.put(costs.getName(), costs);
+		}
+		return Collections.unmodifiableMap(targets);
+	}
+
+	/**
+	 * The costs used when no target is given.
+	 */
+	public static TileCosts getDefault() {
+		return GENERIC;
+	}
+
+	/**
+	 * The costs for the microarchitecture called name, or null if there
+	 * are none.
+	 */
+	public static TileCosts forTarget(String name) {
+		return TARGETS.get(name);
+	}
+
+	public static Set<String> getTargets() {
+		return TARGETS.keySet();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Move between registers, or of a constant into a register.
+	 */
+	public float getMove() {
+		return move;
+	}
+
+	/**
+	 * Move from memory into a register.
+	 */
+	public float getLoad() {
+		return load;
+	}
+
+	/**
+	 * Move of a register or constant into memory.
+	 */
+	public float getStore() {
+		return store;
+	}
+
+	/**
+	 * The extra cost of reading a source operand from memory in an
+	 * arithmetic instruction.
+	 */
+	public float getMemOperand() {
+		return memOperand;
+	}
+
+	public float getLea() {
+		return lea;
+	}
+
+	/**
+	 * Add, sub, and, or and xor.
+	 */
+	public float getAlu() {
+		return alu;
+	}
+
+	public float getShift() {
+		return shift;
+	}
+
+	/**
+	 * Two operand multiply.
+	 */
+	public float getImul() {
+		return imul;
+	}
+
+	/**
+	 * One operand multiply, for the high 64 bits of the product.
+	 */
+	public float getMul() {
+		return mul;
+	}
+
+	public float getIdiv() {
+		return idiv;
+	}
+
+	public float getCqo() {
+		return cqo;
+	}
+
+	public float getCompare() {
+		return compare;
+	}
+
+	public float getSetcc() {
+		return setcc;
+	}
+
+	public float getJump() {
+		return jump;
+	}
+
+	public float getReturn() {
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
 }
@@ -1,7 +1,6 @@
 package mtm68.assem.tile;
 
 import static mtm68.assem.pattern.Patterns.*;
-import static mtm68.assem.tile.TileCosts.*;
 
 import java.util.List;
 import java.util.function.BiFunction;
@@ -20,7 +19,14 @@ import mtm68.assem.MulAssem;
 import mtm68.assem.SeqAssem;
 import mtm68.assem.SetccAssem;
 import mtm68.assem.SetccAssem.CC;
+import mtm68.assem.op.ARShiftAssem;
+import mtm68.assem.op.AndAssem;
+import mtm68.assem.op.IMulAssem;
+import mtm68.assem.op.LShiftAssem;
 import mtm68.assem.op.LeaAssem;
+import mtm68.assem.op.OrAssem;
+import mtm68.assem.op.RShiftAssem;
+import mtm68.assem.op.SubAssem;
 import mtm68.assem.op.XorAssem;
 import mtm68.assem.operand.Dest;
 import mtm68.assem.operand.Imm;
@@ -42,14 +48,97 @@ import mtm68.util.Constants;
  */
 public class TileFactory {
 	
+	//--------------------------------------------------------------------------------
+	// Tile sets
+	//--------------------------------------------------------------------------------
+	
+	/**
+	 * Every tile, with the tiles for each kind of node in the order that 
+	 * kind gives them, which breaks ties between tiles of equal cost. Tiles
+	 * cost what their instructions cost in costs.
+	 */
+	public static List<Tile> allTiles(TileCosts costs) {
+		return ArrayUtils.concatMulti(
+				constTiles(costs),
+				memTiles(costs),
+				moveTiles(costs),
+				returnTiles(costs),
+				cjumpTiles(costs),
+				binopTiles(costs)
+			);
+	}
+	
+	public static List<Tile> constTiles(TileCosts costs) {
+		return ArrayUtils.elems(constTile(costs));
+	}
+	
+	public static List<Tile> memTiles(TileCosts costs) {
+		return ArrayUtils.elems(memBasic(costs));
+	}
+	
+	public static List<Tile> moveTiles(TileCosts costs) {
+		return ArrayUtils.elems(
+				moveBasic(costs),
+				moveConst(costs),
+				moveArg(costs),
+				moveFromMem(costs),
+				moveIntoMem(costs),
+				moveConstIntoMem(costs)
+			);
+	}
+	
+	public static List<Tile> returnTiles(TileCosts costs) {
+		return ArrayUtils.singleton(returnBasic(costs));
+	}
+	
+	public static List<Tile> cjumpTiles(TileCosts costs) {
+		return ArrayUtils.elems(
+				cjumpBasic(costs),
+				cjumpNotEqual(costs),
+				cjumpGreaterThan(costs),
+				cjumpGreaterThanEqual(costs),
+				cjumpLessThanEqual(costs),
+				cjumpLessThan(costs)
+//				//cjumpIfZero()
+				);
+	}
+	
+	public static List<Tile> binopTiles(TileCosts costs) {
+		return ArrayUtils.concatMulti(
+					ArrayUtils.elems(
+					addBasic(costs),
+					addConstant(costs),
+					binopCompareBasic(OpType.EQ, CC.E, costs),
+					binopCompareBasic(OpType.NEQ, CC.NE, costs),
+					binopCompareBasic(OpType.GEQ, CC.GE, costs),
+					binopCompareBasic(OpType.GT, CC.G, costs),
+					binopCompareBasic(OpType.LT, CC.L, costs),
+					binopCompareBasic(OpType.LEQ, CC.LE, costs),
+					binopCompareBasic(OpType.ULT, CC.B, costs),
+					binopDivOrMod(OpType.DIV, costs),
+					binopDivOrMod(OpType.MOD, costs),
+					binopHighMul(costs)
+					),
+					binopBasic(OpType.SUB, SubAssem::new, costs.getAlu(), costs),
+					binopBasic(OpType.AND, AndAssem::new, costs.getAlu(), costs),
+					binopBasic(OpType.MUL, IMulAssem::new, costs.getImul(), costs),
+					binopBasic(OpType.NEQ, XorAssem::new, costs.getAlu(), costs),
+					binopBasic(OpType.XOR, XorAssem::new, costs.getAlu(), costs),
+					binopBasic(OpType.OR, OrAssem::new, costs.getAlu(), costs),
+					binopBasic(OpType.ARSHIFT, ARShiftAssem::new, costs.getShift(), costs),
+					binopBasic(OpType.LSHIFT, LShiftAssem::new, costs.getShift(), costs),
+					binopBasic(OpType.RSHIFT, RShiftAssem::new, costs.getShift(), costs)
+				);
+	}
+	
 	//--------------------------------------------------------------------------------
 	// Constant
 	//--------------------------------------------------------------------------------
 	
-	public static Tile constTile() {
+	public static Tile constTile(TileCosts costs) {
 		Pattern pattern = anyConstant("c");
 		
-		return new Tile(pattern, MOVE_COST) {
+		return new Tile(pattern, costs.getMove()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				return new MoveAssem(resultReg, results.get("c", Imm.class));
@@ -61,10 +150,10 @@ public class TileFactory {
 	// Mem
 	//--------------------------------------------------------------------------------
 	
-	public static Tile memBasic() {
+	public static Tile memBasic(TileCosts costs) {
 		Pattern pattern = mem("t");
 		
-		return new Tile(pattern, MOVE_COST) {
+		return new Tile(pattern, costs.getLoad()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Mem t = results.get("t", Mem.class);
@@ -77,10 +166,10 @@ public class TileFactory {
 	// Move
 	//--------------------------------------------------------------------------------
 	
-	public static Tile moveBasic() {
+	public static Tile moveBasic(TileCosts costs) {
 		Pattern pattern = move(temp("t1"), var("t2"));
 		
-		return new Tile(pattern, MOVE_COST) {
+		return new Tile(pattern, costs.getMove()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -90,10 +179,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile moveConst() {
+	public static Tile moveConst(TileCosts costs) {
 		Pattern pattern = move(temp("t"), anyConstant("c"));
 		
-		return new Tile(pattern, MOVE_COST) {
+		return new Tile(pattern, costs.getMove()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t = results.get("t", Reg.class);
@@ -103,10 +192,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile moveConstIntoMem() {
+	public static Tile moveConstIntoMem(TileCosts costs) {
 		Pattern pattern = move(mem("m"), anyConstant("c"));
 		
-		return new Tile(pattern, MOVE_COST) {
+		return new Tile(pattern, costs.getStore()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Mem m = results.get("m", Mem.class);
@@ -116,10 +205,10 @@ public class TileFactory {
 		};
 	}
 
-	public static Tile moveFromMem() {
+	public static Tile moveFromMem(TileCosts costs) {
 		Pattern pattern = move(temp("t1"), mem("m"));
 		
-		return new Tile(pattern, MOVE_COST) {
+		return new Tile(pattern, costs.getLoad()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -129,10 +218,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile moveIntoMem() {
+	public static Tile moveIntoMem(TileCosts costs) {
 		Pattern pattern = move(mem("m"), var("t"));
 		
-		return new Tile(pattern, MOVE_COST) {
+		return new Tile(pattern, costs.getStore()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Mem m = results.get("m", Mem.class);
@@ -142,10 +231,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile moveArg() {
+	public static Tile moveArg(TileCosts costs) {
 		Pattern pattern = move(var("t"), regex("arg", Constants.ARG_PREFIX + "[0-9]+"));
 
-		return new Tile(pattern, NO_COST) {
+		return new Tile(pattern, TileCosts.NO_COST) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t = results.get("t", Reg.class);
@@ -172,20 +261,20 @@ public class TileFactory {
 	// Return
 	//--------------------------------------------------------------------------------
 	
-	public static Tile returnBasic() {
+	public static Tile returnBasic(TileCosts costs) {
 		Pattern pattern = ret(); 
 		
-		return new ReturnTile(pattern, RETURN_COST);
+		return new ReturnTile(pattern, costs.getReturn());
 	}
 
 	//--------------------------------------------------------------------------------
 	// CJump
 	//--------------------------------------------------------------------------------
 
-	public static Tile cjumpBasic() {
+	public static Tile cjumpBasic(TileCosts costs) {
 		Pattern pattern = cjump(var("t")); 
 		
-		return new Tile(pattern, COMPARE_COST + JUMP_COST) {
+		return new Tile(pattern, costs.getCompare() + costs.getJump()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t = results.get("t", Reg.class);
@@ -198,10 +287,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile cjumpLessThan() {
+	public static Tile cjumpLessThan(TileCosts costs) {
 		Pattern pattern = cjump(op(OpType.LT, var("t1"), var("t2"))); 
 		
-		return new Tile(pattern, COMPARE_COST + JUMP_COST) {
+		return new Tile(pattern, costs.getCompare() + costs.getJump()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -215,10 +304,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile cjumpLessThanEqual() {
+	public static Tile cjumpLessThanEqual(TileCosts costs) {
 		Pattern pattern = cjump(op(OpType.LEQ, var("t1"), var("t2"))); 
 		
-		return new Tile(pattern, COMPARE_COST + JUMP_COST) {
+		return new Tile(pattern, costs.getCompare() + costs.getJump()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -232,10 +321,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile cjumpNotEqual() {
+	public static Tile cjumpNotEqual(TileCosts costs) {
 		Pattern pattern = cjump(op(OpType.NEQ, var("t1"), var("t2"))); 
 		
-		return new Tile(pattern, COMPARE_COST + JUMP_COST) {
+		return new Tile(pattern, costs.getCompare() + costs.getJump()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -249,10 +338,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile cjumpGreaterThan() {
+	public static Tile cjumpGreaterThan(TileCosts costs) {
 		Pattern pattern = cjump(op(OpType.GT, var("t1"), var("t2"))); 
 		
-		return new Tile(pattern, COMPARE_COST + JUMP_COST) {
+		return new Tile(pattern, costs.getCompare() + costs.getJump()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -266,10 +355,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile cjumpGreaterThanEqual() {
+	public static Tile cjumpGreaterThanEqual(TileCosts costs) {
 		Pattern pattern = cjump(op(OpType.GEQ, var("t1"), var("t2"))); 
 		
-		return new Tile(pattern, COMPARE_COST + JUMP_COST) {
+		return new Tile(pattern, costs.getCompare() + costs.getJump()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -283,10 +372,10 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile cjumpIfZero() {
+	public static Tile cjumpIfZero(TileCosts costs) {
 		Pattern pattern = cjump(op(OpType.XOR, var("t1"), specificConstant("c", 1) )); 
 		
-		return new Tile(pattern, COMPARE_COST + JUMP_COST) {
+		return new Tile(pattern, costs.getCompare() + costs.getJump()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -302,10 +391,10 @@ public class TileFactory {
 	//--------------------------------------------------------------------------------
 	// Binop
 	//--------------------------------------------------------------------------------
-	public static Tile addBasic() {
+	public static Tile addBasic(TileCosts costs) {
 		Pattern pattern = add(var("t1"), var("t2"));
 		
-		return new Tile(pattern, BINOP_COST) {
+		return new Tile(pattern, costs.getLea()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -315,10 +404,10 @@ public class TileFactory {
 		};
 	}
 
-	public static Tile addConstant() {
+	public static Tile addConstant(TileCosts costs) {
 		Pattern pattern = add(var("t1"), smallConstant("c"));
 		
-		return new Tile(pattern, BINOP_COST) {
+		return new Tile(pattern, costs.getLea()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -328,12 +417,12 @@ public class TileFactory {
 		};
 	}
 	
-	public static Tile binopDivOrMod(OpType divOrMod) {
+	public static Tile binopDivOrMod(OpType divOrMod, TileCosts costs) {
 		if(divOrMod != OpType.DIV && divOrMod != OpType.MOD) throw new IllegalArgumentException(divOrMod + " must be either DIV or MOD");
 
 		Pattern pattern = op(divOrMod, var("t1"), var("t2"));
 		
-		return new Tile(pattern, 2 * MOVE_COST + DIV_COST + CDQ_COST) {
+		return new Tile(pattern, 2 * costs.getMove() + costs.getCqo() + costs.getIdiv()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -351,10 +440,10 @@ public class TileFactory {
 		};
 	}
 
-	public static Tile binopHighMul() {
+	public static Tile binopHighMul(TileCosts costs) {
 		Pattern pattern = op(OpType.HMUL, var("t1"), var("t2"));
 		
-		return new Tile(pattern, 2 * MOVE_COST + MUL_COST) {
+		return new Tile(pattern, 2 * costs.getMove() + costs.getMul()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -369,13 +458,9 @@ public class TileFactory {
 		};
 	}
 
-	public static List<Tile> binopBasic(OpType opType, BiFunction<Dest, Src, Assem> assemConstructor) {
-		return binopBasic(opType, assemConstructor, BINOP_COST); 
-	}
-	
-	public static List<Tile> binopBasic(OpType opType, BiFunction<Dest, Src, Assem> assemConstructor, float assemCost) {
+	public static List<Tile> binopBasic(OpType opType, BiFunction<Dest, Src, Assem> assemConstructor, float assemCost, TileCosts costs) {
 		Pattern regRegPattern = op(opType, var("t1"), var("t2"));
-		Tile regRegTile = new Tile(regRegPattern, MOVE_COST + assemCost) {
+		Tile regRegTile = new Tile(regRegPattern, costs.getMove() + assemCost) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -388,7 +473,7 @@ public class TileFactory {
 		};
 		
 		Pattern regConstPattern = op(opType, var("t1"), anyConstant("c"));
-		Tile regConstTile = new Tile(regConstPattern, MOVE_COST + assemCost) {
+		Tile regConstTile = new Tile(regConstPattern, costs.getMove() + assemCost) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -400,7 +485,7 @@ public class TileFactory {
 		};
 		
 		Pattern regMemPattern = op(opType, var("t1"), mem("m"));
-		Tile regMemTile = new Tile(regMemPattern, assemCost) {
+		Tile regMemTile = new Tile(regMemPattern, costs.getMove() + assemCost + costs.getMemOperand()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
@@ -414,10 +499,10 @@ public class TileFactory {
 		return ArrayUtils.elems(regRegTile, regConstTile, regMemTile);
 	}
 
-	public static Tile binopCompareBasic(OpType opType, CC cc) {
+	public static Tile binopCompareBasic(OpType opType, CC cc, TileCosts costs) {
 		Pattern pattern = op(opType, var("t1"), var("t2"));
 		
-		return new Tile(pattern, BINOP_COST + MOVE_COST + SETCC_COST) {
+		return new Tile(pattern, costs.getAlu() + costs.getCompare() + costs.getSetcc() + costs.getMove()) {
 			@Override
 			public Assem getTiledAssem(Reg resultReg, PatternResults results) {
 				Reg t1 = results.get("t1", Reg.class);
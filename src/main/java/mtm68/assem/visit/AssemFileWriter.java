@@ -0,0 +1,66 @@
+package mtm68.assem.visit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import mtm68.assem.Assem;
+import mtm68.assem.FuncDefnAssem;
+
+/**
+ * Writes the assem of a program to a file one function at a time, through a
+ * buffered writer on the file's channel. Functions can be written as soon
+ * as their registers are allocated, so the text of the whole program is
+ * never held in memory and writing overlaps with allocating later
+ * functions.
+ */
+public class AssemFileWriter implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private Writer writer;
+
+	/**
+	 * Opens file and writes the directives for the source file filename.
+	 */
+	public AssemFileWriter(Path file, String filename) throws IOException {
+		if(file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		writer = Channels.newWriter(channel, Charset.defaultCharset().newEncoder(), BUFFER_SIZE);
+		writer.write(AssemToFileBuilder.getDirectives(filename));
+	}
+
+	/**
+	 * Writes an allocated function with its prologue and epilogue.
+	 */
+	public void write(FuncDefnAssem func) {
+		write(func.getFlattenedAssem().getAssems());
+	}
+
+	public void write(List<Assem> assems) {
+		try {
+			for(Assem assem : assems) {
+				writer.write(assem.toString());
+				writer.write('\n');
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,291 @@
+package mtm68.assem.visit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import mtm68.assem.Assem;
+import mtm68.assem.CallAssem;
+import mtm68.assem.CmpAssem;
+import mtm68.assem.CqoAssem;
+import mtm68.assem.IDivAssem;
+import mtm68.assem.JumpAssem;
+import mtm68.assem.JumpAssem.JumpType;
+import mtm68.assem.LabelAssem;
+import mtm68.assem.MoveAssem;
+import mtm68.assem.MulAssem;
+import mtm68.assem.OperAssem;
+import mtm68.assem.PopAssem;
+import mtm68.assem.PushAssem;
+import mtm68.assem.RetAssem;
+import mtm68.assem.SetccAssem;
+import mtm68.assem.SetccAssem.CC;
+import mtm68.assem.op.ARShiftAssem;
+import mtm68.assem.op.AddAssem;
+import mtm68.assem.op.AndAssem;
+import mtm68.assem.op.IMulAssem;
+import mtm68.assem.op.LShiftAssem;
+import mtm68.assem.op.LeaAssem;
+import mtm68.assem.op.OrAssem;
+import mtm68.assem.op.RShiftAssem;
+import mtm68.assem.op.SubAssem;
+import mtm68.assem.op.XorAssem;
+import mtm68.assem.operand.AbstractReg;
+import mtm68.assem.operand.AssemOp;
+import mtm68.assem.operand.Dest;
+import mtm68.assem.operand.Imm;
+import mtm68.assem.operand.Loc;
+import mtm68.assem.operand.Mem;
+import mtm68.assem.operand.RealReg;
+import mtm68.assem.operand.RealReg.RealRegId;
+import mtm68.assem.operand.Reg;
+import mtm68.assem.operand.Src;
+
+/**
+ * Writes lists of assems in a compact binary form and reads them back.
+ * Every assem and operand is a tag byte followed by its fields.
+ *
+ * Label names go through a renaming when they are written and another when
+ * they are read, so code can be read back with different labels than it was
+ * written with. A renaming returns null for a label it doesn't know, which
+ * fails the write or read.
+ */
+public class AssemSerializer {
+
+	// Assem tags
+	private static final int MOVE = 0;
+	private static final int ADD = 1;
+	private static final int SUB = 2;
+	private static final int AND = 3;
+	private static final int OR = 4;
+	private static final int XOR = 5;
+	private static final int IMUL = 6;
+	private static final int LSHIFT = 7;
+	private static final int RSHIFT = 8;
+	private static final int ARSHIFT = 9;
+	private static final int LEA = 10;
+	private static final int CMP = 11;
+	private static final int JUMP = 12;
+	private static final int LABEL = 13;
+	private static final int CALL = 14;
+	private static final int RET = 15;
+	private static final int CQO = 16;
+	private static final int IDIV = 17;
+	private static final int MUL = 18;
+	private static final int SETCC = 19;
+	private static final int PUSH = 20;
+	private static final int POP = 21;
+
+	// Operand tags
+	private static final int NONE = 0;
+	private static final int REAL_REG = 1;
+	private static final int ABSTRACT_REG = 2;
+	private static final int IMM = 3;
+	private static final int MEM = 4;
+
+	private UnaryOperator<String> writeLabel;
+	private UnaryOperator<String> readLabel;
+
+	/**
+	 * @param writeLabel  renames labels as they are written
+	 * @param readLabel   renames labels as they are read
+	 */
+	public AssemSerializer(UnaryOperator<String> writeLabel, UnaryOperator<String> readLabel) {
+		this.writeLabel = writeLabel;
+		this.readLabel = readLabel;
+	}
+
+	public void write(DataOutput out, List<Assem> assems) throws IOException {
+		out.writeInt(assems.size());
+		for(Assem assem : assems) {
+			writeAssem(out, assem);
+		}
+	}
+
+	public List<Assem> read(DataInput in) throws IOException {
+		int size = in.readInt();
+		List<Assem> assems = new ArrayList<>(size);
+		for(int i = 0; i < size; i++) {
+			assems.add(readAssem(in));
+		}
+		return assems;
+	}
+
+	private void writeAssem(DataOutput out, Assem assem) throws IOException {
+		if(assem instanceof MoveAssem) {
+			MoveAssem move = (MoveAssem) assem;
+			out.writeByte(MOVE);
+			writeOperand(out, move.getDest());
+			writeOperand(out, move.getSrc());
+		} else if(assem instanceof OperAssem) {
+			OperAssem oper = (OperAssem) assem;
+			out.writeByte(operTag(oper));
+			writeOperand(out, oper.getDest());
+			writeOperand(out, oper.getSrc());
+		} else if(assem instanceof JumpAssem) {
+			JumpAssem jump = (JumpAssem) assem;
+			out.writeByte(JUMP);
+			out.writeByte(jump.getJumpType().ordinal());
+			writeLabel(out, jump.getLoc().toString());
+		} else if(assem instanceof LabelAssem) {
+			out.writeByte(LABEL);
+			writeLabel(out, ((LabelAssem) assem).getName());
+		} else if(assem instanceof CallAssem) {
+			CallAssem call = (CallAssem) assem;
+			out.writeByte(CALL);
+			out.writeUTF(call.getName());
+			out.writeInt(call.getNumArgs());
+		} else if(assem instanceof RetAssem) {
+			out.writeByte(RET);
+		} else if(assem instanceof CqoAssem) {
+			out.writeByte(CQO);
+		} else if(assem instanceof IDivAssem) {
+			out.writeByte(IDIV);
+			writeOperand(out, ((IDivAssem) assem).getSrc());
+		} else if(assem instanceof MulAssem) {
+			out.writeByte(MUL);
+			writeOperand(out, ((MulAssem) assem).getSrc());
+		} else if(assem instanceof SetccAssem) {
+			out.writeByte(SETCC);
+			out.writeByte(((SetccAssem) assem).getCC().ordinal());
+		} else if(assem instanceof PushAssem) {
+			out.writeByte(PUSH);
+			writeOperand(out, ((PushAssem) assem).getReg());
+		} else if(assem instanceof PopAssem) {
+			out.writeByte(POP);
+			writeOperand(out, ((PopAssem) assem).getReg());
+		} else {
+			throw new IOException("Can't serialize " + assem.getClass().getSimpleName());
+		}
+	}
+
+	private int operTag(OperAssem oper) throws IOException {
+		if(oper instanceof AddAssem) return ADD;
+		if(oper instanceof SubAssem) return SUB;
+		if(oper instanceof AndAssem) return AND;
+		if(oper instanceof OrAssem) return OR;
+		if(oper instanceof XorAssem) return XOR;
+		if(oper instanceof IMulAssem) return IMUL;
+		if(oper instanceof LShiftAssem) return LSHIFT;
+		if(oper instanceof RShiftAssem) return RSHIFT;
+		if(oper instanceof ARShiftAssem) return ARSHIFT;
+		if(oper instanceof LeaAssem) return LEA;
+		if(oper instanceof CmpAssem) return CMP;
+		throw new IOException("Can't serialize " + oper.getClass().getSimpleName());
+	}
+
+	private Assem readAssem(DataInput in) throws IOException {
+		int tag = in.readByte();
+		switch(tag) {
+		case MOVE:
+			return new MoveAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case ADD:
+			return new AddAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case SUB:
+			return new SubAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case AND:
+			return new AndAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case OR:
+			return new OrAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case XOR:
+			return new XorAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case IMUL:
+			return new IMulAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case LSHIFT:
+			return new LShiftAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case RSHIFT:
+			return new RShiftAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case ARSHIFT:
+			return new ARShiftAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case LEA:
+			return new LeaAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case CMP:
+			return new CmpAssem((Dest) readOperand(in), (Src) readOperand(in));
+		case JUMP:
+			JumpType type = JumpType.values()[in.readByte()];
+			return new JumpAssem(type, new Loc(readLabel(in)));
+		case LABEL:
+			return new LabelAssem(readLabel(in));
+		case CALL:
+			return new CallAssem(in.readUTF(), in.readInt());
+		case RET:
+			return new RetAssem();
+		case CQO:
+			return new CqoAssem();
+		case IDIV:
+			return new IDivAssem((Src) readOperand(in));
+		case MUL:
+			return new MulAssem((Src) readOperand(in));
+		case SETCC:
+			return new SetccAssem(CC.values()[in.readByte()]);
+		case PUSH:
+			return new PushAssem((Reg) readOperand(in));
+		case POP:
+			return new PopAssem((Reg) readOperand(in));
+		default:
+			throw new IOException("Unknown assem tag " + tag);
+		}
+	}
+
+	private void writeOperand(DataOutput out, Object op) throws IOException {
+		if(op == null) {
+			out.writeByte(NONE);
+		} else if(op instanceof RealReg) {
+			out.writeByte(REAL_REG);
+			out.writeByte(RealRegId.valueOf(((RealReg) op).getId().toUpperCase()).ordinal());
+		} else if(op instanceof AbstractReg) {
+			out.writeByte(ABSTRACT_REG);
+			out.writeUTF(((AbstractReg) op).getId());
+		} else if(op instanceof Imm) {
+			out.writeByte(IMM);
+			out.writeLong(((Imm) op).getValue());
+		} else if(op instanceof Mem) {
+			Mem mem = (Mem) op;
+			out.writeByte(MEM);
+			writeOperand(out, mem.getBase());
+			writeOperand(out, mem.getIndex());
+			out.writeInt(mem.getScale());
+			out.writeInt(mem.getDisp());
+		} else {
+			throw new IOException("Can't serialize " + op.getClass().getSimpleName());
+		}
+	}
+
+	private AssemOp readOperand(DataInput in) throws IOException {
+		int tag = in.readByte();
+		switch(tag) {
+		case NONE:
+			return null;
+		case REAL_REG:
+			return new RealReg(RealRegId.values()[in.readByte()]);
+		case ABSTRACT_REG:
+			return new AbstractReg(in.readUTF());
+		case IMM:
+			return new Imm(in.readLong());
+		case MEM:
+			Reg base = (Reg) readOperand(in);
+			Reg index = (Reg) readOperand(in);
+			Mem mem = new Mem(base, index, in.readInt());
+			mem.setDisp(in.readInt());
+			return mem;
+		default:
+			throw new IOException("Unknown operand tag " + tag);
+		}
+	}
+
+	private void writeLabel(DataOutput out, String label) throws IOException {
+		String renamed = writeLabel.apply(label);
+		if(renamed == null) throw new IOException("Unknown label " + label);
+		out.writeUTF(renamed);
+	}
+
+	private String readLabel(DataInput in) throws IOException {
+		String label = in.readUTF();
+		String renamed = readLabel.apply(label);
+		if(renamed == null) throw new IOException("Unknown label " + label);
+		return renamed;
+	}
+}
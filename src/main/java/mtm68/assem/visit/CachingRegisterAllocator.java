@@ -0,0 +1,195 @@
+package mtm68.assem.visit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.visit.IRFuncHasher;
+import mtm68.assem.CompUnitAssem;
+import mtm68.assem.FuncDefnAssem;
+import mtm68.assem.RegisterAllocator;
+import mtm68.assem.SeqAssem;
+import mtm68.assem.operand.RealReg;
+import mtm68.assem.operand.RealReg.RealRegId;
+import mtm68.util.ArrayUtils;
+import mtm68.util.CacheDirectory;
+
+/**
+ * Caches the allocated code of each function, keyed by the structural hash
+ * of its IR, and only allocates registers for functions that aren't cached.
+ * Editing one function of a file then only allocates that function again.
+ *
+ * An entry holds the allocated body of a function with its labels numbered,
+ * the number of spilled temps and the callee-saved registers it uses, which
+ * is everything needed to rebuild its prologue and epilogue.
+ */
+public class CachingRegisterAllocator implements RegisterAllocator {
+	private static final String CACHE_VERSION = "2";
+	private static final String EXTENSION = ".fn";
+
+	private RegisterAllocator allocator;
+	private CacheDirectory cacheDir;
+
+	private Map<String, FuncKey> keys;
+
+	/**
+	 * @param allocator  allocates the functions that aren't cached
+	 * @param cacheDir   where allocated functions are cached
+	 * @param ir         the IR the program to allocate was tiled from
+	 * @param options    the compiler options that change allocated code
+	 */
+	public CachingRegisterAllocator(RegisterAllocator allocator, CacheDirectory cacheDir,
+			IRCompUnit ir, String options) {
+		this.allocator = allocator;
+		this.cacheDir = cacheDir;
+		this.keys = new HashMap<>();
+
+		IRFuncHasher hasher = new IRFuncHasher(CACHE_VERSION + ";" + CacheDirectory.compilerStamp() + ";" + options);
+		for(IRFuncDefn func : ir.functions().values()) {
+			String hash = hasher.hash(func);
+			keys.put(func.name(), new FuncKey(hash, hasher.getLabels()));
+		}
+	}
+
+	@Override
+	public CompUnitAssem allocateRegisters(CompUnitAssem program) {
+		List<FuncDefnAssem> funcs = new ArrayList<>();
+		allocateRegisters(program, funcs::add);
+		return new CompUnitAssem(program.getName(), funcs);
+	}
+
+	/**
+	 * Cached functions are emitted as soon as the functions before them
+	 * are, so the program keeps its order while the functions that aren't
+	 * cached are allocated.
+	 */
+	@Override
+	public void allocateRegisters(CompUnitAssem program, Consumer<FuncDefnAssem> emit) {
+		Map<String, FuncDefnAssem> cached = new HashMap<>();
+		List<FuncDefnAssem> misses = new ArrayList<>();
+
+		for(FuncDefnAssem func : program.getFunctions()) {
+			FuncDefnAssem restored = restore(func);
+			if(restored != null) {
+				cached.put(func.getName(), restored);
+			} else {
+				misses.add(func);
+			}
+		}
+
+		Deque<FuncDefnAssem> pending = new ArrayDeque<>(program.getFunctions());
+		emitCached(pending, cached, emit);
+
+		if(!misses.isEmpty()) {
+			allocator.allocateRegisters(new CompUnitAssem(program.getName(), misses), func -> {
+				store(func);
+
+				// Misses are emitted in order, so this one is next
+				pending.removeFirst();
+				emit.accept(func);
+				emitCached(pending, cached, emit);
+			});
+		}
+	}
+
+	private void emitCached(Deque<FuncDefnAssem> pending, Map<String, FuncDefnAssem> cached,
+			Consumer<FuncDefnAssem> emit) {
+		while(!pending.isEmpty() && cached.containsKey(pending.peekFirst().getName())) {
+			emit.accept(cached.get(pending.removeFirst().getName()));
+		}
+	}
+
+	private FuncDefnAssem restore(FuncDefnAssem func) {
+		FuncKey key = keys.get(func.getName());
+		if(key == null) return null;
+
+		Path cached = cacheDir.get(key.hash + EXTENSION);
+		if(cached == null) return null;
+
+		AssemSerializer serializer = new AssemSerializer(l -> null, key::fromIndex);
+		try(DataInputStream in = new DataInputStream(Files.newInputStream(cached))) {
+			int numSpilledTemps = in.readInt();
+
+			int numCalleeRegs = in.readByte();
+			List<RealReg> calleeRegs = ArrayUtils.empty();
+			for(int i = 0; i < numCalleeRegs; i++) {
+				calleeRegs.add(new RealReg(RealRegId.values()[in.readByte()]));
+			}
+
+			SeqAssem body = new SeqAssem(serializer.read(in));
+
+			FuncDefnAssem restored = new FuncDefnAssem(func.getName(), func.getNumArgs(), body);
+			restored.setNumSpilledTemps(numSpilledTemps);
+			restored.setCalleeRegs(calleeRegs);
+			return restored;
+		} catch(IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private void store(FuncDefnAssem func) {
+		FuncKey key = keys.get(func.getName());
+		if(key == null) return;
+
+		AssemSerializer serializer = new AssemSerializer(key::toIndex, l -> null);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(func.getNumSpilledTemps());
+
+			out.writeByte(func.getCalleeRegs().size());
+			for(RealReg reg : func.getCalleeRegs()) {
+				out.writeByte(RealRegId.valueOf(reg.getId().toUpperCase()).ordinal());
+			}
+
+			serializer.write(out, func.getBodyAssem().getAssems());
+		} catch(IOException e) {
+			// Code with a label that isn't in the IR can't be renamed, so
+			// it isn't cached
+			return;
+		}
+
+		try {
+			cacheDir.put(key.hash + EXTENSION, bytes.toByteArray());
+		} catch(IOException e) {
+			e.printStackTrace();
+			System.out.println("Failed caching " + func.getName());
+		}
+	}
+
+	private static class FuncKey {
+		private String hash;
+		private Map<String, Integer> labelIndices;
+		private List<String> labels;
+
+		public FuncKey(String hash, List<String> labels) {
+			this.hash = hash;
+			this.labels = labels;
+			this.labelIndices = new HashMap<>();
+			for(int i = 0; i < labels.size(); i++) {
+				labelIndices.put(labels.get(i), i);
+			}
+		}
+
+		public String toIndex(String label) {
+			Integer index = labelIndices.get(label);
+			return index == null ? null : index.toString();
+		}
+
+		public String fromIndex(String index) {
+			int i = Integer.parseInt(index);
+			return i < labels.size() ? labels.get(i) : null;
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package mtm68.assem.visit;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import mtm68.assem.Assem;
+import mtm68.assem.CmpAssem;
+import mtm68.assem.JumpAssem;
+import mtm68.assem.JumpAssem.JumpType;
+import mtm68.assem.LabelAssem;
+import mtm68.assem.MoveAssem;
+import mtm68.assem.OperAssem;
+import mtm68.assem.RetAssem;
+import mtm68.assem.SetccAssem;
+import mtm68.assem.op.ARShiftAssem;
+import mtm68.assem.op.AddAssem;
+import mtm68.assem.op.IMulAssem;
+import mtm68.assem.op.LShiftAssem;
+import mtm68.assem.op.OrAssem;
+import mtm68.assem.op.RShiftAssem;
+import mtm68.assem.op.SubAssem;
+import mtm68.assem.op.XorAssem;
+import mtm68.assem.operand.Imm;
+import mtm68.assem.operand.Loc;
+import mtm68.assem.operand.Mem;
+import mtm68.assem.operand.RealReg;
+import mtm68.assem.operand.Reg;
+import mtm68.util.ArrayUtils;
+
+/**
+ * Rewrites short windows of allocated assem into fewer or cheaper
+ * instructions, such as self moves, reloads of a value that was just
+ * stored and jumps to the next instruction. Each rewrite in the table
+ * looks at the instructions from one position on, and the table is tried
+ * at every position until no rewrite matches anywhere. Every rewrite
+ * removes an instruction or a load, so this always ends.
+ *
+ * Rewrites only look at the instructions in their window, so what they do
+ * is safe whatever comes before or after it. They rely on one property of
+ * the code the Tiler generates: flags are only read by the jcc or setcc
+ * that follows the cmp that set them, with nothing but moves between.
+ */
+public class PeepholeOptimizer {
+
+	private static final int MAX_WINDOW = 16;
+
+	private static final List<Rewrite> REWRITES = ArrayUtils.elems(
+			PeepholeOptimizer::removeSelfMove,
+			PeepholeOptimizer::forwardStore,
+			PeepholeOptimizer::removeOverwrittenStore,
+			PeepholeOptimizer::removeOverwrittenMove,
+			PeepholeOptimizer::removeIdentityOp,
+			PeepholeOptimizer::removeJumpToNext,
+			PeepholeOptimizer::negateJumpOverJump,
+			PeepholeOptimizer::removeUnreachable,
+			PeepholeOptimizer::jumpOnSetcc
+		);
+
+	/**
+	 * A rewrite of the instructions at the start of a window.
+	 */
+	private interface Rewrite {
+
+		/**
+		 * Adds what to replace the start of window with to replacement.
+		 *
+		 * @return the number of instructions replaced, or 0 if window
+		 *         doesn't start with a match
+		 */
+		int rewrite(List<Assem> window, List<Assem> replacement);
+	}
+
+	/**
+	 * The instructions of an allocated function, with its prologue and
+	 * epilogues, after rewriting. assems is left as it is.
+	 */
+	public List<Assem> optimize(List<Assem> assems) {
+		List<Assem> result = assems;
+		boolean changed = true;
+
+		while(changed) {
+			changed = false;
+			List<Assem> next = new ArrayList<>(result.size());
+			List<Assem> replacement = ArrayUtils.empty();
+
+			int i = 0;
+			while(i < result.size()) {
+				List<Assem> window = result.subList(i, Math.min(i + MAX_WINDOW, result.size()));
+
+				int replaced = 0;
+				for(Rewrite rewrite : REWRITES) {
+					replacement.clear();
+					replaced = rewrite.rewrite(window, replacement);
+					if(replaced > 0) break;
+				}
+
+				if(replaced > 0) {
+					next.addAll(replacement);
+					i += replaced;
+					changed = true;
+				} else {
+					next.add(result.get(i));
+					i++;
+				}
+			}
+			result = next;
+		}
+
+		return result;
+	}
+
+	//--------------------------------------------------------------------------------
+	// Moves
+	//--------------------------------------------------------------------------------
+
+	/**
+	 * mov r, r =>
+	 */
+	private static int removeSelfMove(List<Assem> window, List<Assem> replacement) {
+		MoveAssem move = get(window, 0, MoveAssem.class);
+		if(move == null || !same(move.getDest(), move.getSrc())) return 0;
+
+		return 1;
+	}
+
+	/**
+	 * mov [m], s; mov r, [m] => mov [m], s; mov r, s
+	 */
+	private static int forwardStore(List<Assem> window, List<Assem> replacement) {
+		MoveAssem store = get(window, 0, MoveAssem.class);
+		MoveAssem load = get(window, 1, MoveAssem.class);
+		if(store == null || load == null) return 0;
+		if(!(store.getDest() instanceof Mem) || store.getSrc() instanceof Mem) return 0;
+		if(!same(store.getDest(), load.getSrc())) return 0;
+
+		replacement.add(store);
+		if(!same(load.getDest(), store.getSrc())) {
+			replacement.add(new MoveAssem(load.getDest(), store.getSrc()));
+		}
+		return 2;
+	}
+
+	/**
+	 * mov [m], s; mov [m], t => mov [m], t
+	 */
+	private static int removeOverwrittenStore(List<Assem> window, List<Assem> replacement) {
+		MoveAssem first = get(window, 0, MoveAssem.class);
+		MoveAssem second = get(window, 1, MoveAssem.class);
+		if(first == null || second == null) return 0;
+		if(!(first.getDest() instanceof Mem) || !same(first.getDest(), second.getDest())) return 0;
+
+		replacement.add(second);
+		return 2;
+	}
+
+	/**
+	 * mov r, s; mov r, t => mov r, t, when t doesn't read r
+	 */
+	private static int removeOverwrittenMove(List<Assem> window, List<Assem> replacement) {
+		MoveAssem first = get(window, 0, MoveAssem.class);
+		MoveAssem second = get(window, 1, MoveAssem.class);
+		if(first == null || second == null) return 0;
+		if(!(first.getDest() instanceof Reg) || !same(first.getDest(), second.getDest())) return 0;
+		if(reads(second.getSrc(), (Reg) first.getDest())) return 0;
+
+		replacement.add(second);
+		return 2;
+	}
+
+	//--------------------------------------------------------------------------------
+	// Arithmetic
+	//--------------------------------------------------------------------------------
+
+	/**
+	 * add r, 0 =>  and likewise for sub, or, xor and shifts by 0 and imul by 1
+	 */
+	private static int removeIdentityOp(List<Assem> window, List<Assem> replacement) {
+		OperAssem op = get(window, 0, OperAssem.class);
+		if(op == null || !(op.getSrc() instanceof Imm)) return 0;
+
+		long value = ((Imm) op.getSrc()).getValue();
+		boolean identity = op instanceof IMulAssem ? value == 1L : value == 0L && isZeroIdentity(op);
+		return identity ? 1 : 0;
+	}
+
+	private static boolean isZeroIdentity(OperAssem op) {
+		return op instanceof AddAssem || op instanceof SubAssem
+				|| op instanceof OrAssem || op instanceof XorAssem
+				|| op instanceof LShiftAssem || op instanceof RShiftAssem
+				|| op instanceof ARShiftAssem;
+	}
+
+	//--------------------------------------------------------------------------------
+	// Jumps
+	//--------------------------------------------------------------------------------
+
+	/**
+	 * jmp l; l: => l:
+	 */
+	private static int removeJumpToNext(List<Assem> window, List<Assem> replacement) {
+		JumpAssem jump = get(window, 0, JumpAssem.class);
+		LabelAssem label = get(window, 1, LabelAssem.class);
+		if(jump == null || label == null) return 0;
+		if(!jump.isUnconditional() || !jumpsTo(jump, label)) return 0;
+
+		replacement.add(label);
+		return 2;
+	}
+
+	/**
+	 * jcc l1; jmp l2; l1: => jncc l2; l1:
+	 */
+	private static int negateJumpOverJump(List<Assem> window, List<Assem> replacement) {
+		JumpAssem condJump = get(window, 0, JumpAssem.class);
+		JumpAssem jump = get(window, 1, JumpAssem.class);
+		LabelAssem label = get(window, 2, LabelAssem.class);
+		if(condJump == null || jump == null || label == null) return 0;
+		if(condJump.isUnconditional() || !jump.isUnconditional() || !jumpsTo(condJump, label)) return 0;
+
+		replacement.add(new JumpAssem(condJump.getJumpType().negate(), jump.getLoc()));
+		replacement.add(label);
+		return 3;
+	}
+
+	/**
+	 * jmp l; s => jmp l, when s isn't a label, and likewise after ret
+	 */
+	private static int removeUnreachable(List<Assem> window, List<Assem> replacement) {
+		if(window.size() < 2) return 0;
+
+		Assem first = window.get(0);
+		boolean unconditional = first instanceof RetAssem
+				|| first instanceof JumpAssem && ((JumpAssem) first).isUnconditional();
+		if(!unconditional || window.get(1) instanceof LabelAssem) return 0;
+
+		replacement.add(first);
+		return 2;
+	}
+
+	/**
+	 * setcc al; mov r, rax; ... cmp r, 1; je l => setcc al; mov r, rax; ... jcc l
+	 * setcc al; mov r, rax; ... xor r, 1; cmp r, 1; je l => setcc al; mov r, rax; ... xor r, 1; jne l
+	 *
+	 * The flags of the cmp before the setcc are still set at the je, since
+	 * moves leave them alone. The Tiler clears rax before the cmp, so r is 1
+	 * exactly when the flags meet cc, and is 0 or 1 when it is negated.
+	 */
+	private static int jumpOnSetcc(List<Assem> window, List<Assem> replacement) {
+		SetccAssem setcc = get(window, 0, SetccAssem.class);
+		if(setcc == null) return 0;
+
+		// Where the result of the setcc is, by how the operands print
+		Set<String> holders = new HashSet<>();
+		holders.add(RealReg.RAX.toString());
+		List<Mem> slots = ArrayUtils.empty();
+
+		for(int i = 1; i + 1 < window.size(); i++) {
+			Assem assem = window.get(i);
+
+			if(assem instanceof MoveAssem) {
+				MoveAssem move = (MoveAssem) assem;
+				boolean holds = holders.contains(move.getSrc().toString());
+
+				if(move.getDest() instanceof Reg) {
+					// Addresses using the register are now somewhere else
+					Reg reg = (Reg) move.getDest();
+					slots.removeIf(slot -> reads(slot, reg) && holders.remove(slot.toString()));
+				} else if(!holds) {
+					// Any address may be the one written
+					slots.forEach(slot -> holders.remove(slot.toString()));
+					slots.clear();
+				}
+
+				if(holds) {
+					holders.add(move.getDest().toString());
+					if(move.getDest() instanceof Mem) slots.add((Mem) move.getDest());
+				} else {
+					holders.remove(move.getDest().toString());
+				}
+				continue;
+			}
+
+			// xor r, 1 flips r, and sets the zero flag exactly when r is now 0
+			XorAssem negate = get(window, i, XorAssem.class);
+			boolean negated = negate != null && holders.contains(negate.getDest().toString()) && isOne(negate.getSrc());
+			int cmpIdx = negated ? i + 1 : i;
+
+			CmpAssem cmp = get(window, cmpIdx, CmpAssem.class);
+			JumpAssem jump = get(window, cmpIdx + 1, JumpAssem.class);
+			if(cmp == null || jump == null || !isOne(cmp.getSrc())) return 0;
+			if(negated ? !same(cmp.getDest(), negate.getDest()) : !holders.contains(cmp.getDest().toString())) return 0;
+
+			JumpType jumpType = negated ? JumpType.JNE : getJumpType(setcc.getCC());
+			switch(jump.getJumpType()) {
+			case JE:
+			case JZ:
+				break;
+			case JNE:
+				jumpType = jumpType.negate();
+				break;
+			default:
+				return 0;
+			}
+
+			replacement.addAll(window.subList(0, cmpIdx));
+			replacement.add(new JumpAssem(jumpType, jump.getLoc()));
+			return cmpIdx + 2;
+		}
+
+		return 0;
+	}
+
+	private static JumpType getJumpType(SetccAssem.CC cc) {
+		switch(cc) {
+		case E: return JumpType.JE;
+		case NE: return JumpType.JNE;
+		case L: return JumpType.JL;
+		case LE: return JumpType.JLE;
+		case G: return JumpType.JG;
+		case GE: return JumpType.JGE;
+		case B: return JumpType.JB;
+		default: throw new IllegalArgumentException("No jump for " + cc);
+		}
+	}
+
+	//--------------------------------------------------------------------------------
+	// Helpers
+	//--------------------------------------------------------------------------------
+
+	private static <A extends Assem> A get(List<Assem> window, int i, Class<A> clazz) {
+		if(i >= window.size()) return null;
+
+		Assem assem = window.get(i);
+		return clazz.isInstance(assem) ? clazz.cast(assem) : null;
+	}
+
+	/**
+	 * Operands are the same if they print the same, since registers,
+	 * addresses and immediates print all of their parts.
+	 */
+	private static boolean same(Object first, Object second) {
+		return first.getClass() == second.getClass() && first.toString().equals(second.toString());
+	}
+
+	private static boolean reads(Object src, Reg reg) {
+		if(src instanceof Reg) return src.equals(reg);
+		if(src instanceof Mem) {
+			Mem mem = (Mem) src;
+			return reg.equals(mem.getBase()) || reg.equals(mem.getIndex());
+		}
+		return false;
+	}
+
+	private static boolean isOne(Object src) {
+		return src instanceof Imm && ((Imm) src).getValue() == 1L;
+	}
+
+	private static boolean jumpsTo(JumpAssem jump, LabelAssem label) {
+		return jump.getLoc().equals(new Loc(label.getName()));
+	}
+}
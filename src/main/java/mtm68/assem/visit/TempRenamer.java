@@ -0,0 +1,42 @@
+package mtm68.assem.visit;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mtm68.assem.FuncDefnAssem;
+import mtm68.assem.ReplaceableReg;
+import mtm68.assem.operand.AbstractReg;
+import mtm68.assem.operand.Reg;
+import mtm68.util.Constants;
+
+/**
+ * Renames the abstract registers of a function to _t0, _t1, ... in the order
+ * they first appear, like IRFuncHasher numbers temps. Register allocation
+ * depends on the names of temps, which come from counters shared by the
+ * whole file, so without this the same function could be allocated
+ * differently depending on the functions compiled before it. Argument and
+ * return temps keep their names, since their names mean something.
+ */
+public class TempRenamer {
+
+	public void rename(FuncDefnAssem func) {
+		List<ReplaceableReg> regs = func.getBodyAssem().getReplaceableRegs();
+
+		// Every name is numbered before any is replaced, as operands like
+		// memory addresses can be shared between assems
+		Map<String, Reg> names = new HashMap<>();
+		for(ReplaceableReg reg : regs) {
+			String name = reg.getName();
+			if(!reg.isAbstract() || name.startsWith(Constants.ARG_PREFIX)
+					|| name.startsWith(Constants.RET_PREFIX)) continue;
+
+			names.computeIfAbsent(name, n -> new AbstractReg("_t" + names.size()));
+		}
+
+		for(ReplaceableReg reg : regs) {
+			Reg renamed = names.get(reg.getName());
+			if(renamed != null) reg.replace(renamed);
+		}
+	}
+}
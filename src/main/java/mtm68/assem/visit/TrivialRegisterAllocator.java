@@ -10,6 +10,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import mtm68.assem.Assem;
@@ -43,6 +44,13 @@ public class TrivialRegisterAllocator implements RegisterAllocator {
 		return new CompUnitAssem(assem.getName(), newFuncs);
 	}
 
+	@Override
+	public void allocateRegisters(CompUnitAssem assem, Consumer<FuncDefnAssem> emit) {
+		for(FuncDefnAssem func : assem.getFunctions()) {
+			emit.accept(allocateForFunc(func));
+		}
+	}
+
 	private FuncDefnAssem allocateForFunc(FuncDefnAssem func) {
 		List<Assem> insts = func.getBodyAssem().getAssems();
 		Map<String, Mem> regsToLoc = assignAbstrRegsToStackLocations(insts);
@@ -0,0 +1,140 @@
+package mtm68.ir.cfg;
+
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory;
+import edu.cornell.cs.cs4120.ir.IRSeq;
+import edu.cornell.cs.cs4120.ir.IRStmt;
+import edu.cornell.cs.cs4120.ir.visit.IRContainsExprWithSideEffect;
+
+/**
+ * Caches the CFG and dataflow analyses of functions between optimization
+ * passes. Results are keyed by the function they were computed for, so as
+ * long as a pass leaves a function alone, later passes reuse them. When a
+ * pass changes a function, {@link #update} hands the analyses the pass
+ * preserves over to the new function and drops the rest.
+ *
+ * The analysis objects handed out are shared: a pass that edits the IR
+ * held in an analysis graph must report the change through update.
+ */
+public class AnalysisManager {
+
+	private IRNodeFactory f;
+	private Map<IRFuncDefn, Map<Analysis, Object>> cache;
+
+	public AnalysisManager(IRNodeFactory f) {
+		this.f = f;
+		this.cache = new IdentityHashMap<>();
+	}
+
+	/**
+	 * The CFG of the function, for analyses to share. Its nodes carry no
+	 * flow data.
+	 */
+	public IRCFGBuilder<Void> getCFG(IRFuncDefn func) {
+		return get(func, Analysis.CFG, () -> {
+			IRCFGBuilder<Void> cfg = new IRCFGBuilder<>();
+			cfg.buildIRCFG(stmts(func), () -> null);
+			return cfg;
+		});
+	}
+
+	/**
+	 * A copy of the function decorated with which expressions have side effects.
+	 */
+	public IRFuncDefn getSideEffects(IRFuncDefn func) {
+		return get(func, Analysis.SIDE_EFFECTS, () ->
+			(IRFuncDefn)new IRContainsExprWithSideEffect(f).visit(func));
+	}
+
+	/**
+	 * Live variables, computed over the function decorated by
+	 * {@link #getSideEffects} so that passes can check statements for
+	 * side effects.
+	 */
+	public LiveVariables getLiveVariables(IRFuncDefn func) {
+		return get(func, Analysis.LIVE_VARIABLES, () -> {
+			LiveVariables lv = new LiveVariables(getSideEffects(func), getCFG(func));
+			lv.performAnalysis();
+			return lv;
+		});
+	}
+
+	public AvailableExprs getAvailableExprs(IRFuncDefn func) {
+		return get(func, Analysis.AVAILABLE_EXPRS, () -> {
+			AvailableExprs ae = new AvailableExprs(func, f, getCFG(func));
+			ae.performAnalysis();
+			return ae;
+		});
+	}
+
+	public AvailableCopies getAvailableCopies(IRFuncDefn func) {
+		return get(func, Analysis.AVAILABLE_COPIES, () -> {
+			AvailableCopies ac = new AvailableCopies(func, getCFG(func));
+			ac.performAnalysis();
+			return ac;
+		});
+	}
+
+	public ReachingDefns getReachingDefns(IRFuncDefn func) {
+		return get(func, Analysis.REACHING_DEFNS, () -> {
+			ReachingDefns rd = new ReachingDefns(func, getCFG(func));
+			rd.performAnalysis();
+			return rd;
+		});
+	}
+
+	/**
+	 * Records that a pass turned func into newFunc. The results for func in
+	 * preserved carry over to newFunc, everything else is dropped.
+	 */
+	public void update(IRFuncDefn func, IRFuncDefn newFunc, Set<Analysis> preserved) {
+		if(func == newFunc) return;
+
+		Map<Analysis, Object> results = cache.remove(func);
+		if(results == null) return;
+
+		results.keySet().retainAll(preserved);
+		if(!results.isEmpty()) cache.put(newFunc, results);
+	}
+
+	/**
+	 * Drops every result for func.
+	 */
+	public void invalidate(IRFuncDefn func) {
+		cache.remove(func);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(IRFuncDefn func, Analysis analysis, Supplier<T> compute) {
+		Map<Analysis, Object> results = cache.get(func);
+		if(results != null && results.containsKey(analysis)) {
+			return (T)results.get(analysis);
+		}
+
+		// Computing one analysis may cache others, so only look up the
+		// results for func again afterwards
+		T result = compute.get();
+		cache.computeIfAbsent(func, k -> new EnumMap<>(Analysis.class)).put(analysis, result);
+		return result;
+	}
+
+	private List<IRStmt> stmts(IRFuncDefn func) {
+		return ((IRSeq)func.body()).stmts();
+	}
+
+	public static enum Analysis {
+		CFG,
+		SIDE_EFFECTS,
+		LIVE_VARIABLES,
+		AVAILABLE_EXPRS,
+		AVAILABLE_COPIES,
+		REACHING_DEFNS
+	}
+}
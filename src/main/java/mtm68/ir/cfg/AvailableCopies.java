@@ -2,7 +2,10 @@ package mtm68.ir.cfg;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -15,161 +18,110 @@ import edu.cornell.cs.cs4120.ir.IRStmt;
 import edu.cornell.cs.cs4120.ir.IRTemp;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.BitVectorDataflow.Direction;
+import mtm68.ir.cfg.BitVectorDataflow.Meet;
+import mtm68.ir.cfg.BitVectorDataflow.Numbering;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
-import mtm68.util.SetUtils;
 
 public class AvailableCopies {
 
 	private Graph<IRData<AvailableCopyData>> graph;
 	private IRCFGBuilder<AvailableCopyData> builder;
+	private IRCFGBuilder<?> cfg;
 	
 	private IRFuncDefn ir;
 
 	public AvailableCopies(IRFuncDefn ir) {
+		this(ir, null);
+	}
+	
+	/**
+	 * Constructs the analysis to run over the nodes and edges of a CFG 
+	 * already built for ir, or a new CFG if cfg is null.
+	 */
+	public AvailableCopies(IRFuncDefn ir, IRCFGBuilder<?> cfg) {
 		builder = new IRCFGBuilder<>();
 		this.ir = ir;
+		this.cfg = cfg;
 	}
 	
+	/**
+	 * Solves for the copies available at each node along every path, with
+	 * the copies numbered densely:
+	 * in[n] = copies available on all edges into n
+	 * out[n] = gen[n] U (in[n] - kill[n])
+	 * 
+	 * where
+	 * gen(x <- y)    = n, unless y is a _RET or _ARG temp
+	 * kill(x <- e)   = x = z, z = x forall z
+	 * kill(call)     = all copies
+	 */
 	public void performAnalysis() {
 
 		IRStmt body = ir.body();
 	    List<IRStmt> stmts = ((IRSeq)body).stmts();
 
-		graph = builder.buildIRCFG(stmts, AvailableCopyData::new);
+		graph = cfg == null
+				? builder.buildIRCFG(stmts, AvailableCopyData::new)
+				: builder.buildIRCFG(stmts, AvailableCopyData::new, cfg);
 		List<Node> nodes = graph.getNodes();
 		
-		boolean changes = true;
-		while (changes) {
-			changes = false;
-			
-			for(Node node : nodes) {
-				IRData<AvailableCopyData> data = graph.getDataForNode(node);
-				AvailableCopyData flowData = data.getFlowData();
-				
-				Set<AvailableCopy> inOld = flowData.getIn();
-				Set<AvailableCopy> outOld = flowData.getOut();
-				
-				Set<AvailableCopy> in = in(node);
-				Set<AvailableCopy> out = out(node);
-				
-				flowData.setIn(in);
-				flowData.setOut(out);
-				
-				flowData.isTop = false;
-				changes = changes || (!inOld.equals(in) || !outOld.equals(out));
+		Numbering<AvailableCopy> copies = new Numbering<>();
+		Map<IRTemp, BitSet> copiesOf = new HashMap<>();
+		int[] gen = new int[nodes.size()];
+		IRTemp[] defined = new IRTemp[nodes.size()];
+		boolean[] killsAll = new boolean[nodes.size()];
+
+		for(int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			IRStmt ir = graph.getDataForNode(node).getIR();
+			gen[i] = -1;
+
+			if(hasXGetsYForm(ir)) {
+				AvailableCopy copy = genXGetsY((IRMove)ir, node);
+				if(copy != null) {
+					gen[i] = copies.index(copy);
+					copiesOf.computeIfAbsent(copy.x, t -> new BitSet()).set(gen[i]);
+					copiesOf.computeIfAbsent(copy.y, t -> new BitSet()).set(gen[i]);
+				}
 			}
-		}
-	}
-	
-	/**
-	 * The set of definitions reaching a node.
-	 * in[n] = definitions reaching on all edges into n.
-	 */
-	private Set<AvailableCopy> in(Node node) {
-		Set<AvailableCopy> in = SetUtils.empty();
-		boolean first = true;
-		for(Node pred : node.pred()) {
-			AvailableCopyData predData = graph.getDataForNode(pred)
-											   .getFlowData();
 			
-			Set<AvailableCopy> out = predData.getOut();
-			/**
-			* The first iteration, we need to set the base set 
-			* because intersect with empty set will always be empty
-			* and there is no good way to set the initial set
-			* as the empty set
-			*/
-			if(predData.isTop) continue;
-			if(first) {
-				in = SetUtils.copy(out);
-				first = false;
-			} else {
-				in = SetUtils.intersect(in, out);
+			if(hasXGetsEForm(ir)) {
+				defined[i] = (IRTemp)((IRMove)ir).target();
+			} else if(ir instanceof IRCallStmt) {
+				killsAll[i] = true;
 			}
 		}
 		
-		return in;
-	}
-
-	/**
-	 * The set of available expressions on edges leaving node n.
-	 * out[n] = gen[n] U (in(n) - kill(n))
-	 */
-	 private Set<AvailableCopy> out(Node n) {
-
-		Set<AvailableCopy> gen = gen(n);
-		Set<AvailableCopy> in = in(n);
-		Set<AvailableCopy> kill = kill(n, in);
+		BitVectorDataflow dataflow = new BitVectorDataflow(nodes, copies.size(), 
+				Direction.FORWARD, Meet.INTERSECTION, (n, in, out) -> {
+					if(!killsAll[n]) {
+						out.or(in);
+						if(defined[n] != null && copiesOf.containsKey(defined[n])) {
+							out.andNot(copiesOf.get(defined[n]));
+						}
+					}
+					if(gen[n] >= 0) out.set(gen[n]);
+				});
+		dataflow.solve();
 		
-		Set<AvailableCopy> difference = SetUtils.difference(in, kill);
-		 
-		return SetUtils.union(gen , difference);
-	 }
-	 
-	/**
-	 * Definitions generated by a node.
-	 * 
-	 * For example,
-	 * gen(x <- y) = node 
-	 * else 	   = {}
-	 */
-	private Set<AvailableCopy> gen(Node node) {
-		IRStmt ir = graph.getDataForNode(node).getIR();
-
-		if (hasXGetsYForm(ir)) {
-			return genXGetsY((IRMove)ir, node);
-
-		} else {
-			return SetUtils.empty();
+		for(int i = 0; i < nodes.size(); i++) {
+			AvailableCopyData flowData = graph.getDataForNode(nodes.get(i)).getFlowData();
+			flowData.setFacts(dataflow.getIn(i), dataflow.getOut(i), copies.getFacts());
 		}
 	}
 
-	private Set<AvailableCopy> genXGetsY(IRMove mov, Node d) {
+	private AvailableCopy genXGetsY(IRMove mov, Node d) {
 		IRTemp x = (IRTemp)mov.target();
 		IRTemp y = (IRTemp)mov.source();
 
 		if(y.name().startsWith("_RET"))
-			return SetUtils.empty();
+			return null;
 		
 		if(y.name().startsWith("_ARG"))
-			return SetUtils.empty();
+			return null;
 		
-		AvailableCopy defn = new AvailableCopy(x, y, d);
-
-		return SetUtils.elems(defn);
-	}
-
-	/**
-	 * Expressions killed by a node that has facts l.
-	 * 
-	 * For example,
-	 * kill(x <- e)    = x = z, z = x forall z
-	 * else		       = {}	
-	 * 
-	 */
-	private Set<AvailableCopy> kill(Node node, Set<AvailableCopy> l) {
-		IRStmt ir = graph.getDataForNode(node).getIR();
-
-		if (hasXGetsEForm(ir)) {
-			return killXGetsE((IRMove)ir, l);
-			
-		} else if(ir instanceof  IRCallStmt) {
-			return l;
-
-		} else {
-			return SetUtils.empty();
-		}
-	}
-	
-	/**
-	 * The subset of l that contains IRTemp t.
-	 * @param ir of the form IRMove(IRTemp t, IRExpr)
-	 */
-	private Set<AvailableCopy> killXGetsE(IRMove ir, Set<AvailableCopy> l) {
-		IRTemp temp = (IRTemp)ir.target();
-		return l.stream()
-				.filter(r -> r.x.equals(temp) || r.y.equals(temp))
-				.collect(Collectors.toSet());
+		return new AvailableCopy(x, y, d);
 	}
 
 	private boolean hasXGetsYForm(IRStmt ir) {
@@ -231,31 +183,7 @@ public class AvailableCopies {
 		return sb.toString();
 	}
 	
-	public static class AvailableCopyData {
-		Set<AvailableCopy> in;
-		Set<AvailableCopy> out;
-		boolean isTop = true;
-		
-		public AvailableCopyData() {
-			in = SetUtils.empty();
-			out = SetUtils.empty();
-		}
-
-		public Set<AvailableCopy> getIn() {
-			return in;
-		}
-
-		public void setIn(Set<AvailableCopy> in) {
-			this.in = in;
-		}
-
-		public Set<AvailableCopy> getOut() {
-			return out;
-		}
-
-		public void setOut(Set<AvailableCopy> out) {
-			this.out = out;
-		}
+	public static class AvailableCopyData extends BitVectorData<AvailableCopy> {
 	}
 
 	public static class AvailableCopy {
@@ -2,7 +2,10 @@ package mtm68.ir.cfg;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -19,23 +22,54 @@ import edu.cornell.cs.cs4120.ir.IRTemp;
 import edu.cornell.cs.cs4120.ir.visit.IRContainsMemSubexprDecorator;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.BitVectorDataflow.Direction;
+import mtm68.ir.cfg.BitVectorDataflow.Meet;
+import mtm68.ir.cfg.BitVectorDataflow.Numbering;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
+import mtm68.util.ArrayUtils;
 import mtm68.util.SetUtils;
 
 public class AvailableExprs {
 
 	private Graph<IRData<AvailableData>> graph;
 	private IRCFGBuilder<AvailableData> builder;
+	private IRCFGBuilder<?> cfg;
 	
 	private IRFuncDefn ir;
 	private IRNodeFactory f;
 
 	public AvailableExprs(IRFuncDefn ir, IRNodeFactory f) {
+		this(ir, f, null);
+	}
+	
+	/**
+	 * Constructs the analysis to run over the nodes and edges of a CFG 
+	 * already built for ir, or a new CFG if cfg is null.
+	 */
+	public AvailableExprs(IRFuncDefn ir, IRNodeFactory f, IRCFGBuilder<?> cfg) {
 		builder = new IRCFGBuilder<>();
 		this.ir = ir;
 		this.f = f;
+		this.cfg = cfg;
 	}
 	
+	/**
+	 * Solves for the expressions available at each node along every path, 
+	 * with the (expression, definer) pairs numbered densely:
+	 * in[n] = expressions available on all edges into n
+	 * out[n] = in[n] U exprs(n) - kill(n)
+	 * 
+	 * An expression in exprs(n) is only added if it isn't already available
+	 * from another definer.
+	 * 
+	 * For example,
+	 * kill(x <- e)       = all exprs containing x
+	 * kill([e1] <- e2)   = all mem exprs
+	 * kill([e1] <- [e2]) = all exprs [e'] that can alias [e1] (we don't do alias analysis so we're killing all mem exprs)
+	 * kill(x <- f(es))   = exprs containing x and expressions [e'] 
+	 * 					    that could be changed by function call to f
+	 * kill(if e)         = {}
+	 */
 	public void performAnalysis() {
 
 		// need this data for kill
@@ -44,104 +78,90 @@ public class AvailableExprs {
 		IRStmt body = visitedIr.body();
 	    List<IRStmt> stmts = ((IRSeq)body).stmts();
 
-		graph = builder.buildIRCFG(stmts, AvailableData::new);
+		graph = cfg == null
+				? builder.buildIRCFG(stmts, AvailableData::new)
+				: builder.buildIRCFG(stmts, AvailableData::new, cfg);
 		List<Node> nodes = graph.getNodes();
 		
-		boolean changes = true;
-		while (changes) {
-			changes = false;
+		Numbering<AvailableExpr> facts = new Numbering<>();
+		Numbering<IRExpr> exprs = new Numbering<>();
+		List<BitSet> factsOfExpr = ArrayUtils.empty();
+		int[][] genExprs = new int[nodes.size()][];
+		int[][] genFacts = new int[nodes.size()][];
+
+		for(int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			Set<AvailableExpr> nodeExprs = exprs(node);
+
+			graph.getDataForNode(node).getFlowData().setExprs(nodeExprs.stream()
+					.map(AvailableExpr::getExpr)
+					.collect(Collectors.toSet()));
 			
-			for(Node node : nodes) {
-				IRData<AvailableData> data = graph.getDataForNode(node);
-				AvailableData flowData = data.getFlowData();
-				
-				
-				Set<AvailableExpr> inOld = flowData.getIn();
-				Set<AvailableExpr> outOld = flowData.getOut();
-				
-				Set<AvailableExpr> exprs = exprs(node);
-				Set<AvailableExpr> in = in(node);
-				Set<AvailableExpr> out = out(node, exprs);
-				
-				flowData.setIn(in);
-				flowData.setOut(out);
-				flowData.setExprs(exprs.stream()
-									   .map(AvailableExpr::getExpr)
-									   .collect(Collectors.toSet()));
-				
-				flowData.isTop = false;
-				changes = changes || (!inOld.equals(in) || !outOld.equals(out));
+			genExprs[i] = new int[nodeExprs.size()];
+			genFacts[i] = new int[nodeExprs.size()];
+
+			int j = 0;
+			for(AvailableExpr e : nodeExprs) {
+				int exprIdx = exprs.index(e.getExpr());
+				if(exprIdx == factsOfExpr.size()) factsOfExpr.add(new BitSet());
+
+				int factIdx = facts.index(e);
+				factsOfExpr.get(exprIdx).set(factIdx);
+
+				genExprs[i][j] = exprIdx;
+				genFacts[i][j] = factIdx;
+				j++;
 			}
 		}
-	}
-	
-	/**
-	 * The set of available expressions on edges entering node n.
-	 * in[n] = expressions available on all edges into n
-	 */
-	private Set<AvailableExpr> in(Node node) {
-		Set<AvailableExpr> in = SetUtils.empty();
-		boolean first = true;
-		for(Node pred : node.pred()) {
-			AvailableData predData = graph.getDataForNode(pred)
-											   .getFlowData();
-			Set<AvailableExpr> out = predData.getOut();
-			/**
-			* The first iteration, we need to set the base set 
-			* because intersect with empty set will always be empty
-			* and there is no good way to set the initial set
-			* as the empty set
-			*/
-			if(predData.isTop) continue;
-			if(first) {
-				in = SetUtils.copy(out);
-				first = false;
-			} else {
-				in = SetUtils.intersect(in, out);
+		
+		// Facts killed by defining a temp and by writing to memory
+		Map<IRTemp, BitSet> factsUsing = new HashMap<>();
+		BitSet memFacts = new BitSet();
+		for(int exprIdx = 0; exprIdx < exprs.size(); exprIdx++) {
+			IRExpr expr = exprs.get(exprIdx);
+			BitSet exprFacts = factsOfExpr.get(exprIdx);
+
+			for(IRTemp temp : expr.use()) {
+				factsUsing.computeIfAbsent(temp, t -> new BitSet()).or(exprFacts);
+			}
+			if(expr.doesContainsMutableMemSubexpr()) {
+				memFacts.or(exprFacts);
 			}
 		}
 		
-		return in;
-	}
+		BitSet[] kill = new BitSet[nodes.size()];
+		for(int i = 0; i < nodes.size(); i++) {
+			IRStmt ir = graph.getDataForNode(nodes.get(i)).getIR();
 
-	/**
-	 * The set of available expressions on edges leaving node n.
-	 * out[n] = in[n] U exprs(n) - kill(n)
-	 */
-	 private Set<AvailableExpr> out(Node n, Set<AvailableExpr> exprs) {
-		Set<AvailableExpr> in = in(n);
-		Set<AvailableExpr> kill = kill(n, in);
+			if(hasXGetsEForm(ir)) {
+				IRTemp temp = (IRTemp)((IRMove)ir).target();
+				kill[i] = factsUsing.getOrDefault(temp, new BitSet());
+
+			} else if(hasMemE1GetsE2Form(ir) || hasXGetsFForm(ir)) {
+				kill[i] = memFacts;
+
+			} else {
+				kill[i] = new BitSet();
+			}
+		}
 		
-		/** 
-		 * The definer of exprs and in will be different so 
-		 * with a typical set union both cases will be added
-		 * to the set. We only want to take from in, if the same
-		 * IRExpr exists in exprs and in.
-		 */
-		Set<AvailableExpr> inUExprsWithCorrectDefs = 
-				inUnionExprs(in, exprs);
+		BitVectorDataflow dataflow = new BitVectorDataflow(nodes, facts.size(), 
+				Direction.FORWARD, Meet.INTERSECTION, (n, in, out) -> {
+					out.or(in);
+					out.andNot(kill[n]);
+					for(int j = 0; j < genExprs[n].length; j++) {
+						if(!in.intersects(factsOfExpr.get(genExprs[n][j]))) {
+							out.set(genFacts[n][j]);
+						}
+					}
+				});
+		dataflow.solve();
 		
-		return SetUtils.difference(inUExprsWithCorrectDefs, kill);
-	 }
-	 
-	 /**
-	  * Returns the union of in and exprs where element equality is defined
-	  * by the equality of the IRExpr. If in and exprs contain the same IRExpr,
-	  * then the AvaliableExpr belonging to the in set is part of the union
-	  * and the one from the exprs set is not.
-	  */
-	 private Set<AvailableExpr> inUnionExprs(Set<AvailableExpr> in, Set<AvailableExpr> exprs) {
-		 Set<IRExpr> inExprs = in.stream()
-				 .map(AvailableExpr::getExpr)
-				 .collect(Collectors.toSet());
-		 
-		 Set<AvailableExpr> exprsToAdd = exprs.stream().filter(e -> {
-			return !inExprs.contains(e.getExpr());
-		 })
-		 .collect(Collectors.toSet());
-		 
-		 return SetUtils.union(in, exprsToAdd);
-	 }
+		for(int i = 0; i < nodes.size(); i++) {
+			AvailableData flowData = graph.getDataForNode(nodes.get(i)).getFlowData();
+			flowData.setFacts(dataflow.getIn(i), dataflow.getOut(i), facts.getFacts());
+		}
+	}
 	
 	/**
 	 * Expressions evaluated by a node.
@@ -200,83 +220,6 @@ public class AvailableExprs {
 			       .collect(Collectors.toSet());
 	}
 	
-	/**
-	 * Expressions killed by a node that has facts l.
-	 * 
-	 * For example,
-	 * kill(x <- e)       = all exprs containing x
-	 * kill([e1] <- e2)   = all mem exprs
-	 * kill([e1] <- [e2]) = all exprs [e'] that can alias [e1] (we don't do alias analysis so we're killing all mem exprs)
-	 * kill(x <- f(es))   = exprs containing x and expressions [e'] 
-	 * 					    that could be changed by function call to f
-	 * kill(if e)         = {}
-	 */
-	private Set<AvailableExpr> kill(Node node, Set<AvailableExpr> l) {
-		IRStmt ir = graph.getDataForNode(node).getIR();
-
-		if (hasXGetsEForm(ir)) {
-			return killXGetsE((IRMove)ir, l);
-
-		} else if (hasMemE1GetsE2Form(ir)) {
-			return killMemE1GetsE2((IRMove)ir, l);
-
-		} else if(hasXGetsFForm(ir)) {
-			return killXGetsF((IRCallStmt)ir, l);
-
-		} else if(hasIfEForm(ir)) {
-			return killIfE((IRCJump)ir,l);
-
-		} else {
-			return SetUtils.empty();
-		}
-	}
-
-	
-	/**
-	 * The subset of IRExpr in l that contains t.
-	 * @param ir of the form IRMove(IRTemp t, IRExpr)
-	 */
-	private Set<AvailableExpr> killXGetsE(IRMove ir, Set<AvailableExpr> l) {
-		IRTemp temp = (IRTemp)ir.target();
-		return l.stream()
-				.filter(e -> e.getExpr().containsExpr(temp))
-				.collect(Collectors.toSet());
-	}
-
-	/**
-	 * The subset of IRExpr in l that could alias IRMem(e1).
-	 * 
-	 * Without performing alias analysis, we must consider all  
-	 * memory access as aliasing IRMem(e1).
-	 * 
-	 * @param ir of the form IRMove(IRMem e1, IRMem e2)
-	 */
-	private Set<AvailableExpr> killMemE1GetsE2(IRMove ir, Set<AvailableExpr> l) {
-		return l.stream()
-				.filter(e -> e.getExpr().doesContainsMutableMemSubexpr())
-				.collect(Collectors.toSet());
-	}
-
-	/**
-	 * The subset of IRExpr in l that contains any arguments IRMem(e')
-	 * The x <- f(e) kills x by the subsequent IRStmt that moves RET_i into
-	 * a temp.
-	 * @param ir of the form IRCallStmt c. 
-	 */
-	private Set<AvailableExpr> killXGetsF(IRCallStmt ir, Set<AvailableExpr> l) {
-		return l.stream()
-				.filter(e -> e.getExpr().doesContainsMutableMemSubexpr())
-				.collect(Collectors.toSet());
-	}
-	
-	/**
-	 * The empty set.
-	 * @param ir of the form IRCJump(IRExpr e, l1, l2)
-	 */
-	private Set<AvailableExpr> killIfE(IRCJump ir, Set<AvailableExpr> l) {
-		return SetUtils.empty();
-	}
-
 	private boolean hasXGetsEForm(IRStmt ir) {
 		return ir instanceof IRMove 
 				&& ((IRMove)ir).target() instanceof IRTemp
@@ -344,33 +287,8 @@ public class AvailableExprs {
 		return sb.toString();
 	}
 	
-	public static class AvailableData {
-		Set<AvailableExpr> in;
-		Set<AvailableExpr> out;
-		Set<IRExpr> exprs;
-		boolean isTop = true;
-		
-		public AvailableData() {
-			in = SetUtils.empty();
-			out = SetUtils.empty();
-			exprs = SetUtils.empty();
-		}
-
-		public Set<AvailableExpr> getIn() {
-			return in;
-		}
-
-		public void setIn(Set<AvailableExpr> in) {
-			this.in = in;
-		}
-
-		public Set<AvailableExpr> getOut() {
-			return out;
-		}
-
-		public void setOut(Set<AvailableExpr> out) {
-			this.out = out;
-		}
+	public static class AvailableData extends BitVectorData<AvailableExpr> {
+		Set<IRExpr> exprs = SetUtils.empty();
 
 		public Set<IRExpr> getExprs() {
 			return exprs;
@@ -0,0 +1,60 @@
+package mtm68.ir.cfg;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import mtm68.util.SetUtils;
+
+/**
+ * Flow data for an analysis solved by {@link BitVectorDataflow}. The facts
+ * at a node are kept as bit vectors; the sets of facts are only built when
+ * asked for.
+ */
+public class BitVectorData<T> {
+	private BitSet in;
+	private BitSet out;
+	private List<T> facts;
+
+	private Set<T> inSet;
+	private Set<T> outSet;
+
+	public BitVectorData() {
+		in = new BitSet();
+		out = new BitSet();
+	}
+
+	public void setFacts(BitSet in, BitSet out, List<T> facts) {
+		this.in = in;
+		this.out = out;
+		this.facts = facts;
+		this.inSet = null;
+		this.outSet = null;
+	}
+
+	public Set<T> getIn() {
+		if(inSet == null) inSet = toSet(in);
+		return inSet;
+	}
+
+	public Set<T> getOut() {
+		if(outSet == null) outSet = toSet(out);
+		return outSet;
+	}
+
+	public BitSet getInBits() {
+		return in;
+	}
+
+	public BitSet getOutBits() {
+		return out;
+	}
+
+	private Set<T> toSet(BitSet bits) {
+		Set<T> set = SetUtils.empty();
+		for(int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			set.add(facts.get(i));
+		}
+		return set;
+	}
+}
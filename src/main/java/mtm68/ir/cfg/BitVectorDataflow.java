@@ -0,0 +1,249 @@
+package mtm68.ir.cfg;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mtm68.assem.cfg.Graph.Node;
+import mtm68.util.ArrayUtils;
+
+/**
+ * Solves a dataflow problem whose facts are numbered densely, so the facts
+ * at each node are bit vectors that the meet and transfer functions update
+ * in place. Nodes are visited from a worklist in reverse postorder of the
+ * direction of flow, which reaches the fixed point in a couple of passes
+ * over most CFGs.
+ *
+ * Nodes are numbered by their position in the list the solver was created
+ * with. For an intersection meet, every node starts at the full set of
+ * facts except for the boundary (the entry node and nodes with no
+ * predecessors going forward, nodes with no successors going backward),
+ * which starts at the empty set.
+ */
+public class BitVectorDataflow {
+
+	private int numNodes;
+	private int numFacts;
+	private Direction direction;
+	private Meet meet;
+	private Transfer transfer;
+
+	private int[][] preds;
+	private int[][] succs;
+	private BitSet[] in;
+	private BitSet[] out;
+
+	public BitVectorDataflow(List<Node> nodes, int numFacts, Direction direction, Meet meet, Transfer transfer) {
+		this.numNodes = nodes.size();
+		this.numFacts = numFacts;
+		this.direction = direction;
+		this.meet = meet;
+		this.transfer = transfer;
+
+		Map<Node, Integer> nodeIdx = new HashMap<>();
+		for(int i = 0; i < numNodes; i++) {
+			nodeIdx.put(nodes.get(i), i);
+		}
+
+		preds = new int[numNodes][];
+		succs = new int[numNodes][];
+		for(int i = 0; i < numNodes; i++) {
+			preds[i] = toIndices(nodes.get(i).pred(), nodeIdx);
+			succs[i] = toIndices(nodes.get(i).succ(), nodeIdx);
+		}
+	}
+
+	public void solve() {
+		boolean forward = direction == Direction.FORWARD;
+
+		// "Before" and "after" are in the direction of flow
+		int[][] flowPreds = forward ? preds : succs;
+		int[][] flowSuccs = forward ? succs : preds;
+
+		BitSet[] before = new BitSet[numNodes];
+		BitSet[] after = new BitSet[numNodes];
+		boolean[] boundary = new boolean[numNodes];
+		for(int i = 0; i < numNodes; i++) {
+			before[i] = new BitSet(numFacts);
+			after[i] = new BitSet(numFacts);
+			if(meet == Meet.INTERSECTION) after[i].set(0, numFacts);
+
+			boundary[i] = flowPreds[i].length == 0 || (forward && i == 0);
+		}
+
+		int[] order = reversePostorder(flowSuccs, boundary);
+		int[] position = new int[numNodes];
+		for(int i = 0; i < numNodes; i++) {
+			position[order[i]] = i;
+		}
+
+		// Worklist of positions in reverse postorder, swept in that order
+		BitSet worklist = new BitSet(numNodes);
+		worklist.set(0, numNodes);
+
+		BitSet scratch = new BitSet(numFacts);
+		int pos = worklist.nextSetBit(0);
+		while(pos >= 0) {
+			worklist.clear(pos);
+			int n = order[pos];
+
+			meet(before[n], flowPreds[n], after, boundary[n]);
+
+			scratch.clear();
+			transfer.apply(n, before[n], scratch);
+
+			if(!scratch.equals(after[n])) {
+				after[n].clear();
+				after[n].or(scratch);
+				for(int s : flowSuccs[n]) {
+					worklist.set(position[s]);
+				}
+			}
+
+			pos = worklist.nextSetBit(pos + 1);
+			if(pos < 0) pos = worklist.nextSetBit(0);
+		}
+
+		in = forward ? before : after;
+		out = forward ? after : before;
+	}
+
+	private void meet(BitSet target, int[] flowPreds, BitSet[] after, boolean boundary) {
+		target.clear();
+
+		if(meet == Meet.UNION) {
+			for(int p : flowPreds) {
+				target.or(after[p]);
+			}
+		} else if(!boundary) {
+			target.set(0, numFacts);
+			for(int p : flowPreds) {
+				target.and(after[p]);
+			}
+		}
+	}
+
+	/**
+	 * Orders nodes by reverse postorder of a depth first search that starts
+	 * from the boundary nodes, followed by anything they don't reach.
+	 */
+	private int[] reversePostorder(int[][] flowSuccs, boolean[] boundary) {
+		int[] postorder = new int[numNodes];
+		int count = 0;
+
+		boolean[] visited = new boolean[numNodes];
+		int[] stack = new int[numNodes];
+		int[] nextSucc = new int[numNodes];
+
+		for(int pass = 0; pass < 2; pass++) {
+			for(int root = 0; root < numNodes; root++) {
+				if(visited[root] || (pass == 0 && !boundary[root])) continue;
+
+				int sp = 0;
+				stack[sp++] = root;
+				visited[root] = true;
+
+				while(sp > 0) {
+					int n = stack[sp - 1];
+					if(nextSucc[n] < flowSuccs[n].length) {
+						int s = flowSuccs[n][nextSucc[n]++];
+						if(!visited[s]) {
+							visited[s] = true;
+							stack[sp++] = s;
+						}
+					} else {
+						postorder[count++] = n;
+						sp--;
+					}
+				}
+			}
+		}
+
+		int[] order = new int[numNodes];
+		for(int i = 0; i < numNodes; i++) {
+			order[i] = postorder[numNodes - 1 - i];
+		}
+		return order;
+	}
+
+	private int[] toIndices(Set<Node> nodes, Map<Node, Integer> nodeIdx) {
+		return nodes.stream()
+				.mapToInt(nodeIdx::get)
+				.toArray();
+	}
+
+	/**
+	 * The facts on entry to node n after solving.
+	 */
+	public BitSet getIn(int n) {
+		return in[n];
+	}
+
+	/**
+	 * The facts on exit from node n after solving.
+	 */
+	public BitSet getOut(int n) {
+		return out[n];
+	}
+
+	public static enum Direction {
+		FORWARD,
+		BACKWARD
+	}
+
+	public static enum Meet {
+		UNION,
+		INTERSECTION
+	}
+
+	public static interface Transfer {
+		/**
+		 * Computes the facts after node n, in the direction of flow, from
+		 * the facts before it. after is empty when called.
+		 */
+		void apply(int n, BitSet before, BitSet after);
+	}
+
+	/**
+	 * Numbers the facts of an analysis densely, in the order they are added.
+	 */
+	public static class Numbering<T> {
+		private Map<T, Integer> indices = new HashMap<>();
+		private List<T> facts = ArrayUtils.empty();
+
+		/**
+		 * The number of fact, numbering it if it is new.
+		 */
+		public int index(T fact) {
+			Integer idx = indices.get(fact);
+			if(idx == null) {
+				idx = facts.size();
+				indices.put(fact, idx);
+				facts.add(fact);
+			}
+			return idx;
+		}
+
+		public BitSet toBits(Set<T> facts) {
+			BitSet bits = new BitSet();
+			for(T fact : facts) {
+				bits.set(index(fact));
+			}
+			return bits;
+		}
+
+		public T get(int idx) {
+			return facts.get(idx);
+		}
+
+		public int size() {
+			return facts.size();
+		}
+
+		public List<T> getFacts() {
+			return facts;
+		}
+	}
+}
@@ -60,7 +60,7 @@ public class CFGTracer {
 			List<CFGNode> trace = maximalTrace(node);
 			unmarked.removeAll(trace);
 			
-			if(Debug.DEBUG_ON) printTrace(trace);
+			if(Debug.isDebugOn()) printTrace(trace);
 
 			addStmtsFromTraceToResult(result, trace);
 		}
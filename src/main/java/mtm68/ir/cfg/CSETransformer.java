@@ -13,19 +13,44 @@ import edu.cornell.cs.cs4120.ir.IRStmt;
 import edu.cornell.cs.cs4120.ir.IRTemp;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.AnalysisManager.Analysis;
 import mtm68.ir.cfg.AvailableExprs.AvailableData;
 import mtm68.ir.cfg.AvailableExprs.AvailableExpr;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
 import mtm68.util.FreshTempGenerator;
+import mtm68.util.SetUtils;
 
 public class CSETransformer {
 
 	private IRCompUnit ir;
 	private IRNodeFactory f;
+	private AnalysisManager analyses;
+	private boolean changed;
 
 	public CSETransformer(IRCompUnit ir, IRNodeFactory f) {
+		this(ir, f, new AnalysisManager(f));
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions through
+	 * {@link #doCSE(IRFuncDefn)}.
+	 */
+	public CSETransformer(IRNodeFactory f) {
+		this(null, f);
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions that takes
+	 * its analyses from analyses.
+	 */
+	public CSETransformer(IRNodeFactory f, AnalysisManager analyses) {
+		this(null, f, analyses);
+	}
+
+	private CSETransformer(IRCompUnit ir, IRNodeFactory f, AnalysisManager analyses) {
 		this.ir = ir;
 		this.f = f;
+		this.analyses = analyses;
 	}
 
 	/**
@@ -57,9 +82,8 @@ public class CSETransformer {
 		return ir;
 	}
 	
-	private IRFuncDefn doCSE(IRFuncDefn ir) {
-		AvailableExprs ae = new AvailableExprs(ir, f);
-		ae.performAnalysis();
+	public IRFuncDefn doCSE(IRFuncDefn ir) {
+		AvailableExprs ae = analyses.getAvailableExprs(ir);
 		Graph<IRData<AvailableData>> graph = ae.getGraph();
 		
 		for(Node s : graph.getNodes()) {
@@ -86,6 +110,7 @@ public class CSETransformer {
 		IRData<AvailableData> data = graph.getDataForNode(s);
 
 		for(AvailableExpr e : exprsToSub) {
+			changed = true;
 			Node definer = e.getDefiner();
 			IRData<AvailableData> dData = graph.getDataForNode(definer);
 			IRTemp temp = f.IRTemp(getFreshTemp());
@@ -104,4 +129,20 @@ public class CSETransformer {
 	private String getFreshTemp() {
 		return FreshTempGenerator.getFreshTemp();
 	}
+	
+	/**
+	 * @return the analyses still valid for a function this transformer 
+	 * changed. Moving common subexpressions into new statements changes 
+	 * the CFG, so none are.
+	 */
+	public Set<Analysis> getPreservedAnalyses() {
+		return SetUtils.empty();
+	}
+	
+	/**
+	 * @return whether any run of this transformer has changed the IR
+	 */
+	public boolean hasChanged() {
+		return changed;
+	}
 }
@@ -17,19 +17,44 @@ import edu.cornell.cs.cs4120.ir.IRStmt;
 import edu.cornell.cs.cs4120.ir.IRTemp;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.AnalysisManager.Analysis;
 import mtm68.ir.cfg.AvailableCopies.AvailableCopy;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
 import mtm68.ir.cfg.ReachingDefns.ReachingData;
 import mtm68.ir.cfg.ReachingDefns.ReachingDefn;
+import mtm68.util.SetUtils;
 
 public class ConstantPropTransformer {
 
 	private IRCompUnit ir;
 	private IRNodeFactory f;
+	private AnalysisManager analyses;
+	private boolean changed;
 
 	public ConstantPropTransformer(IRCompUnit ir, IRNodeFactory f) {
+		this(ir, f, new AnalysisManager(f));
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions through
+	 * {@link #doConstantProp(IRFuncDefn)}.
+	 */
+	public ConstantPropTransformer(IRNodeFactory f) {
+		this(null, f);
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions that takes
+	 * its analyses from analyses.
+	 */
+	public ConstantPropTransformer(IRNodeFactory f, AnalysisManager analyses) {
+		this(null, f, analyses);
+	}
+
+	private ConstantPropTransformer(IRCompUnit ir, IRNodeFactory f, AnalysisManager analyses) {
 		this.ir = ir;
 		this.f = f;
+		this.analyses = analyses;
 	}
 
 	/**
@@ -60,9 +85,8 @@ public class ConstantPropTransformer {
 		return ir;
 	}
 	
-	private IRFuncDefn doConstantProp(IRFuncDefn ir) {
-		ReachingDefns rd = new ReachingDefns(ir);
-		rd.performAnalysis();
+	public IRFuncDefn doConstantProp(IRFuncDefn ir) {
+		ReachingDefns rd = analyses.getReachingDefns(ir);
 		Graph<IRData<ReachingData>> graph = rd.getGraph();
 		
 		for(Node s : graph.getNodes()) {
@@ -99,6 +123,7 @@ public class ConstantPropTransformer {
 												  .collect(Collectors.toSet());
 		
 		for(ReachingDefn r : tempsToReplace) {
+			changed = true;
 			IRExpr newSource = (IRExpr)mov.source().replaceExpr(r.getDefn(), r.getDefnExpr());
 			IRMove newStmt = stmt.copy();
 			newStmt.setSource(newSource);
@@ -113,4 +138,19 @@ public class ConstantPropTransformer {
 	private boolean isConst(IRNode ir) {
 		return ir instanceof IRConst;
 	}
+	
+	/**
+	 * @return the analyses still valid for a function this transformer 
+	 * changed. Only the sources of moves are rewritten, so the CFG is.
+	 */
+	public Set<Analysis> getPreservedAnalyses() {
+		return SetUtils.elems(Analysis.CFG);
+	}
+	
+	/**
+	 * @return whether any run of this transformer has changed the IR
+	 */
+	public boolean hasChanged() {
+		return changed;
+	}
 }
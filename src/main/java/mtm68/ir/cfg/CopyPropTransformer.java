@@ -17,18 +17,43 @@ import edu.cornell.cs.cs4120.ir.IRStmt;
 import edu.cornell.cs.cs4120.ir.IRTemp;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.AnalysisManager.Analysis;
 import mtm68.ir.cfg.AvailableCopies.AvailableCopy;
 import mtm68.ir.cfg.AvailableCopies.AvailableCopyData;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
+import mtm68.util.SetUtils;
 
 public class CopyPropTransformer {
 
 	private IRCompUnit ir;
 	private IRNodeFactory f;
+	private AnalysisManager analyses;
+	private boolean changed;
 
 	public CopyPropTransformer(IRCompUnit ir, IRNodeFactory f) {
+		this(ir, f, new AnalysisManager(f));
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions through
+	 * {@link #doCopyProp(IRFuncDefn)}.
+	 */
+	public CopyPropTransformer(IRNodeFactory f) {
+		this(null, f);
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions that takes
+	 * its analyses from analyses.
+	 */
+	public CopyPropTransformer(IRNodeFactory f, AnalysisManager analyses) {
+		this(null, f, analyses);
+	}
+
+	private CopyPropTransformer(IRCompUnit ir, IRNodeFactory f, AnalysisManager analyses) {
 		this.ir = ir;
 		this.f = f;
+		this.analyses = analyses;
 	}
 
 	/**
@@ -59,9 +84,8 @@ public class CopyPropTransformer {
 		return ir;
 	}
 	
-	private IRFuncDefn doCopyProp(IRFuncDefn ir) {
-		AvailableCopies rd = new AvailableCopies(ir);
-		rd.performAnalysis();
+	public IRFuncDefn doCopyProp(IRFuncDefn ir) {
+		AvailableCopies rd = analyses.getAvailableCopies(ir);
 		Graph<IRData<AvailableCopyData>> graph = rd.getGraph();
 		
 		for(Node s : graph.getNodes()) {
@@ -89,10 +113,26 @@ public class CopyPropTransformer {
 												  .collect(Collectors.toSet());
 		
 		for(AvailableCopy t : tempsToReplace) {
+			if(!t.getX().equals(t.getY())) changed = true;
 			IRExpr newSource = (IRExpr)mov.source().replaceExpr(t.getX(), t.getY());
 			IRMove newStmt = stmt.copy();
 			newStmt.setSource(newSource);
 			data.setIR(newStmt);
 		}
 	}
+	
+	/**
+	 * @return the analyses still valid for a function this transformer 
+	 * changed. Only the sources of moves are rewritten, so the CFG is.
+	 */
+	public Set<Analysis> getPreservedAnalyses() {
+		return SetUtils.elems(Analysis.CFG);
+	}
+	
+	/**
+	 * @return whether any run of this transformer has changed the IR
+	 */
+	public boolean hasChanged() {
+		return changed;
+	}
 }
@@ -13,21 +13,45 @@ import edu.cornell.cs.cs4120.ir.IRNodeFactory;
 import edu.cornell.cs.cs4120.ir.IRSeq;
 import edu.cornell.cs.cs4120.ir.IRStmt;
 import edu.cornell.cs.cs4120.ir.IRTemp;
-import edu.cornell.cs.cs4120.ir.visit.IRContainsExprWithSideEffect;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.AnalysisManager.Analysis;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
 import mtm68.ir.cfg.LiveVariables.LiveData;
 import mtm68.ir.cfg.LiveVariables.LiveVar;
+import mtm68.util.SetUtils;
 
 public class DeadCodeTransformer {
 
 	private IRCompUnit ir;
 	private IRNodeFactory f;
+	private AnalysisManager analyses;
+	private boolean changed;
 
 	public DeadCodeTransformer(IRCompUnit ir, IRNodeFactory f) {
+		this(ir, f, new AnalysisManager(f));
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions through
+	 * {@link #doDeadCodeRemoval(IRFuncDefn)}.
+	 */
+	public DeadCodeTransformer(IRNodeFactory f) {
+		this(null, f);
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions that takes
+	 * its analyses from analyses.
+	 */
+	public DeadCodeTransformer(IRNodeFactory f, AnalysisManager analyses) {
+		this(null, f, analyses);
+	}
+
+	private DeadCodeTransformer(IRCompUnit ir, IRNodeFactory f, AnalysisManager analyses) {
 		this.ir = ir;
 		this.f = f;
+		this.analyses = analyses;
 	}
 
 	/**
@@ -44,24 +68,22 @@ public class DeadCodeTransformer {
 	 */
 	public IRCompUnit doDeadCodeRemoval() {
 
-		IRContainsExprWithSideEffect visitor = new IRContainsExprWithSideEffect(f);
-		IRCompUnit newIR = (IRCompUnit)visitor.visit(ir);
-	
 		Map<String, IRFuncDefn> newFuncs = new HashMap<>();
-		for(String k : newIR.functions().keySet()) {
-			IRFuncDefn func = newIR.functions().get(k);
+		for(String k : ir.functions().keySet()) {
+			IRFuncDefn func = ir.functions().get(k);
 			IRFuncDefn newFunc = doDeadCodeRemoval(func);
 			newFuncs.put(k, newFunc);
 		}
 
-		newIR.copy();
-		newIR.setFunctions(newFuncs);
-		return newIR;
+		ir.copy();
+		ir.setFunctions(newFuncs);
+		return ir;
 	}
 	
-	private IRFuncDefn doDeadCodeRemoval(IRFuncDefn ir) {
-		LiveVariables lv = new LiveVariables(ir);
-		lv.performAnalysis();
+	public IRFuncDefn doDeadCodeRemoval(IRFuncDefn ir) {
+		// computed over the function decorated with side effects, 
+		// which we need to keep moves with side effects
+		LiveVariables lv = analyses.getLiveVariables(ir);
 		Graph<IRData<LiveData>> graph = lv.getGraph();
 		
 		for(Node s : graph.getNodes()) {
@@ -89,6 +111,7 @@ public class DeadCodeTransformer {
 		boolean isAlive = liveOut.stream().anyMatch(l ->  l.a.equals(mov.target()));
 		
 		if(!isAlive) {
+			changed = true;
 			data.setIR(f.IRSeq());
 		}
 	}
@@ -96,4 +119,19 @@ public class DeadCodeTransformer {
 	private boolean isMove(IRNode n) {
 		return n instanceof IRMove;
 	}
+	
+	/**
+	 * @return the analyses still valid for a function this transformer 
+	 * changed. Removing statements changes the CFG, so none are.
+	 */
+	public Set<Analysis> getPreservedAnalyses() {
+		return SetUtils.empty();
+	}
+	
+	/**
+	 * @return whether any run of this transformer has changed the IR
+	 */
+	public boolean hasChanged() {
+		return changed;
+	}
 }
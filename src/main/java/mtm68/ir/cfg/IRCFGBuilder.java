@@ -79,7 +79,7 @@ public class IRCFGBuilder<T> {
 			}
 
 			if(!(stmt instanceof IRJump)) {
-				IRData<T> data = new IRData<>(stmt, flowDataConstructor.get());
+				IRData<T> data = new IRData<>(stmt, flowDataConstructor.get(), i);
 				curr = graph.createNode(data);
 				stmtIdxToNode.put(i, curr);
 				
@@ -114,6 +114,33 @@ public class IRCFGBuilder<T> {
 		return graph;
 	}
 	
+	/**
+	 * Builds the graph for stmts by reusing the nodes and edges of cfg, which
+	 * must have been built from statements with the same control flow, i.e.
+	 * the same labels and jumps at the same positions. This skips resolving
+	 * jumps again when several analyses run over the same function.
+	 */
+	public Graph<IRData<T>> buildIRCFG(List<IRStmt> stmts, Supplier<T> flowDataConstructor, IRCFGBuilder<?> cfg) {
+		if(stmts.size() != cfg.originalStmts.size()) {
+			throw new InternalCompilerError("Can't reuse a CFG for statements with different control flow");
+		}
+
+		this.originalStmts = stmts;
+		for(Node node : cfg.graph.getNodes()) {
+			int stmtIdx = cfg.graph.getDataForNode(node).getStmtIdx();
+
+			IRData<T> data = new IRData<>(stmts.get(stmtIdx), flowDataConstructor.get(), stmtIdx);
+			graph.addNode(node, data);
+			stmtIdxToNode.put(stmtIdx, node);
+		}
+		
+		return graph;
+	}
+	
+	public Graph<IRData<T>> getGraph() {
+		return graph;
+	}
+	
 	private void attachLabels(Node n) {
 		for(String label : lastLabels) {
 			locationMap.put(label, n);
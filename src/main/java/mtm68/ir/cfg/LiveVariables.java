@@ -2,6 +2,7 @@ package mtm68.ir.cfg;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -19,6 +20,9 @@ import edu.cornell.cs.cs4120.ir.IRStmt;
 import edu.cornell.cs.cs4120.ir.IRTemp;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.BitVectorDataflow.Direction;
+import mtm68.ir.cfg.BitVectorDataflow.Meet;
+import mtm68.ir.cfg.BitVectorDataflow.Numbering;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
 import mtm68.util.SetUtils;
 
@@ -26,73 +30,60 @@ public class LiveVariables {
 
 	private Graph<IRData<LiveData>> graph;
 	private IRCFGBuilder<LiveData> builder;
+	private IRCFGBuilder<?> cfg;
 	
 	private IRFuncDefn ir;
 
 	public LiveVariables(IRFuncDefn ir) {
+		this(ir, null);
+	}
+	
+	/**
+	 * Constructs the analysis to run over the nodes and edges of a CFG 
+	 * already built for ir, or a new CFG if cfg is null.
+	 */
+	public LiveVariables(IRFuncDefn ir, IRCFGBuilder<?> cfg) {
 		builder = new IRCFGBuilder<>();
 		this.ir = ir;
+		this.cfg = cfg;
 	}
 	
+	/**
+	 * Solves for live variables with the temps numbered densely:
+	 * in[n] = use(n) U (out(n) - def(n))
+	 * out[n] = vars live on entry to any successor node
+	 */
 	public void performAnalysis() {
 
 		IRStmt body = ir.body();
 	    List<IRStmt> stmts = ((IRSeq)body).stmts();
 
-		graph = builder.buildIRCFG(stmts, LiveData::new);
+		graph = cfg == null
+				? builder.buildIRCFG(stmts, LiveData::new)
+				: builder.buildIRCFG(stmts, LiveData::new, cfg);
 		List<Node> nodes = graph.getNodes();
 		
-		boolean changes = true;
-		while (changes) {
-			changes = false;
-			
-			for(Node node : nodes) {
-				IRData<LiveData> data = graph.getDataForNode(node);
-				LiveData flowData = data.getFlowData();
-				
-				Set<LiveVar> inOld = flowData.getIn();
-				Set<LiveVar> outOld = flowData.getOut();
-				
-				Set<LiveVar> in = in(node);
-				Set<LiveVar> out = out(node);
-				
-				flowData.setIn(in);
-				flowData.setOut(out);
-				
-				changes = changes || (!inOld.equals(in) || !outOld.equals(out));
-			}
+		Numbering<LiveVar> vars = new Numbering<>();
+		BitSet[] use = new BitSet[nodes.size()];
+		BitSet[] def = new BitSet[nodes.size()];
+		for(int i = 0; i < nodes.size(); i++) {
+			use[i] = vars.toBits(use(nodes.get(i)));
+			def[i] = vars.toBits(def(nodes.get(i)));
 		}
-	}
-	
-	/**
-	 * The set of live on entry.
-	 * in[n] = use(n) U (out(n) - def(n))
-	 */
-	private Set<LiveVar> in(Node node) {
-		Set<LiveVar> use = use(node);
-		Set<LiveVar> out = out(node);
-		Set<LiveVar> def = def(node);
 		
-		Set<LiveVar> difference = SetUtils.difference(out, def);
-		 
-		return SetUtils.union(use, difference);
-	}
-
-	/**
-	 * The set of live variables on edges leaving node n.
-	 * out[n] = vars live on entry to any successor node
-	 */
-	 private Set<LiveVar> out(Node node) {
-		Set<LiveVar> out = SetUtils.empty();
-		for(Node succ: node.succ()) {
-			Set<LiveVar> succData = graph.getDataForNode(succ)
-											   .getFlowData()
-											   .getIn();
-			out = SetUtils.union(out, succData);
+		BitVectorDataflow dataflow = new BitVectorDataflow(nodes, vars.size(), 
+				Direction.BACKWARD, Meet.UNION, (n, out, in) -> {
+					in.or(out);
+					in.andNot(def[n]);
+					in.or(use[n]);
+				});
+		dataflow.solve();
+		
+		for(int i = 0; i < nodes.size(); i++) {
+			LiveData flowData = graph.getDataForNode(nodes.get(i)).getFlowData();
+			flowData.setFacts(dataflow.getIn(i), dataflow.getOut(i), vars.getFacts());
 		}
-
-		return out;
-	 }
+	}
 
 	/**
 	 * Variables used by a node.
@@ -264,30 +255,7 @@ public class LiveVariables {
 		return sb.toString();
 	}
 	
-	public static class LiveData {
-		Set<LiveVar> in;
-		Set<LiveVar> out;
-		
-		public LiveData() {
-			in = SetUtils.empty();
-			out = SetUtils.empty();
-		}
-
-		public Set<LiveVar> getIn() {
-			return in;
-		}
-
-		public void setIn(Set<LiveVar> in) {
-			this.in = in;
-		}
-
-		public Set<LiveVar> getOut() {
-			return out;
-		}
-
-		public void setOut(Set<LiveVar> out) {
-			this.out = out;
-		}
+	public static class LiveData extends BitVectorData<LiveVar> {
 	}
 
 	public static class LiveVar {
@@ -1,49 +1,114 @@
 package mtm68.ir.cfg;
 
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import edu.cornell.cs.cs4120.ir.IRBinOp;
+import edu.cornell.cs.cs4120.ir.IRBinOp.OpType;
+import edu.cornell.cs.cs4120.ir.IRCJump;
 import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import edu.cornell.cs.cs4120.ir.IRConst;
 import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRJump;
+import edu.cornell.cs.cs4120.ir.IRLabel;
+import edu.cornell.cs.cs4120.ir.IRMem;
+import edu.cornell.cs.cs4120.ir.IRMem.MemType;
+import edu.cornell.cs.cs4120.ir.IRMove;
+import edu.cornell.cs.cs4120.ir.IRName;
 import edu.cornell.cs.cs4120.ir.IRNodeFactory;
+import edu.cornell.cs.cs4120.ir.IRReturn;
 import edu.cornell.cs.cs4120.ir.IRSeq;
+import edu.cornell.cs.cs4120.ir.IRStmt;
+import edu.cornell.cs.cs4120.ir.IRTemp;
+import edu.cornell.cs.cs4120.ir.visit.IRConstantFolder;
+import edu.cornell.cs.cs4120.ir.visit.IRContainsMemSubexprDecorator;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.assem.cfg.LoopNesting;
+import mtm68.ir.cfg.AnalysisManager.Analysis;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
 import mtm68.ir.cfg.ReachingDefns.ReachingData;
+import mtm68.ir.cfg.ReachingDefns.ReachingDefn;
+import mtm68.util.ArrayUtils;
+import mtm68.util.Constants;
+import mtm68.util.FreshTempGenerator;
+import mtm68.util.SetUtils;
 
 public class LoopInvCodeMotion {
 
 	private IRCompUnit ir;
 	private IRNodeFactory f;
+	private AnalysisManager analyses;
+	private boolean changed;
 
 	public LoopInvCodeMotion(IRCompUnit ir, IRNodeFactory f) {
+		this(ir, f, new AnalysisManager(f));
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions through
+	 * {@link #doLICM(IRFuncDefn)}.
+	 */
+	public LoopInvCodeMotion(IRNodeFactory f) {
+		this(null, f);
+	}
+
+	/**
+	 * Constructs a transformer for use on individual functions that takes
+	 * its analyses from analyses.
+	 */
+	public LoopInvCodeMotion(IRNodeFactory f, AnalysisManager analyses) {
+		this(null, f, analyses);
+	}
+
+	private LoopInvCodeMotion(IRCompUnit ir, IRNodeFactory f, AnalysisManager analyses) {
 		this.ir = ir;
 		this.f = f;
+		this.analyses = analyses;
 	}
 
 	/**
-	 * Algorithm: 
-	 * 
-	 * 1. Compute reaching defns.
+	 * Algorithm:
 	 *
-	 * 2. Initialize INV := {all exprs in loop, including subexprs}
-	 * 
-	 * 3. Repeat until no change
-	 *   - remove all exprs from INV that:
-	 *     - use mem operand whose value might change in loop
-	 *     - might cause side effect (exceptions, nondeterminism) 
-	 *     - use variables x with more than one definition inside the loop, or whose single defn x = e in loop has e not in INV
-	 * 
+	 * 1. Compute reaching defns, and find the natural loops from the
+	 *    dominator tree of the CFG.
+	 *
+	 * 2. Initialize INV := {}, then repeat until no change
+	 *   - add x <- e in the loop to INV if e is invariant, where an expr is
+	 *     invariant unless it:
+	 *     - uses a mem operand whose value might change in loop
+	 *     - might cause side effect (exceptions, nondeterminism)
+	 *     - uses variables x defined inside the loop, unless its only
+	 *       reaching defn is outside the loop or is x = e in INV. Reaching
+	 *       defns are those that reach along every path, so a use has at
+	 *       most one
+	 *
+	 * 3. Replace each largest invariant subexpr in the loop with a fresh temp
+	 *    computed in a preheader, which every edge into the loop goes through.
+	 *    Uses of x whose defn is in INV are computed from e in the preheader.
+	 *    Subexprs too cheap to be worth a register for the whole loop are
+	 *    left where they are.
+	 *
+	 * A load may fault, so it is only hoisted from a statement that runs on
+	 * every iteration, one that dominates the exits and back edges of the
+	 * loop. Mem that is not immutable is only invariant in loops with no
+	 * stores or calls. Hoisting from a loop can make its statements
+	 * invariant in the loop around it, so each run only changes the
+	 * innermost loops with something to hoist, leaving the loops around
+	 * them to the next run.
 	 */
-	public IRCompUnit doDeadCodeRemoval() {
+	public IRCompUnit doLICM() {
 
 		Map<String, IRFuncDefn> newFuncs = new HashMap<>();
 		for(String k : ir.functions().keySet()) {
 			IRFuncDefn func = ir.functions().get(k);
-			IRFuncDefn newFunc = doDeadCodeRemoval(func);
+			IRFuncDefn newFunc = doLICM(func);
 			newFuncs.put(k, newFunc);
 		}
 
@@ -51,20 +116,574 @@ public class LoopInvCodeMotion {
 		ir.setFunctions(newFuncs);
 		return ir;
 	}
-	
-	private IRFuncDefn doDeadCodeRemoval(IRFuncDefn ir) {
-		ReachingDefns rd = new ReachingDefns(ir);
-		rd.performAnalysis();
+
+	public IRFuncDefn doLICM(IRFuncDefn ir) {
+		List<IRStmt> stmts = ((IRSeq)ir.body()).stmts();
+
+		// The first node has to be the entry to find dominators
+		for(IRStmt stmt : stmts) {
+			if(stmt instanceof IRJump) return ir;
+			if(!(stmt instanceof IRLabel)) break;
+		}
+
+		ReachingDefns rd = analyses.getReachingDefns(ir);
 		Graph<IRData<ReachingData>> graph = rd.getGraph();
-		
-		//Set<IRExpr> inv = initializeINV();
-		
-		for(Node s : graph.getNodes()) {
+		List<Node> nodes = graph.getNodes();
+		LoopNesting nesting = new LoopNesting(nodes);
+
+		Map<Node, Integer> nodeIdx = new HashMap<>();
+		Map<Integer, Node> stmtNodes = new HashMap<>();
+		for(int i = 0; i < nodes.size(); i++) {
+			nodeIdx.put(nodes.get(i), i);
+			stmtNodes.put(graph.getDataForNode(nodes.get(i)).getStmtIdx(), nodes.get(i));
 		}
 
+		Rewrite rewrite = new Rewrite(stmts);
+		BitSet hoistedFrom = new BitSet();
+
+		List<Integer> headers = nesting.getHeaders();
+		Collections.reverse(headers);
+		for(int header : headers) {
+			BitSet loop = nesting.getLoop(header);
+			if(loop.intersects(hoistedFrom)) continue;
+
+			LoopHoister hoister = new LoopHoister(graph, nesting, nodeIdx, stmtNodes, header, loop);
+			if(hoister.hoist(rewrite)) {
+				hoistedFrom.or(loop);
+			}
+		}
+
+		if(hoistedFrom.isEmpty()) return ir;
+		changed = true;
+
 		IRFuncDefn copy = ir.copy();
-		IRSeq seq = f.IRSeq(rd.getBuilder().convertBackToIR());
+		IRSeq seq = f.IRSeq(rewrite.build());
 		copy.setBody(seq);
 		return copy;
 	}
+
+	/**
+	 * The hoisting for one loop. Nodes are numbered by their place in the
+	 * graph, as in the LoopNesting, and statements by their index in the
+	 * function.
+	 */
+	private class LoopHoister {
+		private Graph<IRData<ReachingData>> graph;
+		private List<Node> nodes;
+		private LoopNesting nesting;
+		private int header;
+		private BitSet loop;
+
+		private List<Integer> mustRun;
+		private boolean writesMemory;
+		private Map<Integer, IRStmt> decorated;
+		private Set<IRTemp> loopDefns;
+		private Map<Integer, Map<IRTemp, ReachingDefn>> reaching;
+		private Map<Node, Integer> nodeIdx;
+		private Map<Integer, Node> stmtNodes;
+		private BitSet inv;
+
+		private List<IRStmt> preheader;
+		private Map<IRExpr, IRTemp> hoisted;
+		private Map<Integer, IRExpr> values;
+		private IRConstantFolder constFolder;
+
+		public LoopHoister(Graph<IRData<ReachingData>> graph, LoopNesting nesting, Map<Node, Integer> nodeIdx,
+				Map<Integer, Node> stmtNodes, int header, BitSet loop) {
+			this.graph = graph;
+			this.nodes = graph.getNodes();
+			this.nesting = nesting;
+			this.nodeIdx = nodeIdx;
+			this.stmtNodes = stmtNodes;
+			this.header = header;
+			this.loop = loop;
+
+			reaching = new HashMap<>();
+			preheader = ArrayUtils.empty();
+			hoisted = new HashMap<>();
+			values = new HashMap<>();
+			constFolder = new IRConstantFolder(f);
+		}
+
+		/**
+		 * Hoists the invariant expressions of the loop into a preheader,
+		 * recording the changes in rewrite. Returns false, changing nothing,
+		 * if there is nothing to hoist.
+		 */
+		public boolean hoist(Rewrite rewrite) {
+			int headerStmt = stmtIdx(header);
+			if(!rewrite.canAddPreheader(headerStmt, this::isStmtInLoop)) return false;
+
+			findMustRun();
+			decorate();
+			findInvariantDefns();
+
+			Map<Integer, IRStmt> newStmts = new HashMap<>();
+			for(int n = loop.nextSetBit(0); n >= 0; n = loop.nextSetBit(n + 1)) {
+				IRStmt stmt = decorated.get(n);
+				IRStmt newStmt = hoistIn(stmt, n);
+				if(newStmt != stmt) newStmts.put(stmtIdx(n), newStmt);
+			}
+			if(preheader.isEmpty()) return false;
+
+			newStmts.forEach(rewrite::replace);
+			rewrite.addPreheader(headerStmt, preheader, this::isStmtInLoop);
+			return true;
+		}
+
+		/**
+		 * The nodes every iteration of the loop runs through before leaving
+		 * it or going around again must dominate these.
+		 */
+		private void findMustRun() {
+			mustRun = ArrayUtils.empty();
+			for(int n = loop.nextSetBit(0); n >= 0; n = loop.nextSetBit(n + 1)) {
+				Node node = nodes.get(n);
+				boolean leaves = node.succ().stream().anyMatch(s -> !loop.get(nodeIdx.get(s)));
+				boolean backEdge = node.succ().contains(nodes.get(header));
+				if(leaves || backEdge) mustRun.add(n);
+			}
+		}
+
+		private void decorate() {
+			IRContainsMemSubexprDecorator memDecorator = new IRContainsMemSubexprDecorator(f);
+
+			decorated = new HashMap<>();
+			loopDefns = new HashSet<>();
+			for(int n = loop.nextSetBit(0); n >= 0; n = loop.nextSetBit(n + 1)) {
+				IRStmt stmt = graph.getDataForNode(nodes.get(n)).getIR();
+				decorated.put(n, (IRStmt)memDecorator.visit(stmt));
+
+				if(stmt instanceof IRMove) {
+					IRExpr target = ((IRMove)stmt).target();
+					if(target instanceof IRTemp) loopDefns.add((IRTemp)target);
+					writesMemory |= target instanceof IRMem && ((IRMem)target).memType() == MemType.NORMAL;
+				} else if(!(stmt instanceof IRCJump || stmt instanceof IRReturn)) {
+					// Calls can write to any memory
+					writesMemory = true;
+				}
+			}
+		}
+
+		private void findInvariantDefns() {
+			inv = new BitSet();
+
+			boolean changedInv = true;
+			while(changedInv) {
+				changedInv = false;
+				for(int n = loop.nextSetBit(0); n >= 0; n = loop.nextSetBit(n + 1)) {
+					if(inv.get(n) || !hasXGetsEForm(decorated.get(n))) continue;
+
+					IRExpr source = ((IRMove)decorated.get(n)).source();
+					if(isInvariant(source, n)) {
+						inv.set(n);
+						changedInv = true;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Whether expr at node n has the same value on every iteration of
+		 * the loop, and can be computed before the loop instead.
+		 */
+		private boolean isInvariant(IRExpr expr, int n) {
+			if(expr instanceof IRConst || expr instanceof IRName) return true;
+
+			if(expr instanceof IRTemp) {
+				IRTemp temp = (IRTemp)expr;
+				if(temp.name().startsWith(Constants.RET_PREFIX) || temp.name().startsWith(Constants.ARG_PREFIX)) return false;
+
+				if(!loopDefns.contains(temp)) return true;
+
+				ReachingDefn defn = reachingDefn(temp, n);
+				return defn != null && (!isInLoop(defn) || inv.get(nodeIdx.get(defn.getDefiner())));
+			}
+
+			if(expr instanceof IRBinOp) {
+				IRBinOp binop = (IRBinOp)expr;
+				if(mayTrap(binop)) return false;
+
+				return isInvariant(binop.left(), n) && isInvariant(binop.right(), n);
+			}
+
+			if(expr instanceof IRMem) {
+				IRMem mem = (IRMem)expr;
+				if(mem.doesContainsMutableMemSubexpr() && writesMemory) return false;
+
+				return isInvariant(mem.expr(), n) && mustRun.stream().allMatch(m -> nesting.dominates(n, m));
+			}
+
+			return false;
+		}
+
+		private boolean mayTrap(IRBinOp binop) {
+			if(binop.opType() != OpType.DIV && binop.opType() != OpType.MOD) return false;
+
+			return !(binop.right() instanceof IRConst) || ((IRConst)binop.right()).value() == 0;
+		}
+
+		private IRStmt hoistIn(IRStmt stmt, int n) {
+			if(stmt instanceof IRMove) {
+				IRMove move = (IRMove)stmt;
+				IRExpr target = move.target();
+				if(target instanceof IRMem) {
+					IRMem mem = (IRMem)target;
+					IRExpr addr = hoistIn(mem.expr(), n);
+					if(addr != mem.expr()) target = f.IRMem(addr, mem.memType());
+				}
+
+				IRExpr source = hoistIn(move.source(), n);
+				if(target == move.target() && source == move.source()) return stmt;
+				return f.IRMove(target, source);
+			}
+
+			if(stmt instanceof IRCJump) {
+				IRCJump cjump = (IRCJump)stmt;
+
+				// A comparison is folded into the jump, so only its operands
+				// are worth hoisting
+				IRExpr cond = isComparison(cjump.cond())
+						? hoistInOperands((IRBinOp)cjump.cond(), n)
+						: hoistIn(cjump.cond(), n);
+				if(cond == cjump.cond()) return stmt;
+				return f.IRCJump(cond, cjump.trueLabel(), cjump.falseLabel());
+			}
+
+			return stmt;
+		}
+
+		/**
+		 * Replaces the largest invariant subexprs of expr with temps
+		 * computed in the preheader.
+		 */
+		private IRExpr hoistIn(IRExpr expr, int n) {
+			if(isInvariant(expr, n)) {
+				IRExpr value = materialize(expr, n);
+				if(isWorthHoisting(value)) return hoist(value);
+			}
+
+			if(expr instanceof IRBinOp) return hoistInOperands((IRBinOp)expr, n);
+
+			if(expr instanceof IRMem) {
+				IRMem mem = (IRMem)expr;
+				IRExpr addr = hoistInAddress(mem.expr(), n);
+
+				if(addr == mem.expr()) return expr;
+				return f.IRMem(addr, mem.memType());
+			}
+
+			return expr;
+		}
+
+		/**
+		 * Hoists from the address of a load or store, leaving the adds and
+		 * scaling that fit in an addressing mode, where they cost nothing.
+		 */
+		private IRExpr hoistInAddress(IRExpr addr, int n) {
+			if(!(addr instanceof IRBinOp)) return hoistIn(addr, n);
+
+			IRBinOp binop = (IRBinOp)addr;
+			switch(binop.opType()) {
+			case ADD:
+				return rebuild(binop, hoistInAddress(binop.left(), n), hoistInAddress(binop.right(), n));
+			case SUB:
+				if(!(binop.right() instanceof IRConst)) break;
+				return rebuild(binop, hoistInAddress(binop.left(), n), binop.right());
+			case MUL:
+				if(isScale(binop.right())) return rebuild(binop, hoistIn(binop.left(), n), binop.right());
+				if(isScale(binop.left())) return rebuild(binop, binop.left(), hoistIn(binop.right(), n));
+				break;
+			default:
+				break;
+			}
+			return hoistIn(addr, n);
+		}
+
+		private boolean isScale(IRExpr expr) {
+			if(!(expr instanceof IRConst)) return false;
+
+			long value = ((IRConst)expr).value();
+			return value == 1 || value == 2 || value == 4 || value == 8;
+		}
+
+		private IRExpr hoistInOperands(IRBinOp binop, int n) {
+			return rebuild(binop, hoistIn(binop.left(), n), hoistIn(binop.right(), n));
+		}
+
+		private IRExpr rebuild(IRBinOp binop, IRExpr left, IRExpr right) {
+			if(left == binop.left() && right == binop.right()) return binop;
+			return f.IRBinOp(binop.opType(), left, right);
+		}
+
+		/**
+		 * The invariant expr at node n as computed in the preheader, where
+		 * temps defined in the loop don't have their values yet, so their
+		 * definitions are computed in their place.
+		 */
+		private IRExpr materialize(IRExpr expr, int n) {
+			return (IRExpr)constFolder.visit(substituteDefns(expr, n));
+		}
+
+		private IRExpr substituteDefns(IRExpr expr, int n) {
+			if(expr instanceof IRTemp) {
+				ReachingDefn defn = reachingDefn((IRTemp)expr, n);
+				if(defn != null && isInLoop(defn)) {
+					return valueOf(nodeIdx.get(defn.getDefiner()));
+				}
+				return expr;
+			}
+
+			if(expr instanceof IRBinOp) {
+				IRBinOp binop = (IRBinOp)expr;
+				return f.IRBinOp(binop.opType(), substituteDefns(binop.left(), n), substituteDefns(binop.right(), n));
+			}
+
+			if(expr instanceof IRMem) {
+				IRMem mem = (IRMem)expr;
+				return f.IRMem(substituteDefns(mem.expr(), n), mem.memType());
+			}
+
+			return expr;
+		}
+
+		/**
+		 * The value assigned by the invariant definition at node n.
+		 */
+		private IRExpr valueOf(int n) {
+			IRExpr value = values.get(n);
+			if(value == null) {
+				IRExpr source = ((IRMove)decorated.get(n)).source();
+				value = substituteDefns(source, n);
+				values.put(n, value);
+			}
+			return value;
+		}
+
+		private IRTemp hoist(IRExpr expr) {
+			IRTemp temp = hoisted.get(expr);
+			if(temp == null) {
+				temp = f.IRTemp(FreshTempGenerator.getFreshTemp());
+				preheader.add(f.IRMove(temp, expr));
+				hoisted.put(expr, temp);
+			}
+			return temp;
+		}
+
+		/**
+		 * The definition of temp that reaches node n along every path, which
+		 * is its only reaching definition, or null if there isn't one.
+		 */
+		private ReachingDefn reachingDefn(IRTemp temp, int n) {
+			Map<IRTemp, ReachingDefn> defns = reaching.get(n);
+			if(defns == null) {
+				defns = new HashMap<>();
+				for(ReachingDefn defn : graph.getDataForNode(nodes.get(n)).getFlowData().getIn()) {
+					defns.put(defn.getDefn(), defn);
+				}
+				reaching.put(n, defns);
+			}
+			return defns.get(temp);
+		}
+
+		/**
+		 * Whether computing expr takes enough work to be worth a register
+		 * for the whole loop. A single cheap op is often free as part of an
+		 * addressing mode or the instruction using it.
+		 */
+		private boolean isWorthHoisting(IRExpr expr) {
+			return cost(expr) >= 2;
+		}
+
+		private int cost(IRExpr expr) {
+			if(expr instanceof IRMem) return 2 + cost(((IRMem)expr).expr());
+			if(!(expr instanceof IRBinOp)) return 0;
+
+			IRBinOp binop = (IRBinOp)expr;
+			int cost = cost(binop.left()) + cost(binop.right());
+			switch(binop.opType()) {
+			case MUL:
+			case HMUL:
+			case DIV:
+			case MOD:
+				return cost + 2;
+			default:
+				return cost + 1;
+			}
+		}
+
+		private boolean isComparison(IRExpr expr) {
+			if(!(expr instanceof IRBinOp)) return false;
+
+			switch(((IRBinOp)expr).opType()) {
+			case EQ:
+			case NEQ:
+			case LT:
+			case ULT:
+			case GT:
+			case LEQ:
+			case GEQ:
+				return true;
+			default:
+				return false;
+			}
+		}
+
+		private boolean isInLoop(ReachingDefn defn) {
+			return loop.get(nodeIdx.get(defn.getDefiner()));
+		}
+
+		private boolean isStmtInLoop(int stmtIdx) {
+			Node node = stmtNodes.get(stmtIdx);
+			return node != null && loop.get(nodeIdx.get(node));
+		}
+
+		private int stmtIdx(int n) {
+			return graph.getDataForNode(nodes.get(n)).getStmtIdx();
+		}
+
+		private boolean hasXGetsEForm(IRStmt ir) {
+			return ir instanceof IRMove && ((IRMove)ir).target() instanceof IRTemp;
+		}
+	}
+
+	/**
+	 * The changes to the statements of a function, applied all at once by
+	 * {@link #build()} so statement indices stay those of the CFG.
+	 */
+	private class Rewrite {
+		private List<IRStmt> stmts;
+		private Map<Integer, IRStmt> replaced;
+		private Map<Integer, List<IRStmt>> inserted;
+
+		public Rewrite(List<IRStmt> stmts) {
+			this.stmts = stmts;
+			this.replaced = new HashMap<>();
+			this.inserted = new HashMap<>();
+		}
+
+		public void replace(int stmtIdx, IRStmt stmt) {
+			replaced.put(stmtIdx, stmt);
+		}
+
+		/**
+		 * Whether every edge into the header at headerStmt can be sent through
+		 * a preheader: the header must be entered by falling through or by
+		 * jumping to the labels right before it, from statements whose place
+		 * in or out of the loop is known.
+		 */
+		public boolean canAddPreheader(int headerStmt, StmtInLoop inLoop) {
+			int labelsStart = labelsStart(headerStmt);
+			Set<String> labels = labelNames(labelsStart, headerStmt);
+
+			// A fall through back edge needs a label to jump to instead
+			if(labels.isEmpty() && fallsThroughInto(labelsStart) && inLoop.test(labelsStart - 1)) return false;
+
+			for(int i = 0; i < stmts.size(); i++) {
+				IRStmt stmt = stmts.get(i);
+				if(!(stmt instanceof IRJump) || !labels.contains(jumpTarget((IRJump)stmt))) continue;
+
+				// Other labels that go to the header
+				if(i == 0 || stmts.get(i - 1) instanceof IRLabel) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Puts the preheader before the labels of the header at headerStmt
+		 * and sends the edges from outside the loop there.
+		 */
+		public void addPreheader(int headerStmt, List<IRStmt> preheader, StmtInLoop inLoop) {
+			int labelsStart = labelsStart(headerStmt);
+			Set<String> labels = labelNames(labelsStart, headerStmt);
+			String preheaderLabel = "_l" + FreshTempGenerator.getFreshTemp();
+
+			boolean retargeted = false;
+			for(int i = 0; i < stmts.size(); i++) {
+				IRStmt stmt = replaced.getOrDefault(i, stmts.get(i));
+
+				if(stmt instanceof IRJump && labels.contains(jumpTarget((IRJump)stmt)) && !inLoop.test(i - 1)) {
+					replaced.put(i, f.IRJump(f.IRName(preheaderLabel)));
+					retargeted = true;
+				} else if(stmt instanceof IRCJump && !inLoop.test(i)) {
+					IRCJump cjump = (IRCJump)stmt;
+					String trueLabel = retarget(cjump.trueLabel(), labels, preheaderLabel);
+					String falseLabel = retarget(cjump.falseLabel(), labels, preheaderLabel);
+					if(trueLabel.equals(cjump.trueLabel()) && falseLabel == cjump.falseLabel()) continue;
+
+					replaced.put(i, f.IRCJump(cjump.cond(), trueLabel, falseLabel));
+					retargeted = true;
+				}
+			}
+
+			List<IRStmt> block = ArrayUtils.empty();
+			if(fallsThroughInto(labelsStart) && inLoop.test(labelsStart - 1)) {
+				block.add(f.IRJump(f.IRName(labels.iterator().next())));
+			}
+			if(retargeted) block.add(f.IRLabel(preheaderLabel));
+			block.addAll(preheader);
+
+			inserted.put(labelsStart, block);
+		}
+
+		public List<IRStmt> build() {
+			List<IRStmt> rebuilt = ArrayUtils.empty();
+			for(int i = 0; i < stmts.size(); i++) {
+				rebuilt.addAll(inserted.getOrDefault(i, Collections.emptyList()));
+				rebuilt.add(replaced.getOrDefault(i, stmts.get(i)));
+			}
+			return rebuilt;
+		}
+
+		private String retarget(String label, Set<String> labels, String preheaderLabel) {
+			return label != null && labels.contains(label) ? preheaderLabel : label;
+		}
+
+		private int labelsStart(int stmtIdx) {
+			while(stmtIdx > 0 && stmts.get(stmtIdx - 1) instanceof IRLabel) stmtIdx--;
+			return stmtIdx;
+		}
+
+		private Set<String> labelNames(int from, int to) {
+			Set<String> labels = new HashSet<>();
+			for(int i = from; i < to; i++) {
+				labels.add(((IRLabel)stmts.get(i)).name());
+			}
+			return labels;
+		}
+
+		private boolean fallsThroughInto(int stmtIdx) {
+			if(stmtIdx == 0) return false;
+
+			IRStmt prev = stmts.get(stmtIdx - 1);
+			if(prev instanceof IRJump || prev instanceof IRReturn) return false;
+			return !(prev instanceof IRCJump && ((IRCJump)prev).hasFalseLabel());
+		}
+
+		private String jumpTarget(IRJump jump) {
+			return ((IRName)jump.target()).name();
+		}
+	}
+
+	/**
+	 * Whether the statement at an index is a node in the loop.
+	 */
+	private interface StmtInLoop {
+		boolean test(int stmtIdx);
+	}
+
+	/**
+	 * @return the analyses still valid for a function this transformer
+	 * changed. Adding preheaders changes the CFG, so none are.
+	 */
+	public Set<Analysis> getPreservedAnalyses() {
+		return SetUtils.empty();
+	}
+
+	/**
+	 * @return whether any run of this transformer has changed the IR
+	 */
+	public boolean hasChanged() {
+		return changed;
+	}
 }
@@ -2,7 +2,10 @@ package mtm68.ir.cfg;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -14,155 +17,87 @@ import edu.cornell.cs.cs4120.ir.IRStmt;
 import edu.cornell.cs.cs4120.ir.IRTemp;
 import mtm68.assem.cfg.Graph;
 import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.BitVectorDataflow.Direction;
+import mtm68.ir.cfg.BitVectorDataflow.Meet;
+import mtm68.ir.cfg.BitVectorDataflow.Numbering;
 import mtm68.ir.cfg.AvailableCopies.AvailableCopy;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
-import mtm68.util.SetUtils;
 
 public class ReachingDefns {
 
 	private Graph<IRData<ReachingData>> graph;
 	private IRCFGBuilder<ReachingData> builder;
+	private IRCFGBuilder<?> cfg;
 	
 	private IRFuncDefn ir;
 
 	public ReachingDefns(IRFuncDefn ir) {
+		this(ir, null);
+	}
+	
+	/**
+	 * Constructs the analysis to run over the nodes and edges of a CFG 
+	 * already built for ir, or a new CFG if cfg is null.
+	 */
+	public ReachingDefns(IRFuncDefn ir, IRCFGBuilder<?> cfg) {
 		builder = new IRCFGBuilder<>();
 		this.ir = ir;
+		this.cfg = cfg;
 	}
 	
+	/**
+	 * Solves for the definitions reaching each node along every path, with
+	 * the definitions numbered densely:
+	 * in[n] = definitions reaching on all edges into n
+	 * out[n] = gen[n] U (in[n] - kill[n])
+	 * 
+	 * where for n : x <- e, gen[n] = n and kill[n] = all definitions of x.
+	 */
 	public void performAnalysis() {
 
 		IRStmt body = ir.body();
 	    List<IRStmt> stmts = ((IRSeq)body).stmts();
 
-		graph = builder.buildIRCFG(stmts, ReachingData::new);
+		graph = cfg == null
+				? builder.buildIRCFG(stmts, ReachingData::new)
+				: builder.buildIRCFG(stmts, ReachingData::new, cfg);
 		List<Node> nodes = graph.getNodes();
 		
-		boolean changes = true;
-		while (changes) {
-			changes = false;
-			
-			for(Node node : nodes) {
-				IRData<ReachingData> data = graph.getDataForNode(node);
-				ReachingData flowData = data.getFlowData();
-				
-				Set<ReachingDefn> inOld = flowData.getIn();
-				Set<ReachingDefn> outOld = flowData.getOut();
-				
-				Set<ReachingDefn> in = in(node);
-				Set<ReachingDefn> out = out(node);
-				
-				flowData.setIn(in);
-				flowData.setOut(out);
-				
-				flowData.isTop = false;
-				changes = changes || (!inOld.equals(in) || !outOld.equals(out));
-			}
-		}
-	}
-	
-	/**
-	 * The set of definitions reaching a node.
-	 * in[n] = definitions reaching on all edges into n.
-	 */
-	private Set<ReachingDefn> in(Node node) {
-		Set<ReachingDefn> in = SetUtils.empty();
-		boolean first = true;
-		for(Node pred : node.pred()) {
-			ReachingData predData = graph.getDataForNode(pred)
-											   .getFlowData();
-			
-			Set<ReachingDefn> out = predData.getOut();
-			/**
-			* The first iteration, we need to set the base set 
-			* because intersect with empty set will always be empty
-			* and there is no good way to set the initial set
-			* as the empty set
-			*/
-			if(predData.isTop) continue;
-			if(first) {
-				in = SetUtils.copy(out);
-				first = false;
-			} else {
-				in = SetUtils.intersect(in, out);
+		Numbering<ReachingDefn> defns = new Numbering<>();
+		Map<IRTemp, BitSet> defnsOf = new HashMap<>();
+		int[] gen = new int[nodes.size()];
+		IRTemp[] defined = new IRTemp[nodes.size()];
+
+		for(int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			IRStmt ir = graph.getDataForNode(node).getIR();
+			gen[i] = -1;
+
+			if(hasXGetsEForm(ir)) {
+				IRMove mov = (IRMove)ir;
+				IRTemp x = (IRTemp)mov.target();
+
+				gen[i] = defns.index(new ReachingDefn(x, mov.source(), node));
+				defined[i] = x;
+				defnsOf.computeIfAbsent(x, t -> new BitSet()).set(gen[i]);
 			}
 		}
 		
-		return in;
-	}
-
-	/**
-	 * The set of available expressions on edges leaving node n.
-	 * out[n] = gen[n] U (in(n) - kill(n))
-	 */
-	 private Set<ReachingDefn> out(Node n) {
-
-		Set<ReachingDefn> gen = gen(n);
-		Set<ReachingDefn> in = in(n);
-		Set<ReachingDefn> kill = kill(n, in);
+		BitVectorDataflow dataflow = new BitVectorDataflow(nodes, defns.size(), 
+				Direction.FORWARD, Meet.INTERSECTION, (n, in, out) -> {
+					out.or(in);
+					if(gen[n] >= 0) {
+						out.andNot(defnsOf.get(defined[n]));
+						out.set(gen[n]);
+					}
+				});
+		dataflow.solve();
 		
-		Set<ReachingDefn> difference = SetUtils.difference(in, kill);
-		 
-		return SetUtils.union(gen , difference);
-	 }
-	 
-	/**
-	 * Definitions generated by a node.
-	 * 
-	 * For example,
-	 * gen(x <- y) = node 
-	 * else 	   = {}
-	 */
-	private Set<ReachingDefn> gen(Node node) {
-		IRStmt ir = graph.getDataForNode(node).getIR();
-
-		if (hasXGetsEForm(ir)) {
-			return genXGetsE((IRMove)ir, node);
-
-		} else {
-			return SetUtils.empty();
-		}
-	}
-	
-	private Set<ReachingDefn> genXGetsE(IRMove mov, Node d) {
-		IRTemp x = (IRTemp)mov.target();
-		IRExpr e = mov.source();
-
-		ReachingDefn defn = new ReachingDefn(x, e, d);
-
-		return SetUtils.elems(defn);
-	}
-
-	/**
-	 * Definitions killed by a node that has facts l.
-	 * 
-	 * For example,
-	 * kill(x <- e)    = defs(x)
-	 * else		       = {}	
-	 * 
-	 * Where defs(x) denotes set of nodes that define variable x
-	 */
-	private Set<ReachingDefn> kill(Node node, Set<ReachingDefn> l) {
-		IRStmt ir = graph.getDataForNode(node).getIR();
-
-		if (hasXGetsEForm(ir)) {
-			return killXGetsE((IRMove)ir, l);
-
-		} else {
-			return SetUtils.empty();
+		for(int i = 0; i < nodes.size(); i++) {
+			ReachingData flowData = graph.getDataForNode(nodes.get(i)).getFlowData();
+			flowData.setFacts(dataflow.getIn(i), dataflow.getOut(i), defns.getFacts());
 		}
 	}
-	
-	/**
-	 * The subset of l that defines t
-	 * @param ir of the form IRMove(IRTemp t, IRExpr)
-	 */
-	private Set<ReachingDefn> killXGetsE(IRMove ir, Set<ReachingDefn> l) {
-		IRTemp temp = (IRTemp)ir.target();
-		return l.stream()
-				.filter(r -> r.defn.equals(temp))
-				.collect(Collectors.toSet());
-	}
 
 	private boolean hasXGetsEForm(IRStmt ir) {
 		return ir instanceof IRMove 
@@ -217,31 +152,7 @@ public class ReachingDefns {
 		return sb.toString();
 	}
 	
-	public static class ReachingData {
-		Set<ReachingDefn> in;
-		Set<ReachingDefn> out;
-		boolean isTop = true;
-		
-		public ReachingData() {
-			in = SetUtils.empty();
-			out = SetUtils.empty();
-		}
-
-		public Set<ReachingDefn> getIn() {
-			return in;
-		}
-
-		public void setIn(Set<ReachingDefn> in) {
-			this.in = in;
-		}
-
-		public Set<ReachingDefn> getOut() {
-			return out;
-		}
-
-		public void setOut(Set<ReachingDefn> out) {
-			this.out = out;
-		}
+	public static class ReachingData extends BitVectorData<ReachingDefn> {
 	}
 
 	public static class ReachingDefn {
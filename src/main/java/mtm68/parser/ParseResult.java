@@ -20,7 +20,7 @@ public class ParseResult {
 		try {
 			node = Optional.of((Node)parser.parse().value);
 		} catch(Exception e) {
-			if(Debug.DEBUG_ON) e.printStackTrace();
+			if(Debug.isDebugOn()) e.printStackTrace();
 			node = Optional.empty();
 		} finally {
 			errors = getAllErrorsSorted(parser.getLexErrors(), parser.getSyntaxErrors());
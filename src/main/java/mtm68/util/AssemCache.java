@@ -0,0 +1,110 @@
+package mtm68.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caches assembly files, each named by a hash of everything that went into
+ * compiling it: the source file, the interfaces it uses, the compiler
+ * options and the compiler itself. A source file whose hash is in the cache
+ * doesn't need to be compiled again.
+ */
+public class AssemCache {
+	private static final String CACHE_VERSION = "1";
+	private static final String EXTENSION = ".s";
+
+	// Every use of an interface matches, along with anything in comments
+	// or strings that looks like one. Extra interfaces only make the key
+	// stricter.
+	private static final Pattern USE = Pattern.compile("\\buse\\s+([A-Za-z][A-Za-z0-9_']*)");
+
+	private final CacheDirectory cacheDir;
+
+	public AssemCache(CacheDirectory cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Hashes a source file with everything its assembly depends on.
+	 *
+	 * @param filename    the name of the source file, which ends up in its
+	 *                    assembly
+	 * @param source      the location of the source file
+	 * @param interfaces  finds the interface file for a use
+	 * @param options     the compiler options that change the assembly
+	 */
+	public String getKey(String filename, Path source, Function<String, Path> interfaces,
+			String options) throws IOException {
+		MessageDigest digest = CacheDirectory.newDigest();
+		byte[] sourceBytes = Files.readAllBytes(source);
+
+		update(digest, CACHE_VERSION);
+		update(digest, CacheDirectory.compilerStamp());
+		update(digest, options);
+		update(digest, filename);
+		digest.update(sourceBytes);
+
+		// Sorted so the key doesn't depend on the order of the uses
+		Set<String> uses = new TreeSet<>();
+		Matcher matcher = USE.matcher(new String(sourceBytes, StandardCharsets.UTF_8));
+		while(matcher.find()) {
+			uses.add(matcher.group(1));
+		}
+
+		for(String use : uses) {
+			Path ixi = interfaces.apply(use);
+			update(digest, use);
+			if(Files.exists(ixi)) {
+				digest.update(Files.readAllBytes(ixi));
+			} else {
+				update(digest, "missing");
+			}
+		}
+
+		return CacheDirectory.toHex(digest.digest());
+	}
+
+	/**
+	 * Copies the cached assembly for key to target.
+	 *
+	 * @return whether key was in the cache
+	 */
+	public boolean restore(String key, Path target) {
+		Path cached = cacheDir.get(key + EXTENSION);
+		if(cached == null) return false;
+
+		try {
+			Files.createDirectories(target.getParent());
+			Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+		} catch(IOException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the assembly file at source to the cache under key.
+	 */
+	public void store(String key, Path source) {
+		try {
+			cacheDir.put(key + EXTENSION, source);
+		} catch(IOException e) {
+			e.printStackTrace();
+			System.out.println("Failed caching " + source);
+		}
+	}
+
+	private static void update(MessageDigest digest, String str) {
+		digest.update(str.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+}
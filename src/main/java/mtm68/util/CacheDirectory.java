@@ -0,0 +1,204 @@
+package mtm68.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A directory of files named by a key, kept under a size bound by deleting
+ * the least recently used files. Files are touched when they are read, so
+ * their modification time is their last use. Caches of different kinds of
+ * files can share a directory and its size bound.
+ *
+ * Files are written to a temporary file and moved into place, so compilers
+ * sharing a directory never see a partial file.
+ */
+public class CacheDirectory {
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	private static String compilerStamp;
+
+	private final Path dir;
+	private final long maxBytes;
+
+	// Bytes in the directory as of the last scan plus those put since, 
+	// or -1 before the first put
+	private long totalBytes = -1;
+
+	/**
+	 * @param dir       the directory to keep cached files in
+	 * @param maxBytes  the most bytes of files to keep
+	 */
+	public CacheDirectory(Path dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * The cached file named name, marked as used, or null if there is none.
+	 */
+	public Path get(String name) {
+		Path file = dir.resolve(name);
+		if(!file.toFile().setLastModified(System.currentTimeMillis())) return null;
+		return file;
+	}
+
+	/**
+	 * Caches a copy of the file at source under name.
+	 */
+	public void put(String name, Path source) throws IOException {
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, name, TEMP_EXTENSION);
+		Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+		moveIntoPlace(temp, name);
+	}
+
+	/**
+	 * Caches bytes under name.
+	 */
+	public void put(String name, byte[] bytes) throws IOException {
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, name, TEMP_EXTENSION);
+		Files.write(temp, bytes);
+		moveIntoPlace(temp, name);
+	}
+
+	private void moveIntoPlace(Path temp, String name) throws IOException {
+		Path file = dir.resolve(name);
+		long added = Files.size(temp);
+		synchronized(this) {
+			long replaced = file.toFile().length();
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			if(totalBytes < 0) {
+				totalBytes = 0;
+				for(Entry entry : listEntries()) totalBytes += entry.bytes;
+			} else {
+				totalBytes += added - replaced;
+			}
+			if(totalBytes > maxBytes) evict();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files until the directory is below
+	 * the low-water mark, so the puts after an eviction don't each scan the
+	 * directory again. The scan also picks up files written by other 
+	 * compilers sharing the directory.
+	 */
+	private void evict() {
+		List<Entry> entries = listEntries();
+
+		// Most recently used first
+		entries.sort(Comparator.comparingLong((Entry e) -> e.lastUsed).reversed());
+
+		long target = maxBytes / 10 * 9;
+		totalBytes = 0;
+		boolean full = false;
+		for(Entry entry : entries) {
+			full = full || totalBytes + entry.bytes > target;
+			if(full) {
+				entry.file.delete();
+			} else {
+				totalBytes += entry.bytes;
+			}
+		}
+	}
+
+	private List<Entry> listEntries() {
+		File[] files = dir.toFile().listFiles((d, name) -> !name.endsWith(TEMP_EXTENSION));
+		if(files == null) return new ArrayList<>();
+
+		// Each file is only stat'ed once, not on every comparison
+		List<Entry> entries = new ArrayList<>(files.length);
+		for(File file : files) {
+			entries.add(new Entry(file, file.lastModified(), file.length()));
+		}
+		return entries;
+	}
+
+	private static class Entry {
+		final File file;
+		final long lastUsed;
+		final long bytes;
+
+		Entry(File file, long lastUsed, long bytes) {
+			this.file = file;
+			this.lastUsed = lastUsed;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Identifies the build of the compiler, so cached files from other
+	 * builds aren't used. This is a hash of the jar the compiler was loaded
+	 * from or, for a directory of classes, of the name, size and time of
+	 * every file in it, since recompiling classes doesn't change the time
+	 * of the directory itself. It is only computed once, as the classes
+	 * that are loaded can't change.
+	 */
+	public static synchronized String compilerStamp() {
+		if(compilerStamp == null) {
+			try {
+				Path location = Paths.get(CacheDirectory.class.getProtectionDomain()
+						.getCodeSource().getLocation().toURI());
+				compilerStamp = location + "@" + hashBuild(location);
+			} catch(Exception e) {
+				compilerStamp = "";
+			}
+		}
+		return compilerStamp;
+	}
+
+	private static String hashBuild(Path location) throws IOException {
+		MessageDigest digest = newDigest();
+		if(Files.isDirectory(location)) {
+			List<Path> files;
+			try(Stream<Path> walk = Files.walk(location)) {
+				files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+			}
+			for(Path file : files) {
+				String entry = location.relativize(file) + "@" + file.toFile().lastModified() 
+						+ ":" + file.toFile().length() + "\n";
+				digest.update(entry.getBytes(StandardCharsets.UTF_8));
+			}
+		} else {
+			try(InputStream in = Files.newInputStream(location)) {
+				byte[] buffer = new byte[1 << 16];
+				int read;
+				while((read = in.read(buffer)) > 0) {
+					digest.update(buffer, 0, read);
+				}
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for(byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
@@ -2,18 +2,30 @@ package mtm68.util;
 
 public class Debug {
 
-	public static boolean DEBUG_ON = false;
+	/**
+	 * Set once from the command line before any compilation work starts
+	 * and only read afterwards.
+	 */
+	private static volatile boolean debugOn = false;
 	
-	private static String method;
-	private static long startTime;
+	private static final ThreadLocal<String> method = new ThreadLocal<>();
+	private static final ThreadLocal<Long> startTime = new ThreadLocal<>();
+	
+	public static void setDebugOn(boolean debugOn) {
+		Debug.debugOn = debugOn;
+	}
+	
+	public static boolean isDebugOn() {
+		return debugOn;
+	}
 	
 	public static void startTime(String method) {
-		Debug.method = method;
-		startTime = System.nanoTime();
+		Debug.method.set(method);
+		startTime.set(System.nanoTime());
 	}
 	
 	public static void endTime() {
-		double diff = (System.nanoTime() - startTime) / 1_000_000;
-		System.out.println(method + " took " + diff + "ms to run");
+		double diff = (System.nanoTime() - startTime.get()) / 1_000_000;
+		System.out.println(method.get() + " took " + diff + "ms to run");
 	}
 }
@@ -4,12 +4,14 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import edu.cornell.cs.cs4120.ir.IRFuncDefn;
@@ -19,7 +21,7 @@ import edu.cornell.cs.cs4120.util.CodeWriterSExpPrinter;
 import edu.cornell.cs.cs4120.util.SExpPrinter;
 import mtm68.assem.Assem;
 import mtm68.assem.cfg.Graph;
-import mtm68.assem.visit.AssemToFileBuilder;
+import mtm68.assem.visit.AssemFileWriter;
 import mtm68.ast.nodes.Node;
 import mtm68.ir.cfg.IRCFGBuilder;
 import mtm68.ir.cfg.IRCFGBuilder.IRData;
@@ -27,8 +29,25 @@ import mtm68.lexer.Token;
 import mtm68.parser.ParseResult;
 
 public class FileUtils {
-		public static Path diagPath;
-		public static Path assemPath;
+		private final Path diagPath;
+		private final Path assemPath;
+		
+		/**
+		 * @param diagPath   location for generated diagnostic files
+		 * @param assemPath  location for generated assem files
+		 */
+		public FileUtils(Path diagPath, Path assemPath) {
+			this.diagPath = diagPath;
+			this.assemPath = assemPath;
+		}
+		
+		public Path getDiagPath() {
+			return diagPath;
+		}
+		
+		public Path getAssemPath() {
+			return assemPath;
+		}
 	
 		/**
 		 * Writes lexed results to [filename.lexed] 
@@ -37,7 +56,7 @@ public class FileUtils {
 		 * @param filename the name of the file lexed
 		 * @param tokens   the list of lexed tokens
 		 */
-		public static void writeToFile(String filename, List<Token> tokens) {
+		public void writeToFile(String filename, List<Token> tokens) {
 			String outfile = filename.replaceFirst("\\.(xi|ixi)", ".lexed");
 			Path outpath = diagPath.resolve(outfile);
 			try {
@@ -57,7 +76,7 @@ public class FileUtils {
 		 * @param filename the name of the file parsed
 		 * @param ast      the root node of the ast
 		 */
-		public static void writeToFile(String filename, ParseResult result) {
+		public void writeToFile(String filename, ParseResult result) {
 			String outfile = filename.replaceFirst("\\.(xi|ixi)", ".parsed");
 			Path outpath = diagPath.resolve(outfile);
 			try {
@@ -87,7 +106,7 @@ public class FileUtils {
 		 * @param filename the name of the file parsed
 		 * @param error    the semantic error to be written
 		 */
-		public static void writeTypeCheckToFile(String filename) {
+		public void writeTypeCheckToFile(String filename) {
 			String outfile = filename.replaceFirst("\\.(xi|ixi)", ".typed");
 			Path outpath = diagPath.resolve(outfile);
 			String msg = "Valid Xi Program";
@@ -109,7 +128,7 @@ public class FileUtils {
 		 * @param filename the name of the file parsed
 		 * @param ast      the root node of the ast
 		 */
-		public static void writeToFile(String filename, IRNode irRoot) {
+		public void writeToFile(String filename, IRNode irRoot) {
 			String outfile = filename.replaceFirst("\\.(xi|ixi)", ".ir");
 			Path outpath = diagPath.resolve(outfile);
 			try {
@@ -131,19 +150,49 @@ public class FileUtils {
 		 * @param filename the name of the file parsed
 		 * @param assem    
 		 */
-		public static void writeAssemToFile(String filename, List<Assem> assem) {
-			String outfile = filename.replaceFirst("\\.(xi|ixi)", ".s");
-			Path outpath = assemPath.resolve(outfile);
-			BufferedWriter writer;
+		public void writeAssemToFile(String filename, List<Assem> assem) {
+			streamAssemToFile(filename, writer -> writer.write(assem));
+		}
+		
+		/**
+		 * Streams Assem to [filename.s] as it is generated. Everything given
+		 * to the writer is written out right away, to a temporary file that 
+		 * replaces [filename.s] once the generator returns, so a failure 
+		 * part way through never leaves a truncated assem file.
+		 * Requires: filename is of the form filename.xi or filename.ixi
+		 * 
+		 * @param filename   the name of the file parsed
+		 * @param generator  gives the assem of the file to the writer
+		 * @return whether the whole file was written
+		 */
+		public boolean streamAssemToFile(String filename, Consumer<AssemFileWriter> generator) {
+			Path outpath = getAssemFile(filename).toAbsolutePath();
+			Path temp = null;
 			try {
-				Files.createDirectories(outpath.getParent());			
-				writer = new BufferedWriter(new FileWriter(outpath.toString()));
-			    writer.write(AssemToFileBuilder.assemToFileString(filename, assem));
-			    writer.close();
-			} catch (IOException e) {
+				Files.createDirectories(outpath.getParent());
+				temp = Files.createTempFile(outpath.getParent(), outpath.getFileName().toString(), ".tmp");
+				try (AssemFileWriter writer = new AssemFileWriter(temp, filename)) {
+					generator.accept(writer);
+				}
+				Files.move(temp, outpath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException | UncheckedIOException e) {
 				e.printStackTrace();
 				System.out.println("Failed writing assem results to " + outpath + " for " + filename);
+				return false;
+			} finally {
+				if(temp != null) temp.toFile().delete();
 			}
+			return true;
+		}
+		
+		/**
+		 * The location of the assem file for a source file
+		 * 
+		 * @param filename the name of the source file
+		 */
+		public Path getAssemFile(String filename) {
+			String outfile = filename.replaceFirst("\\.(xi|ixi)", ".s");
+			return assemPath.resolve(outfile);
 		}
 		
 		/**
@@ -153,9 +202,9 @@ public class FileUtils {
 		 * @param filename the name of the file parsed
 		 * @param assem    
 		 */
-		public static void writeCFGToFile(String filename, Collection<IRFuncDefn> fDefns) {
+		public void writeCFGToFile(String filename, Collection<IRFuncDefn> fDefns) {
 			String outfile = filename.replaceFirst("\\.(xi|ixi)", ".dot");
-			Path outpath = Paths.get(outfile);
+			Path outpath = diagPath.resolve(outfile);
 			BufferedWriter writer;
 			try {
 				Files.createDirectories(outpath.getParent());			
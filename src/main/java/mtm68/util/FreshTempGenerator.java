@@ -1,13 +1,52 @@
 package mtm68.util;
 
+import java.util.function.Supplier;
+
+/**
+ * Generates fresh temp names. The counter is confined to the current thread
+ * so that several files can be compiled at once; callers reset it at the
+ * start of each file so the names a file gets do not depend on which other
+ * files were compiled before it.
+ */
 public class FreshTempGenerator {
-	private static int counter = 0;
+	private static final String DEFAULT_PREFIX = "_t";
+
+	private static final ThreadLocal<Integer> counter = ThreadLocal.withInitial(() -> 0);
+	private static final ThreadLocal<String> prefix = ThreadLocal.withInitial(() -> DEFAULT_PREFIX);
 	
 	public static String getFreshTemp() {
-		return "_t" + counter++;
+		int next = counter.get();
+		counter.set(next + 1);
+		return prefix.get() + next;
 	}
 	
 	public static void resetCounter() {
-		counter = 0;
+		counter.set(0);
+	}
+	
+	/**
+	 * Runs computation with fresh temps drawn from a separate namespace, 
+	 * e.g. _t3_0, _t3_1, ... for scope "3". Work that is split into tasks 
+	 * (such as optimizing each function of a file) gives each task its own 
+	 * scope so the names it gets don't depend on which thread ran it or in
+	 * what order. The enclosing counter is restored afterwards.
+	 * 
+	 * @param scope        the id of the namespace, unique within the file. It
+	 *                     must start with a digit so it can't clash with temps
+	 *                     named after Xi identifiers.
+	 * @param computation  the work to run inside the namespace
+	 */
+	public static <T> T inScope(String scope, Supplier<T> computation) {
+		int oldCounter = counter.get();
+		String oldPrefix = prefix.get();
+
+		counter.set(0);
+		prefix.set(DEFAULT_PREFIX + scope + "_");
+		try {
+			return computation.get();
+		} finally {
+			counter.set(oldCounter);
+			prefix.set(oldPrefix);
+		}
 	}
 }
@@ -0,0 +1,223 @@
+package mtm68.util;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cornell.cs.cs4120.ir.IRNode;
+import edu.cornell.cs.cs4120.ir.visit.AggregateVisitor;
+import mtm68.assem.Assem;
+import mtm68.assem.CompUnitAssem;
+import mtm68.assem.FuncDefnAssem;
+
+/**
+ * Records the wall time, CPU time and bytes allocated by each phase of the
+ * compiler, for each file and function, along with the size of the IR or
+ * assem the phase produced. The measurements are written out as JSON.
+ *
+ * CPU time and allocation are measured for the thread that runs a phase, so
+ * phases can run on worker threads. Phases nest: a file level phase includes
+ * the function level phases run inside it.
+ *
+ * The disabled profiler measures nothing, so phases can be measured
+ * unconditionally.
+ */
+public class PhaseProfiler {
+	public static final PhaseProfiler DISABLED = new PhaseProfiler(false);
+
+	private final boolean enabled;
+	private final ThreadMXBean threads;
+	private final List<Measurement> measurements;
+
+	public PhaseProfiler() {
+		this(true);
+	}
+
+	private PhaseProfiler(boolean enabled) {
+		this.enabled = enabled;
+		this.threads = ManagementFactory.getThreadMXBean();
+		this.measurements = Collections.synchronizedList(new ArrayList<>());
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts measuring a phase run on a whole file.
+	 */
+	public Measurement start(String file, String phase) {
+		return start(file, null, phase);
+	}
+
+	/**
+	 * Starts measuring a phase run on one function of a file.
+	 */
+	public Measurement start(String file, String function, String phase) {
+		return new Measurement(file, function, phase);
+	}
+
+	/**
+	 * Writes every measurement to file as JSON, followed by the totals of
+	 * each phase.
+	 */
+	public void writeJSON(Path file) throws IOException {
+		List<Measurement> done;
+		synchronized(measurements) {
+			done = new ArrayList<>(measurements);
+		}
+
+		Map<String, long[]> totals = new LinkedHashMap<>();
+		for(Measurement m : done) {
+			long[] total = totals.computeIfAbsent(m.phase, p -> new long[4]);
+			total[0]++;
+			total[1] += m.wallNanos;
+			total[2] += m.cpuNanos;
+			total[3] += m.allocatedBytes;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"phases\": [");
+		for(int i = 0; i < done.size(); i++) {
+			sb.append(i == 0 ? "\n    " : ",\n    ");
+			done.get(i).appendJSON(sb);
+		}
+		sb.append("\n  ],\n  \"totals\": {");
+
+		int i = 0;
+		for(Map.Entry<String, long[]> entry : totals.entrySet()) {
+			long[] total = entry.getValue();
+			sb.append(i++ == 0 ? "\n    " : ",\n    ");
+			sb.append(StringUtils.quoteJSON(entry.getKey())).append(": {")
+				.append("\"count\": ").append(total[0])
+				.append(", \"wallNanos\": ").append(total[1])
+				.append(", \"cpuNanos\": ").append(total[2])
+				.append(", \"allocatedBytes\": ").append(total[3])
+				.append("}");
+		}
+		sb.append("\n  }\n}\n");
+
+		if(file.getParent() != null) Files.createDirectories(file.getParent());
+		Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private long cpuTime() {
+		return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+	}
+
+	private long allocatedBytes() {
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * A phase being measured. Stopping it records the measurement; the sizes
+	 * of what it produced can be added after.
+	 */
+	public class Measurement {
+		private String file;
+		private String function;
+		private String phase;
+		private int iteration;
+
+		private long wallNanos;
+		private long cpuNanos;
+		private long allocatedBytes;
+
+		private int irNodes;
+		private int assems;
+
+		private Measurement(String file, String function, String phase) {
+			this.file = file;
+			this.function = function;
+			this.phase = phase;
+			this.iteration = -1;
+			this.irNodes = -1;
+			this.assems = -1;
+
+			if(!enabled) return;
+			wallNanos = System.nanoTime();
+			cpuNanos = cpuTime();
+			allocatedBytes = allocatedBytes();
+		}
+
+		public Measurement stop() {
+			if(!enabled) return this;
+			wallNanos = System.nanoTime() - wallNanos;
+			cpuNanos = cpuTime() - cpuNanos;
+			allocatedBytes = allocatedBytes() - allocatedBytes;
+			measurements.add(this);
+			return this;
+		}
+
+		/**
+		 * Which run of the phase this is, for phases that run until a fixed
+		 * point.
+		 */
+		public Measurement iteration(int iteration) {
+			this.iteration = iteration;
+			return this;
+		}
+
+		public Measurement irNodes(IRNode root) {
+			if(enabled) irNodes = new IRNodeCounter().visit(root);
+			return this;
+		}
+
+		public Measurement assems(List<Assem> assemList) {
+			if(enabled) assems = assemList.size();
+			return this;
+		}
+
+		public Measurement assems(CompUnitAssem program) {
+			if(!enabled) return this;
+			assems = 0;
+			for(FuncDefnAssem func : program.getFunctions()) {
+				assems += func.getBodyAssem().getAssems().size();
+			}
+			return this;
+		}
+
+		private void appendJSON(StringBuilder sb) {
+			sb.append("{\"file\": ").append(StringUtils.quoteJSON(file));
+			if(function != null) sb.append(", \"function\": ").append(StringUtils.quoteJSON(function));
+			sb.append(", \"phase\": ").append(StringUtils.quoteJSON(phase));
+			if(iteration >= 0) sb.append(", \"iteration\": ").append(iteration);
+			sb.append(", \"wallNanos\": ").append(wallNanos);
+			sb.append(", \"cpuNanos\": ").append(cpuNanos);
+			sb.append(", \"allocatedBytes\": ").append(allocatedBytes);
+			if(irNodes >= 0) sb.append(", \"irNodes\": ").append(irNodes);
+			if(assems >= 0) sb.append(", \"assems\": ").append(assems);
+			sb.append("}");
+		}
+	}
+
+	private static class IRNodeCounter extends AggregateVisitor<Integer> {
+
+		@Override
+		public Integer unit() {
+			return 0;
+		}
+
+		@Override
+		public Integer bind(Integer r1, Integer r2) {
+			return r1 + r2;
+		}
+
+		@Override
+		protected Integer leave(IRNode parent, IRNode n, Integer r, AggregateVisitor<Integer> v_) {
+			return r + 1;
+		}
+	}
+}
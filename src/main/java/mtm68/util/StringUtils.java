@@ -36,4 +36,24 @@ public class StringUtils {
 	public static String preserveNewlines(String s) {
 		return s.replaceAll("[\n]", "\\\\n");
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Quotes a string as a JSON string literal.
+	 * 
+	 * @param s        a string
+	 * @return         s in quotes, with quotes, backslashes and control characters escaped
+	 */
+	public static String quoteJSON(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for(char c : s.toCharArray()) {
+			if(c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if(c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
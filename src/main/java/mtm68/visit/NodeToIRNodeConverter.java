@@ -90,7 +90,7 @@ public class NodeToIRNodeConverter extends Visitor {
 		try {
 			return root.accept(this);
 		} catch(InternalCompilerError e) {
-			if(Debug.DEBUG_ON) {
+			if(Debug.isDebugOn()) {
 				e.printStackTrace();
 			}
 		}
@@ -322,7 +322,7 @@ public class NodeToIRNodeConverter extends Visitor {
 		IRLabel ok = inf.IRLabel(getFreshLabel());
 		IRLabel err = inf.IRLabel(getFreshLabel());
 
-		IRMem lenAddr = inf.IRMem(inf.IRBinOp(OpType.SUB, arr, inf.IRConst(getWordSize())));
+		IRMem lenAddr = inf.IRMem(inf.IRBinOp(OpType.SUB, arr, inf.IRConst(getWordSize())), MemType.IMMUTABLE);
 		IRBinOp boundsCheck = inf.IRBinOp(OpType.ULT, index, lenAddr);
 
 		return inf.IRSeq(
@@ -0,0 +1,60 @@
+package mtm68.assem;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import mtm68.assem.JumpAssem.JumpType;
+import mtm68.assem.SetccAssem.CC;
+import mtm68.assem.op.AddAssem;
+import mtm68.assem.op.LeaAssem;
+import mtm68.assem.operand.AbstractReg;
+import mtm68.assem.operand.Imm;
+import mtm68.assem.operand.Loc;
+import mtm68.assem.operand.Mem;
+import mtm68.assem.operand.RealReg;
+import mtm68.assem.visit.AssemSerializer;
+import mtm68.util.ArrayUtils;
+
+public class AssemSerializerTests {
+
+	@Test
+	void testRoundTripRenamesLabels() throws IOException {
+		List<Assem> assems = ArrayUtils.elems(
+				new LabelAssem("l0"),
+				new MoveAssem(RealReg.RAX, new Mem(RealReg.RBP, RealReg.RCX, 8, -16)),
+				new AddAssem(new AbstractReg("t1"), new Imm(Long.MAX_VALUE)),
+				new LeaAssem(RealReg.R12, new Mem(RealReg.RDI, 1)),
+				new CmpAssem(RealReg.RAX, new Imm(1)),
+				new SetccAssem(CC.GE),
+				new JumpAssem(JumpType.JNE, new Loc("l0")),
+				new CallAssem("_Iprint_pai", 1),
+				new PushAssem(RealReg.RBX),
+				new RetAssem());
+
+		AssemSerializer serializer = new AssemSerializer(l -> l.replace("l", "x"), l -> l.replace("x", "m"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		serializer.write(new DataOutputStream(bytes), assems);
+		List<Assem> read = serializer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		String expected = new SeqAssem(assems).toString().replace("l0", "m0");
+		assertEquals(expected, new SeqAssem(read).toString());
+	}
+
+	@Test
+	void testUnknownLabelFails() {
+		AssemSerializer serializer = new AssemSerializer(l -> null, l -> l);
+		List<Assem> assems = ArrayUtils.elems(new LabelAssem("l0"));
+
+		assertThrows(IOException.class,
+				() -> serializer.write(new DataOutputStream(new ByteArrayOutputStream()), assems));
+	}
+}
@@ -0,0 +1,102 @@
+package mtm68.assem;
+
+import static mtm68.assem.AssemTestUtils.*;
+import static mtm68.assem.operand.RealReg.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import mtm68.assem.JumpAssem.JumpType;
+import mtm68.assem.SetccAssem.CC;
+import mtm68.assem.op.AddAssem;
+import mtm68.assem.op.IMulAssem;
+import mtm68.assem.op.XorAssem;
+import mtm68.assem.operand.Mem;
+import mtm68.assem.visit.PeepholeOptimizer;
+import mtm68.util.ArrayUtils;
+
+public class PeepholeOptimizerTests {
+
+	@Test
+	void testRemovesSelfMove() {
+		assertOptimized(
+				ArrayUtils.elems(mov(R10, R10), mov(R11, R10)),
+				ArrayUtils.elems(mov(R11, R10)));
+	}
+
+	@Test
+	void testForwardsStoreToLoad() {
+		Mem slot = new Mem(RBP, -16);
+		assertOptimized(
+				ArrayUtils.elems(mov(slot, R10), mov(R10, new Mem(RBP, -16)), mov(slot, R11), mov(R12, slot)),
+				ArrayUtils.elems(mov(slot, R11), mov(R12, R11)));
+	}
+
+	@Test
+	void testKeepsMoveReadByNextMove() {
+		List<Assem> assems = ArrayUtils.elems(mov(R10, mem(R11)), mov(R10, mem(R10)));
+		assertOptimized(assems, assems);
+	}
+
+	@Test
+	void testRemovesIdentityOps() {
+		assertOptimized(
+				ArrayUtils.elems(new AddAssem(R10, imm(0)), new IMulAssem(R10, imm(1)), new IMulAssem(R10, imm(0))),
+				ArrayUtils.elems(new IMulAssem(R10, imm(0))));
+	}
+
+	@Test
+	void testJumps() {
+		assertOptimized(
+				ArrayUtils.elems(
+						jmp("l1", JumpType.JL), jmp("l2"), label("l1"),
+						jmp("l3"), mov(R10, R11), label("l3"),
+						ret(), ret()),
+				ArrayUtils.elems(
+						jmp("l2", JumpType.JGE), label("l1"),
+						label("l3"),
+						ret()));
+	}
+
+	@Test
+	void testJumpsOnSetccFlags() {
+		Mem slot = new Mem(RBP, -8);
+		assertOptimized(
+				ArrayUtils.elems(
+						new CmpAssem(R10, R11), new SetccAssem(CC.B), mov(R12, RAX), mov(slot, R12), mov(R13, slot),
+						new CmpAssem(R13, imm(1)), jmp("l1", JumpType.JE)),
+				ArrayUtils.elems(
+						new CmpAssem(R10, R11), new SetccAssem(CC.B), mov(R12, RAX), mov(slot, R12), mov(R13, R12),
+						jmp("l1", JumpType.JB)));
+
+		assertOptimized(
+				ArrayUtils.elems(
+						new CmpAssem(R10, R11), new SetccAssem(CC.L), new XorAssem(RAX, imm(1)),
+						new CmpAssem(RAX, imm(1)), jmp("l1", JumpType.JE)),
+				ArrayUtils.elems(
+						new CmpAssem(R10, R11), new SetccAssem(CC.L), new XorAssem(RAX, imm(1)),
+						jmp("l1", JumpType.JNE)));
+	}
+
+	@Test
+	void testKeepsCmpOfOverwrittenSetcc() {
+		List<Assem> assems = ArrayUtils.elems(
+				new SetccAssem(CC.E), mov(R12, RAX), mov(R13, R12), mov(R12, mem(R10)),
+				new CmpAssem(R12, imm(1)), jmp("l1", JumpType.JE));
+		assertOptimized(assems, assems);
+
+		// The store to [r11] may write [rbp - 8]
+		Mem slot = new Mem(RBP, -8);
+		assems = ArrayUtils.elems(
+				new SetccAssem(CC.E), mov(slot, RAX), mov(mem(R11), R10), mov(R12, slot),
+				new CmpAssem(R12, imm(1)), jmp("l1", JumpType.JE));
+		assertOptimized(assems, assems);
+	}
+
+	private void assertOptimized(List<Assem> assems, List<Assem> expected) {
+		List<Assem> optimized = new PeepholeOptimizer().optimize(assems);
+		assertEquals(new SeqAssem(expected).toString(), new SeqAssem(optimized).toString());
+	}
+}
@@ -3,6 +3,14 @@ package mtm68.assem;
 import static mtm68.ir.IRTestUtils.*;
 import static mtm68.util.ArrayUtils.*;
 import static mtm68.util.TestUtils.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
@@ -10,14 +18,23 @@ import edu.cornell.cs.cs4120.ir.IRBinOp;
 import edu.cornell.cs.cs4120.ir.IRBinOp.OpType;
 import edu.cornell.cs.cs4120.ir.IRCJump;
 import edu.cornell.cs.cs4120.ir.IRCallStmt;
+import edu.cornell.cs.cs4120.ir.IRConst;
+import edu.cornell.cs.cs4120.ir.IRExpr;
 import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRMem;
 import edu.cornell.cs.cs4120.ir.IRMove;
 import edu.cornell.cs.cs4120.ir.IRName;
 import edu.cornell.cs.cs4120.ir.IRNode;
 import edu.cornell.cs.cs4120.ir.IRNodeFactory_c;
 import edu.cornell.cs.cs4120.ir.IRReturn;
 import edu.cornell.cs.cs4120.ir.IRSeq;
+import edu.cornell.cs.cs4120.ir.IRTemp;
 import edu.cornell.cs.cs4120.ir.visit.Tiler;
+import mtm68.assem.pattern.Pattern;
+import mtm68.assem.tile.Tile;
+import mtm68.assem.tile.TileAutomaton;
+import mtm68.assem.tile.TileCosts;
+import mtm68.assem.tile.TileFactory;
 import mtm68.util.Constants;
 
 public class TileTests {
@@ -370,6 +387,103 @@ public class TileTests {
 		tile(node);
 	}
 
+	@Test
+	void automatonCandidatesAreMatchingTiles() {
+		List<IRNode> nodes = elems(
+				op(OpType.SUB, temp("t4"), constant(1L)),
+				op(OpType.ADD, constant(LARGE_INT), temp("t4")),
+				move(temp("t3"), mem(op(OpType.ADD, temp("t1"), temp("t2")))),
+				move(temp("t3"), temp(Constants.ARG_PREFIX + 2)),
+				mem(op(OpType.ADD, op(OpType.MUL, constant(8L), temp("t2")), constant(16L))),
+				new IRCJump(op(OpType.LT, temp("t1"), temp("t2")), "l1", "l2"));
+		
+		TileAutomaton automaton = new TileAutomaton(TileFactory.allTiles(TileCosts.getDefault()));
+		List<Tile> tiles = TileFactory.allTiles(TileCosts.getDefault());
+		
+		for(IRNode node : nodes) {
+			List<TileAutomaton.Candidate> candidates = automaton.getState(node).getCandidates();
+			
+			long matching = tiles.stream().filter(tile -> tile.getPattern().matches(node)).count();
+			assertEquals(matching, candidates.size());
+			
+			for(int i = 0; i < candidates.size(); i++) {
+				assertTrue(tiles.get(candidates.get(i).getOrder()).getPattern().matches(node));
+				if(i > 0) assertTrue(candidates.get(i - 1).getTile().getCost() <= candidates.get(i).getTile().getCost());
+			}
+		}
+	}
+	
+	@Test
+	void automatonSharesStatesBetweenShapes() {
+		TileAutomaton automaton = new TileAutomaton(TileFactory.allTiles(TileCosts.getDefault()));
+		
+		IRMem first = mem(op(OpType.ADD, temp("t1"), constant(8L)));
+		IRMem second = mem(op(OpType.ADD, temp("t5"), constant(-24L)));
+		IRMem large = mem(op(OpType.ADD, temp("t5"), constant(LARGE_INT)));
+		
+		assertSame(automaton.getState(first.expr()), automaton.getState(second.expr()));
+		assertNotSame(automaton.getState(first.expr()), automaton.getState(large.expr()));
+		
+		// Every address matches some addressing mode, so all three match the same patterns
+		assertSame(automaton.getState(first), automaton.getState(large));
+	}
+	
+	@Test
+	void automatonMatchesAddressingMode() {
+		TileAutomaton automaton = new TileAutomaton(TileFactory.allTiles(TileCosts.getDefault()));
+		
+		IRTemp base = temp("b");
+		IRTemp index = temp("i");
+		IRConst scale = constant(8L);
+		IRNode node = mem(op(OpType.ADD, base, op(OpType.ADD, op(OpType.MUL, index, scale), constant(16L))));
+		
+		Pattern pattern = automaton.getState(node).getCandidates().get(0).getTile().getPattern();
+		Map<String, IRExpr> exprs = new HashMap<>();
+		pattern.addMatchedExprs(node, automaton, exprs);
+		
+		assertSame(base, exprs.get("t_t1"));
+		assertSame(index, exprs.get("t_t2"));
+		assertSame(scale, exprs.get("t_i"));
+		
+		List<IRExpr> operands = empty();
+		pattern.addOperandExprs(node, automaton, operands);
+		assertEquals(elems(base, index), operands);
+	}
+
+	@Test
+	void tileCostsFoldMemoryOperands() {
+		for(String target : TileCosts.getTargets()) {
+			TileCosts costs = TileCosts.forTarget(target);
+			TileAutomaton automaton = TileAutomaton.getInstance(costs);
+
+			IRNode node = op(OpType.SUB, temp("t"),
+					mem(op(OpType.ADD, temp("b"), op(OpType.MUL, temp("i"), constant(8L)))));
+
+			Tile best = automaton.getState(node).getCandidates().get(0).getTile();
+			assertTrue(best.getPattern().matches(node));
+
+			// mov t, t; sub t, [b + i * 8]
+			Tiler tiler = new Tiler(new IRNodeFactory_c(), costs);
+			IRNode result = tiler.visit(node);
+			assertEquals(2, result.getAssem().toString().split("\n").length, target);
+
+			// A load on its own costs more than one folded into the sub
+			assertTrue(costs.getLoad() > costs.getMemOperand(), target);
+		}
+	}
+
+	@Test
+	void tileCostsOrderInstructions() {
+		for(String target : TileCosts.getTargets()) {
+			if(target.equals(TileCosts.UNIFORM.getName())) continue;
+
+			TileCosts costs = TileCosts.forTarget(target);
+			assertTrue(costs.getIdiv() > costs.getImul(), target);
+			assertTrue(costs.getImul() > costs.getAlu(), target);
+			assertTrue(costs.getLoad() > costs.getMove(), target);
+		}
+	}
+
 	private Assem tile(IRNode node, int numArgs) {
 		System.out.println("Before\n=========\n" + node);
 		Tiler tiler = new Tiler(new IRNodeFactory_c());
@@ -1,11 +1,15 @@
 package mtm68.assem.cfg;
 
 import static mtm68.assem.AssemTestUtils.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.List;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
 
@@ -143,6 +147,33 @@ public class AssemCFGTests {
 	}
 	
 	
+	@Test
+	void testLoopDepths() {
+		List<Assem> assems = ArrayUtils.elems(
+				mov(reg("t1"), reg("t2")),
+				new LabelAssem("outer"),
+				mov(reg("t3"), reg("t2")),
+				new LabelAssem("inner"),
+				new AddAssem(reg("t2"), reg("t4")),
+				new CmpAssem(reg("t1"), reg("t2")),
+				new JumpAssem(JumpType.JE, new Loc("inner")),
+				new CmpAssem(reg("t1"), reg("t3")),
+				new JumpAssem(JumpType.JNE, new Loc("outer")),
+				new RetAssem()
+			);
+		
+		AssemCFGBuilder<String> builder = new AssemCFGBuilder<>();
+		Graph<AssemData<String>> graph = builder.buildAssemCFG(assems, () -> "wow");
+		LoopNesting loops = new LoopNesting(graph.getNodes());
+		
+		int[] depths = IntStream.range(0, graph.getNodes().size())
+				.map(loops::getDepth)
+				.toArray();
+		assertArrayEquals(new int[] {0, 1, 2, 2, 1, 0}, depths);
+		assertTrue(loops.dominates(1, 2));
+		assertFalse(loops.dominates(4, 1));
+	}
+
 	private void showOutput(Graph<AssemData<String>> graph) throws IOException {
 		graph.show(new PrintWriter(System.out), "CFG", true, printer);
 	}
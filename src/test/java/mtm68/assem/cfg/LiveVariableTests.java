@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.BitSet;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -16,6 +17,9 @@ import mtm68.assem.IDivAssem;
 import mtm68.assem.MulAssem;
 import mtm68.assem.RetAssem;
 import mtm68.assem.SetccAssem;
+import mtm68.assem.cfg.AssemCFGBuilder.AssemData;
+import mtm68.assem.cfg.Graph.Node;
+import mtm68.assem.cfg.Liveness.LiveData;
 import mtm68.assem.JumpAssem.JumpType;
 import mtm68.assem.SetccAssem.CC;
 import mtm68.assem.op.AddAssem;
@@ -75,6 +79,82 @@ public class LiveVariableTests {
 		liveness.showInterferenceGraph(new PrintWriter(System.out));
 	}
 	
+	@Test
+	void liveAroundLoop() {
+		Liveness liveness = new Liveness();
+		
+		List<Assem> assems = ArrayUtils.elems(
+				mov(reg("a"), imm(1)),
+				label("header"),
+				new AddAssem(reg("b"), reg("a")),
+				new CmpAssem(reg("b"), imm(10)),
+				jmp("header", JumpType.JL),
+				mov(RealReg.RAX, reg("b")),
+				new RetAssem()
+			);
+		
+		liveness.performLiveVariableAnalysis(assems);
+		
+		Graph<AssemData<LiveData>> graph = liveness.getLiveGraph();
+		List<Node> nodes = graph.getNodes();
+		
+		assertEquals(SetUtils.elems("b", "rdx"), graph.getDataForNode(nodes.get(0)).getFlowData().getLiveIn());
+		assertEquals(SetUtils.elems("a", "b", "rdx"), graph.getDataForNode(nodes.get(1)).getFlowData().getLiveIn());
+		assertEquals(SetUtils.elems("a", "b", "rdx"), graph.getDataForNode(nodes.get(2)).getFlowData().getLiveOut());
+		assertEquals(SetUtils.elems("rax", "rdx"), graph.getDataForNode(nodes.get(3)).getFlowData().getLiveOut());
+	}
+	
+	@Test
+	void updateForSpills() {
+		Liveness liveness = new Liveness();
+		
+		List<Assem> assems = ArrayUtils.elems(
+				mov(reg("a"), imm(1)),
+				label("header"),
+				new AddAssem(reg("b"), reg("a")),
+				new CmpAssem(reg("b"), imm(10)),
+				jmp("header", JumpType.JL),
+				mov(RealReg.RAX, reg("b")),
+				new RetAssem()
+			);
+		
+		liveness.performLiveVariableAnalysis(assems);
+		
+		// Spill a
+		List<Assem> spilled = ArrayUtils.elems(
+				mov(reg("a1"), imm(1)),
+				mov(mem(RealReg.RBP), reg("a1")),
+				label("header"),
+				mov(reg("a2"), mem(RealReg.RBP)),
+				new AddAssem(reg("b"), reg("a2")),
+				new CmpAssem(reg("b"), imm(10)),
+				jmp("header", JumpType.JL),
+				mov(RealReg.RAX, reg("b")),
+				new RetAssem()
+			);
+		int[] origins = { 0, 0, 1, 2, 2, 3, 4, 5, 6 };
+		BitSet spillCode = new BitSet();
+		spillCode.set(1);
+		spillCode.set(3);
+		
+		liveness.updateForSpills(spilled, origins, spillCode, SetUtils.elems("a"));
+		
+		Liveness fresh = new Liveness();
+		fresh.performLiveVariableAnalysis(spilled);
+		
+		List<Node> nodes = liveness.getLiveGraph().getNodes();
+		List<Node> freshNodes = fresh.getLiveGraph().getNodes();
+		assertEquals(freshNodes.size(), nodes.size());
+
+		for(int i = 0; i < nodes.size(); i++) {
+			LiveData data = liveness.getLiveGraph().getDataForNode(nodes.get(i)).getFlowData();
+			LiveData freshData = fresh.getLiveGraph().getDataForNode(freshNodes.get(i)).getFlowData();
+
+			assertEquals(freshData.getLiveIn(), data.getLiveIn());
+			assertEquals(freshData.getLiveOut(), data.getLiveOut());
+		}
+	}
+	
 	@Test
 	void moveUseDef() {
 		Assem mov = mov(reg("t1"), reg("t2"));
@@ -3,6 +3,9 @@ package mtm68.assem.cfg;
 import java.util.List;
 import java.util.Set;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import org.junit.jupiter.api.Test;
 
 import mtm68.assem.Assem;
@@ -37,6 +40,56 @@ public class RegisterAllocTests {
 //		System.out.println("Color map: " + regAlloc.getColorMap());
 	}
 	
+	@Test
+	void linearScanSpills() {
+		Set<RealReg> colors = SetUtils.elems(RealReg.R12);
+		LinearScanAllocation regAlloc = new LinearScanAllocation(colors);
+		
+		// t1 and t2 are live together, so one of them can't have R12
+		List<Assem> assems = ArrayUtils.elems(
+				mov(reg("t1"), imm(1)),
+				mov(reg("t2"), imm(2)),
+				mov(RealReg.RAX, reg("t1")),
+				mov(RealReg.RDX, reg("t2")),
+				ret()
+			);
+
+		FuncDefnAssem func = new FuncDefnAssem("f", 0, new SeqAssem(assems));
+		CompUnitAssem program = new CompUnitAssem("test", ArrayUtils.singleton(func));
+		
+		CompUnitAssem newProgram = regAlloc.allocateRegisters(program);
+		printResults(assems, newProgram);
+		
+		// Spilling adds loads and stores to the body
+		List<Assem> newAssems = newProgram.getFunctions().get(0).getBodyAssem().getAssems();
+		assertTrue(newAssems.size() > assems.size());
+		
+		for(Assem assem : newAssems) {
+			assertTrue(assem.getReplaceableRegs().stream().noneMatch(r -> r.isAbstract()));
+		}
+	}
+	
+	@Test
+	void parallelAllocationEmitsInOrder() {
+		RegisterAllocation regAlloc = new RegisterAllocation(RealReg.COLORS);
+		regAlloc.setParallel(true);
+		
+		List<FuncDefnAssem> funcs = ArrayUtils.empty();
+		for(int i = 0; i < 8; i++) {
+			List<Assem> assems = ArrayUtils.elems(
+					mov(reg("t1"), imm(i)),
+					mov(RealReg.RAX, reg("t1")),
+					ret()
+				);
+			funcs.add(new FuncDefnAssem("f" + i, 0, new SeqAssem(assems)));
+		}
+		
+		List<String> emitted = ArrayUtils.empty();
+		regAlloc.allocateRegisters(new CompUnitAssem("test", funcs), func -> emitted.add(func.getName()));
+		
+		assertEquals(ArrayUtils.elems("f0", "f1", "f2", "f3", "f4", "f5", "f6", "f7"), emitted);
+	}
+	
 	private void printResults(List<Assem> original, CompUnitAssem coloredProgram) {
 		System.out.println("Original\n=========");
 		printAssems(original);
@@ -0,0 +1,70 @@
+package mtm68.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import mtm68.Main;
+import mtm68.util.ArrayUtils;
+
+/**
+ * Compiles files with and without --cache-dir and checks that the assembly
+ * written is byte for byte the same, whether it is generated, put together
+ * from functions cached while compiling other files, or a cached file.
+ */
+public class CacheOutputTests {
+	private static final List<String> FILES = ArrayUtils.elems(
+			"array_adventure.xi", "primes.xi", "fib.xi", "register_pressure.xi", "count_islands.xi");
+
+	@Test
+	void testCachedMatchesUncached() throws IOException {
+		Map<String, String> uncached = compile(null, FILES);
+
+		Path cache = Files.createTempDirectory("xic-cache");
+		try {
+			// Every file has functions like the allocation helper in common
+			compile(cache, ArrayUtils.singleton("fib.xi"));
+
+			assertEquals(uncached, compile(cache, FILES));
+			assertEquals(uncached, compile(cache, FILES));
+		} finally {
+			for(File file : cache.toFile().listFiles()) file.delete();
+			Files.delete(cache);
+		}
+	}
+
+	private Map<String, String> compile(Path cache, List<String> sourceFiles) throws IOException {
+		Path out = Files.createTempDirectory("xic");
+
+		List<String> args = ArrayUtils.elems(
+				"-sourcepath", "src/test/resources/testfiles",
+				"-libpath", "src/test/resources/testlib",
+				"-d", out.toString());
+		if(cache != null) args = ArrayUtils.concat(args, ArrayUtils.elems("--cache-dir", cache.toString()));
+		args = ArrayUtils.concat(args, sourceFiles);
+
+		assertEquals(0, new Main(Paths.get(System.getProperty("user.dir")), null).run(args.toArray(new String[0])));
+
+		Map<String, String> assem = new TreeMap<>();
+		try(Stream<Path> files = Files.list(out)) {
+			for(Path file : (Iterable<Path>) files::iterator) {
+				assem.put(file.getFileName().toString(), new String(Files.readAllBytes(file)));
+				Files.delete(file);
+			}
+		}
+		Files.delete(out);
+
+		assertEquals(sourceFiles.size(), assem.size());
+		return assem;
+	}
+}
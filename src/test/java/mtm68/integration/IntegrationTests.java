@@ -80,10 +80,12 @@ public class IntegrationTests {
 	private static final boolean COPY = true;
 	private static final boolean DCE = true;
 
+	private FileUtils fileUtils;
+	private Optimizer optimizer;
+
 	@BeforeEach
 	void setUpFileUtils() {
-		FileUtils.diagPath = Paths.get(ASSEM_PATH);
-		FileUtils.assemPath = Paths.get(ASSEM_PATH);
+		fileUtils = new FileUtils(Paths.get(ASSEM_PATH), Paths.get(ASSEM_PATH));
 		setUpOptimizer();
 	}
 	
@@ -349,7 +351,7 @@ public class IntegrationTests {
 		try {
 			IRNode irRoot = generateIRFromFile(filename);
 						
-			FileUtils.writeToFile("unitTest.ir", irRoot); 
+			fileUtils.writeToFile("unitTest.ir", irRoot); 
 			
 //			CodeWriterSExpPrinter codeWriter = new CodeWriterSExpPrinter(new PrintWriter(System.out));
 //			irRoot.printSExp(codeWriter);
@@ -397,7 +399,7 @@ public class IntegrationTests {
 //			assems.forEach(System.out::println);
 			Path pwd = Paths.get(System.getProperty("user.dir"));			
 					
-			FileUtils.writeAssemToFile("unitTest.xi", assems);
+			fileUtils.writeAssemToFile("unitTest.xi", assems);
 			
 			// Run linkxi.sh to generate executable
 			ProcessBuilder link = getProcessBuilder(ASSEM_PATH + "/linkxi.sh", ASSEM_PATH + "/unitTest.s"); 
@@ -434,7 +436,7 @@ public class IntegrationTests {
 			runProc.waitFor();
 			Debug.endTime();
 			
-			//Files.delete(FileUtils.assemPath.resolve("unitTest.s"));
+			//Files.delete(fileUtils.getAssemPath().resolve("unitTest.s"));
 			//Files.delete(pwd.resolve("a.out"));
 			
 			assertEquals(expected, assemOutput);
@@ -517,7 +519,7 @@ public class IntegrationTests {
 		
 		//AST OPTS
 		
-		program = Optimizer.optimizeAST(program);
+		program = optimizer.optimizeAST(program);
 
 		//TRANSFORM TO IRCODE
 		IRNodeFactory nodeFactory = new IRNodeFactory_c();
@@ -538,7 +540,7 @@ public class IntegrationTests {
 		irRoot.printSExp(printer);
 		printer.flush();
 		
-		irRoot = Optimizer.optimizeIR(irRoot);
+		irRoot = optimizer.optimizeIR(irRoot);
 		
 		System.out.println("====================================");
 		SExpPrinter printer2 = new CodeWriterSExpPrinter(new PrintWriter(System.out));
@@ -558,13 +560,13 @@ public class IntegrationTests {
 	}
 	
 	private void setUpOptimizer() {
-		Optimizer.setNodeFactory(new IRNodeFactory_c());
-		if(CF) Optimizer.addCF();
-		if(CSE) Optimizer.addCSE();
-		if(CP) Optimizer.addCP();
-		if(INL) Optimizer.addINL();
-		if(COPY) Optimizer.addCOPY();
-		if(DCE) Optimizer.addDCE();
+		optimizer = new Optimizer(new IRNodeFactory_c(), fileUtils);
+		if(CF) optimizer.addCF();
+		if(CSE) optimizer.addCSE();
+		if(CP) optimizer.addCP();
+		if(INL) optimizer.addINL();
+		if(COPY) optimizer.addCOPY();
+		if(DCE) optimizer.addDCE();
 	}
 	
 	private enum OSType{
@@ -0,0 +1,68 @@
+package mtm68.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import mtm68.Main;
+import mtm68.util.ArrayUtils;
+
+/**
+ * Compiles the same files serially and in parallel and checks that the
+ * assembly written is byte for byte the same.
+ */
+public class ParallelOutputTests {
+	private static final String[] FILES = {
+			"array_adventure.xi", "primes.xi", "fib.xi", "register_pressure.xi", "count_islands.xi"
+	};
+
+	@Test
+	void testParallelFilesMatchSerial() throws IOException {
+		assertEquals(compile(), compile("-j", "4"));
+	}
+
+	@Test
+	void testParallelOptMatchesSerial() throws IOException {
+		assertEquals(compile(), compile("--parallel-opt"));
+	}
+
+	@Test
+	void testParallelAllocMatchesSerial() throws IOException {
+		assertEquals(compile(), compile("--parallel-alloc"));
+		assertEquals(compile("--linear-scan"), compile("--linear-scan", "--parallel-alloc"));
+	}
+
+	private Map<String, String> compile(String... options) throws IOException {
+		Path out = Files.createTempDirectory("xic");
+
+		String[] args = ArrayUtils.concatMulti(
+				ArrayUtils.elems(
+						"-sourcepath", "src/test/resources/testfiles",
+						"-libpath", "src/test/resources/testlib",
+						"-d", out.toString()),
+				ArrayUtils.elems(options),
+				ArrayUtils.elems(FILES)).toArray(new String[0]);
+
+		assertEquals(0, new Main(Paths.get(System.getProperty("user.dir")), null).run(args));
+
+		Map<String, String> assem = new TreeMap<>();
+		try(Stream<Path> files = Files.list(out)) {
+			for(Path file : (Iterable<Path>) files::iterator) {
+				assem.put(file.getFileName().toString(), new String(Files.readAllBytes(file)));
+				Files.delete(file);
+			}
+		}
+		Files.delete(out);
+
+		assertEquals(FILES.length, assem.size());
+		return assem;
+	}
+}
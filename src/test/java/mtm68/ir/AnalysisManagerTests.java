@@ -0,0 +1,98 @@
+package mtm68.ir;
+
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.ADD;
+import static mtm68.ir.IRTestUtils.cjump;
+import static mtm68.ir.IRTestUtils.constant;
+import static mtm68.ir.IRTestUtils.label;
+import static mtm68.ir.IRTestUtils.move;
+import static mtm68.ir.IRTestUtils.op;
+import static mtm68.ir.IRTestUtils.ret;
+import static mtm68.ir.IRTestUtils.temp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory_c;
+import edu.cornell.cs.cs4120.ir.IRSeq;
+import edu.cornell.cs.cs4120.ir.IRStmt;
+import mtm68.ir.cfg.AnalysisManager;
+import mtm68.ir.cfg.AnalysisManager.Analysis;
+import mtm68.ir.cfg.ConstantPropTransformer;
+import mtm68.ir.cfg.LiveVariables;
+import mtm68.ir.cfg.ReachingDefns;
+import mtm68.util.ArrayUtils;
+import mtm68.util.SetUtils;
+
+public class AnalysisManagerTests {
+
+	@Test
+	void analysesAreCached() {
+		AnalysisManager analyses = new AnalysisManager(new IRNodeFactory_c());
+		IRFuncDefn func = func();
+
+		LiveVariables lv = analyses.getLiveVariables(func);
+		assertSame(lv, analyses.getLiveVariables(func));
+		assertSame(analyses.getCFG(func), analyses.getCFG(func));
+	}
+
+	@Test
+	void analysesShareCFGNodes() {
+		AnalysisManager analyses = new AnalysisManager(new IRNodeFactory_c());
+		IRFuncDefn func = func();
+
+		LiveVariables lv = analyses.getLiveVariables(func);
+		ReachingDefns rd = analyses.getReachingDefns(func);
+
+		assertEquals(analyses.getCFG(func).getGraph().getNodes(), lv.getGraph().getNodes());
+		assertEquals(lv.getGraph().getNodes(), rd.getGraph().getNodes());
+	}
+
+	@Test
+	void updateKeepsPreservedAnalyses() {
+		AnalysisManager analyses = new AnalysisManager(new IRNodeFactory_c());
+		IRFuncDefn func = func();
+		IRFuncDefn newFunc = func.copy();
+
+		Object cfg = analyses.getCFG(func);
+		LiveVariables lv = analyses.getLiveVariables(func);
+
+		analyses.update(func, newFunc, SetUtils.elems(Analysis.CFG));
+
+		assertSame(cfg, analyses.getCFG(newFunc));
+		assertNotSame(lv, analyses.getLiveVariables(newFunc));
+	}
+
+	@Test
+	void constantPropReusesCFG() {
+		AnalysisManager analyses = new AnalysisManager(new IRNodeFactory_c());
+		IRFuncDefn func = func();
+		Object cfg = analyses.getCFG(func);
+
+		ConstantPropTransformer constProp = new ConstantPropTransformer(new IRNodeFactory_c(), analyses);
+		IRFuncDefn newFunc = constProp.doConstantProp(func);
+		assertTrue(constProp.hasChanged());
+		assertFalse(constProp.getPreservedAnalyses().contains(Analysis.REACHING_DEFNS));
+
+		analyses.update(func, newFunc, constProp.getPreservedAnalyses());
+		assertSame(cfg, analyses.getCFG(newFunc));
+	}
+
+	private IRFuncDefn func() {
+		List<IRStmt> stmts = ArrayUtils.elems(
+				move(temp("x"), constant(1)),
+				label("header"),
+				move(temp("y"), op(ADD, temp("x"), temp("y"))),
+				cjump("header", "done"),
+				label("done"),
+				ret()
+			);
+		return new IRFuncDefn("f", new IRSeq(stmts), 0);
+	}
+}
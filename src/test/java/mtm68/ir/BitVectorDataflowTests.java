@@ -0,0 +1,95 @@
+package mtm68.ir;
+
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.ADD;
+import static mtm68.ir.IRTestUtils.cjump;
+import static mtm68.ir.IRTestUtils.constant;
+import static mtm68.ir.IRTestUtils.label;
+import static mtm68.ir.IRTestUtils.move;
+import static mtm68.ir.IRTestUtils.op;
+import static mtm68.ir.IRTestUtils.ret;
+import static mtm68.ir.IRTestUtils.temp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRSeq;
+import edu.cornell.cs.cs4120.ir.IRStmt;
+import mtm68.assem.cfg.Graph;
+import mtm68.assem.cfg.Graph.Node;
+import mtm68.ir.cfg.AvailableCopies;
+import mtm68.ir.cfg.AvailableCopies.AvailableCopy;
+import mtm68.ir.cfg.AvailableCopies.AvailableCopyData;
+import mtm68.ir.cfg.IRCFGBuilder.IRData;
+import mtm68.ir.cfg.LiveVariables;
+import mtm68.ir.cfg.LiveVariables.LiveData;
+import mtm68.ir.cfg.LiveVariables.LiveVar;
+import mtm68.util.ArrayUtils;
+import mtm68.util.SetUtils;
+
+public class BitVectorDataflowTests {
+
+	@Test
+	void liveAroundLoop() {
+		IRFuncDefn func = func(
+				move(temp("x"), constant(1)),
+				label("header"),
+				move(temp("y"), op(ADD, temp("x"), temp("y"))),
+				cjump("header", "done"),
+				label("done"),
+				ret(temp("y"))
+			);
+
+		LiveVariables lv = new LiveVariables(func);
+		lv.performAnalysis();
+		Graph<IRData<LiveData>> graph = lv.getGraph();
+		List<Node> nodes = graph.getNodes();
+
+		assertEquals(SetUtils.elems("y"), names(graph.getDataForNode(nodes.get(0)).getFlowData().getIn()));
+		assertEquals(SetUtils.elems("x", "y"), names(graph.getDataForNode(nodes.get(1)).getFlowData().getIn()));
+		assertEquals(SetUtils.elems("x", "y"), names(graph.getDataForNode(nodes.get(2)).getFlowData().getOut()));
+		assertEquals(SetUtils.elems("y"), names(graph.getDataForNode(nodes.get(3)).getFlowData().getIn()));
+	}
+
+	@Test
+	void copyAvailableAroundLoop() {
+		IRFuncDefn func = func(
+				move(temp("a"), temp("b")),
+				label("header"),
+				move(temp("c"), temp("a")),
+				cjump("header", "done"),
+				label("done"),
+				ret()
+			);
+
+		AvailableCopies ac = new AvailableCopies(func);
+		ac.performAnalysis();
+		Graph<IRData<AvailableCopyData>> graph = ac.getGraph();
+		List<Node> nodes = graph.getNodes();
+
+		// a = b reaches the loop header from the entry and around the back edge
+		Set<AvailableCopy> in = graph.getDataForNode(nodes.get(1)).getFlowData().getIn();
+		assertEquals(1, in.size());
+		AvailableCopy copy = in.iterator().next();
+		assertEquals("a", copy.getX().name());
+		assertEquals("b", copy.getY().name());
+
+		// Nothing is available on entry
+		assertTrue(graph.getDataForNode(nodes.get(0)).getFlowData().getIn().isEmpty());
+	}
+
+	private IRFuncDefn func(IRStmt... stmts) {
+		return new IRFuncDefn("f", new IRSeq(ArrayUtils.elems(stmts)), 0);
+	}
+
+	private Set<String> names(Set<LiveVar> vars) {
+		return vars.stream()
+				.map(v -> v.getA().name())
+				.collect(Collectors.toSet());
+	}
+}
@@ -0,0 +1,67 @@
+package mtm68.ir;
+
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.*;
+import static mtm68.ir.IRTestUtils.*;
+import static mtm68.util.ArrayUtils.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRSeq;
+import edu.cornell.cs.cs4120.ir.visit.IRFuncHasher;
+
+public class IRFuncHasherTests {
+
+	@Test
+	void testRenamedTempsAndLabelsHashTheSame() {
+		IRFuncHasher hasher = new IRFuncHasher("");
+
+		String hash1 = hasher.hash(loop("x", "y", "l0", "l1", 1L));
+		assertEquals(elems("l0", "l1"), hasher.getLabels());
+
+		String hash2 = hasher.hash(loop("a", "b", "m5", "m9", 1L));
+		assertEquals(elems("m5", "m9"), hasher.getLabels());
+
+		assertEquals(hash1, hash2);
+	}
+
+	@Test
+	void testChangedConstantHashesDifferently() {
+		IRFuncHasher hasher = new IRFuncHasher("");
+
+		assertNotEquals(hasher.hash(loop("x", "y", "l0", "l1", 1L)),
+				hasher.hash(loop("x", "y", "l0", "l1", 2L)));
+	}
+
+	@Test
+	void testSwappedTempsHashDifferently() {
+		IRFuncHasher hasher = new IRFuncHasher("");
+
+		IRFuncDefn func1 = new IRFuncDefn("f", new IRSeq(
+				move("x", constant(1L)),
+				move("y", op(SUB, temp("x"), temp("y")))), 0);
+		IRFuncDefn func2 = new IRFuncDefn("f", new IRSeq(
+				move("x", constant(1L)),
+				move("y", op(SUB, temp("y"), temp("x")))), 0);
+
+		assertNotEquals(hasher.hash(func1), hasher.hash(func2));
+	}
+
+	@Test
+	void testSaltChangesHash() {
+		IRFuncDefn func = loop("x", "y", "l0", "l1", 1L);
+		assertNotEquals(new IRFuncHasher("a").hash(func), new IRFuncHasher("b").hash(func));
+	}
+
+	private IRFuncDefn loop(String x, String y, String head, String exit, long step) {
+		return new IRFuncDefn("f", new IRSeq(
+				move(x, constant(0L)),
+				label(head),
+				cjump(op(GEQ, temp(x), temp(y)), exit, null),
+				move(x, op(ADD, temp(x), constant(step))),
+				jump(head),
+				label(exit),
+				ret(temp(x))), 1);
+	}
+}
@@ -0,0 +1,56 @@
+package mtm68.ir;
+
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.*;
+import static mtm68.ir.IRTestUtils.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRSeq;
+import edu.cornell.cs.cs4120.ir.interpret.IRSimulator;
+import edu.cornell.cs.cs4120.ir.interpret.IRSimulator.Trap;
+
+public class IRSimulatorTests {
+
+	@Test
+	void testCountsExecution() {
+		IRSimulator simulator = new IRSimulator(sumLoop(), 1024, new ByteArrayOutputStream());
+		simulator.call("_Imain_paai", 0);
+
+		// 3 before the loop, 4 per iteration, then the last CJUMP and RETURN
+		assertEquals(17, simulator.getExecutedStmts());
+		assertEquals(3, simulator.getMemReads());
+		assertEquals(3, simulator.getMemWrites());
+		assertEquals(1, simulator.getCalls());
+		assertEquals(16, simulator.getHeapBytesAllocated());
+	}
+
+	@Test
+	void testStopsAfterMaxStmts() {
+		IRSimulator simulator = new IRSimulator(sumLoop(), 1024, new ByteArrayOutputStream());
+		simulator.setMaxStmts(5);
+
+		assertThrows(Trap.class, () -> simulator.call("_Imain_paai", 0));
+		assertEquals(6, simulator.getExecutedStmts());
+	}
+
+	private IRCompUnit sumLoop() {
+		IRCompUnit compUnit = new IRCompUnit("test");
+		compUnit.appendFunc(new IRFuncDefn("_Imain_paai", new IRSeq(
+				move("x", constant(0L)),
+				call("_xi_alloc", 1, constant(16L)),
+				move("p", "_RET0"),
+				label("head"),
+				cjump(op(GEQ, temp("x"), constant(3L)), "done", null),
+				move(mem(temp("p")), op(ADD, mem(temp("p")), temp("x"))),
+				move("x", op(ADD, temp("x"), constant(1L))),
+				jump("head"),
+				label("done"),
+				ret()), 1));
+		return compUnit;
+	}
+}
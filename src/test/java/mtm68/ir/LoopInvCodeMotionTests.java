@@ -0,0 +1,163 @@
+package mtm68.ir;
+
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.ADD;
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.DIV;
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.GEQ;
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.LT;
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.MUL;
+import static edu.cornell.cs.cs4120.ir.IRBinOp.OpType.SUB;
+import static mtm68.ir.IRTestUtils.cjump;
+import static mtm68.ir.IRTestUtils.constant;
+import static mtm68.ir.IRTestUtils.jump;
+import static mtm68.ir.IRTestUtils.label;
+import static mtm68.ir.IRTestUtils.mem;
+import static mtm68.ir.IRTestUtils.move;
+import static mtm68.ir.IRTestUtils.op;
+import static mtm68.ir.IRTestUtils.ret;
+import static mtm68.ir.IRTestUtils.temp;
+import static mtm68.util.TestUtils.assertInstanceOfAndReturn;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import edu.cornell.cs.cs4120.ir.IRCJump;
+import edu.cornell.cs.cs4120.ir.IRCompUnit;
+import edu.cornell.cs.cs4120.ir.IRFuncDefn;
+import edu.cornell.cs.cs4120.ir.IRJump;
+import edu.cornell.cs.cs4120.ir.IRLabel;
+import edu.cornell.cs.cs4120.ir.IRMem;
+import edu.cornell.cs.cs4120.ir.IRMem.MemType;
+import edu.cornell.cs.cs4120.ir.IRMove;
+import edu.cornell.cs.cs4120.ir.IRName;
+import edu.cornell.cs.cs4120.ir.IRNodeFactory_c;
+import edu.cornell.cs.cs4120.ir.IRSeq;
+import edu.cornell.cs.cs4120.ir.IRStmt;
+import edu.cornell.cs.cs4120.ir.IRTemp;
+import mtm68.ir.cfg.LoopInvCodeMotion;
+import mtm68.util.ArrayUtils;
+
+public class LoopInvCodeMotionTests {
+
+	@Test
+	void hoistsLengthAndArithmetic() {
+		IRMem length = new IRMem(op(SUB, temp("a"), constant(8)), MemType.IMMUTABLE);
+
+		List<IRStmt> func = ArrayUtils.elems(
+				move(temp("i"), constant(0)),
+				label("head"),
+				cjump(op(GEQ, temp("i"), length), "done", null),
+				move(mem(op(ADD, temp("a"), op(MUL, temp("i"), constant(8)))), op(MUL, temp("b"), temp("c"))),
+				move(temp("i"), op(ADD, temp("i"), constant(1))),
+				jump("head"),
+				label("done"),
+				ret()
+			);
+		List<IRStmt> res = perform(func);
+
+		assertEquals(10, res.size());
+		IRMove len = assertInstanceOfAndReturn(IRMove.class, res.get(1));
+		assertEquals(length, len.source());
+		IRMove prod = assertInstanceOfAndReturn(IRMove.class, res.get(2));
+		assertEquals(op(MUL, temp("b"), temp("c")), prod.source());
+		assertEquals("head", assertInstanceOfAndReturn(IRLabel.class, res.get(3)).name());
+
+		IRCJump cjump = assertInstanceOfAndReturn(IRCJump.class, res.get(4));
+		assertEquals(op(GEQ, temp("i"), len.target()), cjump.cond());
+		IRMove store = assertInstanceOfAndReturn(IRMove.class, res.get(5));
+		assertEquals(prod.target(), store.source());
+	}
+
+	@Test
+	void keepsLoadsThatMayChange() {
+		List<IRStmt> func = ArrayUtils.elems(
+				move(temp("i"), constant(0)),
+				label("head"),
+				move(temp("x"), mem(temp("a"))),
+				cjump(op(GEQ, temp("i"), temp("x")), "done", null),
+				move(mem(temp("b")), temp("i")),
+				move(temp("i"), op(ADD, temp("i"), constant(1))),
+				jump("head"),
+				label("done"),
+				ret()
+			);
+		List<IRStmt> res = perform(func);
+
+		assertEquals(func.size(), res.size());
+		for(int i = 0; i < func.size(); i++) {
+			assertSame(func.get(i), res.get(i));
+		}
+	}
+
+	@Test
+	void hoistsInvariantDefnsTogether() {
+		List<IRStmt> func = ArrayUtils.elems(
+				move(temp("i"), constant(0)),
+				label("head"),
+				cjump(op(GEQ, temp("i"), temp("n")), "done", null),
+				move(temp("y"), op(ADD, temp("a"), constant(1))),
+				move(temp("z"), op(MUL, temp("y"), constant(2))),
+				move(temp("q"), op(DIV, temp("z"), temp("y"))),
+				move(temp("i"), op(ADD, temp("i"), temp("z"))),
+				jump("head"),
+				label("done"),
+				ret(temp("q"))
+			);
+		List<IRStmt> res = perform(func);
+
+		assertEquals(11, res.size());
+		// y is cheap enough to leave, so z is computed from a
+		IRMove z = assertInstanceOfAndReturn(IRMove.class, res.get(1));
+		assertEquals(op(MUL, op(ADD, temp("a"), constant(1)), constant(2)), z.source());
+
+		assertEquals(func.get(3).toString(), res.get(4).toString());
+		assertEquals(move(temp("z"), z.target()).toString(), res.get(5).toString());
+		// Division by y may trap, so it stays in the loop
+		assertEquals(move(temp("q"), op(DIV, z.target(), temp("y"))).toString(), res.get(6).toString());
+	}
+
+	@Test
+	void sendsEntriesThroughPreheader() {
+		List<IRStmt> func = ArrayUtils.elems(
+				move(temp("i"), constant(0)),
+				jump("head"),
+				label("body"),
+				move(temp("x"), op(ADD, temp("x"), op(MUL, temp("a"), temp("b")))),
+				move(temp("i"), op(ADD, temp("i"), constant(1))),
+				label("head"),
+				cjump(op(LT, temp("i"), temp("n")), "body", null),
+				ret(temp("x"))
+			);
+		List<IRStmt> res = perform(func);
+
+		assertEquals(11, res.size());
+		IRJump entry = assertInstanceOfAndReturn(IRJump.class, res.get(1));
+		IRLabel preheader = assertInstanceOfAndReturn(IRLabel.class, res.get(6));
+		assertEquals(preheader.name(), assertInstanceOfAndReturn(IRName.class, entry.target()).name());
+
+		// The back edge falls through, so it jumps over the preheader
+		IRJump backEdge = assertInstanceOfAndReturn(IRJump.class, res.get(5));
+		assertEquals("head", assertInstanceOfAndReturn(IRName.class, backEdge.target()).name());
+
+		IRMove prod = assertInstanceOfAndReturn(IRMove.class, res.get(7));
+		IRTemp prodTemp = assertInstanceOfAndReturn(IRTemp.class, prod.target());
+		assertEquals(op(MUL, temp("a"), temp("b")), prod.source());
+		assertEquals(move(temp("x"), op(ADD, temp("x"), prodTemp)).toString(), res.get(3).toString());
+	}
+
+	private List<IRStmt> perform(List<IRStmt> stmts) {
+		IRSeq seq = new IRSeq(stmts);
+		IRFuncDefn func = new IRFuncDefn("f", seq, 0);
+		Map<String, IRFuncDefn> funcs = new HashMap<>();
+		funcs.put("f", func);
+		IRCompUnit comp = new IRCompUnit("test.xi", funcs);
+
+		LoopInvCodeMotion licm = new LoopInvCodeMotion(comp, new IRNodeFactory_c());
+		IRCompUnit res = licm.doLICM();
+		return ((IRSeq)(res.functions().get("f").body())).stmts();
+	}
+}